@@ -264,6 +264,7 @@ public final class CorePlugin extends SonarPlugin {
       IssuesDensityDecorator.class,
       InitialOpenIssuesSensor.class,
       InitialOpenIssuesStack.class,
+      ReferenceSources.class,
       HotspotMostViolatedResourcesWidget.class,
       HotspotMostViolatedRulesWidget.class,
       MyUnresolvedIssuesWidget.class,
@@ -20,7 +20,6 @@
 
 package org.sonar.plugins.core.issue;
 
-import java.util.Collections;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.batch.index.Cache;
@@ -28,8 +27,8 @@ import org.sonar.batch.index.Caches;
 import org.sonar.core.issue.db.IssueChangeDto;
 import org.sonar.core.issue.db.IssueDto;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static com.google.common.collect.Lists.newArrayList;
 
@@ -37,9 +36,17 @@ import static com.google.common.collect.Lists.newArrayList;
 public class InitialOpenIssuesStack implements BatchExtension {
 
   private final Cache<String, IssueDto> issuesCache;
-  private final Cache<String, ArrayList<IssueChangeDto>> issuesChangelogCache;
+
+  /**
+   * Changes are grouped by issue key. Keys are the positions of changes in the stream of changes, so that
+   * changelogs are read in the same order than they were added.
+   */
+  private final Cache<Integer, IssueChangeDto> issuesChangelogCache;
+  private int changeCounter = 0;
 
   public InitialOpenIssuesStack(Caches caches) {
+    caches.registerValueCoder(IssueDto.class, new IssueDtoValueCoder());
+    caches.registerValueCoder(IssueChangeDto.class, new IssueChangeDtoValueCoder());
     issuesCache = caches.createCache("last-open-issues");
     issuesChangelogCache = caches.createCache("issues-changelog");
   }
@@ -59,27 +66,35 @@ public class InitialOpenIssuesStack implements BatchExtension {
     return result;
   }
 
+  /**
+   * Keys of the components that still have issues in this stack
+   *
+   * @since 4.1.3
+   */
+  public Set<String> selectComponentKeys() {
+    return issuesCache.groups();
+  }
+
   public Iterable<IssueDto> selectAllIssues() {
     return issuesCache.allValues();
   }
 
+  /**
+   * Each change is stored once, whatever the size of the changelog of the issue.
+   */
   public InitialOpenIssuesStack addChangelog(IssueChangeDto issueChangeDto) {
-    List<IssueChangeDto> changeDtos = issuesChangelogCache.get(issueChangeDto.getIssueKey());
-    if (changeDtos == null) {
-      changeDtos = newArrayList();
-    }
-    changeDtos.add(issueChangeDto);
-    issuesChangelogCache.put(issueChangeDto.getIssueKey(), newArrayList(changeDtos));
+    issuesChangelogCache.put(issueChangeDto.getIssueKey(), changeCounter, issueChangeDto);
+    changeCounter++;
     return this;
   }
 
   public List<IssueChangeDto> selectChangelog(String issueKey) {
-    List<IssueChangeDto> changeDtos = issuesChangelogCache.get(issueKey);
-    return changeDtos != null ? changeDtos : Collections.<IssueChangeDto>emptyList();
+    return newArrayList(issuesChangelogCache.values(issueKey));
   }
 
   public void clear() {
     issuesCache.clearAll();
     issuesChangelogCache.clearAll();
+    changeCounter = 0;
   }
 }
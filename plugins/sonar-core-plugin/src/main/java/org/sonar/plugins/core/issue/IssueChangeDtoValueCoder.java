@@ -0,0 +1,63 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.issue;
+
+import com.persistit.Value;
+import org.sonar.batch.index.VersionedValueCoder;
+import org.sonar.core.issue.db.IssueChangeDto;
+
+/**
+ * Binary format of {@link IssueChangeDto} in {@link InitialOpenIssuesStack}
+ */
+class IssueChangeDtoValueCoder extends VersionedValueCoder<IssueChangeDto> {
+
+  private static final int VERSION = 1;
+
+  IssueChangeDtoValueCoder() {
+    super(VERSION);
+  }
+
+  @Override
+  protected void encode(Value value, IssueChangeDto dto) {
+    putLong(value, dto.getId());
+    putString(value, dto.getKey());
+    putString(value, dto.getIssueKey());
+    putString(value, dto.getUserLogin());
+    putString(value, dto.getChangeType());
+    putString(value, dto.getChangeData());
+    putDate(value, dto.getCreatedAt());
+    putDate(value, dto.getUpdatedAt());
+    putDate(value, dto.getIssueChangeCreationDate());
+  }
+
+  @Override
+  protected IssueChangeDto decode(Value value) {
+    return new IssueChangeDto()
+      .setId(getLong(value))
+      .setKey(getString(value))
+      .setIssueKey(getString(value))
+      .setUserLogin(getInternedString(value))
+      .setChangeType(getInternedString(value))
+      .setChangeData(getString(value))
+      .setCreatedAt(getDate(value))
+      .setUpdatedAt(getDate(value))
+      .setIssueChangeCreationDate(getDate(value));
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.issue;
+
+import com.persistit.Value;
+import org.sonar.batch.index.VersionedValueCoder;
+import org.sonar.core.issue.db.IssueDto;
+
+/**
+ * Binary format of {@link IssueDto} in {@link InitialOpenIssuesStack}
+ */
+class IssueDtoValueCoder extends VersionedValueCoder<IssueDto> {
+
+  private static final int VERSION = 1;
+
+  IssueDtoValueCoder() {
+    super(VERSION);
+  }
+
+  @Override
+  protected void encode(Value value, IssueDto dto) {
+    putLong(value, dto.getId());
+    putString(value, dto.getKee());
+    putLong(value, dto.getComponentId());
+    putLong(value, dto.getRootComponentId());
+    putInteger(value, dto.getRuleId());
+    putString(value, dto.getSeverity());
+    value.put(dto.isManualSeverity());
+    putString(value, dto.getMessage());
+    putInteger(value, dto.getLine());
+    putDouble(value, dto.getEffortToFix());
+    putLong(value, dto.getTechnicalDebt());
+    putString(value, dto.getStatus());
+    putString(value, dto.getResolution());
+    putString(value, dto.getChecksum());
+    putString(value, dto.getReporter());
+    putString(value, dto.getAssignee());
+    putString(value, dto.getAuthorLogin());
+    putString(value, dto.getActionPlanKey());
+    putString(value, dto.getIssueAttributes());
+    putDate(value, dto.getIssueCreationDate());
+    putDate(value, dto.getIssueUpdateDate());
+    putDate(value, dto.getIssueCloseDate());
+    putDate(value, dto.getCreatedAt());
+    putDate(value, dto.getUpdatedAt());
+    putDate(value, dto.getSelectedAt());
+    putString(value, dto.getRuleRepo());
+    putString(value, dto.getRule());
+    putString(value, dto.getComponentKey());
+    putString(value, dto.getRootComponentKey());
+  }
+
+  @Override
+  protected IssueDto decode(Value value) {
+    IssueDto dto = new IssueDto()
+      .setId(getLong(value))
+      .setKee(getString(value))
+      .setComponentId(getLong(value))
+      .setRootComponentId(getLong(value))
+      .setRuleId(getInteger(value))
+      .setSeverity(getInternedString(value))
+      .setManualSeverity(value.getBoolean())
+      .setMessage(getString(value))
+      .setLine(getInteger(value))
+      .setEffortToFix(getDouble(value))
+      .setTechnicalDebt(getLong(value))
+      .setStatus(getInternedString(value))
+      .setResolution(getInternedString(value))
+      .setChecksum(getString(value))
+      .setReporter(getInternedString(value))
+      .setAssignee(getInternedString(value))
+      .setAuthorLogin(getInternedString(value))
+      .setActionPlanKey(getInternedString(value))
+      .setIssueAttributes(getString(value))
+      .setIssueCreationDate(getDate(value))
+      .setIssueUpdateDate(getDate(value))
+      .setIssueCloseDate(getDate(value))
+      .setCreatedAt(getDate(value))
+      .setUpdatedAt(getDate(value))
+      .setSelectedAt(getDate(value));
+    String ruleRepo = getInternedString(value);
+    String rule = getInternedString(value);
+    return dto
+      .setRuleKey(ruleRepo, rule)
+      .setComponentKey(getInternedString(value))
+      .setRootComponentKey(getInternedString(value));
+  }
+}
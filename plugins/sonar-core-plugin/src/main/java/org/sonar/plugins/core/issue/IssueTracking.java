@@ -79,7 +79,8 @@ public class IssueTracking implements BatchExtension {
 
     // If each new issue matches an old one we can stop the matching mechanism
     if (result.matched().size() != newIssues.size()) {
-      if (sourceHashHolder.hasBothReferenceAndCurrentSource() && hasLastScan) {
+      // reference source is not loaded if there are no remaining issues to be matched
+      if (hasLastScan && !result.unmatched().isEmpty() && sourceHashHolder.hasBothReferenceAndCurrentSource()) {
         mapNewissues(sourceHashHolder, newIssues, result);
       }
       mapIssuesOnSameRule(newIssues, result);
@@ -41,7 +41,6 @@ import org.sonar.api.rules.Rule;
 import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.batch.issue.IssueCache;
-import org.sonar.batch.scan.LastSnapshots;
 import org.sonar.core.issue.IssueUpdater;
 import org.sonar.core.issue.db.IssueChangeDto;
 import org.sonar.core.issue.db.IssueDto;
@@ -58,7 +57,7 @@ public class IssueTrackingDecorator implements Decorator {
   private final IssueCache issueCache;
   private final InitialOpenIssuesStack initialOpenIssues;
   private final IssueTracking tracking;
-  private final LastSnapshots lastSnapshots;
+  private final ReferenceSources referenceSources;
   private final SonarIndex index;
   private final IssueHandlers handlers;
   private final IssueWorkflow workflow;
@@ -69,7 +68,7 @@ public class IssueTrackingDecorator implements Decorator {
   private final RuleFinder ruleFinder;
 
   public IssueTrackingDecorator(IssueCache issueCache, InitialOpenIssuesStack initialOpenIssues, IssueTracking tracking,
-                                LastSnapshots lastSnapshots, SonarIndex index,
+                                ReferenceSources referenceSources, SonarIndex index,
                                 IssueHandlers handlers, IssueWorkflow workflow,
                                 IssueUpdater updater,
                                 Project project,
@@ -79,7 +78,7 @@ public class IssueTrackingDecorator implements Decorator {
     this.issueCache = issueCache;
     this.initialOpenIssues = initialOpenIssues;
     this.tracking = tracking;
-    this.lastSnapshots = lastSnapshots;
+    this.referenceSources = referenceSources;
     this.index = index;
     this.handlers = handlers;
     this.workflow = workflow;
@@ -110,10 +109,13 @@ public class IssueTrackingDecorator implements Decorator {
     }
     // issues = all the issues created by rule engines during this module scan and not excluded by filters
 
+    // sources of the changed files of the module are loaded at once, before removing issues from the stack
+    referenceSources.load();
+
     // all the issues that are not closed in db before starting this module scan, including manual issues
     Collection<IssueDto> dbOpenIssues = initialOpenIssues.selectAndRemoveIssues(resource.getEffectiveKey());
 
-    SourceHashHolder sourceHashHolder = new SourceHashHolder(index, lastSnapshots, resource);
+    SourceHashHolder sourceHashHolder = new SourceHashHolder(index, referenceSources, resource);
 
     IssueTrackingResult trackingResult = tracking.track(sourceHashHolder, dbOpenIssues, issues);
 
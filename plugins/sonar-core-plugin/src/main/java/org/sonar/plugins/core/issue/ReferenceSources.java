@@ -0,0 +1,123 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.issue;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.scan.filesystem.FileQuery;
+import org.sonar.api.scan.filesystem.internal.DefaultInputFile;
+import org.sonar.api.scan.filesystem.internal.InputFile;
+import org.sonar.api.utils.TimeProfiler;
+import org.sonar.batch.bootstrap.AnalysisMode;
+import org.sonar.batch.scan.LastSnapshots;
+import org.sonar.batch.scan.filesystem.DefaultModuleFileSystem;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sources of the files of the current module, as they were during the previous analysis. The sources of all the
+ * changed files that have open issues are loaded at once from database, when {@link #load()} is called for the first
+ * time. In preview mode, sources are downloaded one by one, so they are still loaded lazily, when requested.
+ * Files that did not change since the previous analysis do not need to be loaded, as their current source
+ * is the reference source.
+ * <p/>
+ * This component is thread-safe.
+ *
+ * @since 4.1.3
+ */
+public class ReferenceSources implements BatchExtension {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReferenceSources.class);
+
+  private final AnalysisMode analysisMode;
+  private final LastSnapshots lastSnapshots;
+  private final DefaultModuleFileSystem fileSystem;
+  private final InitialOpenIssuesStack initialOpenIssues;
+
+  private Set<String> unchangedFileKeys;
+  private Map<String, String> sources;
+
+  public ReferenceSources(AnalysisMode analysisMode, LastSnapshots lastSnapshots, DefaultModuleFileSystem fileSystem,
+                          InitialOpenIssuesStack initialOpenIssues) {
+    this.analysisMode = analysisMode;
+    this.lastSnapshots = lastSnapshots;
+    this.fileSystem = fileSystem;
+    this.initialOpenIssues = initialOpenIssues;
+  }
+
+  /**
+   * Loads the sources of the changed files that have open issues, except in preview mode. Must be called before
+   * removing issues from {@link InitialOpenIssuesStack}. Does nothing if already called.
+   */
+  public synchronized void load() {
+    if (sources == null) {
+      unchangedFileKeys = Sets.newHashSet();
+      boolean prefetch = !analysisMode.isPreview();
+      Set<String> componentKeysWithIssues = prefetch ? initialOpenIssues.selectComponentKeys() : Collections.<String>emptySet();
+      List<String> keysToLoad = Lists.newArrayList();
+      for (InputFile inputFile : fileSystem.inputFiles(FileQuery.on())) {
+        String componentKey = inputFile.attribute(DefaultInputFile.ATTRIBUTE_COMPONENT_KEY);
+        if (componentKey != null) {
+          if (InputFile.STATUS_SAME.equals(inputFile.attribute(InputFile.ATTRIBUTE_STATUS))) {
+            unchangedFileKeys.add(componentKey);
+          } else if (componentKeysWithIssues.contains(componentKey)) {
+            keysToLoad.add(componentKey);
+          }
+        }
+      }
+      sources = Maps.newHashMap();
+      if (!keysToLoad.isEmpty()) {
+        TimeProfiler profiler = new TimeProfiler(LOG).start("Load reference sources of " + keysToLoad.size() + " files");
+        sources.putAll(lastSnapshots.getSources(keysToLoad));
+        profiler.stop();
+      }
+    }
+  }
+
+  /**
+   * @return true if the file did not change since the previous analysis, so its current source is the reference source
+   */
+  public synchronized boolean isUnchanged(Resource resource) {
+    load();
+    return unchangedFileKeys.contains(resource.getEffectiveKey());
+  }
+
+  /**
+   * Each file is decorated once, so loaded sources are released when read. Sources that were not loaded
+   * by {@link #load()} are requested to {@link LastSnapshots}.
+   */
+  public String getSource(Resource resource) {
+    String source;
+    synchronized (this) {
+      load();
+      source = sources.remove(resource.getEffectiveKey());
+    }
+    // not synchronized, so that sources of different files can be downloaded concurrently
+    return source != null ? source : lastSnapshots.getSource(resource);
+  }
+}
@@ -23,7 +23,6 @@ import java.util.Collection;
 
 import org.sonar.api.batch.SonarIndex;
 import org.sonar.api.resources.Resource;
-import org.sonar.batch.scan.LastSnapshots;
 import org.sonar.plugins.core.issue.tracking.HashedSequence;
 import org.sonar.plugins.core.issue.tracking.StringText;
 import org.sonar.plugins.core.issue.tracking.StringTextComparator;
@@ -33,7 +32,7 @@ import org.sonar.plugins.core.issue.tracking.StringTextComparator;
 public class SourceHashHolder {
 
   private final SonarIndex index;
-  private final LastSnapshots lastSnapshots;
+  private final ReferenceSources referenceSources;
   private final Resource resource;
 
   private String source;
@@ -44,15 +43,20 @@ public class SourceHashHolder {
   private HashedSequence<StringText> hashedReference;
   private HashedSequence<StringText> hashedSource;
 
-  public SourceHashHolder(SonarIndex index, LastSnapshots lastSnapshots, Resource resource) {
+  public SourceHashHolder(SonarIndex index, ReferenceSources referenceSources, Resource resource) {
     this.index = index;
-    this.lastSnapshots = lastSnapshots;
+    this.referenceSources = referenceSources;
     this.resource = resource;
   }
 
   private void initHashes() {
-    hashedReference = HashedSequence.wrap(new StringText(getReferenceSource()), StringTextComparator.IGNORE_WHITESPACE);
     hashedSource = HashedSequence.wrap(new StringText(getSource()), StringTextComparator.IGNORE_WHITESPACE);
+    if (isUnchanged()) {
+      // line hashes of the current source are reused
+      hashedReference = hashedSource;
+    } else {
+      hashedReference = HashedSequence.wrap(new StringText(getReferenceSource()), StringTextComparator.IGNORE_WHITESPACE);
+    }
   }
 
   public HashedSequence<StringText> getHashedReference() {
@@ -75,8 +79,10 @@ public class SourceHashHolder {
 
   public String getReferenceSource() {
     if (! referenceSourceInitialized) {
-      if (resource != null) {
-        referenceSource = lastSnapshots.getSource(resource);
+      if (isUnchanged()) {
+        referenceSource = getSource();
+      } else if (resource != null) {
+        referenceSource = referenceSources.getSource(resource);
       }
       referenceSourceInitialized = true;
     }
@@ -87,6 +93,10 @@ public class SourceHashHolder {
     return getSource() != null && getReferenceSource() != null;
   }
 
+  private boolean isUnchanged() {
+    return resource != null && referenceSources.isUnchanged(resource);
+  }
+
   private void initHashesIfNull(Object required) {
     if(required == null) {
       initHashes();
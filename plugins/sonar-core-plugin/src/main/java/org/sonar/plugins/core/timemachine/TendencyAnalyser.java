@@ -37,7 +37,28 @@ public class TendencyAnalyser {
     return null;
   }
 
+  /**
+   * Same as {@link #analyseLevel(java.util.List)}, {@link Double#NaN} being used for null values.
+   */
+  public Integer analyseLevel(double[] values) {
+    TendencyAnalyser.SlopeData slopeData = analyse(values);
+    if (slopeData != null) {
+      return slopeData.getLevel();
+    }
+    return null;
+  }
+
   public SlopeData analyse(List<Double> values) {
+    double[] array = new double[values.size()];
+    int i = 0;
+    for (Double value : values) {
+      array[i] = value != null ? value : Double.NaN;
+      i++;
+    }
+    return analyse(array);
+  }
+
+  public SlopeData analyse(double[] values) {
     double sumY = 0.0;
     double sumX = 0.0;
     double sumYPower2 = 0.0;
@@ -46,8 +67,8 @@ public class TendencyAnalyser {
     int nbrPoints = 0;
     boolean nullValuesYList = true;
     int i = 0;
-    for (Double p : values) {
-      if (p != null) {
+    for (double p : values) {
+      if (!Double.isNaN(p)) {
         nullValuesYList = false;
         //SumY calculation
         sumY += p;
@@ -19,8 +19,6 @@
  */
 package org.sonar.plugins.core.timemachine;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DateUtils;
@@ -31,9 +29,13 @@ import org.sonar.api.measures.MetricFinder;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.resources.Scopes;
+import org.sonar.batch.components.MeasuresHistory;
+import org.sonar.batch.components.MeasuresHistoryLoader;
 import org.sonar.batch.components.PeriodsDefinition;
 import org.sonar.core.DryRunIncompatible;
 
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 @DryRunIncompatible
@@ -42,13 +44,13 @@ public class TendencyDecorator implements Decorator {
 
   public static final String PROP_DAYS_DESCRIPTION = "Number of days the tendency should be calculated on.";
 
-  private TimeMachine timeMachine;
-  private TimeMachineQuery query;
-  private TendencyAnalyser analyser;
-  private List<Metric> metrics;
+  private final MeasuresHistoryLoader historyLoader;
+  private final TendencyAnalyser analyser;
+  private final List<Metric> metrics;
+  private MeasuresHistory history;
 
-  public TendencyDecorator(TimeMachine timeMachine, MetricFinder metricFinder) {
-    this.timeMachine = timeMachine;
+  public TendencyDecorator(MeasuresHistoryLoader historyLoader, MetricFinder metricFinder) {
+    this.historyLoader = historyLoader;
     this.analyser = new TendencyAnalyser();
     this.metrics = Lists.newLinkedList();
     for (Metric metric : metricFinder.findAll()) {
@@ -58,9 +60,9 @@ public class TendencyDecorator implements Decorator {
     }
   }
 
-  TendencyDecorator(TimeMachine timeMachine, TimeMachineQuery query, TendencyAnalyser analyser) {
-    this.timeMachine = timeMachine;
-    this.query = query;
+  TendencyDecorator(MeasuresHistoryLoader historyLoader, List<Metric> metrics, TendencyAnalyser analyser) {
+    this.historyLoader = historyLoader;
+    this.metrics = metrics;
     this.analyser = analyser;
   }
 
@@ -69,23 +71,22 @@ public class TendencyDecorator implements Decorator {
     return metrics;
   }
 
-  protected TimeMachineQuery initQuery(Project project) {
-    int days = PeriodsDefinition.CORE_TENDENCY_DEPTH_DEFAULT_VALUE;
-
-    // resource is set after
-    query = new TimeMachineQuery(null)
-      .setFrom(DateUtils.addDays(project.getAnalysisDate(), -days))
-      .setToCurrentAnalysis(true)
-      .setMetrics(metrics);
-    return query;
+  static Date from(Project project) {
+    return DateUtils.addDays(project.getAnalysisDate(), -PeriodsDefinition.CORE_TENDENCY_DEPTH_DEFAULT_VALUE);
   }
 
-  protected TimeMachineQuery resetQuery(Project project, Resource resource) {
-    if (query == null) {
-      initQuery(project);
+  /**
+   * The history of the module and of all its directories is loaded at once, when decorating the first resource.
+   */
+  MeasuresHistory history(Project module) {
+    if (history == null) {
+      if (module.getId() == null) {
+        history = MeasuresHistory.empty();
+      } else {
+        history = historyLoader.load(module.getId(), from(module), module.getAnalysisDate(), metrics);
+      }
     }
-    query.setResource(resource);
-    return query;
+    return history;
   }
 
   public boolean shouldExecuteOnProject(Project project) {
@@ -94,20 +95,15 @@ public class TendencyDecorator implements Decorator {
 
   public void decorate(Resource resource, DecoratorContext context) {
     if (shouldDecorateResource(resource)) {
-      resetQuery(context.getProject(), resource);
-      List<Object[]> fields = timeMachine.getMeasuresFields(query);
-      ListMultimap<Metric, Double> valuesPerMetric = ArrayListMultimap.create();
-      for (Object[] field : fields) {
-        valuesPerMetric.put((Metric) field[1], (Double) field[2]);
-      }
-
-      for (Metric metric : query.getMetrics()) {
+      MeasuresHistory moduleHistory = history(context.getProject());
+      for (Metric metric : metrics) {
         Measure measure = context.getMeasure(metric);
         if (measure != null) {
-          List<Double> values = valuesPerMetric.get(metric);
-          values.add(measure.getValue());
+          double[] pastValues = moduleHistory.getValues(resource.getId(), metric.getId());
+          double[] values = Arrays.copyOf(pastValues, pastValues.length + 1);
+          values[pastValues.length] = measure.getValue() != null ? measure.getValue() : Double.NaN;
 
-          measure.setTendency(analyser.analyseLevel(valuesPerMetric.get(metric)));
+          measure.setTendency(analyser.analyseLevel(values));
           context.saveMeasure(measure);
         }
       }
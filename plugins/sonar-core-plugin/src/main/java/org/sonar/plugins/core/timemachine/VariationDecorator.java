@@ -29,10 +29,13 @@ import org.sonar.api.resources.Resource;
 import org.sonar.api.resources.Scopes;
 import org.sonar.api.technicaldebt.batch.Characteristic;
 import org.sonar.api.technicaldebt.batch.Requirement;
+import org.sonar.batch.components.PastMeasuresIndex;
 import org.sonar.batch.components.PastMeasuresLoader;
 import org.sonar.batch.components.PastSnapshot;
 import org.sonar.batch.components.TimeMachineConfiguration;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -43,16 +46,22 @@ public class VariationDecorator implements Decorator {
   private List<PastSnapshot> projectPastSnapshots;
   private MetricFinder metricFinder;
   private PastMeasuresLoader pastMeasuresLoader;
+  private final String moduleKey;
 
+  /**
+   * Past measures of the module and of its directories, loaded on first use
+   */
+  private Map<PastSnapshot, PastMeasuresIndex> pastMeasuresByPeriod;
 
-  public VariationDecorator(PastMeasuresLoader pastMeasuresLoader, MetricFinder metricFinder, TimeMachineConfiguration timeMachineConfiguration) {
-    this(pastMeasuresLoader, metricFinder, timeMachineConfiguration.getProjectPastSnapshots());
+  public VariationDecorator(PastMeasuresLoader pastMeasuresLoader, MetricFinder metricFinder, TimeMachineConfiguration timeMachineConfiguration, Project module) {
+    this(pastMeasuresLoader, metricFinder, timeMachineConfiguration.getProjectPastSnapshots(), module.getEffectiveKey());
   }
 
-  VariationDecorator(PastMeasuresLoader pastMeasuresLoader, MetricFinder metricFinder, List<PastSnapshot> projectPastSnapshots) {
+  VariationDecorator(PastMeasuresLoader pastMeasuresLoader, MetricFinder metricFinder, List<PastSnapshot> projectPastSnapshots, String moduleKey) {
     this.pastMeasuresLoader = pastMeasuresLoader;
     this.projectPastSnapshots = projectPastSnapshots;
     this.metricFinder = metricFinder;
+    this.moduleKey = moduleKey;
   }
 
   public boolean shouldExecuteOnProject(Project project) {
@@ -65,9 +74,9 @@ public class VariationDecorator implements Decorator {
   }
 
   public void decorate(Resource resource, DecoratorContext context) {
-    for (PastSnapshot projectPastSnapshot : projectPastSnapshots) {
-      if (shouldComputeVariation(resource)) {
-        computeVariation(resource, context, projectPastSnapshot);
+    if (shouldComputeVariation(resource)) {
+      for (Map.Entry<PastSnapshot, PastMeasuresIndex> entry : pastMeasuresByPeriod().entrySet()) {
+        compareWithPastMeasures(context, resource.getEffectiveKey(), entry.getKey().getIndex(), entry.getValue());
       }
     }
   }
@@ -81,17 +90,20 @@ public class VariationDecorator implements Decorator {
     return StringUtils.equals(Scopes.PROJECT, resource.getScope()) || StringUtils.equals(Scopes.DIRECTORY, resource.getScope());
   }
 
-  private void computeVariation(Resource resource, DecoratorContext context, PastSnapshot pastSnapshot) {
-    List<Object[]> pastMeasures = pastMeasuresLoader.getPastMeasures(resource, pastSnapshot);
-    compareWithPastMeasures(context, pastSnapshot.getIndex(), pastMeasures);
-  }
-
-  void compareWithPastMeasures(DecoratorContext context, int index, List<Object[]> pastMeasures) {
-    Map<MeasureKey, Object[]> pastMeasuresByKey = Maps.newHashMap();
-    for (Object[] pastMeasure : pastMeasures) {
-      pastMeasuresByKey.put(new MeasureKey(pastMeasure), pastMeasure);
+  /**
+   * Past measures of the module are loaded at once, when decorating the first resource.
+   */
+  private Map<PastSnapshot, PastMeasuresIndex> pastMeasuresByPeriod() {
+    if (pastMeasuresByPeriod == null) {
+      pastMeasuresByPeriod = Maps.newLinkedHashMap();
+      for (PastSnapshot projectPastSnapshot : projectPastSnapshots) {
+        pastMeasuresByPeriod.put(projectPastSnapshot, pastMeasuresLoader.getPastMeasuresIndex(moduleKey, projectPastSnapshot));
+      }
     }
+    return pastMeasuresByPeriod;
+  }
 
+  void compareWithPastMeasures(DecoratorContext context, String resourceKey, int index, PastMeasuresIndex pastMeasures) {
     // for each measure, search equivalent past measure
     for (Measure measure : context.getMeasures(MeasuresFilters.all())) {
       // compare with past measure
@@ -102,16 +114,16 @@ public class VariationDecorator implements Decorator {
       Integer personId = measure.getPersonId();
       Integer ruleId = measure instanceof RuleMeasure ? ((RuleMeasure) measure).getRule().getId() : null;
 
-      Object[] pastMeasure = pastMeasuresByKey.get(new MeasureKey(metricId, characteristicId, personId, ruleId));
-      if (updateVariation(measure, pastMeasure, index)) {
+      Double pastValue = pastMeasures.getValue(resourceKey, metricId, characteristicId, personId, ruleId);
+      if (updateVariation(measure, pastValue, index)) {
         context.saveMeasure(measure);
       }
     }
   }
 
-  boolean updateVariation(Measure measure, Object[] pastMeasure, int index) {
-    if (pastMeasure != null && PastMeasuresLoader.hasValue(pastMeasure) && measure.getValue() != null) {
-      double variation = measure.getValue() - PastMeasuresLoader.getValue(pastMeasure);
+  boolean updateVariation(Measure measure, @Nullable Double pastValue, int index) {
+    if (pastValue != null && measure.getValue() != null) {
+      double variation = measure.getValue() - pastValue;
       measure.setVariation(index, variation);
       return true;
     }
@@ -122,58 +134,4 @@ public class VariationDecorator implements Decorator {
   public String toString() {
     return getClass().getSimpleName();
   }
-
-  static final class MeasureKey {
-    int metricId;
-    Integer characteristicId;
-    Integer personId;
-    Integer ruleId;
-
-    MeasureKey(Object[] pastFields) {
-      metricId = PastMeasuresLoader.getMetricId(pastFields);
-      characteristicId = PastMeasuresLoader.getCharacteristicId(pastFields);
-      personId = PastMeasuresLoader.getPersonId(pastFields);
-      ruleId = PastMeasuresLoader.getRuleId(pastFields);
-    }
-
-    MeasureKey(int metricId, Integer characteristicId, Integer personId, Integer ruleId) {
-      this.metricId = metricId;
-      this.characteristicId = characteristicId;
-      this.personId = personId;
-      this.ruleId = ruleId;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null || getClass() != o.getClass()) {
-        return false;
-      }
-      MeasureKey that = (MeasureKey) o;
-      if (metricId != that.metricId) {
-        return false;
-      }
-      if (characteristicId != null ? !characteristicId.equals(that.characteristicId) : that.characteristicId != null) {
-        return false;
-      }
-      if (personId != null ? !personId.equals(that.personId) : that.personId != null) {
-        return false;
-      }
-      if (ruleId != null ? !ruleId.equals(that.ruleId) : that.ruleId != null) {
-        return false;
-      }
-      return true;
-    }
-
-    @Override
-    public int hashCode() {
-      int result = metricId;
-      result = 31 * result + (characteristicId != null ? characteristicId.hashCode() : 0);
-      result = 31 * result + (personId != null ? personId.hashCode() : 0);
-      result = 31 * result + (ruleId != null ? ruleId.hashCode() : 0);
-      return result;
-    }
-  }
 }
@@ -27,6 +27,7 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
 import org.sonar.batch.bootstrap.BootstrapProperties;
 import org.sonar.batch.bootstrap.BootstrapSettings;
 import org.sonar.batch.bootstrap.TempFolderProvider;
@@ -35,6 +36,7 @@ import org.sonar.core.issue.db.IssueChangeDto;
 import org.sonar.core.issue.db.IssueDto;
 
 import java.io.IOException;
+import java.util.Date;
 import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -45,6 +47,10 @@ public class InitialOpenIssuesStackTest {
   public static TemporaryFolder temp = new TemporaryFolder();
 
   public static Caches createCacheOnTemp(TemporaryFolder temp) {
+    return createCacheOnTemp(temp, new Settings());
+  }
+
+  public static Caches createCacheOnTemp(TemporaryFolder temp, Settings settings) {
     BootstrapSettings bootstrapSettings = new BootstrapSettings(
       new BootstrapProperties(Collections.<String,String>emptyMap())
     );
@@ -53,7 +59,7 @@ public class InitialOpenIssuesStackTest {
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-    return new Caches(new TempFolderProvider().provide(bootstrapSettings));
+    return new Caches(new TempFolderProvider().provide(bootstrapSettings), settings);
   }
 
   InitialOpenIssuesStack stack;
@@ -115,6 +121,62 @@ public class InitialOpenIssuesStackTest {
     assertThat(issueChangeDtos.get(1).getKey()).isEqualTo("CHANGE-2");
   }
 
+  @Test
+  public void select_changelogs_of_many_issues() {
+    stack.addChangelog(new IssueChangeDto().setKey("CHANGE-1").setIssueKey("ISSUE-1"));
+    stack.addChangelog(new IssueChangeDto().setKey("CHANGE-2").setIssueKey("ISSUE-2"));
+    stack.addChangelog(new IssueChangeDto().setKey("CHANGE-3").setIssueKey("ISSUE-1"));
+
+    assertThat(stack.selectChangelog("ISSUE-1")).onProperty("key").containsExactly("CHANGE-1", "CHANGE-3");
+    assertThat(stack.selectChangelog("ISSUE-2")).onProperty("key").containsExactly("CHANGE-2");
+  }
+
+  @Test
+  public void keep_order_of_changelog_on_disk() {
+    caches.stop();
+    caches = createCacheOnTemp(temp, new Settings().setProperty(Caches.IN_MEMORY_PROPERTY, false));
+    caches.start();
+    stack = new InitialOpenIssuesStack(caches);
+    for (int i = 0; i < 20; i++) {
+      stack.addChangelog(new IssueChangeDto().setKey("CHANGE-" + i).setIssueKey("ISSUE-" + (i % 2)));
+    }
+
+    List<IssueChangeDto> changelog = stack.selectChangelog("ISSUE-0");
+    assertThat(changelog).hasSize(10);
+    for (int i = 0; i < 10; i++) {
+      assertThat(changelog.get(i).getKey()).isEqualTo("CHANGE-" + (2 * i));
+    }
+  }
+
+  @Test
+  public void store_issues_and_changelog_on_disk() {
+    caches.stop();
+    caches = createCacheOnTemp(temp, new Settings().setProperty(Caches.IN_MEMORY_PROPERTY, false));
+    caches.start();
+    stack = new InitialOpenIssuesStack(caches);
+    Date date = new Date(1380000000000L);
+    stack.addIssue(new IssueDto().setComponentKey("org.struts.Action").setRootComponentKey("struts").setKee("ISSUE-1")
+      .setId(10L).setRuleKey("squid", "AvoidCycle").setLine(12).setTechnicalDebt(1020L).setIssueCreationDate(date));
+    stack.addChangelog(new IssueChangeDto().setKey("CHANGE-1").setIssueKey("ISSUE-1").setChangeData("severity=MINOR|MAJOR").setCreatedAt(date));
+
+    IssueDto issueDto = stack.selectAndRemoveIssues("org.struts.Action").get(0);
+    assertThat(issueDto.getKee()).isEqualTo("ISSUE-1");
+    assertThat(issueDto.getId()).isEqualTo(10L);
+    assertThat(issueDto.getComponentKey()).isEqualTo("org.struts.Action");
+    assertThat(issueDto.getRootComponentKey()).isEqualTo("struts");
+    assertThat(issueDto.getRuleRepo()).isEqualTo("squid");
+    assertThat(issueDto.getRule()).isEqualTo("AvoidCycle");
+    assertThat(issueDto.getLine()).isEqualTo(12);
+    assertThat(issueDto.getTechnicalDebt()).isEqualTo(1020L);
+    assertThat(issueDto.getIssueCreationDate()).isEqualTo(date);
+    assertThat(issueDto.getSeverity()).isNull();
+
+    IssueChangeDto changeDto = stack.selectChangelog("ISSUE-1").get(0);
+    assertThat(changeDto.getKey()).isEqualTo("CHANGE-1");
+    assertThat(changeDto.getChangeData()).isEqualTo("severity=MINOR|MAJOR");
+    assertThat(changeDto.getCreatedAt()).isEqualTo(date);
+  }
+
   @Test
   public void return_empty_changelog() {
     assertThat(stack.selectChangelog("ISSUE-1")).isEmpty();
@@ -38,7 +38,6 @@ import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rules.Rule;
 import org.sonar.api.rules.RuleFinder;
 import org.sonar.batch.issue.IssueCache;
-import org.sonar.batch.scan.LastSnapshots;
 import org.sonar.core.issue.IssueUpdater;
 import org.sonar.core.issue.db.IssueChangeDto;
 import org.sonar.core.issue.db.IssueDto;
@@ -67,7 +66,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
   IssueCache issueCache = mock(IssueCache.class, RETURNS_MOCKS);
   InitialOpenIssuesStack initialOpenIssues = mock(InitialOpenIssuesStack.class);
   IssueTracking tracking = mock(IssueTracking.class, RETURNS_MOCKS);
-  LastSnapshots lastSnapshots = mock(LastSnapshots.class);
+  ReferenceSources referenceSources = mock(ReferenceSources.class);
   SonarIndex index = mock(SonarIndex.class);
   IssueHandlers handlers = mock(IssueHandlers.class);
   IssueWorkflow workflow = mock(IssueWorkflow.class);
@@ -82,7 +81,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
       issueCache,
       initialOpenIssues,
       tracking,
-      lastSnapshots,
+      referenceSources,
       index,
       handlers,
       workflow,
@@ -184,7 +183,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
       + "   void method4();\n"
       + "}";
     when(index.getSource(file)).thenReturn(newSource);
-    when(lastSnapshots.getSource(file)).thenReturn(originalSource);
+    when(referenceSources.getSource(file)).thenReturn(originalSource);
 
     when(tracking.track(isA(SourceHashHolder.class), anyCollection(), anyCollection())).thenReturn(trackingResult);
 
@@ -217,7 +216,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
 
     String originalSource = "public interface Action {}";
     when(index.getSource(file)).thenReturn(originalSource);
-    when(lastSnapshots.getSource(file)).thenReturn(originalSource);
+    when(referenceSources.getSource(file)).thenReturn(originalSource);
 
     when(tracking.track(isA(SourceHashHolder.class), anyCollection(), anyCollection())).thenReturn(trackingResult);
 
@@ -251,7 +250,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
 
     String originalSource = "public interface Action {}";
     when(index.getSource(file)).thenReturn(originalSource);
-    when(lastSnapshots.getSource(file)).thenReturn(originalSource);
+    when(referenceSources.getSource(file)).thenReturn(originalSource);
 
     when(tracking.track(isA(SourceHashHolder.class), anyCollection(), anyCollection())).thenReturn(trackingResult);
 
@@ -300,7 +299,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
       + "   void method6();\n" // Poof, no method5 anymore
       + "}";
     when(index.getSource(file)).thenReturn(newSource);
-    when(lastSnapshots.getSource(file)).thenReturn(originalSource);
+    when(referenceSources.getSource(file)).thenReturn(originalSource);
 
     when(tracking.track(isA(SourceHashHolder.class), anyCollection(), anyCollection())).thenReturn(trackingResult);
 
@@ -348,7 +347,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
       + "   }\n"
       + "}";
     when(index.getSource(file)).thenReturn(newSource);
-    when(lastSnapshots.getSource(file)).thenReturn(originalSource);
+    when(referenceSources.getSource(file)).thenReturn(originalSource);
 
     when(tracking.track(isA(SourceHashHolder.class), anyCollection(), anyCollection())).thenReturn(trackingResult);
 
@@ -383,7 +382,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
 
     String source = "public interface Action {}";
     when(index.getSource(file)).thenReturn(source);
-    when(lastSnapshots.getSource(file)).thenReturn(source);
+    when(referenceSources.getSource(file)).thenReturn(source);
 
     when(tracking.track(isA(SourceHashHolder.class), anyCollection(), anyCollection())).thenReturn(trackingResult);
 
@@ -416,7 +415,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
 
     String source = "public interface Action {}";
     when(index.getSource(file)).thenReturn(source);
-    when(lastSnapshots.getSource(file)).thenReturn(source);
+    when(referenceSources.getSource(file)).thenReturn(source);
 
     when(tracking.track(isA(SourceHashHolder.class), anyCollection(), anyCollection())).thenReturn(trackingResult);
 
@@ -459,7 +458,7 @@ public class IssueTrackingDecoratorTest extends AbstractDaoTestCase {
       + "   void method2();\n"
       + "}";
     when(index.getSource(file)).thenReturn(newSource);
-    when(lastSnapshots.getSource(file)).thenReturn(originalSource);
+    when(referenceSources.getSource(file)).thenReturn(originalSource);
 
     when(tracking.track(isA(SourceHashHolder.class), anyCollection(), anyCollection())).thenReturn(trackingResult);
 
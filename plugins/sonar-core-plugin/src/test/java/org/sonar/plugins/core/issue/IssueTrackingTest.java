@@ -31,7 +31,6 @@ import org.sonar.api.issue.internal.DefaultIssue;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.rule.RuleKey;
-import org.sonar.batch.scan.LastSnapshots;
 import org.sonar.core.issue.db.IssueDto;
 
 import java.io.IOException;
@@ -48,13 +47,13 @@ public class IssueTrackingTest {
   Resource project;
   SourceHashHolder sourceHashHolder;
   SonarIndex index;
-  LastSnapshots lastSnapshots;
+  ReferenceSources referenceSources;
   long violationId = 0;
 
   @Before
   public void before() {
     index = mock(SonarIndex.class);
-    lastSnapshots = mock(LastSnapshots.class);
+    referenceSources = mock(ReferenceSources.class);
 
     project = mock(Project.class);
     tracking = new IssueTracking();
@@ -76,7 +75,7 @@ public class IssueTrackingTest {
 
   @Test
   public void checksum_should_have_greater_priority_than_line() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     IssueDto referenceIssue1 = newReferenceIssue("message", 1, "squid", "AvoidCycle", "checksum1");
     IssueDto referenceIssue2 = newReferenceIssue("message", 3, "squid", "AvoidCycle", "checksum2");
@@ -95,7 +94,7 @@ public class IssueTrackingTest {
    */
   @Test
   public void same_rule_and_null_line_and_checksum_but_different_messages() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     DefaultIssue newIssue = newDefaultIssue("new message", null, RuleKey.of("squid", "AvoidCycle"), "checksum1");
     IssueDto referenceIssue = newReferenceIssue("old message", null, "squid", "AvoidCycle", "checksum1");
@@ -107,7 +106,7 @@ public class IssueTrackingTest {
 
   @Test
   public void same_rule_and_line_and_checksum_but_different_messages() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     DefaultIssue newIssue = newDefaultIssue("new message", 1, RuleKey.of("squid", "AvoidCycle"), "checksum1");
     IssueDto referenceIssue = newReferenceIssue("old message", 1, "squid", "AvoidCycle", "checksum1");
@@ -119,7 +118,7 @@ public class IssueTrackingTest {
 
   @Test
   public void same_rule_and_line_message() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     DefaultIssue newIssue = newDefaultIssue("message", 1, RuleKey.of("squid", "AvoidCycle"), "checksum1");
     IssueDto referenceIssue = newReferenceIssue("message", 1, "squid", "AvoidCycle", "checksum2");
@@ -131,7 +130,7 @@ public class IssueTrackingTest {
 
   @Test
   public void should_ignore_reference_measure_without_checksum() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     DefaultIssue newIssue = newDefaultIssue("message", 1, RuleKey.of("squid", "AvoidCycle"), null);
     IssueDto referenceIssue = newReferenceIssue("message", 1, "squid", "NullDeref", null);
@@ -143,7 +142,7 @@ public class IssueTrackingTest {
 
   @Test
   public void same_rule_and_message_and_checksum_but_different_line() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     DefaultIssue newIssue = newDefaultIssue("message", 1, RuleKey.of("squid", "AvoidCycle"), "checksum1");
     IssueDto referenceIssue = newReferenceIssue("message", 2, "squid", "AvoidCycle", "checksum1");
@@ -158,7 +157,7 @@ public class IssueTrackingTest {
    */
   @Test
   public void same_checksum_and_rule_but_different_line_and_different_message() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     DefaultIssue newIssue = newDefaultIssue("new message", 1, RuleKey.of("squid", "AvoidCycle"), "checksum1");
     IssueDto referenceIssue = newReferenceIssue("old message", 2, "squid", "AvoidCycle", "checksum1");
@@ -170,7 +169,7 @@ public class IssueTrackingTest {
 
   @Test
   public void should_create_new_issue_when_same_rule_same_message_but_different_line_and_checksum() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     DefaultIssue newIssue = newDefaultIssue("message", 1, RuleKey.of("squid", "AvoidCycle"), "checksum1");
     IssueDto referenceIssue = newReferenceIssue("message", 2, "squid", "AvoidCycle", "checksum2");
@@ -182,7 +181,7 @@ public class IssueTrackingTest {
 
   @Test
   public void should_not_track_issue_if_different_rule() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     DefaultIssue newIssue = newDefaultIssue("message", 1, RuleKey.of("squid", "AvoidCycle"), "checksum1");
     IssueDto referenceIssue = newReferenceIssue("message", 1, "squid", "NullDeref", "checksum1");
@@ -194,7 +193,7 @@ public class IssueTrackingTest {
 
   @Test
   public void should_compare_issues_with_database_format() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     // issue messages are trimmed and can be abbreviated when persisted in database.
     // Comparing issue messages must use the same format.
@@ -208,9 +207,9 @@ public class IssueTrackingTest {
 
   @Test
   public void past_issue_not_associated_with_line_should_not_cause_npe() throws Exception {
-    when(lastSnapshots.getSource(project)).thenReturn(load("example2-v1"));
+    when(referenceSources.getSource(project)).thenReturn(load("example2-v1"));
     when(index.getSource(project)).thenReturn(load("example2-v2"));
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, project);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, project);
 
     DefaultIssue newIssue = newDefaultIssue("Indentation", 9, RuleKey.of("squid", "AvoidCycle"), "foo");
     IssueDto referenceIssue = newReferenceIssue("2 branches need to be covered", null, "squid", "AvoidCycle", null);
@@ -223,9 +222,9 @@ public class IssueTrackingTest {
 
   @Test
   public void new_issue_not_associated_with_line_should_not_cause_npe() throws Exception {
-    when(lastSnapshots.getSource(project)).thenReturn(load("example2-v1"));
+    when(referenceSources.getSource(project)).thenReturn(load("example2-v1"));
     when(index.getSource(project)).thenReturn(load("example2-v2"));
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, project);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, project);
 
     DefaultIssue newIssue = newDefaultIssue("1 branch need to be covered", null, RuleKey.of("squid", "AvoidCycle"), "foo");
     IssueDto referenceIssue = newReferenceIssue("Indentationd", 7, "squid", "AvoidCycle", null);
@@ -241,9 +240,9 @@ public class IssueTrackingTest {
    */
   @Test
   public void issue_not_associated_with_line() throws Exception {
-    when(lastSnapshots.getSource(project)).thenReturn(load("example2-v1"));
+    when(referenceSources.getSource(project)).thenReturn(load("example2-v1"));
     when(index.getSource(project)).thenReturn(load("example2-v2"));
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, project);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, project);
 
     DefaultIssue newIssue = newDefaultIssue("1 branch need to be covered", null, RuleKey.of("squid", "AvoidCycle"), null);
     IssueDto referenceIssue = newReferenceIssue("2 branches need to be covered", null, "squid", "AvoidCycle", null);
@@ -259,9 +258,9 @@ public class IssueTrackingTest {
    */
   @Test
   public void should_track_issues_based_on_blocks_recognition_on_example1() throws Exception {
-    when(lastSnapshots.getSource(project)).thenReturn(load("example1-v1"));
+    when(referenceSources.getSource(project)).thenReturn(load("example1-v1"));
     when(index.getSource(project)).thenReturn(load("example1-v2"));
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, project);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, project);
 
     IssueDto referenceIssue1 = newReferenceIssue("Indentation", 7, "squid", "AvoidCycle", null);
     IssueDto referenceIssue2 = newReferenceIssue("Indentation", 11, "squid", "AvoidCycle", null);
@@ -285,9 +284,9 @@ public class IssueTrackingTest {
    */
   @Test
   public void should_track_issues_based_on_blocks_recognition_on_example2() throws Exception {
-    when(lastSnapshots.getSource(project)).thenReturn(load("example2-v1"));
+    when(referenceSources.getSource(project)).thenReturn(load("example2-v1"));
     when(index.getSource(project)).thenReturn(load("example2-v2"));
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, project);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, project);
 
     IssueDto referenceIssue1 = newReferenceIssue("SystemPrintln", 5, "squid", "AvoidCycle", null);
 
@@ -308,9 +307,9 @@ public class IssueTrackingTest {
 
   @Test
   public void should_track_issues_based_on_blocks_recognition_on_example3() throws Exception {
-    when(lastSnapshots.getSource(project)).thenReturn(load("example3-v1"));
+    when(referenceSources.getSource(project)).thenReturn(load("example3-v1"));
     when(index.getSource(project)).thenReturn(load("example3-v2"));
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, project);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, project);
 
     IssueDto referenceIssue1 = newReferenceIssue("Avoid unused local variables such as 'j'.", 6, "squid", "AvoidCycle", "63c11570fc0a76434156be5f8138fa03");
     IssueDto referenceIssue2 = newReferenceIssue("Avoid unused private methods such as 'myMethod()'.", 13, "squid", "NullDeref", "ef23288705d1ef1e512448ace287586e");
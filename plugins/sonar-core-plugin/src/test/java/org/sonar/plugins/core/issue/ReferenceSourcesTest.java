@@ -0,0 +1,110 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.issue;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.resources.File;
+import org.sonar.api.scan.filesystem.FileQuery;
+import org.sonar.api.scan.filesystem.internal.DefaultInputFile;
+import org.sonar.api.scan.filesystem.internal.InputFile;
+import org.sonar.batch.bootstrap.AnalysisMode;
+import org.sonar.batch.scan.LastSnapshots;
+import org.sonar.batch.scan.filesystem.DefaultModuleFileSystem;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ReferenceSourcesTest {
+
+  AnalysisMode analysisMode = mock(AnalysisMode.class);
+  LastSnapshots lastSnapshots = mock(LastSnapshots.class);
+  DefaultModuleFileSystem fileSystem = mock(DefaultModuleFileSystem.class);
+  InitialOpenIssuesStack initialOpenIssues = mock(InitialOpenIssuesStack.class);
+  ReferenceSources referenceSources = new ReferenceSources(analysisMode, lastSnapshots, fileSystem, initialOpenIssues);
+
+  @Before
+  public void setUp() {
+    when(fileSystem.inputFiles(any(FileQuery.class))).thenReturn(Arrays.<InputFile>asList(
+      inputFile("struts:Same.c", InputFile.STATUS_SAME),
+      inputFile("struts:Changed.c", InputFile.STATUS_CHANGED),
+      inputFile("struts:ChangedWithoutIssues.c", InputFile.STATUS_CHANGED),
+      inputFile("struts:Added.c", InputFile.STATUS_ADDED)
+    ));
+    when(initialOpenIssues.selectComponentKeys()).thenReturn(Sets.newHashSet("struts:Same.c", "struts:Changed.c", "struts:Added.c"));
+    when(lastSnapshots.getSources(any(Collection.class))).thenReturn(ImmutableMap.of("struts:Changed.c", "old source", "struts:Added.c", ""));
+  }
+
+  @Test
+  public void should_load_sources_of_changed_files_with_issues_at_once() {
+    referenceSources.load();
+    referenceSources.load();
+
+    verify(lastSnapshots, times(1)).getSources(Arrays.asList("struts:Changed.c", "struts:Added.c"));
+    assertThat(referenceSources.getSource(file("struts:Changed.c"))).isEqualTo("old source");
+    assertThat(referenceSources.getSource(file("struts:Added.c"))).isEqualTo("");
+    verify(lastSnapshots, never()).getSource(any(File.class));
+  }
+
+  @Test
+  public void should_load_sources_lazily_in_preview_mode() {
+    when(analysisMode.isPreview()).thenReturn(true);
+    File file = file("struts:Changed.c");
+    when(lastSnapshots.getSource(file)).thenReturn("old source");
+
+    referenceSources.load();
+    assertThat(referenceSources.isUnchanged(file("struts:Same.c"))).isTrue();
+    verify(lastSnapshots, never()).getSources(any(Collection.class));
+
+    assertThat(referenceSources.getSource(file)).isEqualTo("old source");
+  }
+
+  @Test
+  public void should_not_load_sources_of_unchanged_files() {
+    assertThat(referenceSources.isUnchanged(file("struts:Same.c"))).isTrue();
+    assertThat(referenceSources.isUnchanged(file("struts:Changed.c"))).isFalse();
+    assertThat(referenceSources.isUnchanged(file("struts:Unknown.c"))).isFalse();
+  }
+
+  @Test
+  public void should_load_sources_that_were_not_prefetched() {
+    File file = file("struts:ChangedWithoutIssues.c");
+    when(lastSnapshots.getSource(file)).thenReturn("other source");
+
+    assertThat(referenceSources.getSource(file)).isEqualTo("other source");
+  }
+
+  private static File file(String key) {
+    File file = new File(key);
+    file.setEffectiveKey(key);
+    return file;
+  }
+
+  private static InputFile inputFile(String componentKey, String status) {
+    return DefaultInputFile.create(new java.io.File(componentKey), componentKey,
+      ImmutableMap.of(DefaultInputFile.ATTRIBUTE_COMPONENT_KEY, componentKey, InputFile.ATTRIBUTE_STATUS, status));
+  }
+}
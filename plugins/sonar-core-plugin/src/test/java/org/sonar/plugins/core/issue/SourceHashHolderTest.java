@@ -26,7 +26,6 @@ import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.batch.SonarIndex;
 import org.sonar.api.resources.Resource;
-import org.sonar.batch.scan.LastSnapshots;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -36,16 +35,16 @@ public class SourceHashHolderTest {
   SourceHashHolder sourceHashHolder;
 
   SonarIndex index;
-  LastSnapshots lastSnapshots;
+  ReferenceSources referenceSources;
   Resource resource;
 
   @Before
   public void setUp() {
     index = mock(SonarIndex.class);
-    lastSnapshots = mock(LastSnapshots.class);
+    referenceSources = mock(ReferenceSources.class);
     resource = mock(Resource.class);
 
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, resource);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, resource);
   }
 
   @Test
@@ -63,20 +62,31 @@ public class SourceHashHolderTest {
   @Test
   public void should_lazy_load_reference_source() {
     final String source = "source";
-    when(lastSnapshots.getSource(resource)).thenReturn(source);
+    when(referenceSources.getSource(resource)).thenReturn(source);
 
     assertThat(sourceHashHolder.getReferenceSource()).isEqualTo(source);
-    verify(lastSnapshots).getSource(resource);
+    verify(referenceSources).isUnchanged(resource);
+    verify(referenceSources).getSource(resource);
 
     assertThat(sourceHashHolder.getReferenceSource()).isEqualTo(source);
-    Mockito.verifyNoMoreInteractions(lastSnapshots);
+    Mockito.verifyNoMoreInteractions(referenceSources);
+  }
+
+  @Test
+  public void should_reuse_source_of_unchanged_file() {
+    when(index.getSource(resource)).thenReturn("source");
+    when(referenceSources.isUnchanged(resource)).thenReturn(true);
+
+    assertThat(sourceHashHolder.getReferenceSource()).isEqualTo("source");
+    assertThat(sourceHashHolder.getHashedReference()).isSameAs(sourceHashHolder.getHashedSource());
+    verify(referenceSources, Mockito.never()).getSource(resource);
   }
 
   @Test
   public void should_have_null_reference_source_for_null_resource() {
-    sourceHashHolder = new SourceHashHolder(index, lastSnapshots, null);
+    sourceHashHolder = new SourceHashHolder(index, referenceSources, null);
 
     assertThat(sourceHashHolder.getReferenceSource()).isNull();
-    Mockito.verifyNoMoreInteractions(lastSnapshots);
+    Mockito.verifyNoMoreInteractions(referenceSources);
   }
 }
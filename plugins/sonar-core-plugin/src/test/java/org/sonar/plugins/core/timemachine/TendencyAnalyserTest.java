@@ -54,6 +54,15 @@ public class TendencyAnalyserTest {
     assertThat(slopeData.getLevel()).isEqualTo(TendencyAnalyser.TENDENCY_NEUTRAL);
   }
 
+  @Test
+  public void nan_values_of_primitive_arrays_are_ignored_like_null_values() {
+    TendencyAnalyser analyser = new TendencyAnalyser();
+
+    assertThat(analyser.analyseLevel(new double[] {90.0, Double.NaN, 50.0})).isEqualTo(analyseLevel(90.0, null, 50.0));
+    assertThat(analyser.analyse(new double[] {10.0, Double.NaN, 9.9}).getSlope()).isEqualTo(analyse(10.0, null, 9.9).getSlope());
+    assertThat(analyser.analyseLevel(new double[] {Double.NaN, 10.0})).isNull();
+  }
+
   @Test
   public void testTendencyOnTwoZeroDays() {
     TendencyAnalyser.SlopeData slopeData = analyse(0.0, 0.0);
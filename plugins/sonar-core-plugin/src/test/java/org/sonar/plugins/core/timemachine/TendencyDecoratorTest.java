@@ -21,84 +21,121 @@ package org.sonar.plugins.core.timemachine;
 
 import org.junit.Test;
 import org.sonar.api.batch.DecoratorContext;
-import org.sonar.api.batch.TimeMachine;
-import org.sonar.api.batch.TimeMachineQuery;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
 import org.sonar.api.measures.MetricFinder;
 import org.sonar.api.resources.JavaPackage;
 import org.sonar.api.resources.Project;
+import org.sonar.batch.components.MeasuresHistory;
+import org.sonar.batch.components.MeasuresHistoryLoader;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
-import static org.hamcrest.CoreMatchers.is;
-import static org.hamcrest.MatcherAssert.assertThat;
-import static org.junit.matchers.JUnitMatchers.hasItems;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.*;
 
 public class TendencyDecoratorTest {
 
-  @Test
-  public void initQuery() throws ParseException {
-    Project project = mock(Project.class);
-    when(project.getAnalysisDate()).thenReturn(date("2009-12-25"));
+  private static final int MODULE_ID = 10;
+  private static final int PACKAGE_ID = 11;
+  private static final Metric LINES = new Metric.Builder("lines", "Lines", Metric.ValueType.INT).create().setId(1);
+  private static final Metric COVERAGE = new Metric.Builder("coverage", "Coverage", Metric.ValueType.PERCENT).create().setId(2);
 
+  @Test
+  public void depends_upon_numeric_metrics() {
     MetricFinder metricFinder = mock(MetricFinder.class);
     when(metricFinder.findAll()).thenReturn(Arrays.asList(CoreMetrics.LINES, CoreMetrics.COVERAGE, CoreMetrics.COVERAGE_LINE_HITS_DATA, CoreMetrics.PROFILE));
 
     TendencyDecorator decorator = new TendencyDecorator(null, metricFinder);
 
-    TimeMachineQuery query = decorator.initQuery(project);
-    assertThat(query.getMetrics().size(), is(2));
-    assertThat(query.getMetrics(), hasItems(CoreMetrics.LINES, CoreMetrics.COVERAGE));
-    assertThat(query.getFrom(), is(date("2009-11-25")));
-    assertThat(query.isToCurrentAnalysis(), is(true));
+    assertThat(decorator.dependsUponMetrics()).containsOnly(CoreMetrics.LINES, CoreMetrics.COVERAGE);
+  }
+
+  @Test
+  public void history_starts_thirty_days_before_analysis() throws ParseException {
+    assertThat(TendencyDecorator.from(module(date("2009-12-25")))).isEqualTo(date("2009-11-25"));
+  }
+
+  @Test
+  public void load_history_of_module_once() throws ParseException {
+    MeasuresHistoryLoader loader = mock(MeasuresHistoryLoader.class);
+    List<Metric> metrics = Arrays.<Metric>asList(LINES, COVERAGE);
+    when(loader.load(anyInt(), any(Date.class), any(Date.class), any(Collection.class))).thenReturn(MeasuresHistory.empty());
+    Project module = module(date("2009-12-25"));
+    DecoratorContext context = mock(DecoratorContext.class);
+    when(context.getProject()).thenReturn(module);
+
+    TendencyDecorator decorator = new TendencyDecorator(loader, metrics, mock(TendencyAnalyser.class));
+    decorator.decorate(module, context);
+    decorator.decorate(javaPackage(), context);
+
+    verify(loader, times(1)).load(MODULE_ID, date("2009-11-25"), date("2009-12-25"), metrics);
   }
 
   @Test
   public void includeCurrentMeasures() throws ParseException {
     TendencyAnalyser analyser = mock(TendencyAnalyser.class);
-    TimeMachineQuery query = new TimeMachineQuery(null).setMetrics(CoreMetrics.LINES, CoreMetrics.COVERAGE);
-    TimeMachine timeMachine = mock(TimeMachine.class);
-
-    when(timeMachine.getMeasuresFields(query)).thenReturn(Arrays.<Object[]>asList(
-      new Object[]{date("2009-12-01"), CoreMetrics.LINES, 1200.0},
-      new Object[]{date("2009-12-01"), CoreMetrics.COVERAGE, 80.5},
-      new Object[]{date("2009-12-02"), CoreMetrics.LINES, 1300.0},
-      new Object[]{date("2009-12-02"), CoreMetrics.COVERAGE, 79.6},
-      new Object[]{date("2009-12-15"), CoreMetrics.LINES, 1150.0}
-    ));
+    MeasuresHistory history = MeasuresHistory.builder()
+      .add(PACKAGE_ID, LINES.getId(), 1200.0)
+      .add(PACKAGE_ID, COVERAGE.getId(), 80.5)
+      .add(PACKAGE_ID, LINES.getId(), 1300.0)
+      .add(PACKAGE_ID, COVERAGE.getId(), 79.6)
+      .add(PACKAGE_ID, LINES.getId(), 1150.0)
+      .build();
+    TendencyDecorator decorator = newDecorator(history, analyser);
 
     DecoratorContext context = mock(DecoratorContext.class);
-    when(context.getMeasure(CoreMetrics.LINES)).thenReturn(new Measure(CoreMetrics.LINES, 1400.0));
-    when(context.getMeasure(CoreMetrics.COVERAGE)).thenReturn(new Measure(CoreMetrics.LINES, 90.0));
+    when(context.getProject()).thenReturn(module(date("2009-12-25")));
+    when(context.getMeasure(LINES)).thenReturn(new Measure(LINES, 1400.0));
+    when(context.getMeasure(COVERAGE)).thenReturn(new Measure(COVERAGE, 90.0));
 
-    TendencyDecorator decorator = new TendencyDecorator(timeMachine, query, analyser);
-    decorator.decorate(new JavaPackage("org.foo"), context);
+    decorator.decorate(javaPackage(), context);
 
-    verify(analyser).analyseLevel(Arrays.asList(1200.0, 1300.0, 1150.0, 1400.0));
-    verify(analyser).analyseLevel(Arrays.asList(80.5, 79.6, 90.0));
+    verify(analyser).analyseLevel(new double[] {1200.0, 1300.0, 1150.0, 1400.0});
+    verify(analyser).analyseLevel(new double[] {80.5, 79.6, 90.0});
   }
 
   @Test
   public void noTendencyIfNoCurrentMeasures() throws ParseException {
     TendencyAnalyser analyser = mock(TendencyAnalyser.class);
-    TimeMachineQuery query = new TimeMachineQuery(null).setMetrics(CoreMetrics.LINES, CoreMetrics.COVERAGE);
-    TimeMachine timeMachine = mock(TimeMachine.class);
-
-    when(timeMachine.getMeasuresFields(query)).thenReturn(Arrays.<Object[]>asList(
-      new Object[]{date("2009-12-01"), CoreMetrics.LINES, 1200.0},
-      new Object[]{date("2009-12-02"), CoreMetrics.LINES, 1300.0}
-    ));
+    MeasuresHistory history = MeasuresHistory.builder()
+      .add(PACKAGE_ID, LINES.getId(), 1200.0)
+      .add(PACKAGE_ID, LINES.getId(), 1300.0)
+      .build();
+    TendencyDecorator decorator = newDecorator(history, analyser);
 
     DecoratorContext context = mock(DecoratorContext.class);
-    TendencyDecorator decorator = new TendencyDecorator(timeMachine, query, analyser);
-    decorator.decorate(new JavaPackage("org.foo"), context);
+    when(context.getProject()).thenReturn(module(date("2009-12-25")));
+    decorator.decorate(javaPackage(), context);
+
+    verify(analyser, never()).analyseLevel(any(double[].class));
+  }
+
+  private TendencyDecorator newDecorator(MeasuresHistory history, TendencyAnalyser analyser) {
+    MeasuresHistoryLoader loader = mock(MeasuresHistoryLoader.class);
+    when(loader.load(anyInt(), any(Date.class), any(Date.class), any(Collection.class))).thenReturn(history);
+    return new TendencyDecorator(loader, Arrays.<Metric>asList(LINES, COVERAGE), analyser);
+  }
+
+  private Project module(Date analysisDate) {
+    Project module = new Project("foo");
+    module.setId(MODULE_ID);
+    module.setAnalysisDate(analysisDate);
+    return module;
+  }
 
-    verify(analyser, never()).analyseLevel(anyList());
+  private JavaPackage javaPackage() {
+    JavaPackage javaPackage = new JavaPackage("org.foo");
+    javaPackage.setId(PACKAGE_ID);
+    return javaPackage;
   }
 
   private Date date(String date) throws ParseException {
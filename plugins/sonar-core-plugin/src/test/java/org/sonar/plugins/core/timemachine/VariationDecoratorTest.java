@@ -28,6 +28,7 @@ import org.sonar.api.resources.JavaPackage;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.rules.Rule;
+import org.sonar.batch.components.PastMeasuresIndex;
 import org.sonar.batch.components.PastMeasuresLoader;
 import org.sonar.batch.components.PastSnapshot;
 import org.sonar.batch.components.TimeMachineConfiguration;
@@ -53,7 +54,7 @@ public class VariationDecoratorTest extends AbstractDbUnitTestCase {
   @Test
   public void shouldComputeVariations() {
     TimeMachineConfiguration timeMachineConfiguration = mock(TimeMachineConfiguration.class);
-    VariationDecorator decorator = new VariationDecorator(mock(PastMeasuresLoader.class), mock(MetricFinder.class), timeMachineConfiguration);
+    VariationDecorator decorator = new VariationDecorator(mock(PastMeasuresLoader.class), mock(MetricFinder.class), timeMachineConfiguration, new Project("foo"));
 
     assertThat(decorator.shouldComputeVariation(new Project("foo"))).isTrue();
     assertThat(decorator.shouldComputeVariation(new File("foo/bar.c"))).isFalse();
@@ -61,20 +62,22 @@ public class VariationDecoratorTest extends AbstractDbUnitTestCase {
 
   @Test
   public void shouldCompareAndSaveVariation() {
-    Resource javaPackage = new JavaPackage("org.foo");
+    Resource javaPackage = new JavaPackage("org.foo").setEffectiveKey("foo:org.foo");
 
     PastMeasuresLoader pastMeasuresLoader = mock(PastMeasuresLoader.class);
     PastSnapshot pastSnapshot1 = new PastSnapshot("days", new Date()).setIndex(1);
     PastSnapshot pastSnapshot3 = new PastSnapshot("days", new Date()).setIndex(3);
 
     // first past analysis
-    when(pastMeasuresLoader.getPastMeasures(javaPackage, pastSnapshot1)).thenReturn(Arrays.asList(
-      new Object[]{NCLOC_ID, null, null, null, 180.0},
-      new Object[]{COVERAGE_ID, null, null, null, 75.0}));
+    when(pastMeasuresLoader.getPastMeasuresIndex("foo", pastSnapshot1)).thenReturn(PastMeasuresIndex.builder()
+      .add("foo:org.foo", new Object[]{NCLOC_ID, null, null, null, 180.0})
+      .add("foo:org.foo", new Object[]{COVERAGE_ID, null, null, null, 75.0})
+      .build());
 
     // second past analysis
-    when(pastMeasuresLoader.getPastMeasures(javaPackage, pastSnapshot3)).thenReturn(Arrays.<Object[]>asList(
-      new Object[]{NCLOC_ID, null, null, null, 240.0}));
+    when(pastMeasuresLoader.getPastMeasuresIndex("foo", pastSnapshot3)).thenReturn(PastMeasuresIndex.builder()
+      .add("foo:org.foo", new Object[]{NCLOC_ID, null, null, null, 240.0})
+      .build());
 
     // current analysis
     DecoratorContext context = mock(DecoratorContext.class);
@@ -82,7 +85,7 @@ public class VariationDecoratorTest extends AbstractDbUnitTestCase {
     Measure currentCoverage = newMeasure(COVERAGE, 80.0);
     when(context.getMeasures(Matchers.<MeasuresFilter>anyObject())).thenReturn(Arrays.asList(currentNcloc, currentCoverage));
 
-    VariationDecorator decorator = new VariationDecorator(pastMeasuresLoader, mock(MetricFinder.class), Arrays.asList(pastSnapshot1, pastSnapshot3));
+    VariationDecorator decorator = new VariationDecorator(pastMeasuresLoader, mock(MetricFinder.class), Arrays.asList(pastSnapshot1, pastSnapshot3), "foo");
     decorator.decorate(javaPackage, context);
 
     // context updated for each variation : 2 times for ncloc and 1 time for coverage
@@ -104,16 +107,17 @@ public class VariationDecoratorTest extends AbstractDbUnitTestCase {
     Rule rule2 = Rule.create();
     rule2.setId(2);
 
-    Resource javaPackage = new JavaPackage("org.foo");
+    Resource javaPackage = new JavaPackage("org.foo").setEffectiveKey("foo:org.foo");
 
     PastMeasuresLoader pastMeasuresLoader = mock(PastMeasuresLoader.class);
     PastSnapshot pastSnapshot1 = new PastSnapshot("days", new Date()).setIndex(1);
 
     // first past analysis
-    when(pastMeasuresLoader.getPastMeasures(javaPackage, pastSnapshot1)).thenReturn(Arrays.asList(
-      new Object[]{VIOLATIONS_ID, null, null, null, 180.0},// total
-      new Object[]{VIOLATIONS_ID, null, null, rule1.getId(), 100.0},// rule 1
-      new Object[]{VIOLATIONS_ID, null, null, rule2.getId(), 80.0})); // rule 2
+    when(pastMeasuresLoader.getPastMeasuresIndex("foo", pastSnapshot1)).thenReturn(PastMeasuresIndex.builder()
+      .add("foo:org.foo", new Object[]{VIOLATIONS_ID, null, null, null, 180.0})// total
+      .add("foo:org.foo", new Object[]{VIOLATIONS_ID, null, null, rule1.getId(), 100.0})// rule 1
+      .add("foo:org.foo", new Object[]{VIOLATIONS_ID, null, null, rule2.getId(), 80.0}) // rule 2
+      .build());
 
     // current analysis
     DecoratorContext context = mock(DecoratorContext.class);
@@ -122,13 +126,15 @@ public class VariationDecoratorTest extends AbstractDbUnitTestCase {
     Measure violationsRule2 = RuleMeasure.createForRule(VIOLATIONS, rule2, 70.0);
     when(context.getMeasures(Matchers.<MeasuresFilter>anyObject())).thenReturn(Arrays.asList(violations, violationsRule1, violationsRule2));
 
-    VariationDecorator decorator = new VariationDecorator(pastMeasuresLoader, mock(MetricFinder.class), Arrays.asList(pastSnapshot1));
+    VariationDecorator decorator = new VariationDecorator(pastMeasuresLoader, mock(MetricFinder.class), Arrays.asList(pastSnapshot1), "foo");
     decorator.decorate(javaPackage, context);
 
     // context updated for each variation
     verify(context, times(3)).saveMeasure(Matchers.<Measure>anyObject());
 
     assertThat(violations.getVariation1()).isEqualTo(20.0);
+    assertThat(violationsRule1.getVariation1()).isEqualTo(30.0);
+    assertThat(violationsRule2.getVariation1()).isEqualTo(-10.0);
   }
 
   private Measure newMeasure(Metric metric, double value) {
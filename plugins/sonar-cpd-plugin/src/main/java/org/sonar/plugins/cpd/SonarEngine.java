@@ -20,7 +20,10 @@
 
 package org.sonar.plugins.cpd;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.slf4j.Logger;
@@ -51,12 +54,15 @@ import org.sonar.duplications.token.TokenChunker;
 import org.sonar.plugins.cpd.index.IndexFactory;
 import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.io.File;
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
@@ -72,6 +78,29 @@ public class SonarEngine extends CpdEngine {
    */
   private static final int TIMEOUT = 5 * 60;
 
+  /**
+   * Number of threads used to index files and to detect duplications. Default value is 1.
+   *
+   * @since 4.1.3
+   */
+  public static final String THREADS_PROPERTY = "sonar.cpd.threads";
+  public static final int THREADS_DEFAULT_VALUE = 1;
+
+  /**
+   * Maximum number of files processed by each thread in advance of the file being saved, in order to bound memory.
+   */
+  private static final int PENDING_FILES_PER_THREAD = 10;
+
+  /**
+   * Chunkers are not thread-safe, so each thread of the pool has its own ones.
+   */
+  private static final ThreadLocal<Chunkers> CHUNKERS = new ThreadLocal<Chunkers>() {
+    @Override
+    protected Chunkers initialValue() {
+      return new Chunkers();
+    }
+  };
+
   private final IndexFactory indexFactory;
   private final ModuleFileSystem fileSystem;
   private final PathResolver pathResolver;
@@ -105,73 +134,180 @@ public class SonarEngine extends CpdEngine {
     if (sourceFiles.isEmpty()) {
       return;
     }
-    SonarDuplicationsIndex index = createIndex(project, sourceFiles);
-    detect(index, context, project, sourceFiles);
+    int threads = getThreads();
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("cpd-%d").setDaemon(true).build());
+    try {
+      SonarDuplicationsIndex index = createIndex(project, sourceFiles, executorService, threads * PENDING_FILES_PER_THREAD);
+      detect(index, context, project, sourceFiles, executorService, threads * PENDING_FILES_PER_THREAD);
+    } finally {
+      // interrupts the detections that timed out
+      executorService.shutdownNow();
+    }
   }
 
-  private SonarDuplicationsIndex createIndex(Project project, List<File> sourceFiles) {
-    final SonarDuplicationsIndex index = indexFactory.create(project);
+  private int getThreads() {
+    return settings.hasKey(THREADS_PROPERTY) ? Math.max(1, settings.getInt(THREADS_PROPERTY)) : THREADS_DEFAULT_VALUE;
+  }
 
-    TokenChunker tokenChunker = JavaTokenProducer.build();
-    StatementChunker statementChunker = JavaStatementBuilder.build();
-    BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
+  /**
+   * Files are tokenized in parallel, but blocks are inserted in the index by the current thread, in the order of files.
+   */
+  private SonarDuplicationsIndex createIndex(Project project, List<File> sourceFiles, ExecutorService executorService, int maxPendingFiles) {
+    SonarDuplicationsIndex index = indexFactory.create(project);
+    Charset charset = fileSystem.sourceCharset();
 
+    LinkedList<Indexation> pending = Lists.newLinkedList();
     for (File file : sourceFiles) {
-      LOG.debug("Populating index from {}", file);
       Resource resource = getResource(file);
       String resourceKey = getFullKey(project, resource);
+      pending.add(new Indexation(resource, executorService.submit(new IndexationTask(file, resourceKey, charset))));
+      if (pending.size() >= maxPendingFiles) {
+        pending.removeFirst().insertInto(index);
+      }
+    }
+    while (!pending.isEmpty()) {
+      pending.removeFirst().insertInto(index);
+    }
+    return index;
+  }
+
+  /**
+   * Duplications are detected in parallel, but saved by the current thread, in the order of files.
+   */
+  private void detect(SonarDuplicationsIndex index, SensorContext context, Project project, List<File> sourceFiles,
+    ExecutorService executorService, int maxPendingFiles) {
+    LinkedList<Detection> pending = Lists.newLinkedList();
+    long startTimeout = TimeUnit.SECONDS.toMillis(TIMEOUT);
+    for (File file : sourceFiles) {
+      LOG.debug("Detection of duplications for {}", file);
+      Resource resource = getResource(file);
+      String resourceKey = getFullKey(project, resource);
+
+      CloneIndex resourceIndex = index.forResource(resource);
+      // the first call sorts the index, so it must be done by the current thread before the submission of tasks
+      Collection<Block> fileBlocks = resourceIndex.getByResourceId(resourceKey);
 
+      Task task = new Task(resourceIndex, fileBlocks);
+      pending.add(new Detection(file, resource, task, executorService.submit(task), TimeUnit.SECONDS.toMillis(TIMEOUT)));
+      if (pending.size() >= maxPendingFiles) {
+        startTimeout = pending.removeFirst().save(context, startTimeout);
+      }
+    }
+    while (!pending.isEmpty()) {
+      startTimeout = pending.removeFirst().save(context, startTimeout);
+    }
+  }
+
+  private static class Chunkers {
+    private final TokenChunker tokenChunker = JavaTokenProducer.build();
+    private final StatementChunker statementChunker = JavaStatementBuilder.build();
+    private final BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
+  }
+
+  private static class IndexationTask implements Callable<List<Block>> {
+    private final File file;
+    private final String resourceKey;
+    private final Charset charset;
+
+    IndexationTask(File file, String resourceKey, Charset charset) {
+      this.file = file;
+      this.resourceKey = resourceKey;
+      this.charset = charset;
+    }
+
+    public List<Block> call() {
+      LOG.debug("Populating index from {}", file);
+      Chunkers chunkers = CHUNKERS.get();
       List<Statement> statements;
 
       Reader reader = null;
       try {
-        reader = new InputStreamReader(new FileInputStream(file), fileSystem.sourceCharset());
-        statements = statementChunker.chunk(tokenChunker.chunk(reader));
+        reader = new InputStreamReader(new FileInputStream(file), charset);
+        statements = chunkers.statementChunker.chunk(chunkers.tokenChunker.chunk(reader));
       } catch (FileNotFoundException e) {
-        throw new SonarException("Cannot find file "+ file, e);
+        throw new SonarException("Cannot find file " + file, e);
       } finally {
         IOUtils.closeQuietly(reader);
       }
 
-      List<Block> blocks = blockChunker.chunk(resourceKey, statements);
-      index.insert(resource, blocks);
+      return chunkers.blockChunker.chunk(resourceKey, statements);
     }
+  }
 
-    return index;
+  private static class Indexation {
+    private final Resource resource;
+    private final Future<List<Block>> blocks;
+
+    Indexation(Resource resource, Future<List<Block>> blocks) {
+      this.resource = resource;
+      this.blocks = blocks;
+    }
+
+    void insertInto(SonarDuplicationsIndex index) {
+      try {
+        index.insert(resource, blocks.get());
+      } catch (InterruptedException e) {
+        throw new SonarException("Fail during indexation of " + resource, e);
+      } catch (ExecutionException e) {
+        throw Throwables.propagate(e.getCause());
+      }
+    }
   }
 
-  private void detect(SonarDuplicationsIndex index, SensorContext context, Project project, List<File> sourceFiles) {
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
-    try {
-      for (File file : sourceFiles) {
-        LOG.debug("Detection of duplications for {}", file);
-        Resource resource = getResource(file);
-        String resourceKey = getFullKey(project, resource);
-
-        Collection<Block> fileBlocks = index.getByResource(resource, resourceKey);
-
-        List<CloneGroup> clones;
-        try {
-          clones = executorService.submit(new Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-          clones = null;
-          LOG.warn("Timeout during detection of duplications for " + file, e);
-        } catch (InterruptedException e) {
-          throw new SonarException("Fail during detection of duplication for "+ file, e);
-        } catch (ExecutionException e) {
-          throw new SonarException("Fail during detection of duplication for "+ file, e);
-        }
+  static class Detection {
+    private final File file;
+    private final Resource resource;
+    private final Task task;
+    private final Future<List<CloneGroup>> clones;
+    private final long timeout;
+
+    Detection(File file, Resource resource, Task task, Future<List<CloneGroup>> clones, long timeout) {
+      this.file = file;
+      this.resource = resource;
+      this.task = task;
+      this.clones = clones;
+      this.timeout = timeout;
+    }
 
-        save(context, resource, clones);
+    /**
+     * The time limit starts when the task is executed, not when it is submitted. But the task may never start
+     * when all the threads are blocked by detections which ignore interruption, so waiting for the start is bounded too.
+     *
+     * @param startTimeout maximum time to wait for the start of the task, in milliseconds
+     * @return the maximum time to wait for the start of the next tasks: zero once a task did not start in time,
+     * because the threads are then considered as blocked
+     */
+    long save(SensorContext context, long startTimeout) {
+      List<CloneGroup> result = null;
+      long nextStartTimeout = startTimeout;
+      try {
+        Long startTime = task.awaitStart(startTimeout);
+        if (startTime == null) {
+          nextStartTimeout = 0L;
+          clones.cancel(true);
+          LOG.warn("Timeout during detection of duplications for " + file + ", detection was not started");
+        } else {
+          long elapsed = System.currentTimeMillis() - startTime;
+          result = clones.get(Math.max(0L, timeout - elapsed), TimeUnit.MILLISECONDS);
+        }
+      } catch (TimeoutException e) {
+        clones.cancel(true);
+        LOG.warn("Timeout during detection of duplications for " + file, e);
+      } catch (InterruptedException e) {
+        throw new SonarException("Fail during detection of duplication for " + file, e);
+      } catch (ExecutionException e) {
+        throw new SonarException("Fail during detection of duplication for " + file, e);
       }
-    } finally {
-      executorService.shutdown();
+      SonarEngine.save(context, resource, result);
+      return nextStartTimeout;
     }
   }
 
   static class Task implements Callable<List<CloneGroup>> {
     private final CloneIndex index;
     private final Collection<Block> fileBlocks;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile long startTime;
 
     public Task(CloneIndex index, Collection<Block> fileBlocks) {
       this.index = index;
@@ -179,8 +315,24 @@ public class SonarEngine extends CpdEngine {
     }
 
     public List<CloneGroup> call() {
+      startTime = System.currentTimeMillis();
+      started.countDown();
+      return detect();
+    }
+
+    List<CloneGroup> detect() {
       return SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks);
     }
+
+    /**
+     * Waits for the execution of the task to start.
+     *
+     * @return the time when it started, or null if it did not start within the given time in milliseconds
+     */
+    @CheckForNull
+    Long awaitStart(long timeout) throws InterruptedException {
+      return started.await(timeout, TimeUnit.MILLISECONDS) ? startTime : null;
+    }
   }
 
   protected Resource getResource(File file) {
@@ -0,0 +1,87 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Longs;
+import org.sonar.duplications.block.ByteArray;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Distinct block hashes of the current module, used to look up the blocks of other projects in database.
+ * <p/>
+ * Hashes are added by a single thread. Once {@link #seal()} is called, this set is immutable and thread-safe.
+ *
+ * @since 4.1.3
+ */
+class BlockHashes {
+
+  private long[] hashes = new long[1024];
+  private int size = 0;
+
+  void add(ByteArray hash) {
+    if (size == hashes.length) {
+      hashes = Arrays.copyOf(hashes, size * 2);
+    }
+    hashes[size] = toLong(hash);
+    size++;
+  }
+
+  /**
+   * Sorts the hashes and removes duplicates. Hashes can not be added anymore.
+   */
+  BlockHashes seal() {
+    Arrays.sort(hashes, 0, size);
+    int distinct = 0;
+    for (int i = 0; i < size; i++) {
+      if (distinct == 0 || hashes[i] != hashes[distinct - 1]) {
+        hashes[distinct] = hashes[i];
+        distinct++;
+      }
+    }
+    hashes = Arrays.copyOf(hashes, distinct);
+    size = distinct;
+    return this;
+  }
+
+  /**
+   * Sorted distinct hashes, only once sealed.
+   */
+  List<Long> toList() {
+    return Longs.asList(hashes);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Block hashes are 8 bytes long, and are stored in database as numbers.
+   *
+   * @throws IllegalArgumentException if the hash is not 8 bytes long
+   */
+  static long toLong(ByteArray hash) {
+    int[] ints = hash.toIntArray();
+    Preconditions.checkArgument(ints.length == 2, "Block hash is not 8 bytes long: %s", hash);
+    return ((long) ints[0] << 32) | (ints[1] & 0xFFFFFFFFL);
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.AbstractCloneIndex;
+import org.sonar.duplications.index.DataUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocks of other projects, stored like in {@link org.sonar.duplications.index.PackedMemoryCloneIndex}: flat arrays
+ * of primitives sorted by hash, hashes of 8 bytes being stored as longs and resource keys being replaced by
+ * their position in a table of distinct keys.
+ * <p/>
+ * This index is immutable and thread-safe.
+ *
+ * @since 4.1.3
+ */
+class CandidateBlocks extends AbstractCloneIndex {
+
+  private final String[] resourceKeys;
+  private final long[] hashes;
+  private final int[] resources;
+  private final int[] indexesInFile;
+  private final int[] startLines;
+  private final int[] endLines;
+
+  private CandidateBlocks(Builder builder) {
+    int size = builder.size;
+    this.resourceKeys = builder.resourceKeys.toArray(new String[builder.resourceKeys.size()]);
+    this.hashes = Arrays.copyOf(builder.hashes, size);
+    this.resources = Arrays.copyOf(builder.resources, size);
+    this.indexesInFile = Arrays.copyOf(builder.indexesInFile, size);
+    this.startLines = Arrays.copyOf(builder.startLines, size);
+    this.endLines = Arrays.copyOf(builder.endLines, size);
+    DataUtils.sort(new ByHash());
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  int size() {
+    return hashes.length;
+  }
+
+  public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    long hash = BlockHashes.toLong(sequenceHash);
+    int index = lowerBound(hash);
+    List<Block> result = Lists.newArrayList();
+    Block.Builder blockBuilder = Block.builder();
+    while (index < hashes.length && hashes[index] == hash) {
+      result.add(blockBuilder
+        .setResourceId(resourceKeys[resources[index]])
+        .setBlockHash(sequenceHash)
+        .setIndexInFile(indexesInFile[index])
+        .setLines(startLines[index], endLines[index])
+        .build());
+      index++;
+    }
+    return result;
+  }
+
+  private int lowerBound(long hash) {
+    int lower = 0;
+    int upper = hashes.length;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (hashes[mid] < hash) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower;
+  }
+
+  public Collection<Block> getByResourceId(String resourceId) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void insert(Block block) {
+    throw new UnsupportedOperationException();
+  }
+
+  private class ByHash implements DataUtils.Sortable {
+    public int size() {
+      return hashes.length;
+    }
+
+    public void swap(int i, int j) {
+      long hash = hashes[i];
+      hashes[i] = hashes[j];
+      hashes[j] = hash;
+      swap(resources, i, j);
+      swap(indexesInFile, i, j);
+      swap(startLines, i, j);
+      swap(endLines, i, j);
+    }
+
+    private void swap(int[] array, int i, int j) {
+      int tmp = array[i];
+      array[i] = array[j];
+      array[j] = tmp;
+    }
+
+    public boolean isLess(int i, int j) {
+      return hashes[i] < hashes[j];
+    }
+  }
+
+  static final class Builder {
+    private final Map<String, Integer> resourceIndexes = Maps.newHashMap();
+    private final List<String> resourceKeys = Lists.newArrayList();
+    private long[] hashes = new long[1024];
+    private int[] resources = new int[1024];
+    private int[] indexesInFile = new int[1024];
+    private int[] startLines = new int[1024];
+    private int[] endLines = new int[1024];
+    private int size = 0;
+
+    private Builder() {
+    }
+
+    Builder add(long hash, String resourceKey, int indexInFile, int startLine, int endLine) {
+      if (size == hashes.length) {
+        int capacity = size * 2;
+        hashes = Arrays.copyOf(hashes, capacity);
+        resources = Arrays.copyOf(resources, capacity);
+        indexesInFile = Arrays.copyOf(indexesInFile, capacity);
+        startLines = Arrays.copyOf(startLines, capacity);
+        endLines = Arrays.copyOf(endLines, capacity);
+      }
+      Integer resource = resourceIndexes.get(resourceKey);
+      if (resource == null) {
+        resource = resourceKeys.size();
+        resourceKeys.add(resourceKey);
+        resourceIndexes.put(resourceKey, resource);
+      }
+      hashes[size] = hash;
+      resources[size] = resource;
+      indexesInFile[size] = indexInFile;
+      startLines[size] = startLine;
+      endLines[size] = endLine;
+      size++;
+      return this;
+    }
+
+    CandidateBlocks build() {
+      return new CandidateBlocks(this);
+    }
+  }
+}
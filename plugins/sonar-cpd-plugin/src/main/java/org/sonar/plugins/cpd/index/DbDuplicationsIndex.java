@@ -20,33 +20,50 @@
 package org.sonar.plugins.cpd.index;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.TimeProfiler;
 import org.sonar.batch.index.ResourcePersister;
 import org.sonar.core.duplication.DuplicationDao;
 import org.sonar.core.duplication.DuplicationUnitDto;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.MemoryCloneIndex;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 public class DbDuplicationsIndex {
 
-  private final Map<ByteArray, Collection<Block>> cache = Maps.newHashMap();
+  private static final Logger LOG = LoggerFactory.getLogger(DbDuplicationsIndex.class);
+
+  private CloneIndex cache = new MemoryCloneIndex();
 
   private final ResourcePersister resourcePersister;
   private final int currentProjectSnapshotId;
   private final Integer lastSnapshotId;
   private final String languageKey;
+  private final boolean prefetch;
+  private BlockHashes moduleHashes;
+  private CandidateBlocks moduleCandidates;
 
   private DuplicationDao dao;
 
   public DbDuplicationsIndex(ResourcePersister resourcePersister, Project currentProject, DuplicationDao dao) {
+    this(resourcePersister, currentProject, dao, false);
+  }
+
+  /**
+   * @param prefetch whether the candidate blocks of all the files of the module are loaded at once
+   * @since 4.1.3
+   */
+  public DbDuplicationsIndex(ResourcePersister resourcePersister, Project currentProject, DuplicationDao dao, boolean prefetch) {
     this.dao = dao;
     this.resourcePersister = resourcePersister;
     Snapshot currentSnapshot = resourcePersister.getSnapshotOrFail(currentProject);
@@ -54,6 +71,8 @@ public class DbDuplicationsIndex {
     this.currentProjectSnapshotId = currentSnapshot.getId();
     this.lastSnapshotId = lastSnapshot == null ? null : lastSnapshot.getId();
     this.languageKey = currentProject.getLanguageKey();
+    this.prefetch = prefetch;
+    this.moduleHashes = prefetch ? new BlockHashes() : null;
   }
 
   int getSnapshotIdFor(Resource resource) {
@@ -61,12 +80,26 @@ public class DbDuplicationsIndex {
   }
 
   public void prepareCache(Resource resource) {
+    cache = getCandidates(resource);
+  }
+
+  /**
+   * Unlike {@link #prepareCache(Resource)}, does not change the state of this index, so can be called concurrently.
+   *
+   * @return blocks of other projects that have the same hashes than the blocks of the resource. In prefetch mode,
+   * the blocks that have the same hashes than any block of the module.
+   * @since 4.1.3
+   */
+  public CloneIndex getCandidates(Resource resource) {
+    if (prefetch) {
+      return getModuleCandidates();
+    }
     int resourceSnapshotId = getSnapshotIdFor(resource);
     List<DuplicationUnitDto> units = dao.selectCandidates(resourceSnapshotId, lastSnapshotId, languageKey);
-    cache.clear();
+    CloneIndex candidates = new MemoryCloneIndex();
     // TODO Godin: maybe remove conversion of units to blocks?
     for (DuplicationUnitDto unit : units) {
-      String hash = unit.getHash();
+      long hash = unit.getHash();
       String resourceKey = unit.getResourceKey();
       int indexInFile = unit.getIndexInFile();
       int startLine = unit.getStartLine();
@@ -81,22 +114,36 @@ public class DbDuplicationsIndex {
           .build();
 
       // Group blocks by hash
-      Collection<Block> sameHash = cache.get(block.getBlockHash());
-      if (sameHash == null) {
-        sameHash = Lists.newArrayList();
-        cache.put(block.getBlockHash(), sameHash);
-      }
-      sameHash.add(block);
+      candidates.insert(block);
     }
+    return candidates;
   }
 
-  public Collection<Block> getByHash(ByteArray hash) {
-    Collection<Block> result = cache.get(hash);
-    if (result != null) {
-      return result;
-    } else {
-      return Collections.emptyList();
+  /**
+   * Blocks of other projects are loaded at once, when all the blocks of the module are inserted. They are looked up
+   * by the hashes of the blocks of the module, so that only the matching blocks are read from database.
+   */
+  private synchronized CandidateBlocks getModuleCandidates() {
+    if (moduleCandidates == null) {
+      TimeProfiler profiler = new TimeProfiler(LOG).start("Load blocks of other projects");
+      final BlockHashes hashes = moduleHashes.seal();
+      final CandidateBlocks.Builder builder = CandidateBlocks.builder();
+      dao.selectCandidates(lastSnapshotId, languageKey, hashes.toList(), new ResultHandler() {
+        public void handleResult(ResultContext context) {
+          DuplicationUnitDto unit = (DuplicationUnitDto) context.getResultObject();
+          builder.add(unit.getHash(), unit.getResourceKey(), unit.getIndexInFile(), unit.getStartLine(), unit.getEndLine());
+        }
+      });
+      moduleCandidates = builder.build();
+      moduleHashes = null;
+      profiler.stop();
+      LOG.debug("{} blocks of other projects match the {} blocks of the module", moduleCandidates.size(), hashes.size());
     }
+    return moduleCandidates;
+  }
+
+  public Collection<Block> getByHash(ByteArray hash) {
+    return cache.getBySequenceHash(hash);
   }
 
   public void insert(Resource resource, Collection<Block> blocks) {
@@ -108,11 +155,14 @@ public class DbDuplicationsIndex {
       DuplicationUnitDto unit = new DuplicationUnitDto(
           currentProjectSnapshotId,
           resourceSnapshotId,
-          block.getBlockHash().toString(),
+          BlockHashes.toLong(block.getBlockHash()),
           block.getIndexInFile(),
           block.getStartLine(),
           block.getEndLine());
       units.add(unit);
+      if (prefetch) {
+        moduleHashes.add(block.getBlockHash());
+      }
     }
 
     dao.insert(units);
@@ -34,6 +34,14 @@ public class IndexFactory implements BatchExtension {
 
   private static final Logger LOG = LoggerFactory.getLogger(IndexFactory.class);
 
+  /**
+   * Whether the blocks of other projects are loaded at once for all the files of the module, instead of
+   * one query per file. Default value is false.
+   *
+   * @since 4.1.3
+   */
+  public static final String PREFETCH_PROPERTY = "sonar.cpd.crossProject.prefetch";
+
   private final Settings settings;
   private final ResourcePersister resourcePersister;
   private final DuplicationDao dao;
@@ -46,7 +54,8 @@ public class IndexFactory implements BatchExtension {
 
   public SonarDuplicationsIndex create(Project project) {
     if (verifyCrossProject(project, LOG)) {
-      return new SonarDuplicationsIndex(new DbDuplicationsIndex(resourcePersister, project, dao));
+      boolean prefetch = settings.getBoolean(PREFETCH_PROPERTY);
+      return new SonarDuplicationsIndex(new DbDuplicationsIndex(resourcePersister, project, dao, prefetch));
     }
     return new SonarDuplicationsIndex();
   }
@@ -59,6 +59,17 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     return mem.getByResourceId(resourceKey);
   }
 
+  /**
+   * Index used to detect the duplications of the given resource. Unlike {@link #getByResource(Resource, String)},
+   * it does not change the state of this index: once all the resources are inserted, the indices of different
+   * resources can be used concurrently. Each of them must be used by a single thread.
+   *
+   * @since 4.1.3
+   */
+  public CloneIndex forResource(Resource resource) {
+    return new ResourceIndex(resource);
+  }
+
   public Collection<Block> getBySequenceHash(ByteArray hash) {
     if (db == null) {
       return mem.getBySequenceHash(hash);
@@ -77,4 +88,34 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     throw new UnsupportedOperationException();
   }
 
+  private class ResourceIndex extends AbstractCloneIndex {
+    private final Resource resource;
+    private CloneIndex candidates;
+
+    ResourceIndex(Resource resource) {
+      this.resource = resource;
+    }
+
+    public Collection<Block> getBySequenceHash(ByteArray hash) {
+      if (db == null) {
+        return mem.getBySequenceHash(hash);
+      }
+      if (candidates == null) {
+        // loaded by the thread that detects the duplications
+        candidates = db.getCandidates(resource);
+      }
+      List<Block> result = Lists.newArrayList(mem.getBySequenceHash(hash));
+      result.addAll(candidates.getBySequenceHash(hash));
+      return result;
+    }
+
+    public Collection<Block> getByResourceId(String resourceId) {
+      return mem.getByResourceId(resourceId);
+    }
+
+    public void insert(Block block) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
 }
@@ -19,23 +19,38 @@
  */
 package org.sonar.plugins.cpd;
 
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.resources.File;
+import org.sonar.api.resources.Java;
 import org.sonar.api.resources.JavaFile;
+import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.scan.filesystem.FileQuery;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.api.scan.filesystem.PathResolver;
 import org.sonar.api.scan.filesystem.PathResolver.RelativePath;
 import org.sonar.api.test.IsMeasure;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.ClonePart;
+import org.sonar.plugins.cpd.SonarEngine.Detection;
+import org.sonar.plugins.cpd.SonarEngine.Task;
+import org.sonar.plugins.cpd.index.IndexFactory;
+import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
@@ -43,12 +58,16 @@ import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class SonarEngineTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   private SensorContext context;
   private Resource resource;
 
@@ -73,6 +92,57 @@ public class SonarEngineTest {
     assertThat(resource).isInstanceOf(JavaFile.class);
   }
 
+  @Test
+  public void should_detect_duplications_with_many_threads() throws Exception {
+    java.io.File sourceDir = temp.newFolder();
+    List<java.io.File> files = Arrays.asList(
+      newSourceFile(sourceDir, "Foo.java", 20),
+      newSourceFile(sourceDir, "Bar.java", 20),
+      newSourceFile(sourceDir, "Small.java", 2));
+    Settings settings = new Settings().setProperty(SonarEngine.THREADS_PROPERTY, 2);
+
+    analyse(sourceDir, files, settings);
+
+    verify(context).saveMeasure(new JavaFile("Foo"), CoreMetrics.DUPLICATED_FILES, 1d);
+    verify(context).saveMeasure(new JavaFile("Bar"), CoreMetrics.DUPLICATED_FILES, 1d);
+    verify(context, never()).saveMeasure(new JavaFile("Small"), CoreMetrics.DUPLICATED_FILES, 1d);
+  }
+
+  @Test
+  public void should_detect_same_duplications_with_one_thread() throws Exception {
+    java.io.File sourceDir = temp.newFolder();
+    List<java.io.File> files = Arrays.asList(newSourceFile(sourceDir, "Foo.java", 20), newSourceFile(sourceDir, "Bar.java", 20));
+
+    analyse(sourceDir, files, new Settings());
+
+    verify(context).saveMeasure(new JavaFile("Foo"), CoreMetrics.DUPLICATED_FILES, 1d);
+    verify(context).saveMeasure(new JavaFile("Bar"), CoreMetrics.DUPLICATED_FILES, 1d);
+  }
+
+  private void analyse(java.io.File sourceDir, List<java.io.File> files, Settings settings) {
+    ModuleFileSystem fileSystem = mock(ModuleFileSystem.class);
+    when(fileSystem.files(any(FileQuery.class))).thenReturn(files);
+    when(fileSystem.sourceDirs()).thenReturn(Arrays.asList(sourceDir));
+    when(fileSystem.sourceCharset()).thenReturn(Charsets.UTF_8);
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(any(Project.class))).thenReturn(new SonarDuplicationsIndex());
+    Project project = mock(Project.class);
+    when(project.getLanguageKey()).thenReturn(Java.KEY);
+
+    new SonarEngine(indexFactory, fileSystem, new PathResolver(), settings).analyse(project, context);
+  }
+
+  private java.io.File newSourceFile(java.io.File dir, String name, int statements) throws Exception {
+    StringBuilder source = new StringBuilder("class A {\n  void method() {\n");
+    for (int i = 0; i < statements; i++) {
+      source.append("    call").append(i).append("(x, y);\n");
+    }
+    source.append("  }\n}\n");
+    java.io.File file = new java.io.File(dir, name);
+    FileUtils.write(file, source.toString(), Charsets.UTF_8.name());
+    return file;
+  }
+
   @SuppressWarnings("unchecked")
   @Test
   public void testNothingToSave() {
@@ -131,6 +201,40 @@ public class SonarEngineTest {
           + "</g></duplications>")));
   }
 
+  @Test(timeout = 10000)
+  public void should_not_wait_forever_for_detections_which_never_finish() throws Exception {
+    final CountDownLatch end = new CountDownLatch(1);
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      Task blocking = new Task(null, null) {
+        @Override
+        List<CloneGroup> detect() {
+          // interruption is ignored
+          boolean done = false;
+          while (!done) {
+            try {
+              end.await();
+              done = true;
+            } catch (InterruptedException e) {
+              // ignored
+            }
+          }
+          return Collections.emptyList();
+        }
+      };
+      Task waiting = new Task(null, null);
+      Detection first = new Detection(new java.io.File("Foo.java"), resource, blocking, executorService.submit(blocking), 100L);
+      Detection second = new Detection(new java.io.File("Bar.java"), resource, waiting, executorService.submit(waiting), 100L);
+
+      assertThat(first.save(context, 100L)).isEqualTo(100L);
+      assertThat(second.save(context, 100L)).isEqualTo(0L);
+      verifyZeroInteractions(context);
+    } finally {
+      end.countDown();
+      executorService.shutdownNow();
+    }
+  }
+
   @Test
   public void testTwoDuplicatedGroupsInvolvingThreeFiles() throws Exception {
     List<CloneGroup> groups = Arrays.asList(
@@ -0,0 +1,62 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import org.junit.Test;
+import org.sonar.duplications.block.ByteArray;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BlockHashesTest {
+
+  @Test
+  public void should_sort_and_remove_duplicated_hashes() {
+    BlockHashes hashes = new BlockHashes();
+    for (long i = 3000; i > 0; i -= 3) {
+      hashes.add(new ByteArray(i));
+      hashes.add(new ByteArray(i));
+    }
+    hashes.add(new ByteArray(-1L));
+    hashes.seal();
+
+    assertThat(hashes.size()).isEqualTo(1001);
+    assertThat(hashes.toList()).hasSize(1001);
+    assertThat(hashes.toList().get(0)).isEqualTo(-1L);
+    assertThat(hashes.toList().get(1)).isEqualTo(3L);
+    assertThat(hashes.toList().get(1000)).isEqualTo(3000L);
+  }
+
+  @Test
+  public void empty() {
+    assertThat(new BlockHashes().seal().toList()).isEmpty();
+  }
+
+  @Test
+  public void should_convert_hashes_to_long() {
+    ByteArray hash = new ByteArray(-123456789012345L);
+
+    assertThat(BlockHashes.toLong(hash)).isEqualTo(-123456789012345L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_fail_if_hash_is_not_8_bytes_long() {
+    BlockHashes.toLong(new ByteArray(new int[] {1, 2, 3}));
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import org.junit.Test;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CandidateBlocksTest {
+
+  @Test
+  public void should_find_blocks_by_hash() {
+    CandidateBlocks blocks = CandidateBlocks.builder()
+      .add(5L, "a", 0, 1, 10)
+      .add(-3L, "b", 1, 2, 11)
+      .add(5L, "b", 2, 3, 12)
+      .add(Long.MAX_VALUE, "c", 3, 4, 13)
+      .build();
+
+    assertThat(blocks.size()).isEqualTo(4);
+    assertThat(blocks.getBySequenceHash(new ByteArray(5L))).hasSize(2);
+    assertThat(blocks.getBySequenceHash(new ByteArray(Long.MAX_VALUE))).hasSize(1);
+    assertThat(blocks.getBySequenceHash(new ByteArray(4L))).isEmpty();
+
+    List<Block> negative = (List<Block>) blocks.getBySequenceHash(new ByteArray(-3L));
+    assertThat(negative).hasSize(1);
+    Block block = negative.get(0);
+    assertThat(block.getResourceId()).isEqualTo("b");
+    assertThat(block.getBlockHash()).isEqualTo(new ByteArray(-3L));
+    assertThat(block.getIndexInFile()).isEqualTo(1);
+    assertThat(block.getStartLine()).isEqualTo(2);
+    assertThat(block.getEndLine()).isEqualTo(11);
+  }
+
+  @Test
+  public void should_grow() {
+    CandidateBlocks.Builder builder = CandidateBlocks.builder();
+    for (int i = 0; i < 5000; i++) {
+      builder.add(i % 100, "r" + (i % 7), i, i, i + 1);
+    }
+
+    CandidateBlocks blocks = builder.build();
+    assertThat(blocks.size()).isEqualTo(5000);
+    assertThat(blocks.getBySequenceHash(new ByteArray(42L))).hasSize(50);
+  }
+
+  @Test
+  public void empty() {
+    assertThat(CandidateBlocks.builder().build().getBySequenceHash(new ByteArray(1L))).isEmpty();
+  }
+}
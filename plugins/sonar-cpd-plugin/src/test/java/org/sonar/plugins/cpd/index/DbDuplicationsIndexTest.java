@@ -0,0 +1,131 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.database.model.Snapshot;
+import org.sonar.api.resources.JavaFile;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.batch.index.ResourcePersister;
+import org.sonar.core.duplication.DuplicationDao;
+import org.sonar.core.duplication.DuplicationUnitDto;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class DbDuplicationsIndexTest {
+
+  private static final long MATCHING_HASH = 1L;
+
+  private ResourcePersister resourcePersister;
+  private DuplicationDao dao;
+  private Project project;
+  private Resource file;
+
+  @Before
+  public void setUp() {
+    project = mock(Project.class);
+    when(project.getLanguageKey()).thenReturn("java");
+    file = new JavaFile("org.foo.Bar");
+    resourcePersister = mock(ResourcePersister.class);
+    when(resourcePersister.getSnapshotOrFail(any(Resource.class))).thenReturn(snapshot(10));
+    when(resourcePersister.getLastSnapshot(any(Snapshot.class), eq(false))).thenReturn(snapshot(5));
+    dao = mock(DuplicationDao.class);
+  }
+
+  @Test
+  public void should_load_candidates_per_file() {
+    when(dao.selectCandidates(10, 5, "java")).thenReturn(Arrays.asList(unit("other:Foo", MATCHING_HASH)));
+    DbDuplicationsIndex index = new DbDuplicationsIndex(resourcePersister, project, dao);
+    index.insert(file, Arrays.asList(block(1L)));
+
+    index.prepareCache(file);
+
+    assertThat(index.getByHash(new ByteArray(1L))).hasSize(1);
+    assertThat(index.getByHash(new ByteArray(2L))).isEmpty();
+    verify(dao, never()).selectCandidates(anyInt(), anyString(), anyListOf(Long.class), any(ResultHandler.class));
+  }
+
+  @Test
+  public void should_prefetch_candidates_of_module() {
+    streamUnits(unit("other:Foo", MATCHING_HASH), unit("other:Baz", MATCHING_HASH));
+    DbDuplicationsIndex index = new DbDuplicationsIndex(resourcePersister, project, dao, true);
+    index.insert(file, Arrays.asList(block(3L), block(1L), block(3L)));
+
+    index.prepareCache(file);
+    Collection<Block> blocks = index.getByHash(new ByteArray(1L));
+    assertThat(blocks).hasSize(2);
+    assertThat(blocks.iterator().next().getBlockHash()).isEqualTo(new ByteArray(1L));
+    assertThat(index.getByHash(new ByteArray(2L))).isEmpty();
+    assertThat(index.getByHash(new ByteArray(3L))).isEmpty();
+
+    // loaded once for all files
+    index.getCandidates(new JavaFile("org.foo.Other"));
+    // looked up by the distinct hashes of the module
+    verify(dao, times(1)).selectCandidates(eq(5), eq("java"), eq(Arrays.asList(1L, 3L)), any(ResultHandler.class));
+    verify(dao, never()).selectCandidates(anyInt(), anyInt(), anyString());
+  }
+
+  private void streamUnits(final DuplicationUnitDto... units) {
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) {
+        ResultHandler handler = (ResultHandler) invocation.getArguments()[3];
+        for (DuplicationUnitDto unit : units) {
+          ResultContext context = mock(ResultContext.class);
+          when(context.getResultObject()).thenReturn(unit);
+          handler.handleResult(context);
+        }
+        return null;
+      }
+    }).when(dao).selectCandidates(anyInt(), anyString(), anyListOf(Long.class), any(ResultHandler.class));
+  }
+
+  private static Snapshot snapshot(int id) {
+    Snapshot snapshot = new Snapshot();
+    snapshot.setId(id);
+    return snapshot;
+  }
+
+  private static DuplicationUnitDto unit(String resourceKey, long hash) {
+    DuplicationUnitDto unit = new DuplicationUnitDto(1, 2, hash, 0, 1, 10);
+    unit.setResourceKey(resourceKey);
+    return unit;
+  }
+
+  private static Block block(long hash) {
+    return Block.builder().setResourceId("foo:org.foo.Bar").setBlockHash(new ByteArray(hash)).setIndexInFile(0).setLines(1, 10).build();
+  }
+}
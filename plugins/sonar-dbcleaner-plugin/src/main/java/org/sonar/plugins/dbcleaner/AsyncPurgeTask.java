@@ -0,0 +1,118 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.dbcleaner;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ServerExtension;
+import org.sonar.api.config.Settings;
+import org.sonar.core.properties.PropertiesDao;
+import org.sonar.core.properties.PropertyDto;
+import org.sonar.core.purge.PurgeDao;
+import org.sonar.core.purge.PurgeProfiler;
+import org.sonar.plugins.dbcleaner.api.DbCleanerConstants;
+import org.sonar.plugins.dbcleaner.period.DefaultPeriodCleaner;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Purges projects on server side when the property {@link DbCleanerConstants#ASYNC_PURGE} is enabled in the
+ * settings of the project. Purges are requested by {@link ProjectPurgePostJob} through {@link PurgeWebService},
+ * at the end of the analysis, and are executed one after the other.
+ *
+ * @since 4.1.3
+ */
+public class AsyncPurgeTask implements ServerExtension {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncPurgeTask.class);
+
+  private final PurgeDao purgeDao;
+  private final Settings settings;
+  private final PropertiesDao propertiesDao;
+  private final PurgeProfiler profiler;
+  private final ExecutorService executor;
+  private final Set<Long> pendingProjectIds = Collections.synchronizedSet(Sets.<Long>newHashSet());
+
+  public AsyncPurgeTask(PurgeDao purgeDao, Settings settings, PropertiesDao propertiesDao, PurgeProfiler profiler) {
+    this(purgeDao, settings, propertiesDao, profiler,
+      Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("async-purge-%d").setDaemon(true).build()));
+  }
+
+  @VisibleForTesting
+  AsyncPurgeTask(PurgeDao purgeDao, Settings settings, PropertiesDao propertiesDao, PurgeProfiler profiler, ExecutorService executor) {
+    this.purgeDao = purgeDao;
+    this.settings = settings;
+    this.propertiesDao = propertiesDao;
+    this.profiler = profiler;
+    this.executor = executor;
+  }
+
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Queues the purge of a project if it is enabled by the project settings. Otherwise the purge has to be
+   * executed by the batch.
+   *
+   * @return true if the purge of the project is queued
+   */
+  public boolean purge(final long projectId, String projectKey) {
+    final Settings projectSettings;
+    try {
+      projectSettings = getProjectSettings(projectKey);
+    } catch (Exception e) {
+      LOG.error("Fail to load settings of project [id=" + projectId + "]", e);
+      return false;
+    }
+    if (!projectSettings.getBoolean(DbCleanerConstants.ASYNC_PURGE)) {
+      return false;
+    }
+    if (!pendingProjectIds.add(projectId)) {
+      // the project is already waiting to be purged
+      return true;
+    }
+    executor.execute(new Runnable() {
+      public void run() {
+        pendingProjectIds.remove(projectId);
+        try {
+          new DefaultPurgeTask(purgeDao, projectSettings, new DefaultPeriodCleaner(purgeDao, projectSettings), profiler).purge(projectId);
+        } catch (Exception e) {
+          LOG.error("Fail to purge project [id=" + projectId + "]", e);
+        }
+      }
+    });
+    return true;
+  }
+
+  private Settings getProjectSettings(String projectKey) {
+    Settings projectSettings = new Settings(settings);
+    for (PropertyDto dto : propertiesDao.selectProjectProperties(projectKey)) {
+      projectSettings.setProperty(dto.getKey(), dto.getValue());
+    }
+    return projectSettings;
+  }
+}
@@ -25,6 +25,7 @@ import org.sonar.api.PropertyType;
 import org.sonar.api.SonarPlugin;
 import org.sonar.api.config.PropertyDefinition;
 import org.sonar.api.resources.Qualifiers;
+import org.sonar.core.purge.PurgeExecutor;
 import org.sonar.plugins.dbcleaner.api.DbCleanerConstants;
 import org.sonar.plugins.dbcleaner.period.DefaultPeriodCleaner;
 
@@ -34,7 +35,7 @@ import java.util.List;
 public final class DbCleanerPlugin extends SonarPlugin {
 
   public List getExtensions() {
-    return ImmutableList.builder().add(DefaultPeriodCleaner.class, DefaultPurgeTask.class, ProjectPurgePostJob.class)
+    return ImmutableList.builder().add(DefaultPeriodCleaner.class, DefaultPurgeTask.class, ProjectPurgePostJob.class, AsyncPurgeTask.class, PurgeWebService.class)
       .addAll(propertyDefinitions()).build();
   }
 
@@ -107,6 +108,39 @@ public final class DbCleanerPlugin extends SonarPlugin {
         .category(CoreProperties.CATEGORY_GENERAL)
         .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
         .index(6)
+        .build(),
+
+      PropertyDefinition.builder(DbCleanerConstants.ASYNC_PURGE)
+        .defaultValue("false")
+        .name("Purge on server")
+        .description("If set to true in the settings of the project on server side, the purge is not executed at the end of the analysis "
+          + "but asynchronously by the server. Project settings are applied, but not the properties passed to the analysis.")
+        .type(PropertyType.BOOLEAN)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .index(7)
+        .build(),
+
+      PropertyDefinition.builder(PurgeExecutor.THREADS_PROPERTY)
+        .defaultValue("1")
+        .name("Purge threads")
+        .description("Number of threads used to delete data of independent tables. Each thread uses its own database connection.")
+        .type(PropertyType.INTEGER)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .index(8)
+        .build(),
+
+      PropertyDefinition.builder(PurgeExecutor.MAX_DELETED_ROWS_PER_SECOND_PROPERTY)
+        .defaultValue("0")
+        .name("Max deleted rows per second")
+        .description("Throttles the purge by limiting the number of rows deleted per second in each table. "
+          + "It can be overridden for a given table with the property sonar.dbcleaner.<table>.maxDeletedRowsPerSecond. "
+          + "Zero means no limit.")
+        .type(PropertyType.INTEGER)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .index(9)
         .build()
       );
   }
@@ -19,22 +19,53 @@
  */
 package org.sonar.plugins.dbcleaner;
 
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.PostJob;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.batch.bootstrap.ServerClient;
 import org.sonar.core.DryRunIncompatible;
+import org.sonar.plugins.dbcleaner.api.DbCleanerConstants;
 import org.sonar.plugins.dbcleaner.api.PurgeTask;
 
 @DryRunIncompatible
 public class ProjectPurgePostJob implements PostJob {
 
+  private static final Logger LOG = LoggerFactory.getLogger(ProjectPurgePostJob.class);
+
   private PurgeTask purgeTask;
+  private Settings settings;
+  private ServerClient server;
 
-  public ProjectPurgePostJob(PurgeTask purgeTask) {
+  public ProjectPurgePostJob(PurgeTask purgeTask, Settings settings, ServerClient server) {
     this.purgeTask = purgeTask;
+    this.settings = settings;
+    this.server = server;
   }
 
   public void executeOn(final Project project, SensorContext context) {
-    purgeTask.purge(project.getId());
+    if (settings.getBoolean(DbCleanerConstants.ASYNC_PURGE) && isQueuedByServer(project)) {
+      LOG.info("Purge will be executed by the server");
+    } else {
+      purgeTask.purge(project.getId());
+    }
+  }
+
+  /**
+   * The server decides from the settings of the project, see {@link AsyncPurgeTask}. The purge is executed
+   * by the batch as long as the server has not confirmed that it is queued.
+   */
+  private boolean isQueuedByServer(Project project) {
+    try {
+      JSONObject json = (JSONObject) JSONValue.parse(server.request(PurgeWebService.PURGE_URL + "?project=" + project.getId()));
+      return json != null && Boolean.TRUE.equals(json.get("queued"));
+    } catch (Exception e) {
+      LOG.warn("Fail to request the purge to the server, it is executed by the batch", e);
+      return false;
+    }
   }
 }
@@ -0,0 +1,52 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.dbcleaner;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.sonar.api.utils.SonarException;
+import org.sonar.api.web.RubyRailsWebservice;
+import org.sonar.plugins.dbcleaner.api.DbCleanerConstants;
+
+import java.io.IOException;
+
+/**
+ * Web service GET /api/plugins/dbcleaner/purge?project=[id or key], called by {@link ProjectPurgePostJob} to
+ * request the purge of a project by {@link AsyncPurgeTask}. The response <code>{"queued": true}</code> confirms
+ * that the purge is queued on server side, otherwise it has to be executed by the batch.
+ *
+ * @since 4.1.3
+ */
+public class PurgeWebService implements RubyRailsWebservice {
+
+  static final String PURGE_URL = "/api/plugins/" + DbCleanerConstants.PLUGIN_KEY + "/purge";
+
+  public String getId() {
+    return DbCleanerConstants.PLUGIN_KEY;
+  }
+
+  public String getTemplate() {
+    try {
+      return Resources.toString(Resources.getResource(PurgeWebService.class, "purge_ws.rb"), Charsets.UTF_8);
+    } catch (IOException e) {
+      throw new SonarException("Fail to load the web service of database cleaner", e);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+#
+# SonarQube, open source software quality management tool.
+# Copyright (C) 2008-2013 SonarSource
+# mailto:contact AT sonarsource DOT com
+#
+# SonarQube is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3 of the License, or (at your option) any later version.
+#
+# SonarQube is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+#
+# You should have received a copy of the GNU Lesser General Public License
+# along with this program; if not, write to the Free Software Foundation,
+# Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+#
+
+class Api::DbcleanerController < Api::ApiController
+
+  #
+  # GET /api/plugins/dbcleaner/purge?project=<key or id>
+  # Called by the batch at the end of the analysis of a project. The purge of the project is queued on server side
+  # if the property sonar.dbcleaner.asyncPurge is set in the project settings. Otherwise it has to be executed by the batch.
+  #
+  # Response: {"queued": true|false}
+  #
+  # @since 4.1.3
+  def purge
+    access_denied unless has_role?('scan')
+    require_parameters :project
+    project = Project.by_key(params[:project])
+    not_found("Project not found: #{params[:project]}") unless project
+    project = project.root_project
+
+    async_purge = java_facade.getComponentByClassname('dbcleaner', 'org.sonar.plugins.dbcleaner.AsyncPurgeTask')
+    queued = async_purge.purge(project.id, project.key)
+    render :json => jsonp({:queued => queued})
+  end
+
+end
@@ -0,0 +1,111 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.dbcleaner;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.commons.lang.time.DateUtils;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.core.properties.PropertiesDao;
+import org.sonar.core.properties.PropertyDto;
+import org.sonar.core.purge.PurgeConfiguration;
+import org.sonar.core.purge.PurgeDao;
+import org.sonar.core.purge.PurgeProfiler;
+import org.sonar.plugins.dbcleaner.api.DbCleanerConstants;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class AsyncPurgeTaskTest {
+
+  PurgeDao purgeDao = mock(PurgeDao.class);
+  PropertiesDao propertiesDao = mock(PropertiesDao.class);
+  Settings settings = new Settings(new PropertyDefinitions(DbCleanerPlugin.propertyDefinitions()));
+
+  @Test
+  public void do_not_purge_if_purge_is_executed_by_batch() {
+    AsyncPurgeTask task = new AsyncPurgeTask(purgeDao, settings, propertiesDao, new PurgeProfiler(), MoreExecutors.sameThreadExecutor());
+
+    assertThat(task.purge(1L, "org.struts")).isFalse();
+    verifyZeroInteractions(purgeDao);
+  }
+
+  @Test
+  public void do_not_purge_if_disabled_in_project_settings() {
+    settings.setProperty(DbCleanerConstants.ASYNC_PURGE, true);
+    when(propertiesDao.selectProjectProperties("org.struts")).thenReturn(Arrays.asList(
+      new PropertyDto().setKey(DbCleanerConstants.ASYNC_PURGE).setValue("false")));
+    AsyncPurgeTask task = new AsyncPurgeTask(purgeDao, settings, propertiesDao, new PurgeProfiler(), MoreExecutors.sameThreadExecutor());
+
+    assertThat(task.purge(1L, "org.struts")).isFalse();
+    verifyZeroInteractions(purgeDao);
+  }
+
+  @Test
+  public void purge_with_project_settings() {
+    when(propertiesDao.selectProjectProperties("org.struts")).thenReturn(Arrays.asList(
+      new PropertyDto().setKey(DbCleanerConstants.ASYNC_PURGE).setValue("true"),
+      new PropertyDto().setKey(DbCleanerConstants.DAYS_BEFORE_DELETING_CLOSED_ISSUES).setValue("10")));
+    AsyncPurgeTask task = new AsyncPurgeTask(purgeDao, settings, propertiesDao, new PurgeProfiler(), MoreExecutors.sameThreadExecutor());
+
+    assertThat(task.purge(1L, "org.struts")).isTrue();
+    verify(purgeDao).purge(argThat(new ArgumentMatcher<PurgeConfiguration>() {
+      @Override
+      public boolean matches(Object o) {
+        PurgeConfiguration conf = (PurgeConfiguration) o;
+        // closed issues are kept 10 days instead of 30 by default
+        Date maxLiveDate = conf.maxLiveDateOfClosedIssues();
+        return conf.rootProjectId() == 1L
+          && maxLiveDate.after(DateUtils.addDays(new Date(), -11))
+          && maxLiveDate.before(DateUtils.addDays(new Date(), -9));
+      }
+    }));
+  }
+
+  @Test
+  public void should_not_queue_purge_if_settings_can_not_be_loaded() {
+    settings.setProperty(DbCleanerConstants.ASYNC_PURGE, true);
+    when(propertiesDao.selectProjectProperties("org.struts")).thenThrow(new IllegalStateException());
+    AsyncPurgeTask task = new AsyncPurgeTask(purgeDao, settings, propertiesDao, new PurgeProfiler(), MoreExecutors.sameThreadExecutor());
+
+    assertThat(task.purge(1L, "org.struts")).isFalse();
+    verify(purgeDao, never()).purge(any(PurgeConfiguration.class));
+  }
+
+  @Test
+  public void should_not_fail_on_errors() {
+    settings.setProperty(DbCleanerConstants.ASYNC_PURGE, true);
+    when(purgeDao.purge(any(PurgeConfiguration.class))).thenThrow(new IllegalStateException());
+    AsyncPurgeTask task = new AsyncPurgeTask(purgeDao, settings, propertiesDao, new PurgeProfiler(), MoreExecutors.sameThreadExecutor());
+
+    assertThat(task.purge(1L, "org.struts")).isTrue();
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.dbcleaner;
+
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.batch.bootstrap.ServerClient;
+import org.sonar.plugins.dbcleaner.api.DbCleanerConstants;
+import org.sonar.plugins.dbcleaner.api.PurgeTask;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class ProjectPurgePostJobTest {
+
+  PurgeTask purgeTask = mock(PurgeTask.class);
+  ServerClient server = mock(ServerClient.class);
+  Settings settings = new Settings();
+  Project project = new Project("struts");
+
+  @Test
+  public void purge_by_batch() {
+    project.setId(1);
+    new ProjectPurgePostJob(purgeTask, settings, server).executeOn(project, null);
+
+    verify(purgeTask).purge(1L);
+    verifyZeroInteractions(server);
+  }
+
+  @Test
+  public void do_not_purge_if_queued_by_server() {
+    project.setId(1);
+    settings.setProperty(DbCleanerConstants.ASYNC_PURGE, true);
+    when(server.request("/api/plugins/dbcleaner/purge?project=1")).thenReturn("{\"queued\":true}");
+    new ProjectPurgePostJob(purgeTask, settings, server).executeOn(project, null);
+
+    verify(purgeTask, never()).purge(1L);
+  }
+
+  @Test
+  public void purge_by_batch_if_not_queued_by_server() {
+    project.setId(1);
+    settings.setProperty(DbCleanerConstants.ASYNC_PURGE, true);
+    when(server.request("/api/plugins/dbcleaner/purge?project=1")).thenReturn("{\"queued\":false}");
+    new ProjectPurgePostJob(purgeTask, settings, server).executeOn(project, null);
+
+    verify(purgeTask).purge(1L);
+  }
+
+  @Test
+  public void purge_by_batch_if_server_fails() {
+    project.setId(1);
+    settings.setProperty(DbCleanerConstants.ASYNC_PURGE, true);
+    when(server.request(anyString())).thenThrow(new IllegalStateException("Not found"));
+    new ProjectPurgePostJob(purgeTask, settings, server).executeOn(project, null);
+
+    verify(purgeTask).purge(1L);
+  }
+}
@@ -123,6 +123,7 @@ public class BootstrapContainer extends ComponentContainer {
       PastSnapshotFinderByVersion.class,
       PastSnapshotFinderByPreviousVersion.class,
       PastMeasuresLoader.class,
+      MeasuresHistoryLoader.class,
       PastSnapshotFinder.class);
   }
 
@@ -31,8 +31,13 @@ import org.sonar.api.database.DatabaseProperties;
 import org.sonar.api.utils.HttpDownloader.HttpException;
 import org.sonar.api.utils.SonarException;
 import org.sonar.api.utils.TempFolder;
+import org.sonar.home.cache.FileCache;
+import org.sonar.home.cache.FileHashes;
+
+import javax.annotation.Nullable;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.SocketTimeoutException;
 
 /**
@@ -49,16 +54,21 @@ public class PreviewDatabase implements BatchComponent {
 
   private static final int DEFAULT_PREVIEW_READ_TIMEOUT_SEC = 60;
 
+  // copies of the last downloaded databases, stored in the user cache to send conditional requests
+  private static final String CACHE_DIR = "_preview";
+
   private final Settings settings;
   private final ServerClient server;
   private final TempFolder tempUtils;
   private final AnalysisMode mode;
+  private final FileCache fileCache;
 
-  public PreviewDatabase(Settings settings, ServerClient server, TempFolder tempUtils, AnalysisMode mode) {
+  public PreviewDatabase(Settings settings, ServerClient server, TempFolder tempUtils, AnalysisMode mode, FileCache fileCache) {
     this.settings = settings;
     this.server = server;
     this.tempUtils = tempUtils;
     this.mode = mode;
+    this.fileCache = fileCache;
   }
 
   public void start() {
@@ -95,10 +105,16 @@ public class PreviewDatabase implements BatchComponent {
       if (StringUtils.isNotBlank(branch)) {
         projectKey = String.format("%s:%s", projectKey, branch);
       }
-      if (StringUtils.isBlank(projectKey)) {
-        server.download("/batch_bootstrap/db", toFile, readTimeout);
+      String path = StringUtils.isBlank(projectKey) ? "/batch_bootstrap/db" : ("/batch_bootstrap/db?project=" + projectKey);
+      File cachedFile = getCachedDatabase(projectKey);
+      if (!cachedFile.exists()) {
+        server.download(path, toFile, readTimeout);
+        cacheDatabase(toFile, cachedFile);
+      } else if (server.downloadIfModified(path, toFile, new FileHashes().of(cachedFile), readTimeout)) {
+        cacheDatabase(toFile, cachedFile);
       } else {
-        server.download("/batch_bootstrap/db?project=" + projectKey, toFile, readTimeout);
+        LOG.debug("Dry Run database did not change since the last download");
+        copyCachedDatabase(cachedFile, toFile);
       }
       LOG.debug("Dry Run database size: {}", FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(toFile)));
     } catch (SonarException e) {
@@ -107,6 +123,39 @@ public class PreviewDatabase implements BatchComponent {
     }
   }
 
+  private File getCachedDatabase(@Nullable String projectKey) {
+    String name = StringUtils.isBlank(projectKey) ? "default" : projectKey.replaceAll("[^a-zA-Z0-9_.-]", "_");
+    return new File(new File(fileCache.getDir(), CACHE_DIR), name + ".h2.db");
+  }
+
+  /**
+   * The copy is renamed at the end, so that concurrent analyses never read a partial database. Failures are
+   * not blocking, the database is then downloaded again by the next analysis.
+   */
+  private static void cacheDatabase(File dbFile, File cachedFile) {
+    try {
+      FileUtils.forceMkdir(cachedFile.getParentFile());
+      File tempFile = File.createTempFile("preview", ".tmp", cachedFile.getParentFile());
+      FileUtils.copyFile(dbFile, tempFile);
+      if (!tempFile.renameTo(cachedFile)) {
+        FileUtils.deleteQuietly(cachedFile);
+        if (!tempFile.renameTo(cachedFile)) {
+          FileUtils.deleteQuietly(tempFile);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to cache Dry Run database to " + cachedFile, e);
+    }
+  }
+
+  private static void copyCachedDatabase(File cachedFile, File toFile) {
+    try {
+      FileUtils.copyFile(cachedFile, toFile);
+    } catch (IOException e) {
+      throw new SonarException("Unable to copy Dry Run database from " + cachedFile, e);
+    }
+  }
+
   private void handleException(int readTimeout, String projectKey, SonarException e) {
     Throwable rootCause = Throwables.getRootCause(e);
     if (rootCause instanceof SocketTimeoutException) {
@@ -37,6 +37,7 @@ import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URI;
 
 /**
@@ -74,6 +75,27 @@ public class ServerClient implements BatchComponent {
     }
   }
 
+  /**
+   * Conditional download: the file is downloaded only if its entity tag on server is not the given one.
+   *
+   * @return false if the file did not change, so nothing was downloaded
+   * @since 4.1.3
+   */
+  public boolean downloadIfModified(String pathStartingWithSlash, File toFile, String etag, @Nullable Integer readTimeoutMillis) {
+    try {
+      InputSupplier<InputStream> inputSupplier = doRequest(pathStartingWithSlash, readTimeoutMillis, etag);
+      Files.copy(inputSupplier, toFile);
+      return true;
+    } catch (HttpDownloader.HttpException he) {
+      if (he.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+        return false;
+      }
+      throw handleHttpException(he);
+    } catch (IOException e) {
+      throw new SonarException(String.format("Unable to download '%s' to: %s", pathStartingWithSlash, toFile), e);
+    }
+  }
+
   public String request(String pathStartingWithSlash) {
     return request(pathStartingWithSlash, true);
   }
@@ -94,13 +116,19 @@ public class ServerClient implements BatchComponent {
   }
 
   private InputSupplier<InputStream> doRequest(String pathStartingWithSlash, @Nullable Integer timeoutMillis) {
+    return doRequest(pathStartingWithSlash, timeoutMillis, null);
+  }
+
+  private InputSupplier<InputStream> doRequest(String pathStartingWithSlash, @Nullable Integer timeoutMillis, @Nullable String etag) {
     Preconditions.checkArgument(pathStartingWithSlash.startsWith("/"), "Path must start with slash /");
     String path = StringEscapeUtils.escapeHtml(pathStartingWithSlash);
 
     URI uri = URI.create(getURL() + path);
     try {
       InputSupplier<InputStream> inputSupplier;
-      if (Strings.isNullOrEmpty(getLogin())) {
+      if (etag != null) {
+        inputSupplier = downloader.newInputSupplier(uri, getLogin(), getPassword(), timeoutMillis, etag);
+      } else if (Strings.isNullOrEmpty(getLogin())) {
         inputSupplier = downloader.newInputSupplier(uri, timeoutMillis);
       } else {
         inputSupplier = downloader.newInputSupplier(uri, getLogin(), getPassword(), timeoutMillis);
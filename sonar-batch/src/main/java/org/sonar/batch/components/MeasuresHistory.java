@@ -0,0 +1,133 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.components;
+
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Numeric history of the measures of many resources, as loaded by {@link MeasuresHistoryLoader}.
+ * Values of a resource and metric are stored in an array of primitives, ordered by analysis date.
+ * Measures without value are stored as {@link Double#NaN}.
+ * <p/>
+ * This class is immutable and thread-safe.
+ *
+ * @since 4.1.3
+ */
+public final class MeasuresHistory {
+
+  private static final double[] NO_VALUES = new double[0];
+  private static final MeasuresHistory EMPTY = new MeasuresHistory(Maps.<Integer, Map<Integer, double[]>>newHashMap());
+
+  private final Map<Integer, Map<Integer, double[]>> valuesByResourceId;
+
+  private MeasuresHistory(Map<Integer, Map<Integer, double[]>> valuesByResourceId) {
+    this.valuesByResourceId = valuesByResourceId;
+  }
+
+  public static MeasuresHistory empty() {
+    return EMPTY;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return the past values ordered by date, or an empty array. Must not be modified.
+   */
+  public double[] getValues(@Nullable Integer resourceId, int metricId) {
+    Map<Integer, double[]> valuesByMetricId = resourceId != null ? valuesByResourceId.get(resourceId) : null;
+    if (valuesByMetricId == null) {
+      return NO_VALUES;
+    }
+    double[] values = valuesByMetricId.get(metricId);
+    return values != null ? values : NO_VALUES;
+  }
+
+  public int size() {
+    int size = 0;
+    for (Map<Integer, double[]> valuesByMetricId : valuesByResourceId.values()) {
+      for (double[] values : valuesByMetricId.values()) {
+        size += values.length;
+      }
+    }
+    return size;
+  }
+
+  public static final class Builder {
+    private final Map<Integer, Map<Integer, Values>> valuesByResourceId = Maps.newHashMap();
+
+    private Builder() {
+    }
+
+    /**
+     * Values of a given resource and metric must be added by ascending date.
+     */
+    public Builder add(int resourceId, int metricId, @Nullable Double value) {
+      Map<Integer, Values> valuesByMetricId = valuesByResourceId.get(resourceId);
+      if (valuesByMetricId == null) {
+        valuesByMetricId = Maps.newHashMap();
+        valuesByResourceId.put(resourceId, valuesByMetricId);
+      }
+      Values values = valuesByMetricId.get(metricId);
+      if (values == null) {
+        values = new Values();
+        valuesByMetricId.put(metricId, values);
+      }
+      values.add(value != null ? value : Double.NaN);
+      return this;
+    }
+
+    public MeasuresHistory build() {
+      Map<Integer, Map<Integer, double[]>> result = Maps.newHashMapWithExpectedSize(valuesByResourceId.size());
+      for (Map.Entry<Integer, Map<Integer, Values>> resourceEntry : valuesByResourceId.entrySet()) {
+        Map<Integer, double[]> valuesByMetricId = Maps.newHashMapWithExpectedSize(resourceEntry.getValue().size());
+        for (Map.Entry<Integer, Values> metricEntry : resourceEntry.getValue().entrySet()) {
+          valuesByMetricId.put(metricEntry.getKey(), metricEntry.getValue().toArray());
+        }
+        result.put(resourceEntry.getKey(), valuesByMetricId);
+      }
+      return new MeasuresHistory(result);
+    }
+  }
+
+  private static final class Values {
+    // a tendency is usually computed on a few dozens of analyses
+    private double[] values = new double[8];
+    private int size = 0;
+
+    void add(double value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size] = value;
+      size++;
+    }
+
+    double[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.components;
+
+import com.google.common.collect.Sets;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.measures.Metric;
+import org.sonar.core.measure.MeasureHistoryDto;
+import org.sonar.core.measure.MeasureHistoryMapper;
+import org.sonar.core.persistence.MyBatis;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Loads the history of the measures of a module and of its directories in a single query. Rows are streamed,
+ * so only the primitive values are kept in memory.
+ *
+ * @since 4.1.3
+ */
+public class MeasuresHistoryLoader implements BatchComponent {
+
+  private final MyBatis mybatis;
+
+  public MeasuresHistoryLoader(MyBatis mybatis) {
+    this.mybatis = mybatis;
+  }
+
+  /**
+   * Values of the processed analyses done between the two dates (inclusive), ordered by date. Only the measures
+   * of the given metrics that are not related to a characteristic, a developer or a rule are loaded.
+   */
+  public MeasuresHistory load(int moduleId, Date from, Date to, Collection<Metric> metrics) {
+    final Set<Integer> metricIds = Sets.newHashSet();
+    for (Metric metric : metrics) {
+      metricIds.add(metric.getId());
+    }
+    if (metricIds.isEmpty()) {
+      return MeasuresHistory.empty();
+    }
+
+    final MeasuresHistory.Builder builder = MeasuresHistory.builder();
+    SqlSession session = mybatis.openSession();
+    try {
+      session.getMapper(MeasureHistoryMapper.class).selectModuleHistory(moduleId, from, to, new ResultHandler() {
+        public void handleResult(ResultContext context) {
+          MeasureHistoryDto dto = (MeasureHistoryDto) context.getResultObject();
+          // metrics are filtered here rather than in SQL to keep the request independent of the number of metrics
+          if (metricIds.contains(dto.getMetricId())) {
+            builder.add(dto.getResourceId(), dto.getMetricId(), dto.getValue());
+          }
+        }
+      });
+      return builder.build();
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.components;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Numeric past measures of many resources, as loaded by {@link PastMeasuresLoader#getPastMeasuresIndex(String, PastSnapshot)}.
+ * Measures of a resource are stored in arrays of primitives, sorted by metric, characteristic, person and rule,
+ * so that a measure is found by binary search. Measures without value are not stored.
+ * <p/>
+ * This class is immutable and thread-safe.
+ *
+ * @since 4.1.3
+ */
+public final class PastMeasuresIndex {
+
+  private static final PastMeasuresIndex EMPTY = new PastMeasuresIndex(Maps.<String, ResourceMeasures>newHashMap());
+
+  // ids are positive, zero is used for null values
+  private static final int NULL_ID = 0;
+  private static final int KEY_LENGTH = 4;
+
+  private final Map<String, ResourceMeasures> measuresByResourceKey;
+
+  private PastMeasuresIndex(Map<String, ResourceMeasures> measuresByResourceKey) {
+    this.measuresByResourceKey = measuresByResourceKey;
+  }
+
+  public static PastMeasuresIndex empty() {
+    return EMPTY;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int size() {
+    int size = 0;
+    for (ResourceMeasures measures : measuresByResourceKey.values()) {
+      size += measures.values.length;
+    }
+    return size;
+  }
+
+  /**
+   * @return the past value, or null if the measure does not exist or has no value
+   */
+  @CheckForNull
+  public Double getValue(String resourceKey, int metricId, @Nullable Integer characteristicId, @Nullable Integer personId, @Nullable Integer ruleId) {
+    ResourceMeasures measures = measuresByResourceKey.get(resourceKey);
+    if (measures == null) {
+      return null;
+    }
+    int index = measures.indexOf(new int[] {metricId, id(characteristicId), id(personId), id(ruleId)});
+    return index >= 0 ? measures.values[index] : null;
+  }
+
+  private static int id(@Nullable Integer id) {
+    return id != null ? id : NULL_ID;
+  }
+
+  private static int compare(int[] keys, int index, int[] key) {
+    for (int i = 0; i < KEY_LENGTH; i++) {
+      int left = keys[index * KEY_LENGTH + i];
+      if (left != key[i]) {
+        return left < key[i] ? -1 : 1;
+      }
+    }
+    return 0;
+  }
+
+  private static final class ResourceMeasures {
+    // metric, characteristic, person and rule of each measure
+    private final int[] keys;
+    private final double[] values;
+
+    private ResourceMeasures(List<Row> rows) {
+      Row[] sortedRows = rows.toArray(new Row[rows.size()]);
+      Arrays.sort(sortedRows);
+      keys = new int[sortedRows.length * KEY_LENGTH];
+      values = new double[sortedRows.length];
+      for (int i = 0; i < sortedRows.length; i++) {
+        System.arraycopy(sortedRows[i].key, 0, keys, i * KEY_LENGTH, KEY_LENGTH);
+        values[i] = sortedRows[i].value;
+      }
+    }
+
+    private int indexOf(int[] key) {
+      int low = 0;
+      int high = values.length - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        int cmp = compare(keys, middle, key);
+        if (cmp < 0) {
+          low = middle + 1;
+        } else if (cmp > 0) {
+          high = middle - 1;
+        } else {
+          return middle;
+        }
+      }
+      return -1;
+    }
+  }
+
+  private static final class Row implements Comparable<Row> {
+    private final int[] key;
+    private final double value;
+
+    private Row(int[] key, double value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    public int compareTo(Row other) {
+      return -compare(other.key, 0, key);
+    }
+  }
+
+  public static final class Builder {
+    private final Map<String, List<Row>> rowsByResourceKey = Maps.newHashMap();
+
+    private Builder() {
+    }
+
+    /**
+     * @param row past measure, in the format returned by {@link PastMeasuresLoader#getPastMeasures(String, org.sonar.api.database.model.Snapshot)}
+     */
+    public Builder add(String resourceKey, Object[] row) {
+      if (PastMeasuresLoader.hasValue(row)) {
+        add(resourceKey, PastMeasuresLoader.getMetricId(row), PastMeasuresLoader.getCharacteristicId(row), PastMeasuresLoader.getPersonId(row),
+          PastMeasuresLoader.getRuleId(row), PastMeasuresLoader.getValue(row));
+      }
+      return this;
+    }
+
+    public Builder add(String resourceKey, int metricId, @Nullable Integer characteristicId, @Nullable Integer personId, @Nullable Integer ruleId, double value) {
+      List<Row> rows = rowsByResourceKey.get(resourceKey);
+      if (rows == null) {
+        rows = Lists.newArrayList();
+        rowsByResourceKey.put(resourceKey, rows);
+      }
+      rows.add(new Row(new int[] {metricId, id(characteristicId), id(personId), id(ruleId)}, value));
+      return this;
+    }
+
+    public PastMeasuresIndex build() {
+      Map<String, ResourceMeasures> measuresByResourceKey = Maps.newHashMapWithExpectedSize(rowsByResourceKey.size());
+      for (Map.Entry<String, List<Row>> entry : rowsByResourceKey.entrySet()) {
+        measuresByResourceKey.put(entry.getKey(), new ResourceMeasures(entry.getValue()));
+      }
+      return new PastMeasuresIndex(measuresByResourceKey);
+    }
+  }
+}
@@ -20,20 +20,43 @@
 package org.sonar.batch.events;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.sonar.api.batch.events.EventHandler;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Dispatches {@link BatchEvent}s. Eases decoupling by allowing objects to interact without having direct dependencies upon one another, and
  * without requiring event sources to deal with maintaining handler lists.
+ * <p/>
+ * Handlers are grouped by type once for all, so firing an event does not allocate anything : decorator events
+ * are fired twice per decorator and per resource.
  */
 public class EventBus {
 
-  private EventHandler[] registeredHandlers;
+  private static final EventHandler[] NO_HANDLERS = new EventHandler[0];
+
+  private final EventHandler[] registeredHandlers;
+  private final ConcurrentMap<Class<?>, EventHandler[]> dispatchTable = Maps.newConcurrentMap();
 
   public EventBus(EventHandler[] handlers) {
     this.registeredHandlers = handlers;
+    for (EventHandler handler : handlers) {
+      registerHandlerTypes(handler.getClass());
+    }
+  }
+
+  private void registerHandlerTypes(Class<?> handlerClass) {
+    for (Class<?> type = handlerClass; type != null; type = type.getSuperclass()) {
+      for (Class<?> handlerInterface : type.getInterfaces()) {
+        if (EventHandler.class.isAssignableFrom(handlerInterface) && !dispatchTable.containsKey(handlerInterface)) {
+          dispatchTable.put(handlerInterface, buildDispatchList(handlerInterface));
+          registerHandlerTypes(handlerInterface);
+        }
+      }
+    }
   }
 
   /**
@@ -44,20 +67,29 @@ public class EventBus {
   }
 
   private void doFireEvent(BatchEvent event) {
-    List<EventHandler> handlers = getDispatchList(event.getType());
-    for (EventHandler handler : handlers) {
+    for (EventHandler handler : getDispatchList(event.getType())) {
       event.dispatch(handler);
     }
   }
 
-  private List<EventHandler> getDispatchList(Class<? extends EventHandler> handlerType) {
+  private EventHandler[] getDispatchList(Class<? extends EventHandler> handlerType) {
+    EventHandler[] handlers = dispatchTable.get(handlerType);
+    if (handlers == null) {
+      // type not implemented by any interface of the registered handlers, for example a concrete class
+      handlers = buildDispatchList(handlerType);
+      dispatchTable.putIfAbsent(handlerType, handlers);
+    }
+    return handlers;
+  }
+
+  private EventHandler[] buildDispatchList(Class<?> handlerType) {
     List<EventHandler> result = Lists.newArrayList();
     for (EventHandler handler : registeredHandlers) {
       if (handlerType.isAssignableFrom(handler.getClass())) {
         result.add(handler);
       }
     }
-    return result;
+    return result.isEmpty() ? NO_HANDLERS : result.toArray(new EventHandler[result.size()]);
   }
 
 }
@@ -0,0 +1,35 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.events;
+
+import org.sonar.api.batch.events.DecoratorExecutionHandler;
+import org.sonar.api.resources.Resource;
+
+/**
+ * Decorator execution event which also gives the decorated resource. It is internal to the batch, so
+ * {@link DecoratorExecutionHandler}s have to check the type of the event before using it.
+ * This interface is not intended to be implemented by clients.
+ * @since 4.1.3
+ */
+public interface ResourceDecoratorExecutionEvent extends DecoratorExecutionHandler.DecoratorExecutionEvent {
+
+  Resource getResource();
+
+}
@@ -19,31 +19,38 @@
  */
 package org.sonar.batch.index;
 
-import com.google.common.collect.Sets;
-import com.persistit.Exchange;
-import com.persistit.Key;
-import com.persistit.exception.PersistitException;
 import org.apache.commons.lang.builder.ToStringBuilder;
 
 import javax.annotation.CheckForNull;
+
 import java.io.Serializable;
-import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * <p>
- * This cache is not thread-safe, due to direct usage of {@link com.persistit.Exchange}
+ * Elements are kept in memory as long as the threshold defined by {@link Caches#MAX_IN_MEMORY_BYTES_PROPERTY}
+ * is not reached. Then they are moved to the Persistit volume of {@link Caches}. In both cases values are stored
+ * encoded, so modifying a value after {@link #put(Object, java.io.Serializable)} or {@link #get(Object)} does not
+ * change the cache.
+ * </p>
+ * <p>
+ * This cache is thread-safe. Iterables are not guaranteed to reflect the modifications done after their creation.
  * </p>
  */
 public class Cache<K, V extends Serializable> {
 
   private static final String DEFAULT_GROUP = "_";
   private final String name;
-  private final Exchange exchange;
+  private final Caches caches;
+  private final ReadWriteLock spillLock = new ReentrantReadWriteLock();
+  private volatile CacheStorage<K, V> storage;
 
-  Cache(String name, Exchange exchange) {
+  Cache(String name, Caches caches, CacheStorage<K, V> storage) {
     this.name = name;
-    this.exchange = exchange;
+    this.caches = caches;
+    this.storage = storage;
   }
 
   public Cache put(K key, V value) {
@@ -51,15 +58,16 @@ public class Cache<K, V extends Serializable> {
   }
 
   public Cache put(String group, K key, V value) {
+    spillLock.readLock().lock();
     try {
-      exchange.clear();
-      exchange.append(group).append(key);
-      exchange.getValue().put(value);
-      exchange.store();
-      return this;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to put element in the cache " + name, e);
+      storage.put(group, key, value);
+    } finally {
+      spillLock.readLock().unlock();
     }
+    if (storage instanceof MemoryCacheStorage && caches.isMemoryThresholdReached()) {
+      spill();
+    }
+    return this;
   }
 
   /**
@@ -69,19 +77,13 @@ public class Cache<K, V extends Serializable> {
    * @param group The group.
    * @return The element associated with key in the group, or null.
    */
-  @SuppressWarnings("unchecked")
+  @CheckForNull
   public V get(String group, K key) {
+    spillLock.readLock().lock();
     try {
-      exchange.clear();
-      exchange.append(group).append(key);
-      exchange.fetch();
-      if (!exchange.getValue().isDefined()) {
-        return null;
-      }
-      return (V) exchange.getValue().get();
-    } catch (Exception e) {
-      // TODO add parameters to message
-      throw new IllegalStateException("Fail to get element from cache " + name, e);
+      return storage.get(group, key);
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
@@ -91,31 +93,26 @@ public class Cache<K, V extends Serializable> {
    * @param key The key whose associated value is to be retrieved.
    * @return The value, or null if not found.
    */
-  @SuppressWarnings("unchecked")
+  @CheckForNull
   public V get(K key) {
     return get(DEFAULT_GROUP, key);
   }
 
   public boolean containsKey(String group, K key) {
+    spillLock.readLock().lock();
     try {
-      exchange.clear();
-      exchange.append(group).append(key);
-      exchange.fetch();
-      return exchange.isValueDefined();
-    } catch (Exception e) {
-      // TODO add parameters to message
-      throw new IllegalStateException("Fail to check if element is in cache " + name, e);
+      return storage.containsKey(group, key);
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
   public boolean remove(String group, K key) {
+    spillLock.readLock().lock();
     try {
-      exchange.clear();
-      exchange.append(group).append(key);
-      return exchange.remove();
-    } catch (Exception e) {
-      // TODO add parameters to message
-      throw new IllegalStateException("Fail to get element from cache " + name, e);
+      return storage.remove(group, key);
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
@@ -129,19 +126,15 @@ public class Cache<K, V extends Serializable> {
    * @param group The group name.
    */
   public Cache clear(String group) {
+    spillLock.readLock().lock();
     try {
-      exchange.clear();
-      exchange.append(group);
-      Key key = new Key(exchange.getKey());
-      key.append(Key.AFTER);
-      exchange.removeKeyRange(exchange.getKey(), key);
+      storage.clear(group);
       return this;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to clear group '" + group + "' from cache " + name, e);
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
-
   /**
    * Removes everything in the default cache, but not any of the group caches.
    */
@@ -153,11 +146,11 @@ public class Cache<K, V extends Serializable> {
    * Clears the default as well as all group caches.
    */
   public void clearAll() {
+    spillLock.readLock().lock();
     try {
-      exchange.clear();
-      exchange.removeAll();
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to clear cache", e);
+      storage.clearAll();
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
@@ -168,25 +161,15 @@ public class Cache<K, V extends Serializable> {
    * @param group The group.
    * @return The set of cache keys for this group.
    */
-  @SuppressWarnings("unchecked")
   public Set<K> keySet(String group) {
+    spillLock.readLock().lock();
     try {
-      Set<K> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-
-      iteratorExchange.append(group);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add((K) iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
+      return storage.keySet(group);
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
-
   /**
    * Returns the set of keys associated with this cache.
    *
@@ -200,13 +183,11 @@ public class Cache<K, V extends Serializable> {
    * Lazy-loading values for a given group
    */
   public Iterable<V> values(String group) {
+    spillLock.readLock().lock();
     try {
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(group).append(Key.BEFORE);
-      return new ValueIterable<V>(iteratorExchange, false);
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get values from cache " + name, e);
+      return storage.values(group);
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
@@ -221,135 +202,64 @@ public class Cache<K, V extends Serializable> {
    * Lazy-loading values of all groups
    */
   public Iterable<V> allValues() {
+    spillLock.readLock().lock();
     try {
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(Key.BEFORE);
-      return new ValueIterable<V>(iteratorExchange, true);
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get values from cache " + name, e);
+      return storage.allValues();
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
   public Set<String> groups() {
+    spillLock.readLock().lock();
     try {
-      Set<String> groups = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        groups.add(iteratorExchange.getKey().decodeString());
-      }
-      return groups;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get values from cache " + name, e);
+      return storage.groups();
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
   public <T extends Serializable> Iterable<Entry<T>> entries() {
-    exchange.clear().to(Key.BEFORE);
-    return new EntryIterable(new Exchange(exchange), true);
-  }
-
-  public <T extends Serializable> Iterable<Entry<T>> entries(String group) {
-    exchange.clear().append(group).append(Key.BEFORE);
-    return new EntryIterable(new Exchange(exchange), false);
-  }
-
-
-  //
-  // LAZY ITERATORS AND ITERABLES
-  //
-
-  private static class ValueIterable<T extends Serializable> implements Iterable<T> {
-    private final Iterator<T> iterator;
-
-    private ValueIterable(Exchange exchange, boolean deep) {
-      this.iterator = new ValueIterator<T>(exchange, deep);
-    }
-
-    @Override
-    public Iterator<T> iterator() {
-      return iterator;
+    spillLock.readLock().lock();
+    try {
+      return storage.entries();
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
-  private static class ValueIterator<T extends Serializable> implements Iterator<T> {
-    private final Exchange exchange;
-    private final boolean deep;
-
-    private ValueIterator(Exchange exchange, boolean deep) {
-      this.exchange = exchange;
-      this.deep = deep;
-    }
-
-    @Override
-    public boolean hasNext() {
-      try {
-        return exchange.next(deep);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-    }
-
-    @Override
-    public T next() {
-      T value = null;
-      if (exchange.getValue().isDefined()) {
-        value = (T) exchange.getValue().get();
-      }
-      return value;
-    }
-
-    @Override
-    public void remove() {
+  public <T extends Serializable> Iterable<Entry<T>> entries(String group) {
+    spillLock.readLock().lock();
+    try {
+      return storage.entries(group);
+    } finally {
+      spillLock.readLock().unlock();
     }
   }
 
-  private static class EntryIterable<T extends Serializable> implements Iterable<Entry<T>> {
-    private final EntryIterator<T> it;
-
-    private EntryIterable(Exchange exchange, boolean deep) {
-      it = new EntryIterator<T>(exchange, deep);
-    }
-
-    @Override
-    public Iterator<Entry<T>> iterator() {
-      return it;
-    }
+  boolean isInMemory() {
+    return storage instanceof MemoryCacheStorage;
   }
 
-  private static class EntryIterator<T extends Serializable> implements Iterator<Entry<T>> {
-    private final Exchange exchange;
-    private final boolean deep;
-
-    private EntryIterator(Exchange exchange, boolean deep) {
-      this.exchange = exchange;
-      this.deep = deep;
-    }
-
-    @Override
-    public boolean hasNext() {
-      try {
-        return exchange.next(deep);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-    }
-
-    @Override
-    public Entry next() {
-      Serializable value = null;
-      if (exchange.getValue().isDefined()) {
-        value = (Serializable) exchange.getValue().get();
+  /**
+   * Moves the in-memory elements to the Persistit volume. Following operations are executed on disk.
+   */
+  void spill() {
+    spillLock.writeLock().lock();
+    try {
+      if (storage instanceof MemoryCacheStorage) {
+        MemoryCacheStorage<K, V> memoryStorage = (MemoryCacheStorage<K, V>) storage;
+        CacheStorage<K, V> persistitStorage = caches.createPersistitStorage(name);
+        for (String group : memoryStorage.groups()) {
+          for (K key : memoryStorage.keySet(group)) {
+            persistitStorage.put(group, key, memoryStorage.get(group, key));
+          }
+        }
+        memoryStorage.clearAll();
+        storage = persistitStorage;
       }
-      Key key = exchange.getKey();
-      return new Entry(key.indexTo(-2).decodeString(), key.indexTo(-1).decodeString(), value);
-    }
-
-    @Override
-    public void remove() {
-      // nothing to do
+    } finally {
+      spillLock.writeLock().unlock();
     }
   }
 
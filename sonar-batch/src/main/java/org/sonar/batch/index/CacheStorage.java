@@ -0,0 +1,57 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import javax.annotation.CheckForNull;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * Storage backing a {@link Cache}. Elements are identified by a group and a key, and are iterated
+ * in the natural order of groups then keys.
+ */
+interface CacheStorage<K, V extends Serializable> {
+
+  void put(String group, K key, V value);
+
+  @CheckForNull
+  V get(String group, K key);
+
+  boolean containsKey(String group, K key);
+
+  boolean remove(String group, K key);
+
+  void clear(String group);
+
+  void clearAll();
+
+  Set<K> keySet(String group);
+
+  Iterable<V> values(String group);
+
+  Iterable<V> allValues();
+
+  Set<String> groups();
+
+  <T extends Serializable> Iterable<Cache.Entry<T>> entries();
+
+  <T extends Serializable> Iterable<Cache.Entry<T>> entries(String group);
+}
@@ -24,18 +24,23 @@ import com.google.common.collect.Sets;
 import com.persistit.Exchange;
 import com.persistit.Persistit;
 import com.persistit.Volume;
+import com.persistit.encoding.ValueCoder;
 import com.persistit.exception.PersistitException;
 import com.persistit.logging.Slf4jAdapter;
 import org.apache.commons.io.FileUtils;
 import org.picocontainer.Startable;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.TempFolder;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Factory of caches
@@ -44,14 +49,35 @@ import java.util.Set;
  */
 public class Caches implements BatchComponent, Startable {
 
+  /**
+   * Whether caches keep their elements in memory before moving them to disk. Default value is true.
+   */
+  public static final String IN_MEMORY_PROPERTY = "sonar.batch.cache.inMemory";
+
+  /**
+   * Maximum number of bytes used by the elements kept in memory, all caches included. When reached, the cache that
+   * receives a new element moves all its elements to disk. The size of immutable values is estimated from a sample,
+   * the size of other values is the size of their encoded copy. The size of keys is estimated.
+   */
+  public static final String MAX_IN_MEMORY_BYTES_PROPERTY = "sonar.batch.cache.maxInMemoryBytes";
+  public static final long MAX_IN_MEMORY_BYTES_DEFAULT_VALUE = 64L * 1024 * 1024;
+
   private final Set<String> cacheNames = Sets.newHashSet();
+  private final Set<Class<?>> immutableClasses = new CopyOnWriteArraySet<Class<?>>(Arrays.<Class<?>>asList(
+    String.class, Boolean.class, Integer.class, Long.class, Double.class));
+  private final AtomicLong inMemoryBytes = new AtomicLong();
+  private final boolean inMemory;
+  private final long maxInMemoryBytes;
   private File tempDir;
   private Persistit persistit;
   private Volume volume;
   private final TempFolder tempFolder;
 
-  public Caches(TempFolder tempFolder) {
+  public Caches(TempFolder tempFolder, Settings settings) {
     this.tempFolder = tempFolder;
+    this.inMemory = !settings.hasKey(IN_MEMORY_PROPERTY) || settings.getBoolean(IN_MEMORY_PROPERTY);
+    this.maxInMemoryBytes = settings.hasKey(MAX_IN_MEMORY_BYTES_PROPERTY) ?
+      settings.getLong(MAX_IN_MEMORY_BYTES_PROPERTY) : MAX_IN_MEMORY_BYTES_DEFAULT_VALUE;
     initPersistit();
   }
 
@@ -80,16 +106,57 @@ public class Caches implements BatchComponent, Startable {
   public <K extends Serializable, V extends Serializable> Cache<K, V> createCache(String cacheName) {
     Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
     Preconditions.checkState(!cacheNames.contains(cacheName), "Cache is already created: " + cacheName);
+    CacheStorage<K, V> storage;
+    if (inMemory) {
+      storage = new MemoryCacheStorage<K, V>(persistit, inMemoryBytes, immutableClasses);
+    } else {
+      storage = createPersistitStorage(cacheName);
+    }
+    cacheNames.add(cacheName);
+    return new Cache<K, V>(cacheName, this, storage);
+  }
+
+  /**
+   * Registers the codec used to store the values of the given class, in memory or on disk. By default values are stored
+   * with Java serialization.
+   *
+   * @see VersionedValueCoder
+   */
+  public Caches registerValueCoder(Class<?> valueClass, ValueCoder valueCoder) {
+    Preconditions.checkState(persistit != null, "Caches are not initialized");
+    persistit.getCoderManager().registerValueCoder(valueClass, valueCoder);
+    return this;
+  }
+
+  /**
+   * Declares that the values of the given class are never modified once put in a cache, so they can be kept in memory
+   * as is, without being copied. Values of other classes are copied when put in or read from an in-memory cache.
+   *
+   * @since 4.1.3
+   */
+  public Caches registerImmutableValue(Class<?> valueClass) {
+    immutableClasses.add(valueClass);
+    return this;
+  }
+
+  synchronized <K, V extends Serializable> CacheStorage<K, V> createPersistitStorage(String cacheName) {
+    Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
     try {
       Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      Cache<K, V> cache = new Cache<K, V>(cacheName, exchange);
-      cacheNames.add(cacheName);
-      return cache;
+      return new PersistitCacheStorage<K, V>(cacheName, exchange);
     } catch (Exception e) {
       throw new IllegalStateException("Fail to create cache: " + cacheName, e);
     }
   }
 
+  boolean isMemoryThresholdReached() {
+    return inMemoryBytes.get() > maxInMemoryBytes;
+  }
+
+  long inMemoryBytes() {
+    return inMemoryBytes.get();
+  }
+
   @Override
   public void start() {
   }
@@ -108,6 +175,7 @@ public class Caches implements BatchComponent, Startable {
     FileUtils.deleteQuietly(tempDir);
     tempDir = null;
     cacheNames.clear();
+    inMemoryBytes.set(0L);
   }
 
   File tempDir() {
@@ -20,11 +20,16 @@
 package org.sonar.batch.index;
 
 import org.sonar.api.BatchComponent;
+import org.sonar.batch.source.SyntaxHighlightingData;
+import org.sonar.batch.source.SyntaxHighlightingDataValueCoder;
 
 public class ComponentDataCache implements BatchComponent {
   private final Cache cache;
 
   public ComponentDataCache(Caches caches) {
+    caches.registerValueCoder(StringData.class, new StringDataValueCoder());
+    caches.registerImmutableValue(StringData.class);
+    caches.registerValueCoder(SyntaxHighlightingData.class, new SyntaxHighlightingDataValueCoder());
     cache = caches.createCache("componentData");
   }
 
@@ -19,11 +19,13 @@
  */
 package org.sonar.batch.index;
 
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.core.persistence.BatchSession;
 import org.sonar.core.persistence.MyBatis;
 import org.sonar.core.source.jdbc.SnapshotDataDao;
 import org.sonar.core.source.jdbc.SnapshotDataDto;
+import org.sonar.core.source.jdbc.TextCodec;
 
 import java.util.Map;
 
@@ -32,33 +34,39 @@ public class ComponentDataPersister implements ScanPersister {
   private final SnapshotCache snapshots;
   private final SnapshotDataDao dao;
   private final MyBatis mybatis;
+  private final boolean compress;
 
   public ComponentDataPersister(ComponentDataCache data, SnapshotCache snapshots,
-                                SnapshotDataDao dao, MyBatis mybatis) {
+                                SnapshotDataDao dao, MyBatis mybatis, Settings settings) {
     this.data = data;
     this.snapshots = snapshots;
     this.dao = dao;
     this.mybatis = mybatis;
+    this.compress = settings.getBoolean(TextCodec.COMPRESSION_PROPERTY);
   }
 
   @Override
   public void persist() {
     BatchSession session = mybatis.openBatchSession();
-    for (Map.Entry<String, Snapshot> componentEntry : snapshots.snapshots()) {
-      String componentKey = componentEntry.getKey();
-      Snapshot snapshot = componentEntry.getValue();
-      for (Cache.Entry<Data> dataEntry : data.entries(componentKey)) {
-        Data value = dataEntry.value();
-        if (value != null) {
-          SnapshotDataDto dto = new SnapshotDataDto();
-          dto.setSnapshotId(snapshot.getId());
-          dto.setResourceId(snapshot.getResourceId());
-          dto.setDataType(dataEntry.key());
-          dto.setData(value.writeString());
-          dao.insert(session, dto);
+    try {
+      for (Map.Entry<String, Snapshot> componentEntry : snapshots.snapshots()) {
+        String componentKey = componentEntry.getKey();
+        Snapshot snapshot = componentEntry.getValue();
+        for (Cache.Entry<Data> dataEntry : data.entries(componentKey)) {
+          Data value = dataEntry.value();
+          if (value != null) {
+            SnapshotDataDto dto = new SnapshotDataDto();
+            dto.setSnapshotId(snapshot.getId());
+            dto.setResourceId(snapshot.getResourceId());
+            dto.setDataType(dataEntry.key());
+            dto.setData(TextCodec.encode(value.writeString(), compress));
+            dao.insert(session, dto);
+          }
         }
       }
+      session.commit();
+    } finally {
+      MyBatis.closeQuietly(session);
     }
-    session.commit();
   }
 }
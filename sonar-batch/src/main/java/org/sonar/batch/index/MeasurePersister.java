@@ -24,7 +24,10 @@ import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
 import org.apache.ibatis.session.SqlSession;
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.MeasureMapper;
 import org.sonar.api.database.model.MeasureModel;
 import org.sonar.api.database.model.Snapshot;
@@ -37,6 +40,7 @@ import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.technicaldebt.batch.Characteristic;
 import org.sonar.api.technicaldebt.batch.Requirement;
 import org.sonar.api.utils.SonarException;
+import org.sonar.api.utils.TimeUtils;
 import org.sonar.core.persistence.MyBatis;
 
 import java.util.Collection;
@@ -44,21 +48,47 @@ import java.util.List;
 import java.util.Map;
 
 public final class MeasurePersister {
+
+  /**
+   * Number of database-only measures that are kept in memory during the sensors and decorators phases before
+   * being inserted in a single transaction. Ids of these measures are set when they are inserted. Default value is 1,
+   * which means that measures are inserted immediately.
+   */
+  public static final String BATCH_SIZE_PROPERTY = "sonar.batch.measures.batchSize";
+  public static final int BATCH_SIZE_DEFAULT_VALUE = 1;
+
+  private static final Logger LOG = LoggerFactory.getLogger(MeasurePersister.class);
+
   private final MyBatis mybatis;
   private final ResourcePersister resourcePersister;
   private final RuleFinder ruleFinder;
   private final MemoryOptimizer memoryOptimizer;
   private final SetMultimap<Resource, Measure> unsavedMeasuresByResource = LinkedHashMultimap.create();
+  private final SetMultimap<Resource, Measure> unflushedMeasuresByResource = LinkedHashMultimap.create();
+  private final int batchSize;
+  private final boolean profiling;
   private boolean delayedMode = false;
+  private long statements = 0L;
+  private long flushTime = 0L;
 
-  public MeasurePersister(MyBatis mybatis, ResourcePersister resourcePersister, RuleFinder ruleFinder, MemoryOptimizer memoryOptimizer) {
+  public MeasurePersister(MyBatis mybatis, ResourcePersister resourcePersister, RuleFinder ruleFinder, MemoryOptimizer memoryOptimizer, Settings settings) {
     this.mybatis = mybatis;
     this.resourcePersister = resourcePersister;
     this.ruleFinder = ruleFinder;
     this.memoryOptimizer = memoryOptimizer;
+    this.batchSize = Math.max(1, settings.hasKey(BATCH_SIZE_PROPERTY) ? settings.getInt(BATCH_SIZE_PROPERTY) : BATCH_SIZE_DEFAULT_VALUE);
+    this.profiling = settings.getBoolean(CoreProperties.PROFILING_LOG_PROPERTY);
+  }
+
+  @VisibleForTesting
+  MeasurePersister(MyBatis mybatis, ResourcePersister resourcePersister, RuleFinder ruleFinder, MemoryOptimizer memoryOptimizer) {
+    this(mybatis, resourcePersister, ruleFinder, memoryOptimizer, new Settings());
   }
 
   public void setDelayedMode(boolean delayedMode) {
+    if (!delayedMode) {
+      flush();
+    }
     this.delayedMode = delayedMode;
   }
 
@@ -67,9 +97,18 @@ public final class MeasurePersister {
   }
 
   public void dump() {
-    LoggerFactory.getLogger(getClass()).debug("{} measures to dump", unsavedMeasuresByResource.size());
+    LOG.debug("{} measures to dump", unsavedMeasuresByResource.size());
 
+    flush();
+    long start = System.currentTimeMillis();
     insert(getMeasuresToSave());
+    flushTime += System.currentTimeMillis() - start;
+
+    if (profiling) {
+      LOG.info(String.format("Measures persistence: %d SQL statements, flush time %s", statements, TimeUtils.formatDuration(flushTime)));
+    }
+    statements = 0L;
+    flushTime = 0L;
   }
 
   public void saveMeasure(Resource resource, Measure measure) {
@@ -77,6 +116,19 @@ public final class MeasurePersister {
       unsavedMeasuresByResource.put(resource, measure);
       return;
     }
+    if (shouldFlushLater(measure)) {
+      // fail fast if the resource is not saved
+      resourcePersister.getSnapshotOrFail(resource);
+      if (!unflushedMeasuresByResource.put(resource, measure)) {
+        // keep the latest instance
+        unflushedMeasuresByResource.remove(resource, measure);
+        unflushedMeasuresByResource.put(resource, measure);
+      }
+      if (unflushedMeasuresByResource.size() >= batchSize) {
+        flush();
+      }
+      return;
+    }
     MeasureModel model;
     try {
       model = insertOrUpdate(resource, measure);
@@ -106,6 +158,36 @@ public final class MeasurePersister {
     return delayedMode && measure.getPersistenceMode().useMemory();
   }
 
+  private boolean shouldFlushLater(Measure measure) {
+    return delayedMode && batchSize > 1 && measure.getId() == null;
+  }
+
+  /**
+   * Inserts the database-only measures kept in memory, sets their ids and removes their data from memory.
+   */
+  private void flush() {
+    if (unflushedMeasuresByResource.isEmpty()) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    List<MeasureModelAndDetails> values = Lists.newArrayList();
+    for (Map.Entry<Resource, Measure> entry : unflushedMeasuresByResource.entries()) {
+      Resource resource = entry.getKey();
+      Measure measure = entry.getValue();
+      if (shouldPersistMeasure(resource, measure)) {
+        Snapshot snapshot = resourcePersister.getSnapshotOrFail(resource);
+        values.add(new MeasureModelAndDetails(model(measure).setSnapshotId(snapshot.getId()), resource.getKey(), measure.getMetricKey(), measure));
+      }
+    }
+    unflushedMeasuresByResource.clear();
+    insert(values);
+    for (MeasureModelAndDetails value : values) {
+      value.getMeasure().setId(value.getMeasureModel().getId());
+      memoryOptimizer.evictDataMeasure(value.getMeasure(), value.getMeasureModel());
+    }
+    flushTime += System.currentTimeMillis() - start;
+  }
+
   @VisibleForTesting
   static boolean shouldPersistMeasure(Resource resource, Measure measure) {
     return measure.getPersistenceMode().useDatabase() &&
@@ -130,7 +212,7 @@ public final class MeasurePersister {
       Snapshot snapshot = resourcePersister.getSnapshot(entry.getKey());
       for (Measure measure : entry.getValue()) {
         if (shouldPersistMeasure(resource, measure)) {
-          measures.add(new MeasureModelAndDetails(model(measure).setSnapshotId(snapshot.getId()), resource.getKey(), measure.getMetricKey()));
+          measures.add(new MeasureModelAndDetails(model(measure).setSnapshotId(snapshot.getId()), resource.getKey(), measure.getMetricKey(), measure));
         }
       }
     }
@@ -191,8 +273,10 @@ public final class MeasurePersister {
       for (MeasureModelAndDetails value : values) {
         try {
           mapper.insert(value.getMeasureModel());
+          statements++;
           if (value.getMeasureModel().getMeasureData() != null) {
             mapper.insertData(value.getMeasureModel().getMeasureData());
+            statements++;
           }
         } catch (Exception e) {
           // SONAR-4066
@@ -215,8 +299,10 @@ public final class MeasurePersister {
       MeasureMapper mapper = session.getMapper(MeasureMapper.class);
 
       mapper.insert(value);
+      statements++;
       if (value.getMeasureData() != null) {
         mapper.insertData(value.getMeasureData());
+        statements++;
       }
 
       session.commit();
@@ -238,8 +324,10 @@ public final class MeasurePersister {
 
       mapper.update(value);
       mapper.deleteData(value);
+      statements += 2;
       if (value.getMeasureData() != null) {
         mapper.insertData(value.getMeasureData());
+        statements++;
       }
 
       session.commit();
@@ -255,11 +343,13 @@ public final class MeasurePersister {
     private final MeasureModel measureModel;
     private final String resourceKey;
     private final String metricKey;
+    private final Measure measure;
 
-    public MeasureModelAndDetails(MeasureModel measureModel, String resourceKey, String metricKey) {
+    public MeasureModelAndDetails(MeasureModel measureModel, String resourceKey, String metricKey, Measure measure) {
       this.measureModel = measureModel;
       this.resourceKey = resourceKey;
       this.metricKey = metricKey;
+      this.measure = measure;
     }
 
     public MeasureModel getMeasureModel() {
@@ -273,5 +363,9 @@ public final class MeasurePersister {
     public String getMetricKey() {
       return metricKey;
     }
+
+    public Measure getMeasure() {
+      return measure;
+    }
   }
 }
@@ -0,0 +1,305 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.persistit.Persistit;
+import com.persistit.Value;
+
+import javax.annotation.CheckForNull;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-heap storage. Keys must be {@link Comparable}.
+ * <p>
+ * Values of the classes registered as immutable, see {@link Caches#registerImmutableValue(Class)}, are kept as is.
+ * Other values are kept encoded with the codecs registered in Persistit, as they would be on disk, so callers
+ * always get copies which can be modified without changing the cache.
+ * </p>
+ * <p>
+ * The memory used by encoded values is known. The memory used by immutable values is estimated from the encoded
+ * size of a sample of them.
+ * </p>
+ * <p>
+ * Reads are lock-free. Writes are serialized per group through a fixed set of striped locks, so that
+ * groups can be updated and cleared concurrently without losing elements.
+ * </p>
+ */
+class MemoryCacheStorage<K, V extends Serializable> implements CacheStorage<K, V> {
+
+  private static final int LOCK_STRIPES = 16;
+
+  /**
+   * One immutable value out of SAMPLING_RATE is encoded to estimate the size of the others
+   */
+  static final int SAMPLING_RATE = 32;
+
+  /**
+   * Estimation of the memory used by the key and the nodes of the maps, in addition to the value
+   */
+  static final int ENTRY_OVERHEAD_BYTES = 100;
+
+  private final ConcurrentNavigableMap<String, ConcurrentNavigableMap<K, Element>> groups = new ConcurrentSkipListMap<String, ConcurrentNavigableMap<K, Element>>();
+  private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+  private final AtomicLong bytes = new AtomicLong();
+  // bytes of all the in-memory caches
+  private final AtomicLong totalBytes;
+  private final Set<Class<?>> immutableClasses;
+  private final AtomicLong immutablePuts = new AtomicLong();
+  private volatile long sampledSize = 0L;
+  private final ThreadLocal<Value> values;
+
+  MemoryCacheStorage(final Persistit persistit, AtomicLong totalBytes, Set<Class<?>> immutableClasses) {
+    this.totalBytes = totalBytes;
+    this.immutableClasses = immutableClasses;
+    this.values = new ThreadLocal<Value>() {
+      @Override
+      protected Value initialValue() {
+        return new Value(persistit);
+      }
+    };
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Estimated number of bytes used by the elements, all groups included
+   */
+  long bytes() {
+    return bytes.get();
+  }
+
+  @Override
+  public void put(String group, K key, V value) {
+    Element element = toElement(value);
+    ReentrantLock lock = lock(group);
+    lock.lock();
+    try {
+      ConcurrentNavigableMap<K, Element> map = groups.get(group);
+      if (map == null) {
+        map = new ConcurrentSkipListMap<K, Element>();
+        groups.put(group, map);
+      }
+      Element previous = map.put(key, element);
+      addToSize(element.size - (previous != null ? previous.size : 0L));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  @CheckForNull
+  public V get(String group, K key) {
+    Map<K, Element> map = groups.get(group);
+    return map != null ? toValue(map.get(key)) : null;
+  }
+
+  @Override
+  public boolean containsKey(String group, K key) {
+    Map<K, Element> map = groups.get(group);
+    return map != null && map.containsKey(key);
+  }
+
+  @Override
+  public boolean remove(String group, K key) {
+    ReentrantLock lock = lock(group);
+    lock.lock();
+    try {
+      Map<K, Element> map = groups.get(group);
+      if (map != null) {
+        Element previous = map.remove(key);
+        if (previous != null) {
+          addToSize(-previous.size);
+          if (map.isEmpty()) {
+            groups.remove(group);
+          }
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear(String group) {
+    ReentrantLock lock = lock(group);
+    lock.lock();
+    try {
+      Map<K, Element> map = groups.remove(group);
+      if (map != null) {
+        long removed = 0L;
+        for (Element element : map.values()) {
+          removed += element.size;
+        }
+        addToSize(-removed);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clearAll() {
+    for (String group : groups.keySet()) {
+      clear(group);
+    }
+  }
+
+  @Override
+  public Set<K> keySet(String group) {
+    Map<K, Element> map = groups.get(group);
+    if (map == null) {
+      return Sets.newLinkedHashSet();
+    }
+    return Sets.newLinkedHashSet(map.keySet());
+  }
+
+  @Override
+  public Iterable<V> values(String group) {
+    Map<K, Element> map = groups.get(group);
+    if (map == null) {
+      return Collections.emptyList();
+    }
+    return toValues(map.values());
+  }
+
+  @Override
+  public Iterable<V> allValues() {
+    List<Iterable<V>> values = Lists.newArrayList();
+    for (Map<K, Element> map : groups.values()) {
+      values.add(toValues(map.values()));
+    }
+    return Iterables.unmodifiableIterable(Iterables.concat(values));
+  }
+
+  @Override
+  public Set<String> groups() {
+    return Sets.newLinkedHashSet(groups.keySet());
+  }
+
+  @Override
+  public <T extends Serializable> Iterable<Cache.Entry<T>> entries() {
+    List<Cache.Entry<T>> entries = Lists.newArrayList();
+    for (Map.Entry<String, ConcurrentNavigableMap<K, Element>> group : groups.entrySet()) {
+      addEntries(group.getKey(), group.getValue(), entries);
+    }
+    return entries;
+  }
+
+  @Override
+  public <T extends Serializable> Iterable<Cache.Entry<T>> entries(String group) {
+    List<Cache.Entry<T>> entries = Lists.newArrayList();
+    Map<K, Element> map = groups.get(group);
+    if (map != null) {
+      addEntries(group, map, entries);
+    }
+    return entries;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends Serializable> void addEntries(String group, Map<K, Element> map, List<Cache.Entry<T>> entries) {
+    for (Map.Entry<K, Element> entry : map.entrySet()) {
+      entries.add(new Cache.Entry<T>(group, String.valueOf(entry.getKey()), (T) toValue(entry.getValue())));
+    }
+  }
+
+  /**
+   * Encoded values are decoded lazily, so each iteration returns new copies
+   */
+  private Iterable<V> toValues(Iterable<Element> elements) {
+    return Iterables.unmodifiableIterable(Iterables.transform(elements, new Function<Element, V>() {
+      public V apply(Element element) {
+        return toValue(element);
+      }
+    }));
+  }
+
+  private Element toElement(V value) {
+    if (value == null || !immutableClasses.contains(value.getClass())) {
+      byte[] encoded = encode(value);
+      return new Element(encoded, true, (long) encoded.length + ENTRY_OVERHEAD_BYTES);
+    }
+    long size = sampledSize;
+    if (immutablePuts.getAndIncrement() % SAMPLING_RATE == 0) {
+      size = encode(value).length;
+      sampledSize = size;
+    }
+    return new Element(value, false, size + ENTRY_OVERHEAD_BYTES);
+  }
+
+  @SuppressWarnings("unchecked")
+  @CheckForNull
+  private V toValue(@CheckForNull Element element) {
+    if (element == null) {
+      return null;
+    }
+    if (!element.encoded) {
+      return (V) element.value;
+    }
+    byte[] encoded = (byte[]) element.value;
+    Value decoder = values.get();
+    decoder.putEncodedBytes(encoded, 0, encoded.length);
+    return (V) decoder.get();
+  }
+
+  private byte[] encode(@CheckForNull V value) {
+    Value encoder = values.get();
+    encoder.put(value);
+    return Arrays.copyOf(encoder.getEncodedBytes(), encoder.getEncodedSize());
+  }
+
+  private void addToSize(long delta) {
+    bytes.addAndGet(delta);
+    totalBytes.addAndGet(delta);
+  }
+
+  private ReentrantLock lock(String group) {
+    return locks[(group.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+  }
+
+  private static final class Element {
+    // the value itself, or its encoded bytes
+    private final Object value;
+    private final boolean encoded;
+    private final long size;
+
+    private Element(Object value, boolean encoded, long size) {
+      this.value = value;
+      this.encoded = encoded;
+      this.size = size;
+    }
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.Sets;
+import com.persistit.Exchange;
+import com.persistit.Key;
+import com.persistit.exception.PersistitException;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Disk-backed storage. Values are serialized in a Persistit B-tree.
+ * <p>
+ * Access to the underlying {@link com.persistit.Exchange} is synchronized. Lazy iterators
+ * use their own copy of the exchange.
+ * </p>
+ */
+class PersistitCacheStorage<K, V extends Serializable> implements CacheStorage<K, V> {
+
+  private final String name;
+  private final Exchange exchange;
+
+  PersistitCacheStorage(String name, Exchange exchange) {
+    this.name = name;
+    this.exchange = exchange;
+  }
+
+  @Override
+  public synchronized void put(String group, K key, V value) {
+    try {
+      exchange.clear();
+      exchange.append(group).append(key);
+      exchange.getValue().put(value);
+      exchange.store();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to put element in the cache " + name, e);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized V get(String group, K key) {
+    try {
+      exchange.clear();
+      exchange.append(group).append(key);
+      exchange.fetch();
+      if (!exchange.getValue().isDefined()) {
+        return null;
+      }
+      return (V) exchange.getValue().get();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized boolean containsKey(String group, K key) {
+    try {
+      exchange.clear();
+      exchange.append(group).append(key);
+      exchange.fetch();
+      return exchange.isValueDefined();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to check if element is in cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized boolean remove(String group, K key) {
+    try {
+      exchange.clear();
+      exchange.append(group).append(key);
+      return exchange.remove();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized void clear(String group) {
+    try {
+      exchange.clear();
+      exchange.append(group);
+      Key key = new Key(exchange.getKey());
+      key.append(Key.AFTER);
+      exchange.removeKeyRange(exchange.getKey(), key);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to clear group '" + group + "' from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized void clearAll() {
+    try {
+      exchange.clear();
+      exchange.removeAll();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to clear cache", e);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized Set<K> keySet(String group) {
+    try {
+      Set<K> keys = Sets.newLinkedHashSet();
+      exchange.clear();
+      Exchange iteratorExchange = new Exchange(exchange);
+
+      iteratorExchange.append(group);
+      iteratorExchange.append(Key.BEFORE);
+      while (iteratorExchange.next(false)) {
+        keys.add((K) iteratorExchange.getKey().indexTo(-1).decode());
+      }
+      return keys;
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get keys from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized Iterable<V> values(String group) {
+    try {
+      exchange.clear();
+      Exchange iteratorExchange = new Exchange(exchange);
+      iteratorExchange.append(group).append(Key.BEFORE);
+      return new ValueIterable<V>(iteratorExchange, false);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get values from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized Iterable<V> allValues() {
+    try {
+      exchange.clear();
+      Exchange iteratorExchange = new Exchange(exchange);
+      iteratorExchange.append(Key.BEFORE);
+      return new ValueIterable<V>(iteratorExchange, true);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get values from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized Set<String> groups() {
+    try {
+      Set<String> groups = Sets.newLinkedHashSet();
+      exchange.clear();
+      Exchange iteratorExchange = new Exchange(exchange);
+      iteratorExchange.append(Key.BEFORE);
+      while (iteratorExchange.next(false)) {
+        groups.add(iteratorExchange.getKey().decodeString());
+      }
+      return groups;
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get values from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized <T extends Serializable> Iterable<Cache.Entry<T>> entries() {
+    exchange.clear().to(Key.BEFORE);
+    return new EntryIterable<T>(new Exchange(exchange), true);
+  }
+
+  @Override
+  public synchronized <T extends Serializable> Iterable<Cache.Entry<T>> entries(String group) {
+    exchange.clear().append(group).append(Key.BEFORE);
+    return new EntryIterable<T>(new Exchange(exchange), false);
+  }
+
+  //
+  // LAZY ITERATORS AND ITERABLES
+  //
+
+  private static class ValueIterable<T extends Serializable> implements Iterable<T> {
+    private final Iterator<T> iterator;
+
+    private ValueIterable(Exchange exchange, boolean deep) {
+      this.iterator = new ValueIterator<T>(exchange, deep);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return iterator;
+    }
+  }
+
+  private static class ValueIterator<T extends Serializable> implements Iterator<T> {
+    private final Exchange exchange;
+    private final boolean deep;
+
+    private ValueIterator(Exchange exchange, boolean deep) {
+      this.exchange = exchange;
+      this.deep = deep;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.next(deep);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public T next() {
+      T value = null;
+      if (exchange.getValue().isDefined()) {
+        value = (T) exchange.getValue().get();
+      }
+      return value;
+    }
+
+    @Override
+    public void remove() {
+    }
+  }
+
+  private static class EntryIterable<T extends Serializable> implements Iterable<Cache.Entry<T>> {
+    private final EntryIterator<T> it;
+
+    private EntryIterable(Exchange exchange, boolean deep) {
+      it = new EntryIterator<T>(exchange, deep);
+    }
+
+    @Override
+    public Iterator<Cache.Entry<T>> iterator() {
+      return it;
+    }
+  }
+
+  private static class EntryIterator<T extends Serializable> implements Iterator<Cache.Entry<T>> {
+    private final Exchange exchange;
+    private final boolean deep;
+
+    private EntryIterator(Exchange exchange, boolean deep) {
+      this.exchange = exchange;
+      this.deep = deep;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.next(deep);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public Cache.Entry<T> next() {
+      T value = null;
+      if (exchange.getValue().isDefined()) {
+        value = (T) exchange.getValue().get();
+      }
+      Key key = exchange.getKey();
+      return new Cache.Entry<T>(key.indexTo(-2).decodeString(), key.indexTo(-1).decodeString(), value);
+    }
+
+    @Override
+    public void remove() {
+      // nothing to do
+    }
+  }
+}
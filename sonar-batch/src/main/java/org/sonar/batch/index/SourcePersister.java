@@ -19,24 +19,44 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import org.sonar.api.database.DatabaseSession;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.Snapshot;
-import org.sonar.api.database.model.SnapshotSource;
 import org.sonar.api.resources.DuplicatedSourceException;
 import org.sonar.api.resources.Resource;
+import org.sonar.core.persistence.BatchSession;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.source.jdbc.SnapshotSourceDao;
+import org.sonar.core.source.jdbc.TextCodec;
 
+import javax.annotation.CheckForNull;
+
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Sources are not inserted one by one, but by batches of {@link #MAX_PENDING_SOURCES} files. Remaining sources
+ * are inserted when {@link #flush()} is called.
+ */
 public final class SourcePersister {
 
-  private DatabaseSession session;
+  static final int MAX_PENDING_SOURCES = 100;
+
+  private final MyBatis mybatis;
+  private final SnapshotSourceDao dao;
+  private final ResourcePersister resourcePersister;
+  private final boolean compress;
   private Set<Integer> savedSnapshotIds = Sets.newHashSet();
-  private ResourcePersister resourcePersister;
 
-  public SourcePersister(DatabaseSession session, ResourcePersister resourcePersister) {
-    this.session = session;
+  // sources that are not inserted yet, by snapshot id
+  private Map<Integer, String> pendingSources = Maps.newLinkedHashMap();
+
+  public SourcePersister(MyBatis mybatis, SnapshotSourceDao dao, ResourcePersister resourcePersister, Settings settings) {
+    this.mybatis = mybatis;
+    this.dao = dao;
     this.resourcePersister = resourcePersister;
+    this.compress = settings.getBoolean(TextCodec.COMPRESSION_PROPERTY);
   }
 
   public void saveSource(Resource resource, String source) {
@@ -44,18 +64,39 @@ public final class SourcePersister {
     if (isCached(snapshot)) {
       throw new DuplicatedSourceException(resource);
     }
-    session.save(new SnapshotSource(snapshot.getId(), source));
-    session.commit();
+    pendingSources.put(snapshot.getId(), source);
     addToCache(snapshot);
+    if (pendingSources.size() >= MAX_PENDING_SOURCES) {
+      flush();
+    }
   }
 
+  @CheckForNull
   public String getSource(Resource resource) {
-    SnapshotSource source = null;
     Snapshot snapshot = resourcePersister.getSnapshot(resource);
-    if (snapshot!=null && snapshot.getId()!=null) {
-      source = session.getSingleResult(SnapshotSource.class, "snapshotId", snapshot.getId());
+    if (snapshot != null && snapshot.getId() != null) {
+      String source = pendingSources.get(snapshot.getId());
+      return source != null ? source : dao.selectSnapshotSource(snapshot.getId());
+    }
+    return null;
+  }
+
+  /**
+   * Inserts the pending sources in a single batch
+   */
+  public void flush() {
+    if (!pendingSources.isEmpty()) {
+      BatchSession session = mybatis.openBatchSession();
+      try {
+        for (Map.Entry<Integer, String> entry : pendingSources.entrySet()) {
+          dao.insert(session, entry.getKey(), TextCodec.encode(entry.getValue(), compress));
+        }
+        session.commit();
+      } finally {
+        MyBatis.closeQuietly(session);
+      }
+      pendingSources.clear();
     }
-    return source!=null ? source.getData() : null;
   }
 
   private boolean isCached(Snapshot snapshot) {
@@ -67,6 +108,7 @@ public final class SourcePersister {
   }
 
   public void clear() {
+    flush();
     savedSnapshotIds.clear();
   }
 }
@@ -0,0 +1,44 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.persistit.Value;
+
+/**
+ * Binary format of {@link StringData} in {@link ComponentDataCache}
+ */
+class StringDataValueCoder extends VersionedValueCoder<StringData> {
+
+  private static final int VERSION = 1;
+
+  StringDataValueCoder() {
+    super(VERSION);
+  }
+
+  @Override
+  protected void encode(Value value, StringData data) {
+    putString(value, data.data());
+  }
+
+  @Override
+  protected StringData decode(Value value) {
+    return new StringData(getString(value));
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.Maps;
+import com.persistit.Value;
+import com.persistit.encoding.CoderContext;
+import com.persistit.encoding.ValueCoder;
+import com.persistit.exception.ConversionException;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Base class of the hand-written binary codecs used to store cache values on disk instead of Java serialization.
+ * Each value starts with the version of its format, so that a codec fails fast when reading data written by another version.
+ * Coders are registered through {@link Caches#registerValueCoder(Class, ValueCoder)}.
+ *
+ * @since 4.1.3
+ */
+public abstract class VersionedValueCoder<T> implements ValueCoder {
+
+  private final int version;
+  private final ConcurrentMap<String, String> internedStrings = new ConcurrentHashMap<String, String>();
+
+  protected VersionedValueCoder(int version) {
+    this.version = version;
+  }
+
+  @Override
+  public final void put(Value value, Object object, CoderContext context) {
+    value.put(version);
+    encode(value, (T) object);
+  }
+
+  @Override
+  public final Object get(Value value, Class<?> clazz, CoderContext context) {
+    int storedVersion = value.getInt();
+    if (storedVersion != version) {
+      throw new ConversionException("Unsupported format version " + storedVersion + " of " + clazz.getName() + ", expected " + version);
+    }
+    return decode(value);
+  }
+
+  protected abstract void encode(Value value, T object);
+
+  protected abstract T decode(Value value);
+
+  protected static void putString(Value value, @Nullable String s) {
+    if (s == null) {
+      value.putNull();
+    } else {
+      value.put(s);
+    }
+  }
+
+  @CheckForNull
+  protected static String getString(Value value) {
+    return value.isNull(true) ? null : value.getString();
+  }
+
+  /**
+   * Same as {@link #getString(Value)}, but equal strings share the same instance. To be used for values
+   * with few distinct occurrences, like rule or component keys.
+   */
+  @CheckForNull
+  protected String getInternedString(Value value) {
+    String s = getString(value);
+    if (s == null) {
+      return null;
+    }
+    String interned = internedStrings.putIfAbsent(s, s);
+    return interned != null ? interned : s;
+  }
+
+  protected static void putInteger(Value value, @Nullable Integer i) {
+    if (i == null) {
+      value.putNull();
+    } else {
+      value.put(i.intValue());
+    }
+  }
+
+  @CheckForNull
+  protected static Integer getInteger(Value value) {
+    return value.isNull(true) ? null : value.getInt();
+  }
+
+  protected static void putLong(Value value, @Nullable Long l) {
+    if (l == null) {
+      value.putNull();
+    } else {
+      value.put(l.longValue());
+    }
+  }
+
+  @CheckForNull
+  protected static Long getLong(Value value) {
+    return value.isNull(true) ? null : value.getLong();
+  }
+
+  protected static void putDouble(Value value, @Nullable Double d) {
+    if (d == null) {
+      value.putNull();
+    } else {
+      value.put(d.doubleValue());
+    }
+  }
+
+  @CheckForNull
+  protected static Double getDouble(Value value) {
+    return value.isNull(true) ? null : value.getDouble();
+  }
+
+  protected static void putDate(Value value, @Nullable Date d) {
+    if (d == null) {
+      value.putNull();
+    } else {
+      value.put(d.getTime());
+    }
+  }
+
+  @CheckForNull
+  protected static Date getDate(Value value) {
+    return value.isNull(true) ? null : new Date(value.getLong());
+  }
+
+  protected static void putStringMap(Value value, @Nullable Map<String, String> map) {
+    if (map == null) {
+      value.putNull();
+    } else {
+      value.put(map.size());
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        putString(value, entry.getKey());
+        putString(value, entry.getValue());
+      }
+    }
+  }
+
+  @CheckForNull
+  protected Map<String, String> getStringMap(Value value) {
+    if (value.isNull(true)) {
+      return null;
+    }
+    int size = value.getInt();
+    Map<String, String> map = Maps.newHashMapWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      map.put(getInternedString(value), getString(value));
+    }
+    return map;
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.issue;
+
+import com.persistit.Value;
+import org.sonar.api.issue.IssueComment;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.issue.internal.DefaultIssueComment;
+import org.sonar.api.issue.internal.FieldDiffs;
+import org.sonar.api.issue.internal.WorkDayDuration;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.batch.index.VersionedValueCoder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Binary format of {@link DefaultIssue} in {@link IssueCache}. Changes and comments, which are
+ * rare on issues of the current analysis, are still encoded with Java serialization.
+ */
+class DefaultIssueValueCoder extends VersionedValueCoder<DefaultIssue> {
+
+  private static final int VERSION = 1;
+  private static final int NO_CURRENT_CHANGE = -1;
+  private static final int DETACHED_CURRENT_CHANGE = -2;
+
+  private final ConcurrentMap<String, RuleKey> ruleKeys = new ConcurrentHashMap<String, RuleKey>();
+
+  DefaultIssueValueCoder() {
+    super(VERSION);
+  }
+
+  @Override
+  protected void encode(Value value, DefaultIssue issue) {
+    putString(value, issue.key());
+    putString(value, issue.componentKey());
+    putString(value, issue.projectKey());
+    RuleKey ruleKey = issue.ruleKey();
+    putString(value, ruleKey != null ? ruleKey.toString() : null);
+    putString(value, issue.severity());
+    value.put(issue.manualSeverity());
+    putString(value, issue.message());
+    putInteger(value, issue.line());
+    putDouble(value, issue.effortToFix());
+    WorkDayDuration technicalDebt = issue.technicalDebt();
+    if (technicalDebt == null) {
+      value.putNull();
+    } else {
+      value.put(technicalDebt.days());
+      value.put(technicalDebt.hours());
+      value.put(technicalDebt.minutes());
+    }
+    putString(value, issue.status());
+    putString(value, issue.resolution());
+    putString(value, issue.reporter());
+    putString(value, issue.assignee());
+    putString(value, issue.checksum());
+    putStringMap(value, issue.attributes());
+    putString(value, issue.authorLogin());
+    putString(value, issue.actionPlanKey());
+    putDate(value, issue.creationDate());
+    putDate(value, issue.updateDate());
+    putDate(value, issue.closeDate());
+    putDate(value, issue.selectedAt());
+    value.put(issue.isNew());
+    value.put(issue.isEndOfLife());
+    value.put(issue.isOnDisabledRule());
+    value.put(issue.isChanged());
+    value.put(issue.mustSendNotifications());
+    encodeChanges(value, issue);
+    encodeComments(value, issue);
+  }
+
+  /**
+   * The same instance of {@link FieldDiffs} can be referenced many times by the list of changes and by
+   * the current change. References are encoded as indexes in order to keep these instances shared once decoded.
+   */
+  private void encodeChanges(Value value, DefaultIssue issue) {
+    List<FieldDiffs> changes = issue.changes();
+    value.put(changes.size());
+    for (int i = 0; i < changes.size(); i++) {
+      FieldDiffs change = changes.get(i);
+      int index = indexOf(changes, i, change);
+      value.put(index);
+      if (index == i) {
+        value.put(change);
+      }
+    }
+    FieldDiffs currentChange = issue.currentChange();
+    if (currentChange == null) {
+      value.put(NO_CURRENT_CHANGE);
+    } else {
+      int index = indexOf(changes, changes.size(), currentChange);
+      if (index == changes.size()) {
+        value.put(DETACHED_CURRENT_CHANGE);
+        value.put(currentChange);
+      } else {
+        value.put(index);
+      }
+    }
+  }
+
+  /**
+   * Index of the first occurrence of the instance in the <code>limit</code> first changes, else <code>limit</code>.
+   */
+  private static int indexOf(List<FieldDiffs> changes, int limit, FieldDiffs change) {
+    for (int i = 0; i < limit; i++) {
+      if (changes.get(i) == change) {
+        return i;
+      }
+    }
+    return limit;
+  }
+
+  private void encodeComments(Value value, DefaultIssue issue) {
+    List<IssueComment> comments = issue.comments();
+    value.put(comments.size());
+    for (IssueComment comment : comments) {
+      value.put(comment);
+    }
+  }
+
+  @Override
+  protected DefaultIssue decode(Value value) {
+    DefaultIssue issue = new DefaultIssue();
+    issue.setKey(getString(value));
+    issue.setComponentKey(getInternedString(value));
+    issue.setProjectKey(getInternedString(value));
+    issue.setRuleKey(getRuleKey(value));
+    issue.setSeverity(getInternedString(value));
+    issue.setManualSeverity(value.getBoolean());
+    issue.setMessage(getString(value));
+    issue.setLine(getInteger(value));
+    issue.setEffortToFix(getDouble(value));
+    if (!value.isNull(true)) {
+      int days = value.getInt();
+      int hours = value.getInt();
+      int minutes = value.getInt();
+      issue.setTechnicalDebt(WorkDayDuration.of(minutes, hours, days));
+    }
+    String status = getInternedString(value);
+    if (status != null) {
+      issue.setStatus(status);
+    }
+    issue.setResolution(getInternedString(value));
+    issue.setReporter(getInternedString(value));
+    issue.setAssignee(getInternedString(value));
+    issue.setChecksum(getString(value));
+    Map<String, String> attributes = getStringMap(value);
+    if (attributes != null && !attributes.isEmpty()) {
+      issue.setAttributes(attributes);
+    }
+    issue.setAuthorLogin(getInternedString(value));
+    issue.setActionPlanKey(getInternedString(value));
+    issue.setCreationDate(getDate(value));
+    issue.setUpdateDate(getDate(value));
+    issue.setCloseDate(getDate(value));
+    issue.setSelectedAt(getDate(value));
+    issue.setNew(value.getBoolean());
+    issue.setEndOfLife(value.getBoolean());
+    issue.setOnDisabledRule(value.getBoolean());
+    issue.setChanged(value.getBoolean());
+    issue.setSendNotifications(value.getBoolean());
+    decodeChanges(value, issue);
+    decodeComments(value, issue);
+    return issue;
+  }
+
+  private RuleKey getRuleKey(Value value) {
+    String s = getString(value);
+    if (s == null) {
+      return null;
+    }
+    RuleKey ruleKey = ruleKeys.get(s);
+    if (ruleKey == null) {
+      ruleKey = RuleKey.parse(s);
+      ruleKeys.putIfAbsent(s, ruleKey);
+    }
+    return ruleKey;
+  }
+
+  private static void decodeChanges(Value value, DefaultIssue issue) {
+    int size = value.getInt();
+    FieldDiffs[] changes = new FieldDiffs[size];
+    for (int i = 0; i < size; i++) {
+      int index = value.getInt();
+      changes[i] = index == i ? (FieldDiffs) value.get() : changes[index];
+      issue.addChange(changes[i]);
+    }
+    int currentChangeIndex = value.getInt();
+    if (currentChangeIndex == DETACHED_CURRENT_CHANGE) {
+      issue.setCurrentChange((FieldDiffs) value.get());
+    } else if (currentChangeIndex != NO_CURRENT_CHANGE) {
+      issue.setCurrentChange(changes[currentChangeIndex]);
+    }
+  }
+
+  private static void decodeComments(Value value, DefaultIssue issue) {
+    int size = value.getInt();
+    for (int i = 0; i < size; i++) {
+      issue.addComment((DefaultIssueComment) value.get());
+    }
+  }
+}
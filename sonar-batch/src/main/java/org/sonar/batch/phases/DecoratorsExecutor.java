@@ -38,6 +38,10 @@ import org.sonar.batch.events.EventBus;
 import java.util.Collection;
 import java.util.List;
 
+/**
+ * Decorates the resource tree bottom-up, on a single thread. Decorators are stateful singletons sharing components
+ * that are not thread-safe, for example the database session or the index, so they must not be executed concurrently.
+ */
 public class DecoratorsExecutor implements BatchComponent {
 
   private DecoratorsSelector decoratorsSelector;
@@ -81,9 +85,9 @@ public class DecoratorsExecutor implements BatchComponent {
 
   void executeDecorator(Decorator decorator, DefaultDecoratorContext context, Resource resource) {
     try {
-      eventBus.fireEvent(new DecoratorExecutionEvent(decorator, true));
+      eventBus.fireEvent(new DecoratorExecutionEvent(decorator, resource, true));
       decorator.decorate(resource, context);
-      eventBus.fireEvent(new DecoratorExecutionEvent(decorator, false));
+      eventBus.fireEvent(new DecoratorExecutionEvent(decorator, resource, false));
 
     } catch (MessageException e) {
       throw e;
@@ -132,6 +132,9 @@ public final class PhaseExecutor {
       if (phases.isEnabled(Phases.Phase.POSTJOB)) {
         postJobsExecutor.execute(sensorContext);
       }
+      if (updateStatusJob != null) {
+        updateStatusJob.evictPreviewDB();
+      }
     }
     cleanMemory();
     eventBus.fireEvent(new ProjectAnalysisEvent(module, false));
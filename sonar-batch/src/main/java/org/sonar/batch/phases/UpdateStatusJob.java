@@ -65,11 +65,13 @@ public class UpdateStatusJob implements BatchComponent {
   public void execute() {
     disablePreviousSnapshot();
     enableCurrentSnapshot();
-    evictPreviewDB();
   }
 
-  @VisibleForTesting
-  void evictPreviewDB() {
+  /**
+   * Notifies the server that the database has been updated by the analysis. Must be called once the post-jobs,
+   * for example the purge, are executed.
+   */
+  public void evictPreviewDB() {
     if (analysisMode.isPreview()) {
       // If this is a preview analysis then we should not evict remote preview database
       return;
@@ -19,9 +19,19 @@
  */
 package org.sonar.batch.profiling;
 
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+
 public class ItemProfiling extends AbstractTimeProfiling {
 
   private final String itemName;
+  private long calls;
+  private long maxTime;
+  private final Map<String, Long> timePerQualifier = Maps.newTreeMap();
 
   public ItemProfiling(Clock clock, String itemName) {
     super(clock);
@@ -32,4 +42,63 @@ public class ItemProfiling extends AbstractTimeProfiling {
     return itemName;
   }
 
+  /**
+   * Number of executions, for example the number of resources processed by a decorator
+   */
+  public long calls() {
+    return calls;
+  }
+
+  public long maxTime() {
+    return maxTime;
+  }
+
+  public long avgTime() {
+    return calls == 0 ? 0 : totalTime() / calls;
+  }
+
+  /**
+   * Cumulated time per qualifier of the processed resources. Empty if resources are unknown, for example for sensors.
+   */
+  public Map<String, Long> timePerQualifier() {
+    return Collections.unmodifiableMap(timePerQualifier);
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    calls++;
+    maxTime = Math.max(maxTime, totalTime());
+  }
+
+  /**
+   * Records an execution of the item, which does not use the start time of this profiling.
+   */
+  public void addCall(long duration, @Nullable String qualifier) {
+    setTotalTime(totalTime() + duration);
+    calls++;
+    maxTime = Math.max(maxTime, duration);
+    if (qualifier != null) {
+      addQualifierTime(qualifier, duration);
+    }
+  }
+
+  @Override
+  protected void add(AbstractTimeProfiling other) {
+    super.add(other);
+    if (other instanceof ItemProfiling) {
+      ItemProfiling item = (ItemProfiling) other;
+      calls += item.calls;
+      maxTime = Math.max(maxTime, item.maxTime);
+      for (Map.Entry<String, Long> entry : item.timePerQualifier.entrySet()) {
+        addQualifierTime(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  private void addQualifierTime(String qualifier, long duration) {
+    Long time = timePerQualifier.get(qualifier);
+    timePerQualifier.put(qualifier, time == null ? duration : (time + duration));
+  }
+
 }
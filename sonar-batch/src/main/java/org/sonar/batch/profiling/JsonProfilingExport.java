@@ -0,0 +1,128 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.profiling;
+
+import com.google.gson.stream.JsonWriter;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.LoggerFactory;
+import org.sonar.batch.phases.Phases.Phase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes the profiling of an analysis in a JSON file, so that timings can be compared across analyses :
+ * <pre>
+ * {
+ *   "totalTime": 1200,
+ *   "modules": [{"name": "Foo", "totalTime": 1100}],
+ *   "extensions": [{"phase": "DECORATOR", "name": "FooDecorator", "calls": 40, "totalTime": 80, "avgTime": 2, "maxTime": 12,
+ *     "timePerQualifier": {"DIR": 20, "FIL": 60}}],
+ *   "batchSteps": [{"name": "Persist measures", "totalTime": 90}]
+ * }
+ * </pre>
+ * Times are in milliseconds. Extensions are sorted by phase then by descending total time.
+ */
+class JsonProfilingExport {
+
+  private JsonProfilingExport() {
+    // only static methods
+  }
+
+  /**
+   * Failing to write the file does not fail the analysis.
+   *
+   * @return true if the file was written
+   */
+  static boolean write(File file, ModuleProfiling totalProfiling, Map<?, ModuleProfiling> modulesProfilings) {
+    Writer writer = null;
+    try {
+      FileUtils.forceMkdir(file.getParentFile());
+      writer = new OutputStreamWriter(FileUtils.openOutputStream(file), "UTF-8");
+      JsonWriter json = new JsonWriter(writer);
+      json.setIndent("  ");
+      json.beginObject();
+      json.name("totalTime").value(totalProfiling.totalTime());
+      writeModules(json, modulesProfilings);
+      writeExtensions(json, totalProfiling);
+      writeBatchSteps(json, totalProfiling);
+      json.endObject();
+      json.flush();
+      return true;
+    } catch (IOException e) {
+      LoggerFactory.getLogger(JsonProfilingExport.class).warn("Fail to export profiling to " + file.getAbsolutePath(), e);
+      return false;
+    } finally {
+      IOUtils.closeQuietly(writer);
+    }
+  }
+
+  private static void writeModules(JsonWriter json, Map<?, ModuleProfiling> modulesProfilings) throws IOException {
+    json.name("modules").beginArray();
+    for (ModuleProfiling moduleProfiling : AbstractTimeProfiling.sortByDescendingTotalTime(modulesProfilings).values()) {
+      json.beginObject()
+        .name("name").value(moduleProfiling.moduleName())
+        .name("totalTime").value(moduleProfiling.totalTime())
+        .endObject();
+    }
+    json.endArray();
+  }
+
+  private static void writeExtensions(JsonWriter json, ModuleProfiling totalProfiling) throws IOException {
+    json.name("extensions").beginArray();
+    for (Phase phase : Phase.values()) {
+      PhaseProfiling phaseProfiling = totalProfiling.getProfilingPerPhase(phase);
+      if (phaseProfiling != null) {
+        for (ItemProfiling item : phaseProfiling.items()) {
+          json.beginObject()
+            .name("phase").value(phase.name())
+            .name("name").value(item.itemName())
+            .name("calls").value(item.calls())
+            .name("totalTime").value(item.totalTime())
+            .name("avgTime").value(item.avgTime())
+            .name("maxTime").value(item.maxTime());
+          json.name("timePerQualifier").beginObject();
+          for (Map.Entry<String, Long> entry : item.timePerQualifier().entrySet()) {
+            json.name(entry.getKey()).value(entry.getValue());
+          }
+          json.endObject();
+          json.endObject();
+        }
+      }
+    }
+    json.endArray();
+  }
+
+  private static void writeBatchSteps(JsonWriter json, ModuleProfiling totalProfiling) throws IOException {
+    json.name("batchSteps").beginArray();
+    for (ItemProfiling step : totalProfiling.batchStepsProfiling()) {
+      json.beginObject()
+        .name("name").value(step.itemName())
+        .name("totalTime").value(step.totalTime())
+        .endObject();
+    }
+    json.endArray();
+  }
+
+}
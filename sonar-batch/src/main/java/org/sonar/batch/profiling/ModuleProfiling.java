@@ -26,6 +26,7 @@ import org.sonar.batch.phases.Phases.Phase;
 
 import javax.annotation.CheckForNull;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -59,6 +60,10 @@ public class ModuleProfiling extends AbstractTimeProfiling {
     return profilingPerBatchStep.get(stepName);
   }
 
+  public Collection<ItemProfiling> batchStepsProfiling() {
+    return sortByDescendingTotalTime(profilingPerBatchStep).values();
+  }
+
   public void addPhaseProfiling(Phase phase) {
     profilingPerPhase.put(phase, PhaseProfiling.create(clock, phase));
   }
@@ -21,6 +21,7 @@ package org.sonar.batch.profiling;
 
 import org.sonar.batch.phases.Phases.Phase;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -56,6 +57,13 @@ public class PhaseProfiling extends AbstractTimeProfiling {
     return profilingPerItem.get(stringOrSimpleName);
   }
 
+  /**
+   * Items sorted by descending total time
+   */
+  public Collection<ItemProfiling> items() {
+    return sortByDescendingTotalTime(profilingPerItem).values();
+  }
+
   public void newItemProfiling(Object item) {
     String stringOrSimpleName = toStringOrSimpleName(item);
     profilingPerItem.put(stringOrSimpleName, new ItemProfiling(clock, stringOrSimpleName));
@@ -20,22 +20,27 @@
 package org.sonar.batch.profiling;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.Decorator;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.api.batch.bootstrap.ProjectReactor;
 import org.sonar.api.batch.events.*;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
 import org.sonar.api.utils.TimeUtils;
 import org.sonar.batch.events.BatchStepHandler;
+import org.sonar.batch.events.ResourceDecoratorExecutionEvent;
 import org.sonar.batch.phases.Phases;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
-import java.util.List;
 import java.util.Map;
 
 import static org.sonar.batch.profiling.AbstractTimeProfiling.sortByDescendingTotalTime;
@@ -44,6 +49,14 @@ import static org.sonar.batch.profiling.AbstractTimeProfiling.truncate;
 public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorExecutionHandler, DecoratorExecutionHandler, PostJobExecutionHandler, DecoratorsPhaseHandler,
   SensorsPhaseHandler, PostJobsPhaseHandler, MavenPhaseHandler, InitializersPhaseHandler, InitializerExecutionHandler, BatchStepHandler {
 
+  /**
+   * Path of the JSON file where the profiling of the analysis is exported, for example to compare the timings
+   * of extensions across analyses. Relative paths are resolved from the working directory of the root project.
+   * No file is written by default.
+   * @since 4.1.3
+   */
+  public static final String EXPORT_PATH_PROPERTY = "sonar.profiling.exportPath";
+
   static final Logger LOG = LoggerFactory.getLogger(PhasesSumUpTimeProfiler.class);
   private static final int TEXT_RIGHT_PAD = 60;
   private static final int TIME_LEFT_PAD = 10;
@@ -56,9 +69,23 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   private DecoratorsProfiler decoratorsProfiler;
 
   private Clock clock;
+  private final File exportFile;
+
+  public PhasesSumUpTimeProfiler(ProjectReactor reactor, Settings settings) {
+    this(new Clock(), exportFile(reactor.getRoot(), settings.getString(EXPORT_PATH_PROPERTY)));
+  }
 
-  public PhasesSumUpTimeProfiler() {
-    this(new Clock());
+  @CheckForNull
+  private static File exportFile(ProjectDefinition root, @Nullable String path) {
+    if (StringUtils.isBlank(path)) {
+      return null;
+    }
+    File file = new File(path);
+    if (!file.isAbsolute()) {
+      File dir = root.getWorkDir() != null ? root.getWorkDir() : root.getBaseDir();
+      file = new File(dir, path);
+    }
+    return file;
   }
 
   static void println(String msg) {
@@ -76,7 +103,13 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
 
   @VisibleForTesting
   PhasesSumUpTimeProfiler(Clock clock) {
+    this(clock, null);
+  }
+
+  @VisibleForTesting
+  PhasesSumUpTimeProfiler(Clock clock, @Nullable File exportFile) {
     this.clock = clock;
+    this.exportFile = exportFile;
     totalProfiling = new ModuleProfiling(null, clock);
   }
 
@@ -101,6 +134,9 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
       if (module.isRoot() && !module.getModules().isEmpty()) {
         dumpTotalExecutionSummary();
       }
+      if (module.isRoot() && exportFile != null && JsonProfilingExport.write(exportFile, totalProfiling, modulesProfilings)) {
+        println(" Profiling exported to " + exportFile.getAbsolutePath());
+      }
     }
   }
 
@@ -142,12 +178,10 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   public void onDecoratorExecution(DecoratorExecutionEvent event) {
     PhaseProfiling profiling = currentModuleProfiling.getProfilingPerPhase(Phases.Phase.DECORATOR);
     if (event.isStart()) {
-      if (profiling.getProfilingPerItem(event.getDecorator()) == null) {
-        profiling.newItemProfiling(event.getDecorator());
-      }
-      decoratorsProfiler.start(event.getDecorator());
+      decoratorsProfiler.start(event.getDecorator(), profiling);
     } else {
-      decoratorsProfiler.stop();
+      Resource resource = event instanceof ResourceDecoratorExecutionEvent ? ((ResourceDecoratorExecutionEvent) event).getResource() : null;
+      decoratorsProfiler.stop(resource);
     }
   }
 
@@ -155,10 +189,6 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
     if (event.isStart()) {
       currentModuleProfiling.addPhaseProfiling(Phases.Phase.DECORATOR);
     } else {
-      for (Decorator decorator : decoratorsProfiler.getDurations().keySet()) {
-        currentModuleProfiling.getProfilingPerPhase(Phases.Phase.DECORATOR)
-          .getProfilingPerItem(decorator).setTotalTime(decoratorsProfiler.getDurations().get(decorator));
-      }
       currentModuleProfiling.getProfilingPerPhase(Phases.Phase.DECORATOR).stop();
     }
   }
@@ -218,32 +248,29 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   }
 
   class DecoratorsProfiler {
-    private List<Decorator> decorators = Lists.newArrayList();
-    private Map<Decorator, Long> durations = new IdentityHashMap<Decorator, Long>();
+    private Map<Decorator, ItemProfiling> profilingPerDecorator = new IdentityHashMap<Decorator, ItemProfiling>();
     private long startTime;
-    private Decorator currentDecorator;
+    private ItemProfiling currentProfiling;
 
     DecoratorsProfiler() {
     }
 
-    void start(Decorator decorator) {
-      this.startTime = clock.now();
-      this.currentDecorator = decorator;
-    }
-
-    void stop() {
-      final Long cumulatedDuration;
-      if (durations.containsKey(currentDecorator)) {
-        cumulatedDuration = durations.get(currentDecorator);
-      } else {
-        decorators.add(currentDecorator);
-        cumulatedDuration = 0L;
+    void start(Decorator decorator, PhaseProfiling phaseProfiling) {
+      ItemProfiling profiling = profilingPerDecorator.get(decorator);
+      if (profiling == null) {
+        if (phaseProfiling.getProfilingPerItem(decorator) == null) {
+          phaseProfiling.newItemProfiling(decorator);
+        }
+        profiling = phaseProfiling.getProfilingPerItem(decorator);
+        profilingPerDecorator.put(decorator, profiling);
       }
-      durations.put(currentDecorator, cumulatedDuration + (clock.now() - startTime));
+      this.currentProfiling = profiling;
+      this.startTime = clock.now();
     }
 
-    public Map<Decorator, Long> getDurations() {
-      return durations;
+    void stop(@Nullable Resource resource) {
+      long duration = clock.now() - startTime;
+      currentProfiling.addCall(duration, resource != null ? resource.getQualifier() : null);
     }
 
   }
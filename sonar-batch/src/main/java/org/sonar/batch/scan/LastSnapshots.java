@@ -19,6 +19,8 @@
  */
 package org.sonar.batch.scan;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.database.DatabaseSession;
 import org.sonar.api.database.model.ResourceModel;
@@ -29,11 +31,19 @@ import org.sonar.api.resources.ResourceUtils;
 import org.sonar.api.utils.HttpDownloader;
 import org.sonar.batch.bootstrap.AnalysisMode;
 import org.sonar.batch.bootstrap.ServerClient;
+import org.sonar.core.source.jdbc.TextCodec;
 
 import javax.persistence.Query;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 public class LastSnapshots implements BatchComponent {
 
+  // Oracle does not accept more than 1000 values in IN clauses
+  private static final int MAX_FILES_PER_QUERY = 500;
+
   private final AnalysisMode analysisMode;
   private final DatabaseSession session;
   private final ServerClient server;
@@ -56,9 +66,40 @@ public class LastSnapshots implements BatchComponent {
     return source;
   }
 
+  /**
+   * Bulk version of {@link #getSource(Resource)}. Sources are loaded from database by batches of files. There's no bulk
+   * web service in preview mode, so sources are still downloaded one by one.
+   *
+   * @param fileKeys effective keys of files
+   * @return the sources of the last analysis, by file key. Source is empty if the file was not analysed.
+   * @since 4.1.3
+   */
+  public Map<String, String> getSources(Collection<String> fileKeys) {
+    Map<String, String> sources = Maps.newHashMap();
+    if (analysisMode.isPreview()) {
+      for (String fileKey : fileKeys) {
+        sources.put(fileKey, loadSourceFromWs(fileKey));
+      }
+    } else {
+      for (List<String> partition : Lists.partition(Lists.newArrayList(fileKeys), MAX_FILES_PER_QUERY)) {
+        loadSourcesFromDb(partition, sources);
+      }
+    }
+    for (String fileKey : fileKeys) {
+      if (!sources.containsKey(fileKey)) {
+        sources.put(fileKey, "");
+      }
+    }
+    return sources;
+  }
+
   private String loadSourceFromWs(Resource resource) {
+    return loadSourceFromWs(resource.getEffectiveKey());
+  }
+
+  private String loadSourceFromWs(String fileKey) {
     try {
-      return server.request("/api/sources?resource=" + resource.getEffectiveKey() + "&format=txt", false);
+      return server.request("/api/sources?resource=" + fileKey + "&format=txt", false);
     } catch (HttpDownloader.HttpException he) {
       if (he.getResponseCode() == 404) {
         return "";
@@ -72,12 +113,26 @@ public class LastSnapshots implements BatchComponent {
     if (snapshot != null) {
       SnapshotSource source = session.getSingleResult(SnapshotSource.class, "snapshotId", snapshot.getId());
       if (source != null) {
-        return source.getData();
+        return TextCodec.decode(source.getData());
       }
     }
     return "";
   }
 
+  private void loadSourcesFromDb(List<String> fileKeys, Map<String, String> sources) {
+    Query query = session.createQuery("SELECT r.key, ss.data FROM " + SnapshotSource.class.getSimpleName() + " ss, " + Snapshot.class.getSimpleName() + " s, "
+      + ResourceModel.class.getSimpleName() + " r WHERE ss.snapshotId=s.id AND s.resourceId=r.id AND s.last=:last AND r.key IN (:keys)");
+    query.setParameter("last", Boolean.TRUE);
+    query.setParameter("keys", fileKeys);
+    List<Object[]> rows = query.getResultList();
+    for (Object[] row : rows) {
+      String data = TextCodec.decode((String) row[1]);
+      if (data != null) {
+        sources.put((String) row[0], data);
+      }
+    }
+  }
+
   private Snapshot getSnapshot(Resource resource) {
     Query query = session.createQuery("from " + Snapshot.class.getSimpleName() + " s where s.last=:last and s.resourceId=(select r.id from "
       + ResourceModel.class.getSimpleName() + " r where r.key=:key)");
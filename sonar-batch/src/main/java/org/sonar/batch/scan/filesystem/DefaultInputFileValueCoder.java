@@ -0,0 +1,52 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.persistit.Value;
+import org.sonar.api.scan.filesystem.internal.DefaultInputFile;
+import org.sonar.batch.index.VersionedValueCoder;
+
+import java.io.File;
+
+/**
+ * Binary format of {@link DefaultInputFile} in {@link InputFileCache}
+ */
+class DefaultInputFileValueCoder extends VersionedValueCoder<DefaultInputFile> {
+
+  private static final int VERSION = 1;
+
+  DefaultInputFileValueCoder() {
+    super(VERSION);
+  }
+
+  @Override
+  protected void encode(Value value, DefaultInputFile inputFile) {
+    putString(value, inputFile.absolutePath());
+    putString(value, inputFile.path());
+    putStringMap(value, inputFile.attributes());
+  }
+
+  @Override
+  protected DefaultInputFile decode(Value value) {
+    String absolutePath = getString(value);
+    String path = getString(value);
+    return DefaultInputFile.create(new File(absolutePath), path, getStringMap(value));
+  }
+}
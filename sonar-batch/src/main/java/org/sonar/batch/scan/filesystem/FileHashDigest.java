@@ -23,16 +23,30 @@ import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 
-import java.io.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.security.MessageDigest;
 
 /**
  * Computes hash of files. Ends of Lines are ignored, so files with
  * same content but different EOL encoding have the same hash.
+ * <p/>
+ * The hash is the MD5 of the UTF-16BE encoding of the content in which "\r\n" and "\r" are replaced by "\n".
+ * A line feed at the very beginning of the file is ignored. This format must not change, as hashes are compared
+ * to the ones of the previous analysis (see {@link RemoteFileHashes}).
  */
 class FileHashDigest {
 
+  private static final int BUFFER_SIZE = 16 * 1024;
+
   // This singleton aims only to increase the coverage by allowing
   // to test the private method !
   static final FileHashDigest INSTANCE = new FileHashDigest();
@@ -42,49 +56,86 @@ class FileHashDigest {
 
   /**
    * Compute hash of a file ignoring line ends differences.
-   * Maximum performance is needed.
+   * Maximum performance is needed: the file is read by blocks and the buffers are reused
+   * for the whole file. This method is thread-safe.
    */
   String hash(File file, Charset charset) {
-    Reader reader = null;
+    FileInputStream input = null;
     try {
+      input = new FileInputStream(file);
+      FileChannel channel = input.getChannel();
       MessageDigest md5Digest = DigestUtils.getMd5Digest();
       md5Digest.reset();
-      reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset));
-      int i = reader.read();
+      // same behavior as java.io.InputStreamReader on malformed input
+      CharsetDecoder decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+      CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+      byte[] digestBuffer = new byte[BUFFER_SIZE << 1];
       boolean afterCR = true;
-      while (i != -1) {
-        char c = (char) i;
-        if (afterCR) {
-          afterCR = false;
-          if (c == '\n') {
-            // Ignore
-            i = reader.read();
-            continue;
-          }
-        }
-        if (c == '\r') {
-          afterCR = true;
-          c = '\n';
-        }
-        md5Digest.update(charToBytesUTF(c));
-        i = reader.read();
+      boolean endOfInput = false;
+      while (!endOfInput) {
+        endOfInput = channel.read(bytes) == -1;
+        bytes.flip();
+        CoderResult result;
+        do {
+          result = decoder.decode(bytes, chars, endOfInput);
+          afterCR = digest(chars, md5Digest, digestBuffer, afterCR);
+        } while (result.isOverflow());
+        checkResult(result);
+        bytes.compact();
       }
+      CoderResult result;
+      do {
+        result = decoder.flush(chars);
+        afterCR = digest(chars, md5Digest, digestBuffer, afterCR);
+      } while (result.isOverflow());
+      checkResult(result);
       return Hex.encodeHexString(md5Digest.digest());
     } catch (IOException e) {
       throw new IllegalStateException(String.format("Fail to compute hash of file %s with charset %s", file.getAbsolutePath(), charset), e);
     } finally {
-      IOUtils.closeQuietly(reader);
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  /**
+   * Normalizes the ends of lines of the decoded characters and adds their UTF-16BE bytes to the digest.
+   * The buffer of characters is cleared.
+   *
+   * @return true if the last character is a carriage return
+   */
+  private static boolean digest(CharBuffer chars, MessageDigest md5Digest, byte[] digestBuffer, boolean previousIsCR) {
+    chars.flip();
+    boolean afterCR = previousIsCR;
+    int length = 0;
+    char[] array = chars.array();
+    for (int i = chars.arrayOffset() + chars.position(); i < chars.arrayOffset() + chars.limit(); i++) {
+      char c = array[i];
+      if (afterCR) {
+        afterCR = false;
+        if (c == '\n') {
+          // Ignore
+          continue;
+        }
+      }
+      if (c == '\r') {
+        afterCR = true;
+        c = '\n';
+      }
+      digestBuffer[length] = (byte) ((c & 0xFF00) >> 8);
+      digestBuffer[length + 1] = (byte) (c & 0x00FF);
+      length += 2;
     }
+    md5Digest.update(digestBuffer, 0, length);
+    chars.clear();
+    return afterCR;
   }
 
-  private byte[] charToBytesUTF(char c) {
-    char[] buffer = new char[]{c};
-    byte[] b = new byte[buffer.length << 1];
-    for (int i = 0; i < buffer.length; i++) {
-      int bpos = i << 1;
-      b[bpos] = (byte) ((buffer[i] & 0xFF00) >> 8);
-      b[bpos + 1] = (byte) (buffer[i] & 0x00FF);
+  private static void checkResult(CoderResult result) throws IOException {
+    if (result.isError()) {
+      result.throwException();
     }
-    return b;
   }
 }
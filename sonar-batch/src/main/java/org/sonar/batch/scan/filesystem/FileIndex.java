@@ -20,6 +20,8 @@
 package org.sonar.batch.scan.filesystem;
 
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.HiddenFileFilter;
@@ -28,6 +30,7 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Java;
 import org.sonar.api.resources.JavaFile;
 import org.sonar.api.resources.Project;
@@ -43,15 +46,44 @@ import javax.annotation.Nullable;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Index input files into {@link InputFileCache}.
+ * <p/>
+ * Directories are walked by the calling thread. Language detection, hashing and filtering of files
+ * can be executed by a pool of threads (see {@link #THREADS_PROPERTY}), in which case the registered
+ * {@link InputFileFilter}s must be thread-safe. Results are written into the cache by the calling thread only,
+ * in the order of the walk.
  */
 public class FileIndex implements BatchComponent {
 
+  /**
+   * Number of threads used to index files. Default value is 1.
+   */
+  public static final String THREADS_PROPERTY = "sonar.batch.fileIndex.threads";
+  public static final int THREADS_DEFAULT_VALUE = 1;
+
+  /**
+   * Whether hashes of files are stored in the working directory, so that unchanged files are not read
+   * again by the next analysis. Default value is false.
+   */
+  public static final String STAMPS_PROPERTY = "sonar.batch.fileIndex.stamps";
+
+  /**
+   * Maximum number of files being indexed per thread before the calling thread waits for results.
+   */
+  private static final int PENDING_FILES_PER_THREAD = 100;
+
   private static class Progress {
     private int count = 0;
     private final Set<String> removedPaths;
@@ -75,15 +107,17 @@ public class FileIndex implements BatchComponent {
   private final InputFileCache cache;
   private final FileHashes fileHashes;
   private final Project project;
+  private final Settings settings;
 
   public FileIndex(List<InputFileFilter> filters, LanguageRecognizer languageRecognizer,
-                   InputFileCache cache, FileHashes fileHashes, PathResolver pathResolver, Project project) {
+                   InputFileCache cache, FileHashes fileHashes, PathResolver pathResolver, Project project, Settings settings) {
     this.filters = filters;
     this.languageRecognizer = languageRecognizer;
     this.cache = cache;
     this.fileHashes = fileHashes;
     this.pathResolver = pathResolver;
     this.project = project;
+    this.settings = settings;
   }
 
   void index(DefaultModuleFileSystem fileSystem) {
@@ -92,25 +126,42 @@ public class FileIndex implements BatchComponent {
     // TODO log configuration too (replace FileSystemLogger)
 
     Progress progress = new Progress(cache.fileRelativePaths(fileSystem.moduleKey()));
+    FileStamps stamps = settings.getBoolean(STAMPS_PROPERTY) ? FileStamps.load(fileSystem.workingDir()) : null;
 
-    if (fileSystem.sourceFiles().isEmpty()) {
-      // index directories
-      for (File sourceDir : fileSystem.sourceDirs()) {
-        indexDirectory(fileSystem, progress, sourceDir, InputFile.TYPE_SOURCE);
-      }
+    int threads = threads();
+    ExecutorService executor;
+    if (threads > 1) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("file-index-%d").setDaemon(true).build());
     } else {
-      // index only given files
-      indexFiles(fileSystem, progress, fileSystem.sourceDirs(), fileSystem.sourceFiles(), InputFile.TYPE_SOURCE);
+      executor = MoreExecutors.sameThreadExecutor();
     }
+    try {
+      Indexation indexation = new Indexation(fileSystem, progress, stamps, executor, threads * PENDING_FILES_PER_THREAD);
+      if (fileSystem.sourceFiles().isEmpty()) {
+        // index directories
+        for (File sourceDir : fileSystem.sourceDirs()) {
+          indexDirectory(indexation, sourceDir, InputFile.TYPE_SOURCE);
+        }
+      } else {
+        // index only given files
+        indexFiles(indexation, fileSystem.sourceDirs(), fileSystem.sourceFiles(), InputFile.TYPE_SOURCE);
+      }
 
-    if (fileSystem.testFiles().isEmpty()) {
-      // index directories
-      for (File testDir : fileSystem.testDirs()) {
-        indexDirectory(fileSystem, progress, testDir, InputFile.TYPE_TEST);
+      if (fileSystem.testFiles().isEmpty()) {
+        // index directories
+        for (File testDir : fileSystem.testDirs()) {
+          indexDirectory(indexation, testDir, InputFile.TYPE_TEST);
+        }
+      } else {
+        // index only given files
+        indexFiles(indexation, fileSystem.testDirs(), fileSystem.testFiles(), InputFile.TYPE_TEST);
       }
-    } else {
-      // index only given files
-      indexFiles(fileSystem, progress, fileSystem.testDirs(), fileSystem.testFiles(), InputFile.TYPE_TEST);
+      indexation.finish();
+    } finally {
+      executor.shutdownNow();
+    }
+    if (stamps != null) {
+      stamps.save();
     }
 
     // Remove files that have been removed since previous indexation
@@ -121,7 +172,12 @@ public class FileIndex implements BatchComponent {
     logger.info(String.format("%d files indexed", progress.count));
   }
 
-  private void indexFiles(DefaultModuleFileSystem fileSystem, Progress progress, List<File> sourceDirs, List<File> sourceFiles, String type) {
+  private int threads() {
+    int threads = settings.hasKey(THREADS_PROPERTY) ? settings.getInt(THREADS_PROPERTY) : THREADS_DEFAULT_VALUE;
+    return Math.max(1, threads);
+  }
+
+  private void indexFiles(Indexation indexation, List<File> sourceDirs, List<File> sourceFiles, String type) {
     for (File sourceFile : sourceFiles) {
       PathResolver.RelativePath sourceDirPath = pathResolver.relativePath(sourceDirs, sourceFile);
       if (sourceDirPath == null) {
@@ -129,7 +185,7 @@ public class FileIndex implements BatchComponent {
           "File '%s' is not declared in source directories %s", sourceFile.getAbsoluteFile(), StringUtils.join(sourceDirs, ", ")
         ));
       } else {
-        indexFile(fileSystem, progress, sourceDirPath.dir(), sourceFile, type);
+        indexation.submit(sourceDirPath.dir(), sourceFile, type);
       }
     }
   }
@@ -138,28 +194,32 @@ public class FileIndex implements BatchComponent {
     return cache.byModule(moduleKey);
   }
 
-  private void indexDirectory(DefaultModuleFileSystem fileSystem, Progress status, File sourceDir, String type) {
+  private void indexDirectory(Indexation indexation, File sourceDir, String type) {
     Collection<File> files = FileUtils.listFiles(sourceDir, FILE_FILTER, DIR_FILTER);
     for (File file : files) {
-      indexFile(fileSystem, status, sourceDir, file, type);
+      indexation.submit(sourceDir, file, type);
     }
   }
 
-  private void indexFile(DefaultModuleFileSystem fileSystem, Progress status, File sourceDir, File file, String type) {
+  /**
+   * Executed by the indexing threads. Does not modify the cache.
+   */
+  @CheckForNull
+  private InputFile indexFile(DefaultModuleFileSystem fileSystem, @Nullable FileStamps stamps, File sourceDir, File file, String type) {
     String path = pathResolver.relativePath(fileSystem.baseDir(), file);
     if (path == null) {
       LoggerFactory.getLogger(getClass()).warn(String.format("File '%s' is not in basedir '%s'", file.getAbsolutePath(), fileSystem.baseDir()));
     } else {
-      InputFile input = newInputFile(fileSystem, sourceDir, type, file, path);
+      InputFile input = newInputFile(fileSystem, stamps, sourceDir, type, file, path);
       if (input != null && accept(input)) {
-        cache.put(fileSystem.moduleKey(), input);
-        status.markAsIndexed(path);
+        return input;
       }
     }
+    return null;
   }
 
   @CheckForNull
-  private InputFile newInputFile(ModuleFileSystem fileSystem, File sourceDir, String type, File file, String path) {
+  private InputFile newInputFile(ModuleFileSystem fileSystem, @Nullable FileStamps stamps, File sourceDir, String type, File file, String path) {
     String lang = languageRecognizer.of(file);
     if (lang == null) {
       return null;
@@ -181,13 +241,13 @@ public class FileIndex implements BatchComponent {
     }
 
     // hash + status
-    initStatus(file, fileSystem.sourceCharset(), path, attributes);
+    initStatus(stamps, file, fileSystem.sourceCharset(), path, attributes);
 
     return DefaultInputFile.create(file, path, attributes);
   }
 
-  private void initStatus(File file, Charset charset, String baseRelativePath, Map<String, String> attributes) {
-    String hash = fileHashes.hash(file, charset);
+  private void initStatus(@Nullable FileStamps stamps, File file, Charset charset, String baseRelativePath, Map<String, String> attributes) {
+    String hash = stamps != null ? stamps.hash(file, baseRelativePath, charset, fileHashes) : fileHashes.hash(file, charset);
     set(attributes, InputFile.ATTRIBUTE_HASH, hash);
 
     String remoteHash = fileHashes.remoteHash(baseRelativePath);
@@ -215,4 +275,65 @@ public class FileIndex implements BatchComponent {
     }
     return true;
   }
+
+  /**
+   * Files submitted to the executor. Results are consumed in submission order by the thread that walks the directories,
+   * which is the only one to write into the cache and to update {@link Progress}.
+   */
+  private class Indexation {
+    private final DefaultModuleFileSystem fileSystem;
+    private final Progress progress;
+    private final FileStamps stamps;
+    private final ExecutorService executor;
+    private final int maxPendingFiles;
+    private final Queue<Future<InputFile>> pendingFiles = new LinkedList<Future<InputFile>>();
+
+    Indexation(DefaultModuleFileSystem fileSystem, Progress progress, @Nullable FileStamps stamps, ExecutorService executor, int maxPendingFiles) {
+      this.fileSystem = fileSystem;
+      this.progress = progress;
+      this.stamps = stamps;
+      this.executor = executor;
+      this.maxPendingFiles = maxPendingFiles;
+    }
+
+    void submit(final File sourceDir, final File file, final String type) {
+      pendingFiles.add(executor.submit(new Callable<InputFile>() {
+        public InputFile call() {
+          return indexFile(fileSystem, stamps, sourceDir, file, type);
+        }
+      }));
+      if (pendingFiles.size() > maxPendingFiles) {
+        write(pendingFiles.poll());
+      }
+    }
+
+    void finish() {
+      while (!pendingFiles.isEmpty()) {
+        write(pendingFiles.poll());
+      }
+    }
+
+    private void write(Future<InputFile> pendingFile) {
+      InputFile input = waitFor(pendingFile);
+      if (input != null) {
+        cache.put(fileSystem.moduleKey(), input);
+        progress.markAsIndexed(input.path());
+      }
+    }
+
+    @CheckForNull
+    private InputFile waitFor(Future<InputFile> pendingFile) {
+      try {
+        return pendingFile.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while indexing files", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException("Fail to index files", e.getCause());
+      }
+    }
+  }
 }
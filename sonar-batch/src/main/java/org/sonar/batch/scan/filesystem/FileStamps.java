@@ -0,0 +1,171 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.LineIterator;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hashes of the files indexed by the previous analysis on the same working directory, with the size and
+ * the last modification date of the files. A file with the same size and date is not read again.
+ * <p/>
+ * Like Git does with its index, files modified shortly before the stamps were saved are hashed again, because
+ * the resolution of modification dates does not allow to detect changes made in the same interval.
+ * <p/>
+ * This class is thread-safe.
+ */
+class FileStamps {
+
+  static final String FILENAME = "file-stamps.txt";
+  private static final String FORMAT = "v1";
+  private static final String SEPARATOR = "\t";
+
+  /**
+   * Resolution of file modification dates, in milliseconds. Two seconds on FAT file systems.
+   */
+  private static final long DATE_RESOLUTION = 2000L;
+
+  private final File file;
+  private final Map<String, Stamp> previousStamps;
+  private final long previousSaveDate;
+  private final ConcurrentMap<String, Stamp> stamps = Maps.newConcurrentMap();
+
+  private FileStamps(File file, Map<String, Stamp> previousStamps, long previousSaveDate) {
+    this.file = file;
+    this.previousStamps = previousStamps;
+    this.previousSaveDate = previousSaveDate;
+  }
+
+  /**
+   * Hash of the file, computed only if the file was changed since the previous analysis.
+   */
+  String hash(File inputFile, String baseRelativePath, Charset charset, FileHashes fileHashes) {
+    long lastModified = inputFile.lastModified();
+    long length = inputFile.length();
+    Stamp stamp = previousStamps.get(baseRelativePath);
+    String hash;
+    if (stamp != null && stamp.matches(charset, length, lastModified) && lastModified + DATE_RESOLUTION <= previousSaveDate) {
+      hash = stamp.hash;
+    } else {
+      hash = fileHashes.hash(inputFile, charset);
+    }
+    if (hash != null) {
+      stamps.put(baseRelativePath, new Stamp(charset.name(), length, lastModified, hash));
+    }
+    return hash;
+  }
+
+  /**
+   * Stamps of the files hashed since loading replace the previous ones. Failing to save them does not fail
+   * the analysis, files are then hashed again by the next one.
+   */
+  void save() {
+    long saveDate = System.currentTimeMillis();
+    Writer writer = null;
+    try {
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+      writer.write(FORMAT + SEPARATOR + saveDate + "\n");
+      for (Map.Entry<String, Stamp> entry : stamps.entrySet()) {
+        Stamp stamp = entry.getValue();
+        writer.write(StringUtils.join(new Object[] {stamp.charset, stamp.length, stamp.lastModified, stamp.hash, entry.getKey()}, SEPARATOR));
+        writer.write('\n');
+      }
+    } catch (IOException e) {
+      LoggerFactory.getLogger(FileStamps.class).warn("Fail to save file stamps: " + file.getAbsolutePath(), e);
+      IOUtils.closeQuietly(writer);
+      FileUtils.deleteQuietly(file);
+    } finally {
+      IOUtils.closeQuietly(writer);
+    }
+  }
+
+  static FileStamps load(File workingDir) {
+    File file = new File(workingDir, FILENAME);
+    Map<String, Stamp> previousStamps = Maps.newHashMap();
+    long saveDate = 0L;
+    if (file.isFile()) {
+      Reader reader = null;
+      try {
+        reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        saveDate = read(IOUtils.lineIterator(reader), previousStamps);
+      } catch (Exception e) {
+        LoggerFactory.getLogger(FileStamps.class).warn("Fail to read file stamps, all files will be hashed: " + file.getAbsolutePath(), e);
+        previousStamps.clear();
+        saveDate = 0L;
+      } finally {
+        IOUtils.closeQuietly(reader);
+      }
+    }
+    return new FileStamps(file, previousStamps, saveDate);
+  }
+
+  private static long read(LineIterator lines, Map<String, Stamp> stamps) {
+    if (!lines.hasNext()) {
+      return 0L;
+    }
+    String[] header = StringUtils.split(lines.nextLine(), SEPARATOR);
+    if (header.length != 2 || !FORMAT.equals(header[0])) {
+      // unknown format, files are hashed again
+      return 0L;
+    }
+    long saveDate = Long.parseLong(header[1]);
+    while (lines.hasNext()) {
+      String[] fields = StringUtils.splitPreserveAllTokens(lines.nextLine(), SEPARATOR, 5);
+      stamps.put(fields[4], new Stamp(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+    }
+    return saveDate;
+  }
+
+  static class Stamp {
+    private final String charset;
+    private final long length;
+    private final long lastModified;
+    private final String hash;
+
+    Stamp(String charset, long length, long lastModified, String hash) {
+      this.charset = charset;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+
+    boolean matches(Charset charset, long length, long lastModified) {
+      return this.length == length && this.lastModified == lastModified && this.charset.equals(charset.name());
+    }
+  }
+}
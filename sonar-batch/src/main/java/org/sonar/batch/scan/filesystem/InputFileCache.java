@@ -20,6 +20,7 @@
 package org.sonar.batch.scan.filesystem;
 
 import org.sonar.api.BatchComponent;
+import org.sonar.api.scan.filesystem.internal.DefaultInputFile;
 import org.sonar.api.scan.filesystem.internal.InputFile;
 import org.sonar.batch.index.Cache;
 import org.sonar.batch.index.Caches;
@@ -36,6 +37,8 @@ public class InputFileCache implements BatchComponent {
   private final Cache<String, InputFile> cache;
 
   public InputFileCache(Caches caches) {
+    caches.registerValueCoder(DefaultInputFile.class, new DefaultInputFileValueCoder());
+    caches.registerImmutableValue(DefaultInputFile.class);
     cache = caches.createCache("inputFiles");
   }
 
@@ -34,6 +34,10 @@ public class SyntaxHighlightingData implements Data {
     this.syntaxHighlightingRuleSet = syntaxHighlightingRuleSet;
   }
 
+  public List<SyntaxHighlightingRule> syntaxHighlightingRuleSet() {
+    return syntaxHighlightingRuleSet;
+  }
+
   @Override
   public String writeString() {
     StringBuilder sb = new StringBuilder();
@@ -0,0 +1,61 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.source;
+
+import com.persistit.Value;
+import org.sonar.batch.index.VersionedValueCoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary format of {@link SyntaxHighlightingData} in {@link org.sonar.batch.index.ComponentDataCache}
+ */
+public class SyntaxHighlightingDataValueCoder extends VersionedValueCoder<SyntaxHighlightingData> {
+
+  private static final int VERSION = 1;
+
+  public SyntaxHighlightingDataValueCoder() {
+    super(VERSION);
+  }
+
+  @Override
+  protected void encode(Value value, SyntaxHighlightingData data) {
+    List<SyntaxHighlightingRule> rules = data.syntaxHighlightingRuleSet();
+    value.put(rules.size());
+    for (SyntaxHighlightingRule rule : rules) {
+      value.put(rule.getStartPosition());
+      value.put(rule.getEndPosition());
+      putString(value, rule.getTextType());
+    }
+  }
+
+  @Override
+  protected SyntaxHighlightingData decode(Value value) {
+    int size = value.getInt();
+    List<SyntaxHighlightingRule> rules = new ArrayList<SyntaxHighlightingRule>(size);
+    for (int i = 0; i < size; i++) {
+      int start = value.getInt();
+      int end = value.getInt();
+      rules.add(SyntaxHighlightingRule.create(start, end, getInternedString(value)));
+    }
+    return new SyntaxHighlightingData(rules);
+  }
+}
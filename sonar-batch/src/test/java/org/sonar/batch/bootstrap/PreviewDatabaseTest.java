@@ -19,25 +19,36 @@
  */
 package org.sonar.batch.bootstrap;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.config.Settings;
 import org.sonar.api.database.DatabaseProperties;
 import org.sonar.api.utils.HttpDownloader;
 import org.sonar.api.utils.SonarException;
 import org.sonar.api.utils.TempFolder;
+import org.sonar.home.cache.FileCache;
+import org.sonar.home.cache.FileHashes;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.SocketTimeoutException;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -48,6 +59,8 @@ public class PreviewDatabaseTest {
   TempFolder tempUtils = mock(TempFolder.class);
   File databaseFile;
   private AnalysisMode mode;
+  FileCache fileCache = mock(FileCache.class);
+  File cacheDir;
 
   @Rule
   public ExpectedException thrown = ExpectedException.none();
@@ -64,27 +77,76 @@ public class PreviewDatabaseTest {
 
     mode = mock(AnalysisMode.class);
     when(mode.isPreview()).thenReturn(true);
+
+    cacheDir = temp.newFolder();
+    when(fileCache.getDir()).thenReturn(cacheDir);
   }
 
   @Test
   public void should_be_disabled_if_not_preview() {
     when(mode.isPreview()).thenReturn(false);
-    new PreviewDatabase(settings, server, tempUtils, mode).start();
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
 
     verifyZeroInteractions(tempUtils, server);
   }
 
   @Test
   public void should_download_database() {
-    new PreviewDatabase(settings, server, tempUtils, mode).start();
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
 
     verify(server).download("/batch_bootstrap/db?project=group:project", databaseFile, 60000);
   }
 
+  @Test
+  public void should_cache_downloaded_database() throws Exception {
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) throws IOException {
+        FileUtils.write((File) invocation.getArguments()[1], "db content");
+        return null;
+      }
+    }).when(server).download("/batch_bootstrap/db?project=group:project", databaseFile, 60000);
+
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
+
+    File cachedFile = new File(cacheDir, "_preview/group_project.h2.db");
+    assertThat(FileUtils.readFileToString(cachedFile)).isEqualTo("db content");
+  }
+
+  @Test
+  public void should_not_download_database_if_not_modified() throws Exception {
+    File cachedFile = new File(cacheDir, "_preview/group_project.h2.db");
+    FileUtils.write(cachedFile, "db content");
+    String etag = new FileHashes().of(cachedFile);
+    when(server.downloadIfModified("/batch_bootstrap/db?project=group:project", databaseFile, etag, 60000)).thenReturn(false);
+
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
+
+    assertThat(FileUtils.readFileToString(databaseFile)).isEqualTo("db content");
+    verify(server, never()).download(anyString(), any(File.class), anyInt());
+  }
+
+  @Test
+  public void should_download_database_if_modified() throws Exception {
+    File cachedFile = new File(cacheDir, "_preview/group_project.h2.db");
+    FileUtils.write(cachedFile, "old db content");
+    String etag = new FileHashes().of(cachedFile);
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) throws IOException {
+        FileUtils.write((File) invocation.getArguments()[1], "new db content");
+        return true;
+      }
+    }).when(server).downloadIfModified("/batch_bootstrap/db?project=group:project", databaseFile, etag, 60000);
+
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
+
+    assertThat(FileUtils.readFileToString(databaseFile)).isEqualTo("new db content");
+    assertThat(FileUtils.readFileToString(cachedFile)).isEqualTo("new db content");
+  }
+
   @Test
   public void should_download_database_with_deprecated_overriden_timeout() {
     settings.setProperty(CoreProperties.DRY_RUN_READ_TIMEOUT_SEC, 80);
-    new PreviewDatabase(settings, server, tempUtils, mode).start();
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
 
     verify(server).download("/batch_bootstrap/db?project=group:project", databaseFile, 80000);
   }
@@ -92,7 +154,7 @@ public class PreviewDatabaseTest {
   @Test
   public void should_download_database_with_overriden_timeout() {
     settings.setProperty(CoreProperties.PREVIEW_READ_TIMEOUT_SEC, 80);
-    new PreviewDatabase(settings, server, tempUtils, mode).start();
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
 
     verify(server).download("/batch_bootstrap/db?project=group:project", databaseFile, 80000);
   }
@@ -100,14 +162,14 @@ public class PreviewDatabaseTest {
   @Test
   public void should_download_database_on_branch() {
     settings.setProperty(CoreProperties.PROJECT_BRANCH_PROPERTY, "mybranch");
-    new PreviewDatabase(settings, server, tempUtils, mode).start();
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
 
     verify(server).download("/batch_bootstrap/db?project=group:project:mybranch", databaseFile, 60000);
   }
 
   @Test
   public void should_replace_database_settings() {
-    new PreviewDatabase(settings, server, tempUtils, mode).start();
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
 
     assertThat(settings.getString(DatabaseProperties.PROP_DIALECT)).isEqualTo("h2");
     assertThat(settings.getString(DatabaseProperties.PROP_DRIVER)).isEqualTo("org.h2.Driver");
@@ -123,7 +185,7 @@ public class PreviewDatabaseTest {
     thrown.expect(SonarException.class);
     thrown.expectMessage("You don't have access rights to project [group:project]");
 
-    new PreviewDatabase(settings, server, tempUtils, mode).start();
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
   }
 
   @Test
@@ -133,7 +195,7 @@ public class PreviewDatabaseTest {
     thrown.expect(SonarException.class);
     thrown.expectMessage("Preview database read timed out after 60000 ms. You can try to increase read timeout with property -Dsonar.preview.readTimeout (in seconds)");
 
-    new PreviewDatabase(settings, server, tempUtils, mode).start();
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
   }
 
   @Test
@@ -143,14 +205,14 @@ public class PreviewDatabaseTest {
     thrown.expect(SonarException.class);
     thrown.expectMessage("BUG");
 
-    new PreviewDatabase(settings, server, tempUtils, mode).start();
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
   }
 
   @Test
   public void project_should_be_optional() {
     // on non-scan tasks
     settings.removeProperty(CoreProperties.PROJECT_KEY_PROPERTY);
-    new PreviewDatabase(settings, server, tempUtils, mode).start();
+    new PreviewDatabase(settings, server, tempUtils, mode, fileCache).start();
     verify(server).download("/batch_bootstrap/db", databaseFile, 60000);
   }
 }
@@ -103,6 +103,21 @@ public class ServerClientTest {
     assertThat(Files.toString(file, Charsets.UTF_8)).isEqualTo("this is the content");
   }
 
+  @Test
+  public void should_download_file_if_modified() throws Exception {
+    server = new MockHttpServer();
+    server.start();
+    server.setMockResponseData("this is the content");
+    server.setMockEtag("abc");
+
+    File file = temp.newFile();
+    assertThat(newServerClient().downloadIfModified("/foo", file, "abc", null)).isFalse();
+    assertThat(file.length()).isEqualTo(0L);
+
+    assertThat(newServerClient().downloadIfModified("/foo", file, "old", null)).isTrue();
+    assertThat(Files.toString(file, Charsets.UTF_8)).isEqualTo("this is the content");
+  }
+
   @Test
   public void should_fail_if_unauthorized_with_no_login_password() throws Exception {
     server = new MockHttpServer();
@@ -147,6 +162,7 @@ public class ServerClientTest {
     private String requestBody;
     private String mockResponseData;
     private int mockResponseStatus = SC_OK;
+    private String mockEtag;
 
     public void start() throws Exception {
       server = new Server(0);
@@ -165,6 +181,11 @@ public class ServerClientTest {
         public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
           setResponseBody(getMockResponseData());
           setRequestBody(IOUtils.toString(baseRequest.getInputStream()));
+          if (mockEtag != null && ("\"" + mockEtag + "\"").equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            baseRequest.setHandled(true);
+            return;
+          }
           response.setStatus(mockResponseStatus);
           response.setContentType("text/xml;charset=utf-8");
           write(getResponseBody(), response.getOutputStream());
@@ -204,6 +225,10 @@ public class ServerClientTest {
       this.mockResponseStatus = status;
     }
 
+    public void setMockEtag(String etag) {
+      this.mockEtag = etag;
+    }
+
     public String getMockResponseData() {
       return mockResponseData;
     }
@@ -0,0 +1,95 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.components;
+
+import org.junit.Test;
+import org.sonar.api.measures.Metric;
+import org.sonar.core.persistence.AbstractDaoTestCase;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MeasuresHistoryLoaderTest extends AbstractDaoTestCase {
+
+  private static final int MODULE_ID = 1;
+  private static final int DIRECTORY_ID = 2;
+  private static final int FILE_ID = 3;
+
+  @Test
+  public void load_history_of_module_and_directories() throws ParseException {
+    setupData("shared");
+
+    MeasuresHistory history = new MeasuresHistoryLoader(getMyBatis()).load(MODULE_ID, date("2008-10-15"), date("2008-11-15"), metrics(1, 2));
+
+    assertThat(history.getValues(MODULE_ID, 1)).isEqualTo(new double[] {60.0, 70.0});
+    assertThat(history.getValues(MODULE_ID, 2)).isEqualTo(new double[] {80.0, Double.NaN});
+    assertThat(history.getValues(DIRECTORY_ID, 1)).isEqualTo(new double[] {30.0, 40.0});
+    assertThat(history.getValues(FILE_ID, 1)).isEmpty();
+    assertThat(history.size()).isEqualTo(6);
+  }
+
+  @Test
+  public void load_only_given_metrics() throws ParseException {
+    setupData("shared");
+
+    MeasuresHistory history = new MeasuresHistoryLoader(getMyBatis()).load(MODULE_ID, date("2008-10-15"), date("2008-11-15"), metrics(2));
+
+    assertThat(history.getValues(MODULE_ID, 1)).isEmpty();
+    assertThat(history.getValues(MODULE_ID, 2)).hasSize(2);
+    assertThat(history.getValues(MODULE_ID, 3)).isEmpty();
+  }
+
+  @Test
+  public void no_history_before_period() throws ParseException {
+    setupData("shared");
+
+    MeasuresHistory history = new MeasuresHistoryLoader(getMyBatis()).load(MODULE_ID, date("2008-11-05"), date("2008-11-15"), metrics(1));
+
+    assertThat(history.getValues(MODULE_ID, 1)).isEqualTo(new double[] {70.0});
+    assertThat(history.getValues(DIRECTORY_ID, 1)).isEqualTo(new double[] {40.0});
+  }
+
+  @Test
+  public void no_history_if_no_metrics() throws ParseException {
+    setupData("shared");
+
+    MeasuresHistory history = new MeasuresHistoryLoader(getMyBatis()).load(MODULE_ID, date("2008-10-15"), date("2008-11-15"), Collections.<Metric>emptyList());
+
+    assertThat(history.size()).isEqualTo(0);
+  }
+
+  private List<Metric> metrics(Integer... ids) {
+    Metric[] metrics = new Metric[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      metrics[i] = new Metric.Builder("metric" + ids[i], "Metric " + ids[i], Metric.ValueType.INT).create().setId(ids[i]);
+    }
+    return Arrays.asList(metrics);
+  }
+
+  private Date date(String date) throws ParseException {
+    return new SimpleDateFormat("yyyy-MM-dd").parse(date);
+  }
+}
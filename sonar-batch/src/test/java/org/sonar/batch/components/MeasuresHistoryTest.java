@@ -0,0 +1,65 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.components;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MeasuresHistoryTest {
+
+  @Test
+  public void values_are_grouped_by_resource_and_metric() {
+    MeasuresHistory history = MeasuresHistory.builder()
+      .add(1, 10, 1.0)
+      .add(1, 11, 2.0)
+      .add(2, 10, 3.0)
+      .add(1, 10, 4.0)
+      .add(1, 10, null)
+      .build();
+
+    assertThat(history.getValues(1, 10)).isEqualTo(new double[] {1.0, 4.0, Double.NaN});
+    assertThat(history.getValues(1, 11)).isEqualTo(new double[] {2.0});
+    assertThat(history.getValues(2, 10)).isEqualTo(new double[] {3.0});
+    assertThat(history.size()).isEqualTo(5);
+  }
+
+  @Test
+  public void no_values() {
+    MeasuresHistory history = MeasuresHistory.builder().add(1, 10, 1.0).build();
+
+    assertThat(history.getValues(1, 99)).isEmpty();
+    assertThat(history.getValues(2, 10)).isEmpty();
+    assertThat(history.getValues(null, 10)).isEmpty();
+    assertThat(MeasuresHistory.empty().size()).isEqualTo(0);
+  }
+
+  @Test
+  public void values_arrays_grow() {
+    MeasuresHistory.Builder builder = MeasuresHistory.builder();
+    for (int i = 0; i < 100; i++) {
+      builder.add(1, 10, (double) i);
+    }
+
+    double[] values = builder.build().getValues(1, 10);
+    assertThat(values).hasSize(100);
+    assertThat(values[99]).isEqualTo(99.0);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.components;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PastMeasuresIndexTest {
+
+  @Test
+  public void should_find_measures_by_metric_characteristic_person_and_rule() {
+    PastMeasuresIndex index = PastMeasuresIndex.builder()
+      .add("struts:org.foo", 12, null, null, null, 10.0)
+      .add("struts:org.foo", 12, null, null, 3, 4.0)
+      .add("struts:org.foo", 12, null, 5, null, 6.0)
+      .add("struts:org.foo", 12, 7, null, null, 2.0)
+      .add("struts:org.foo", 2, null, null, null, 100.0)
+      .add("struts", 12, null, null, null, 30.0)
+      .build();
+
+    assertThat(index.size()).isEqualTo(6);
+    assertThat(index.getValue("struts:org.foo", 12, null, null, null)).isEqualTo(10.0);
+    assertThat(index.getValue("struts:org.foo", 12, null, null, 3)).isEqualTo(4.0);
+    assertThat(index.getValue("struts:org.foo", 12, null, 5, null)).isEqualTo(6.0);
+    assertThat(index.getValue("struts:org.foo", 12, 7, null, null)).isEqualTo(2.0);
+    assertThat(index.getValue("struts:org.foo", 2, null, null, null)).isEqualTo(100.0);
+    assertThat(index.getValue("struts", 12, null, null, null)).isEqualTo(30.0);
+
+    assertThat(index.getValue("struts:org.foo", 12, null, null, 4)).isNull();
+    assertThat(index.getValue("struts:org.foo", 3, null, null, null)).isNull();
+    assertThat(index.getValue("struts:org.bar", 12, null, null, null)).isNull();
+  }
+
+  @Test
+  public void should_ignore_measures_without_value() {
+    PastMeasuresIndex index = PastMeasuresIndex.builder()
+      .add("struts", new Object[] {12, null, null, null, null})
+      .add("struts", new Object[] {13, null, null, null, 5.0})
+      .build();
+
+    assertThat(index.size()).isEqualTo(1);
+    assertThat(index.getValue("struts", 12, null, null, null)).isNull();
+    assertThat(index.getValue("struts", 13, null, null, null)).isEqualTo(5.0);
+  }
+
+  @Test
+  public void test_empty() {
+    assertThat(PastMeasuresIndex.empty().size()).isEqualTo(0);
+    assertThat(PastMeasuresIndex.empty().getValue("struts", 12, null, null, null)).isNull();
+  }
+}
@@ -25,6 +25,7 @@ import org.sonar.api.measures.Metric;
 import org.sonar.jpa.test.AbstractDbUnitTestCase;
 
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -86,6 +87,34 @@ public class PastMeasuresLoaderTest extends AbstractDbUnitTestCase {
     assertThat(PastMeasuresLoader.getValue(pastMeasure), is(80.0));
   }
 
+  @Test
+  public void shouldGetPastMeasuresOfModuleAndDirectories() {
+    setupData("shared");
+
+    Snapshot projectSnapshot = getSession().getSingleResult(Snapshot.class, "id", PROJECT_SNAPSHOT_ID);
+    PastMeasuresLoader loader = new PastMeasuresLoader(getSession(), selectMetrics());
+    PastMeasuresIndex index = loader.getPastMeasuresIndex(PROJECT_KEY, new PastSnapshot("days", new Date(), projectSnapshot));
+
+    assertThat(index.size(), is(4));
+    assertThat(index.getValue(PROJECT_KEY, 1, null, null, null), is(60.0));
+    assertThat(index.getValue(PROJECT_KEY, 2, null, null, null), is(80.0));
+    assertThat(index.getValue("project:org.foo", 1, null, null, null), is(20.0));
+    assertThat(index.getValue("project:org.foo", 2, null, null, null), is(70.0));
+    // measures on files are not loaded
+    assertThat(index.getValue(FILE_KEY, 1, null, null, null), nullValue());
+  }
+
+  @Test
+  public void shouldNotGetPastMeasuresOfUnknownModule() {
+    setupData("shared");
+
+    Snapshot projectSnapshot = getSession().getSingleResult(Snapshot.class, "id", PROJECT_SNAPSHOT_ID);
+    PastMeasuresLoader loader = new PastMeasuresLoader(getSession(), selectMetrics());
+
+    assertThat(loader.getPastMeasuresIndex("unknown", new PastSnapshot("days", new Date(), projectSnapshot)).size(), is(0));
+    assertThat(loader.getPastMeasuresIndex(PROJECT_KEY, new PastSnapshot("days", new Date())).size(), is(0));
+  }
+
   @Test
   public void shouldKeepOnlyNumericalMetrics() {
     Metric ncloc = new Metric("ncloc", Metric.ValueType.INT);
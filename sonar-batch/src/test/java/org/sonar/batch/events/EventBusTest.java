@@ -22,7 +22,9 @@ package org.sonar.batch.events;
 import org.sonar.api.batch.events.EventHandler;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 import org.junit.Test;
 
@@ -43,6 +45,36 @@ public class EventBusTest {
     verify(secondHandler).onEvent(secondEvent);
   }
 
+  @Test
+  public void shouldNotifyHandlersImplementingSeveralTypes() {
+    BothHandler bothHandler = mock(BothHandler.class);
+    FirstHandler firstHandler = mock(FirstHandler.class);
+    EventBus eventBus = new EventBus(new EventHandler[] {bothHandler, firstHandler});
+
+    FirstEvent firstEvent = new FirstEvent();
+    eventBus.fireEvent(firstEvent);
+    eventBus.fireEvent(firstEvent);
+    SecondEvent secondEvent = new SecondEvent();
+    eventBus.fireEvent(secondEvent);
+
+    verify(bothHandler, times(2)).onEvent(firstEvent);
+    verify(firstHandler, times(2)).onEvent(firstEvent);
+    verify(bothHandler).onEvent(secondEvent);
+  }
+
+  @Test
+  public void shouldIgnoreEventsWithoutHandlers() {
+    FirstHandler firstHandler = mock(FirstHandler.class);
+    EventBus eventBus = new EventBus(new EventHandler[] {firstHandler});
+
+    eventBus.fireEvent(new SecondEvent());
+
+    verifyZeroInteractions(firstHandler);
+  }
+
+  interface BothHandler extends FirstHandler, SecondHandler {
+  }
+
   interface FirstHandler extends EventHandler {
     void onEvent(FirstEvent event);
   }
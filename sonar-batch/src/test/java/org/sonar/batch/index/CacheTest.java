@@ -27,6 +27,9 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.Serializable;
+import java.util.Iterator;
+
 import static org.fest.assertions.Assertions.assertThat;
 
 public class CacheTest {
@@ -178,6 +181,63 @@ public class CacheTest {
     assertThat(cache.groups()).containsOnly("org/apache/struts/Action.java", "org/apache/struts/Filter.java");
   }
 
+  @Test
+  public void values_are_copied() throws Exception {
+    Cache<String, MutableValue> cache = caches.createCache("issues");
+    MutableValue value = new MutableValue("foo");
+    cache.put("key", value);
+    value.text = "changed before get";
+
+    MutableValue cached = cache.get("key");
+    assertThat(cached.text).isEqualTo("foo");
+    cached.text = "changed after get";
+    Iterables.getOnlyElement(cache.values()).text = "changed after values";
+
+    assertThat(cache.get("key").text).isEqualTo("foo");
+    assertThat(Iterables.getOnlyElement(cache.allValues()).text).isEqualTo("foo");
+  }
+
+  @Test
+  public void immutable_values_are_not_copied() throws Exception {
+    caches.registerImmutableValue(MutableValue.class);
+    Cache<String, MutableValue> cache = caches.createCache("issues");
+    MutableValue value = new MutableValue("foo");
+    cache.put("key", value);
+
+    assertThat(cache.get("key")).isSameAs(value);
+    assertThat(Iterables.getOnlyElement(cache.values())).isSameAs(value);
+    assertThat(Iterables.getOnlyElement(cache.allValues())).isSameAs(value);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void values_are_read_only() throws Exception {
+    Cache<String, String> cache = caches.createCache("issues");
+    cache.put("key", "value");
+    Iterator<String> values = cache.values().iterator();
+    values.next();
+    values.remove();
+  }
+
+  @Test
+  public void test_operations_after_moving_to_disk() throws Exception {
+    Cache<String, Float> cache = caches.createCache("measures");
+    cache.put("org/apache/struts/Action.java", "ncloc", 123f);
+    cache.put("org/apache/struts/Action.java", "lines", 200f);
+    cache.put("org/apache/struts/Filter.java", "ncloc", 400f);
+
+    cache.spill();
+
+    assertThat(cache.isInMemory()).isFalse();
+    assertThat(caches.inMemoryBytes()).isEqualTo(0L);
+    assertThat(cache.get("org/apache/struts/Action.java", "lines")).isEqualTo(200f);
+    assertThat(cache.keySet("org/apache/struts/Action.java")).containsOnly("ncloc", "lines");
+    assertThat(cache.groups()).containsOnly("org/apache/struts/Action.java", "org/apache/struts/Filter.java");
+    assertThat(cache.allValues()).containsOnly(123f, 200f, 400f);
+
+    cache.clear("org/apache/struts/Action.java");
+    assertThat(cache.allValues()).containsOnly(400f);
+  }
+
   @Test
   public void test_entries() throws PersistitException {
     Cache<String, Float> cache = caches.createCache("issues");
@@ -214,4 +274,12 @@ public class CacheTest {
     assertThat(entries[1].key()).isEqualTo("ncloc");
     assertThat(entries[1].value()).isEqualTo(123f);
   }
+
+  static class MutableValue implements Serializable {
+    String text;
+
+    MutableValue(String text) {
+      this.text = text;
+    }
+  }
 }
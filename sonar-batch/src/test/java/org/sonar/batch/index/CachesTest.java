@@ -26,6 +26,7 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
 import org.sonar.batch.bootstrap.BootstrapProperties;
 import org.sonar.batch.bootstrap.BootstrapSettings;
 import org.sonar.batch.bootstrap.TempFolderProvider;
@@ -43,6 +44,10 @@ public class CachesTest {
   public static TemporaryFolder temp = new TemporaryFolder();
 
   public static Caches createCacheOnTemp(TemporaryFolder temp) {
+    return createCacheOnTemp(temp, new Settings());
+  }
+
+  public static Caches createCacheOnTemp(TemporaryFolder temp, Settings settings) {
     BootstrapSettings bootstrapSettings = new BootstrapSettings(
       new BootstrapProperties(Collections.<String,String>emptyMap())
     );
@@ -51,7 +56,7 @@ public class CachesTest {
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-    return new Caches(new TempFolderProvider().provide(bootstrapSettings));
+    return new Caches(new TempFolderProvider().provide(bootstrapSettings), settings);
   }
 
   Caches caches;
@@ -99,6 +104,65 @@ public class CachesTest {
     }
   }
 
+  @Test
+  public void should_create_cache_in_memory_by_default() throws Exception {
+    caches.start();
+    Cache<String, Element> cache = caches.createCache("foo");
+    cache.put("key", new Element());
+    assertThat(cache.isInMemory()).isTrue();
+    assertThat(caches.inMemoryBytes()).isGreaterThan(MemoryCacheStorage.ENTRY_OVERHEAD_BYTES);
+  }
+
+  @Test
+  public void should_create_cache_on_disk() throws Exception {
+    caches.stop();
+    caches = createCacheOnTemp(temp, new Settings().setProperty(Caches.IN_MEMORY_PROPERTY, false));
+    caches.start();
+    Cache<String, Element> cache = caches.createCache("foo");
+    cache.put("key", new Element());
+    assertThat(cache.isInMemory()).isFalse();
+    assertThat(caches.inMemoryBytes()).isEqualTo(0L);
+  }
+
+  @Test
+  public void should_move_cache_to_disk_when_threshold_is_reached() throws Exception {
+    caches.stop();
+    // room for two elements
+    caches = createCacheOnTemp(temp, new Settings().setProperty(Caches.MAX_IN_MEMORY_BYTES_PROPERTY, 2 * MemoryCacheStorage.ENTRY_OVERHEAD_BYTES + 40));
+    caches.start();
+    Cache<String, String> first = caches.createCache("first");
+    Cache<String, String> second = caches.createCache("second");
+    first.put("group", "key1", "value1");
+    first.put("group", "key2", "value2");
+    assertThat(first.isInMemory()).isTrue();
+    long bytesOfFirst = caches.inMemoryBytes();
+
+    second.put("key3", "value3");
+
+    assertThat(first.isInMemory()).isTrue();
+    assertThat(second.isInMemory()).isFalse();
+    assertThat(second.get("key3")).isEqualTo("value3");
+    assertThat(caches.inMemoryBytes()).isEqualTo(bytesOfFirst);
+
+    first.remove("group", "key1");
+    assertThat(caches.inMemoryBytes()).isEqualTo(bytesOfFirst / 2);
+  }
+
+  @Test
+  public void should_estimate_size_of_immutable_values_from_a_sample() throws Exception {
+    caches.start();
+    Cache<Integer, String> cache = caches.createCache("foo");
+    cache.put(0, "first sampled value");
+    long bytesOfOne = caches.inMemoryBytes();
+    for (int i = 1; i < MemoryCacheStorage.SAMPLING_RATE; i++) {
+      cache.put(i, "value " + i);
+    }
+    assertThat(caches.inMemoryBytes()).isEqualTo(MemoryCacheStorage.SAMPLING_RATE * bytesOfOne);
+
+    cache.clear();
+    assertThat(caches.inMemoryBytes()).isEqualTo(0L);
+  }
+
   static class Element implements Serializable {
 
   }
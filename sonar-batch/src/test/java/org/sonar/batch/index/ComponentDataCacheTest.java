@@ -24,6 +24,11 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.batch.source.SyntaxHighlightingData;
+import org.sonar.batch.source.SyntaxHighlightingRule;
+
+import java.util.Arrays;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -63,6 +68,21 @@ public class ComponentDataCacheTest {
     assertThat(count.data()).isEqualTo(1234L);
   }
 
+  @Test
+  public void should_store_data_on_disk() {
+    caches.stop();
+    caches = CachesTest.createCacheOnTemp(temp, new Settings().setProperty(Caches.IN_MEMORY_PROPERTY, false));
+    caches.start();
+    ComponentDataCache cache = new ComponentDataCache(caches);
+    cache.setStringData("org/struts/Action.java", "SYNTAX", "1:foo;3:bar");
+    cache.setData("org/struts/Action.java", "HIGHLIGHTING", new SyntaxHighlightingData(Arrays.asList(
+      SyntaxHighlightingRule.create(0, 10, "cd"), SyntaxHighlightingRule.create(20, 30, "k"))));
+
+    assertThat(cache.getStringData("org/struts/Action.java", "SYNTAX")).isEqualTo("1:foo;3:bar");
+    SyntaxHighlightingData highlighting = cache.getData("org/struts/Action.java", "HIGHLIGHTING");
+    assertThat(highlighting.writeString()).isEqualTo("0,10,cd;20,30,k;");
+  }
+
   static class LongData implements Data {
 
     private long data;
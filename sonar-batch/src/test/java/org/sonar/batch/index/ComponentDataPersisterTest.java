@@ -24,6 +24,7 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 import org.sonar.core.source.jdbc.SnapshotDataDao;
@@ -62,7 +63,7 @@ public class ComponentDataPersisterTest extends AbstractDaoTestCase {
     data.setStringData("org/struts/Other.java", "SYMBOL", "unregistered component, should not be persisted");
 
     SnapshotDataDao dataDao = new SnapshotDataDao(getMyBatis());
-    ComponentDataPersister persister = new ComponentDataPersister(data, snapshots, dataDao, getMyBatis());
+    ComponentDataPersister persister = new ComponentDataPersister(data, snapshots, dataDao, getMyBatis(), new Settings());
     persister.persist();
 
     checkTables("should_persist_component_data", new String[] {"id", "created_at", "updated_at"}, "snapshot_data");
@@ -24,6 +24,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.MeasureModel;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.measures.*;
@@ -229,6 +230,43 @@ public class MeasurePersisterTest extends AbstractDaoTestCase {
     checkTables("shouldInsertMeasure", "project_measures");
   }
 
+  @Test
+  public void should_insert_database_only_measures_by_batch() {
+    setupData("empty");
+    measurePersister = new MeasurePersister(getMyBatis(), resourcePersister, ruleFinder, memoryOptimizer,
+      new Settings().setProperty(MeasurePersister.BATCH_SIZE_PROPERTY, 10));
+
+    Measure measure = new Measure(ncloc()).setValue(1234.0).setPersistenceMode(PersistenceMode.DATABASE);
+    measurePersister.setDelayedMode(true);
+    measurePersister.saveMeasure(project, measure);
+
+    assertEmptyTables("project_measures");
+    assertThat(measure.getId()).isNull();
+
+    measurePersister.dump();
+
+    checkTables("shouldInsertMeasure", "project_measures");
+    verify(memoryOptimizer).evictDataMeasure(eq(measure), any(MeasureModel.class));
+    assertThat(measure.getId()).isNotNull();
+  }
+
+  @Test
+  public void should_insert_database_only_measures_when_batch_is_full() {
+    setupData("empty");
+    measurePersister = new MeasurePersister(getMyBatis(), resourcePersister, ruleFinder, memoryOptimizer,
+      new Settings().setProperty(MeasurePersister.BATCH_SIZE_PROPERTY, 2));
+
+    Measure measure = new Measure(ncloc()).setPersistenceMode(PersistenceMode.DATABASE);
+    measurePersister.setDelayedMode(true);
+    measurePersister.saveMeasure(project, measure.setValue(100.0));
+    // same measure saved again before being inserted
+    measurePersister.saveMeasure(project, measure.setValue(200.0));
+    assertEmptyTables("project_measures");
+    measurePersister.saveMeasure(aPackage, new Measure(ncloc()).setValue(300.0).setPersistenceMode(PersistenceMode.DATABASE));
+
+    checkTables("shouldAlwaysPersistNonFileMeasures", "project_measures");
+  }
+
   @Test
   public void should_not_save_best_value_measures_in_delayed_mode() {
     setupData("empty");
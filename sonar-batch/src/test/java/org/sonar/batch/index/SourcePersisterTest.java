@@ -19,35 +19,48 @@
  */
 package org.sonar.batch.index;
 
+import org.apache.ibatis.session.SqlSession;
 import org.junit.Before;
 import org.junit.Test;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.resources.DuplicatedSourceException;
 import org.sonar.api.resources.JavaFile;
 import org.sonar.api.resources.Resource;
-import org.sonar.jpa.test.AbstractDbUnitTestCase;
+import org.sonar.core.persistence.AbstractDaoTestCase;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.source.jdbc.SnapshotSourceDao;
+import org.sonar.core.source.jdbc.SnapshotSourceMapper;
+import org.sonar.core.source.jdbc.TextCodec;
 
+import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-public class SourcePersisterTest extends AbstractDbUnitTestCase {
+public class SourcePersisterTest extends AbstractDaoTestCase {
 
   private SourcePersister sourcePersister;
+  private ResourcePersister resourcePersister;
+  private SnapshotSourceDao dao;
 
   @Before
   public void before() {
     setupData("shared");
-    Snapshot snapshot = getSession().getSingleResult(Snapshot.class, "id", 1000);
-    ResourcePersister resourcePersister = mock(ResourcePersister.class);
+    Snapshot snapshot = new Snapshot();
+    snapshot.setId(1000);
+    resourcePersister = mock(ResourcePersister.class);
     when(resourcePersister.getSnapshotOrFail(any(Resource.class))).thenReturn(snapshot);
-    sourcePersister = new SourcePersister(getSession(), resourcePersister);
+    when(resourcePersister.getSnapshot(any(Resource.class))).thenReturn(snapshot);
+    dao = new SnapshotSourceDao(getMyBatis());
+    sourcePersister = new SourcePersister(getMyBatis(), dao, resourcePersister, new Settings());
   }
 
   @Test
   public void shouldSaveSource() {
     sourcePersister.saveSource(new JavaFile("org.foo.Bar"), "this is the file content");
-    checkTables("shouldSaveSource", "snapshot_sources");
+    sourcePersister.flush();
+    checkTables("shouldSaveSource", new String[] {"id"}, "snapshot_sources");
   }
 
   @Test(expected = DuplicatedSourceException.class)
@@ -56,4 +69,47 @@ public class SourcePersisterTest extends AbstractDbUnitTestCase {
     sourcePersister.saveSource(file, "this is the file content");
     sourcePersister.saveSource(file, "new content"); // fail
   }
+
+  @Test
+  public void should_read_pending_source() {
+    JavaFile file = new JavaFile("org.foo.Bar");
+    sourcePersister.saveSource(file, "this is the file content");
+
+    assertThat(sourcePersister.getSource(file)).isEqualTo("this is the file content");
+    assertThat(dao.selectSnapshotSource(1000L)).isNull();
+  }
+
+  @Test
+  public void should_insert_sources_by_batches() {
+    for (int i = 0; i < SourcePersister.MAX_PENDING_SOURCES; i++) {
+      Snapshot snapshot = new Snapshot();
+      snapshot.setId(2000 + i);
+      JavaFile file = new JavaFile("org.foo.Bar" + i);
+      when(resourcePersister.getSnapshotOrFail(file)).thenReturn(snapshot);
+      sourcePersister.saveSource(file, "content " + i);
+    }
+
+    assertThat(dao.selectSnapshotSource(2000L)).isEqualTo("content 0");
+    assertThat(dao.selectSnapshotSource(2000L + SourcePersister.MAX_PENDING_SOURCES - 1)).isEqualTo("content " + (SourcePersister.MAX_PENDING_SOURCES - 1));
+  }
+
+  @Test
+  public void should_compress_source() {
+    Settings settings = new Settings().setProperty(TextCodec.COMPRESSION_PROPERTY, true);
+    sourcePersister = new SourcePersister(getMyBatis(), dao, resourcePersister, settings);
+    JavaFile file = new JavaFile("org.foo.Bar");
+    String source = "public class Bar {\n  public void foo() {\n  }\n  public void bar() {\n  }\n  public void baz() {\n  }\n}\n";
+    sourcePersister.saveSource(file, source);
+    sourcePersister.clear();
+
+    SqlSession session = getMyBatis().openSession();
+    try {
+      String storedData = session.getMapper(SnapshotSourceMapper.class).selectSnapshotSource(1000L);
+      assertThat(storedData.length()).isLessThan(source.length());
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+    assertThat(dao.selectSnapshotSource(1000L)).isEqualTo(source);
+    assertThat(sourcePersister.getSource(file)).isEqualTo(source);
+  }
 }
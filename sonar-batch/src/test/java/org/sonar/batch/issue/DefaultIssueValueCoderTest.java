@@ -0,0 +1,176 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.issue;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.issue.internal.DefaultIssueComment;
+import org.sonar.api.issue.internal.IssueChangeContext;
+import org.sonar.api.issue.internal.WorkDayDuration;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.batch.index.Caches;
+import org.sonar.batch.index.CachesTest;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DefaultIssueValueCoderTest {
+
+  @ClassRule
+  public static TemporaryFolder temp = new TemporaryFolder();
+
+  Caches caches;
+  IssueCache cache;
+
+  @Before
+  public void start() throws Exception {
+    caches = CachesTest.createCacheOnTemp(temp, new Settings().setProperty(Caches.IN_MEMORY_PROPERTY, false));
+    caches.start();
+    cache = new IssueCache(caches);
+  }
+
+  @After
+  public void stop() {
+    caches.stop();
+  }
+
+  @Test
+  public void should_encode_and_decode_all_fields() throws Exception {
+    Date date = new Date(1380000000000L);
+    DefaultIssue issue = new DefaultIssue()
+      .setKey("ABCDE")
+      .setComponentKey("struts:org.struts.Action")
+      .setProjectKey("struts")
+      .setRuleKey(RuleKey.of("squid", "AvoidCycle"))
+      .setSeverity(Severity.MAJOR)
+      .setManualSeverity(true)
+      .setMessage("the message")
+      .setLine(12)
+      .setEffortToFix(3.5)
+      .setTechnicalDebt(WorkDayDuration.of(10, 2, 1))
+      .setStatus(Issue.STATUS_RESOLVED)
+      .setResolution(Issue.RESOLUTION_FIXED)
+      .setReporter("emmerik")
+      .setAssignee("henry")
+      .setChecksum("c7b5db46591806455cf082bb348631e8")
+      .setAttribute("JIRA", "FOO-1234")
+      .setAuthorLogin("simon")
+      .setActionPlanKey("PLAN-1")
+      .setCreationDate(date)
+      .setUpdateDate(date)
+      .setCloseDate(date)
+      .setSelectedAt(date)
+      .setNew(false)
+      .setEndOfLife(true)
+      .setOnDisabledRule(true)
+      .setChanged(true)
+      .setSendNotifications(true);
+    cache.put(issue);
+
+    DefaultIssue decoded = decodedIssue();
+
+    assertThat(decoded).isNotSameAs(issue);
+    assertThat(decoded.key()).isEqualTo("ABCDE");
+    assertThat(decoded.componentKey()).isEqualTo("struts:org.struts.Action");
+    assertThat(decoded.projectKey()).isEqualTo("struts");
+    assertThat(decoded.ruleKey()).isEqualTo(RuleKey.of("squid", "AvoidCycle"));
+    assertThat(decoded.severity()).isEqualTo(Severity.MAJOR);
+    assertThat(decoded.manualSeverity()).isTrue();
+    assertThat(decoded.message()).isEqualTo("the message");
+    assertThat(decoded.line()).isEqualTo(12);
+    assertThat(decoded.effortToFix()).isEqualTo(3.5);
+    assertThat(decoded.technicalDebt()).isEqualTo(WorkDayDuration.of(10, 2, 1));
+    assertThat(decoded.status()).isEqualTo(Issue.STATUS_RESOLVED);
+    assertThat(decoded.resolution()).isEqualTo(Issue.RESOLUTION_FIXED);
+    assertThat(decoded.reporter()).isEqualTo("emmerik");
+    assertThat(decoded.assignee()).isEqualTo("henry");
+    assertThat(decoded.checksum()).isEqualTo("c7b5db46591806455cf082bb348631e8");
+    assertThat(decoded.attributes()).hasSize(1);
+    assertThat(decoded.attribute("JIRA")).isEqualTo("FOO-1234");
+    assertThat(decoded.authorLogin()).isEqualTo("simon");
+    assertThat(decoded.actionPlanKey()).isEqualTo("PLAN-1");
+    assertThat(decoded.creationDate()).isEqualTo(date);
+    assertThat(decoded.updateDate()).isEqualTo(date);
+    assertThat(decoded.closeDate()).isEqualTo(date);
+    assertThat(decoded.selectedAt()).isEqualTo(date);
+    assertThat(decoded.isNew()).isFalse();
+    assertThat(decoded.isEndOfLife()).isTrue();
+    assertThat(decoded.isOnDisabledRule()).isTrue();
+    assertThat(decoded.isChanged()).isTrue();
+    assertThat(decoded.mustSendNotifications()).isTrue();
+    assertThat(decoded.changes()).isEmpty();
+    assertThat(decoded.currentChange()).isNull();
+    assertThat(decoded.comments()).isEmpty();
+  }
+
+  @Test
+  public void should_encode_and_decode_null_fields() throws Exception {
+    cache.put(new DefaultIssue().setKey("ABCDE").setComponentKey("struts:org.struts.Action"));
+
+    DefaultIssue decoded = decodedIssue();
+
+    assertThat(decoded.key()).isEqualTo("ABCDE");
+    assertThat(decoded.ruleKey()).isNull();
+    assertThat(decoded.severity()).isNull();
+    assertThat(decoded.line()).isNull();
+    assertThat(decoded.effortToFix()).isNull();
+    assertThat(decoded.technicalDebt()).isNull();
+    assertThat(decoded.status()).isNull();
+    assertThat(decoded.attributes()).isEmpty();
+    assertThat(decoded.creationDate()).isNull();
+    assertThat(decoded.isNew()).isTrue();
+  }
+
+  @Test
+  public void should_keep_shared_changes() throws Exception {
+    IssueChangeContext context = IssueChangeContext.createUser(new Date(), "emmerik");
+    DefaultIssue issue = new DefaultIssue().setKey("ABCDE").setComponentKey("struts:org.struts.Action");
+    issue.setFieldChange(context, "severity", Severity.MINOR, Severity.MAJOR);
+    issue.setFieldChange(context, "assignee", null, "henry");
+    issue.addComment(DefaultIssueComment.create("ABCDE", "emmerik", "the comment"));
+    cache.put(issue);
+
+    DefaultIssue decoded = decodedIssue();
+
+    assertThat(decoded.changes()).hasSize(2);
+    assertThat(decoded.changes().get(0)).isSameAs(decoded.changes().get(1));
+    assertThat(decoded.currentChange()).isSameAs(decoded.changes().get(0));
+    assertThat(decoded.currentChange().get("severity").newValue()).isEqualTo(Severity.MAJOR);
+    assertThat(decoded.currentChange().get("assignee").newValue()).isEqualTo("henry");
+    assertThat(decoded.comments()).hasSize(1);
+    assertThat(decoded.comments().get(0).markdownText()).isEqualTo("the comment");
+  }
+
+  private DefaultIssue decodedIssue() {
+    List<DefaultIssue> issues = Lists.newArrayList(cache.byComponent("struts:org.struts.Action"));
+    assertThat(issues).hasSize(1);
+    return issues.get(0);
+  }
+}
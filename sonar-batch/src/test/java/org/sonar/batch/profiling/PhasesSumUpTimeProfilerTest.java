@@ -19,8 +19,14 @@
  */
 package org.sonar.batch.profiling;
 
+import org.apache.commons.io.FileUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.Initializer;
@@ -43,18 +49,24 @@ import org.sonar.api.batch.events.SensorsPhaseHandler.SensorsPhaseEvent;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.batch.events.BatchStepEvent;
+import org.sonar.batch.events.ResourceDecoratorExecutionEvent;
 import org.sonar.batch.phases.Phases.Phase;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.MapAssert.entry;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 public class PhasesSumUpTimeProfilerTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   private MockedClock clock;
   private PhasesSumUpTimeProfiler profiler;
 
@@ -107,6 +119,68 @@ public class PhasesSumUpTimeProfilerTest {
     assertThat(profiler.totalProfiling.getProfilingPerPhase(Phase.POSTJOB).getProfilingPerItem(new FakePostJob()).totalTime()).isEqualTo(90L);
   }
 
+  @Test
+  public void testDecoratorCallsPerQualifier() throws InterruptedException {
+    Project project = mockProject("project", true);
+    when(project.getModules()).thenReturn(Collections.<Project> emptyList());
+
+    fakeAnalysis(profiler, project);
+
+    ItemProfiling decorator = profiler.currentModuleProfiling.getProfilingPerPhase(Phase.DECORATOR).getProfilingPerItem(new FakeDecorator2());
+    assertThat(decorator.calls()).isEqualTo(2L);
+    assertThat(decorator.maxTime()).isEqualTo(5L);
+    assertThat(decorator.avgTime()).isEqualTo(5L);
+    assertThat(decorator.timePerQualifier()).hasSize(2).includes(entry("FIL", 5L), entry("DIR", 5L));
+  }
+
+  @Test
+  public void exportJson() throws Exception {
+    File exportFile = new File(temp.newFolder(), "profiling/export.json");
+    profiler = new PhasesSumUpTimeProfiler(clock, exportFile);
+    Project project = mockProject("project root", true);
+    Project moduleA = mockProject("moduleA", false);
+    Project moduleB = mockProject("moduleB", false);
+    when(project.getModules()).thenReturn(Arrays.asList(moduleA, moduleB));
+
+    fakeAnalysis(profiler, moduleA);
+    fakeAnalysis(profiler, moduleB);
+    assertThat(exportFile).doesNotExist();
+    fakeAnalysis(profiler, project);
+
+    JSONObject json = (JSONObject) JSONValue.parse(FileUtils.readFileToString(exportFile));
+    assertThat((JSONArray) json.get("modules")).hasSize(3);
+    JSONArray extensions = (JSONArray) json.get("extensions");
+    assertThat(extensions).hasSize(5);
+    JSONObject decorator = (JSONObject) extensions.get(2);
+    assertThat(decorator.get("phase")).isEqualTo("DECORATOR");
+    assertThat(decorator.get("name")).isEqualTo("FakeDecorator1");
+    assertThat(decorator.get("calls")).isEqualTo(6L);
+    assertThat(decorator.get("totalTime")).isEqualTo(60L);
+    assertThat(decorator.get("avgTime")).isEqualTo(10L);
+    assertThat(decorator.get("maxTime")).isEqualTo(10L);
+    JSONObject timePerQualifier = (JSONObject) decorator.get("timePerQualifier");
+    assertThat(timePerQualifier.get("FIL")).isEqualTo(30L);
+    assertThat(timePerQualifier.get("DIR")).isEqualTo(30L);
+    JSONObject sensor = (JSONObject) extensions.get(1);
+    assertThat(sensor.get("name")).isEqualTo("FakeSensor");
+    assertThat(sensor.get("calls")).isEqualTo(3L);
+    assertThat(sensor.get("maxTime")).isEqualTo(10L);
+    assertThat((JSONObject) sensor.get("timePerQualifier")).isEmpty();
+    assertThat((JSONArray) json.get("batchSteps")).hasSize(1);
+  }
+
+  @Test
+  public void should_not_fail_if_json_can_not_be_exported() throws Exception {
+    // parent of the export file is a regular file
+    File exportFile = new File(temp.newFile(), "export.json");
+    profiler = new PhasesSumUpTimeProfiler(clock, exportFile);
+    Project project = mockProject("project root", true);
+
+    fakeAnalysis(profiler, project);
+
+    assertThat(exportFile).doesNotExist();
+  }
+
   @Test
   public void testDisplayTimings() {
     AbstractTimeProfiling profiling = new AbstractTimeProfiling(new Clock()) {
@@ -161,32 +235,40 @@ public class PhasesSumUpTimeProfilerTest {
   private void decoratorPhase(PhasesSumUpTimeProfiler profiler) throws InterruptedException {
     Decorator decorator1 = new FakeDecorator1();
     Decorator decorator2 = new FakeDecorator2();
+    Resource file = mockResource("FIL");
+    Resource dir = mockResource("DIR");
     // Start of decorator phase
     profiler.onDecoratorsPhase(decoratorsEvent(true));
     // Start of decorator 1
-    profiler.onDecoratorExecution(decoratorEvent(decorator1, true));
+    profiler.onDecoratorExecution(decoratorEvent(decorator1, file, true));
     clock.sleep(10);
     // End of decorator 1
-    profiler.onDecoratorExecution(decoratorEvent(decorator1, false));
+    profiler.onDecoratorExecution(decoratorEvent(decorator1, file, false));
     // Start of decorator 2
-    profiler.onDecoratorExecution(decoratorEvent(decorator2, true));
+    profiler.onDecoratorExecution(decoratorEvent(decorator2, file, true));
     clock.sleep(5);
     // End of decorator 2
-    profiler.onDecoratorExecution(decoratorEvent(decorator2, false));
+    profiler.onDecoratorExecution(decoratorEvent(decorator2, file, false));
     // Start of decorator 1
-    profiler.onDecoratorExecution(decoratorEvent(decorator1, true));
+    profiler.onDecoratorExecution(decoratorEvent(decorator1, dir, true));
     clock.sleep(10);
     // End of decorator 1
-    profiler.onDecoratorExecution(decoratorEvent(decorator1, false));
+    profiler.onDecoratorExecution(decoratorEvent(decorator1, dir, false));
     // Start of decorator 2
-    profiler.onDecoratorExecution(decoratorEvent(decorator2, true));
+    profiler.onDecoratorExecution(decoratorEvent(decorator2, dir, true));
     clock.sleep(5);
     // End of decorator 2
-    profiler.onDecoratorExecution(decoratorEvent(decorator2, false));
+    profiler.onDecoratorExecution(decoratorEvent(decorator2, dir, false));
     // End of decorator phase
     profiler.onDecoratorsPhase(decoratorsEvent(false));
   }
 
+  private Resource mockResource(String qualifier) {
+    Resource resource = mock(Resource.class);
+    when(resource.getQualifier()).thenReturn(qualifier);
+    return resource;
+  }
+
   private void batchStep(PhasesSumUpTimeProfiler profiler) throws InterruptedException {
     // Start of batch step
     profiler.onBatchStep(new BatchStepEvent("Free memory", true));
@@ -282,8 +364,8 @@ public class PhasesSumUpTimeProfilerTest {
     };
   }
 
-  private DecoratorExecutionHandler.DecoratorExecutionEvent decoratorEvent(final Decorator decorator, final boolean start) {
-    return new DecoratorExecutionHandler.DecoratorExecutionEvent() {
+  private DecoratorExecutionHandler.DecoratorExecutionEvent decoratorEvent(final Decorator decorator, final Resource resource, final boolean start) {
+    return new ResourceDecoratorExecutionEvent() {
 
       @Override
       public boolean isStart() {
@@ -299,6 +381,11 @@ public class PhasesSumUpTimeProfilerTest {
       public Decorator getDecorator() {
         return decorator;
       }
+
+      @Override
+      public Resource getResource() {
+        return resource;
+      }
     };
   }
 
@@ -32,6 +32,8 @@ import org.sonar.jpa.test.AbstractDbUnitTestCase;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
@@ -126,6 +128,35 @@ public class LastSnapshotsTest extends AbstractDbUnitTestCase {
     assertThat(source).isEqualTo("");
   }
 
+  @Test
+  public void should_get_sources_of_many_files() {
+    setupData("last_snapshot");
+    ServerClient server = mock(ServerClient.class);
+
+    LastSnapshots lastSnapshots = new LastSnapshots(mode, getSession(), server);
+
+    Map<String, String> sources = lastSnapshots.getSources(Arrays.asList("myproject:org/foo/Bar.c", "myproject:org/foo/Unknown.c"));
+    assertThat(sources).hasSize(2);
+    assertThat(sources.get("myproject:org/foo/Bar.c")).isEqualTo("this is bar");
+    assertThat(sources.get("myproject:org/foo/Unknown.c")).isEqualTo("");
+    verifyZeroInteractions(server);
+  }
+
+  @Test
+  public void should_download_sources_of_many_files_if_preview_mode() throws URISyntaxException {
+    setupData("last_snapshot");
+    ServerClient server = mock(ServerClient.class);
+    when(server.request("/api/sources?resource=myproject:org/foo/Bar.c&format=txt", false)).thenReturn("downloaded source of Bar.c");
+    when(server.request("/api/sources?resource=myproject:org/foo/Unknown.c&format=txt", false)).thenThrow(new HttpDownloader.HttpException(new URI(""), 404));
+
+    when(mode.isPreview()).thenReturn(true);
+    LastSnapshots lastSnapshots = new LastSnapshots(mode, getSession(), server);
+
+    Map<String, String> sources = lastSnapshots.getSources(Arrays.asList("myproject:org/foo/Bar.c", "myproject:org/foo/Unknown.c"));
+    assertThat(sources.get("myproject:org/foo/Bar.c")).isEqualTo("downloaded source of Bar.c");
+    assertThat(sources.get("myproject:org/foo/Unknown.c")).isEqualTo("");
+  }
+
   private File newFile() {
     File file = new File("org/foo", "Bar.c");
     file.setEffectiveKey("myproject:org/foo/Bar.c");
@@ -20,13 +20,23 @@
 package org.sonar.batch.scan.filesystem;
 
 import com.google.common.base.Charsets;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Random;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -79,4 +89,72 @@ public class FileHashDigestTest {
 
     FileHashDigest.INSTANCE.hash(file, Charsets.UTF_8);
   }
+
+  @Test
+  public void should_ignore_line_feed_at_beginning_of_file() throws Exception {
+    File file1 = temp.newFile();
+    FileUtils.write(file1, "\nfoo", Charsets.UTF_8);
+
+    File file2 = temp.newFile();
+    FileUtils.write(file2, "foo", Charsets.UTF_8);
+
+    assertThat(FileHashDigest.INSTANCE.hash(file1, Charsets.UTF_8)).isEqualTo(FileHashDigest.INSTANCE.hash(file2, Charsets.UTF_8));
+  }
+
+  @Test
+  public void should_be_compatible_with_char_by_char_hash() throws Exception {
+    Random random = new Random(42L);
+    String alphabet = "ab \r\n\t\u00e9\u20ac\ud83d\ude00";
+    for (int length : new int[] {0, 1, 2, 100, 16 * 1024 - 1, 16 * 1024, 16 * 1024 + 1, 100000}) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < length; i++) {
+        sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      for (Charset charset : new Charset[] {Charsets.UTF_8, Charsets.ISO_8859_1, Charsets.UTF_16}) {
+        File file = temp.newFile();
+        FileUtils.write(file, sb.toString(), charset);
+
+        assertThat(FileHashDigest.INSTANCE.hash(file, charset)).isEqualTo(charByCharHash(file, charset));
+      }
+    }
+  }
+
+  @Test
+  public void should_replace_malformed_input_like_readers() throws Exception {
+    File file = temp.newFile();
+    FileUtils.writeByteArrayToFile(file, new byte[] {'a', (byte) 0xC3, '\r', '\n', (byte) 0xFF, (byte) 0xE2, (byte) 0x82});
+
+    assertThat(FileHashDigest.INSTANCE.hash(file, Charsets.UTF_8)).isEqualTo(charByCharHash(file, Charsets.UTF_8));
+  }
+
+  /**
+   * Initial implementation, which reads the file char by char. Hashes must not change.
+   */
+  private static String charByCharHash(File file, Charset charset) throws Exception {
+    Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset));
+    try {
+      MessageDigest md5Digest = DigestUtils.getMd5Digest();
+      int i = reader.read();
+      boolean afterCR = true;
+      while (i != -1) {
+        char c = (char) i;
+        if (afterCR) {
+          afterCR = false;
+          if (c == '\n') {
+            i = reader.read();
+            continue;
+          }
+        }
+        if (c == '\r') {
+          afterCR = true;
+          c = '\n';
+        }
+        md5Digest.update(new byte[] {(byte) ((c & 0xFF00) >> 8), (byte) (c & 0x00FF)});
+        i = reader.read();
+      }
+      return Hex.encodeHexString(md5Digest.digest());
+    } finally {
+      IOUtils.closeQuietly(reader);
+    }
+  }
 }
@@ -0,0 +1,150 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Language;
+import org.sonar.api.resources.Project;
+import org.sonar.api.scan.filesystem.PathResolver;
+import org.sonar.api.scan.filesystem.internal.DefaultInputFile;
+import org.sonar.api.scan.filesystem.internal.InputFile;
+import org.sonar.api.scan.filesystem.internal.InputFileFilter;
+import org.sonar.batch.index.Caches;
+import org.sonar.batch.index.CachesTest;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FileIndexTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  Caches caches;
+  InputFileCache cache;
+  RemoteFileHashes remoteFileHashes = mock(RemoteFileHashes.class);
+  DefaultModuleFileSystem fileSystem = mock(DefaultModuleFileSystem.class);
+  Project project = mock(Project.class);
+  Settings settings = new Settings();
+  File baseDir;
+  File sourceDir;
+
+  @Before
+  public void start() throws Exception {
+    caches = CachesTest.createCacheOnTemp(temp);
+    caches.start();
+    cache = new InputFileCache(caches);
+
+    baseDir = temp.newFolder();
+    sourceDir = new File(baseDir, "src");
+    when(project.getEffectiveKey()).thenReturn("struts");
+    when(project.getLanguageKey()).thenReturn("java");
+    when(fileSystem.moduleKey()).thenReturn("struts");
+    when(fileSystem.baseDir()).thenReturn(baseDir);
+    when(fileSystem.workingDir()).thenReturn(temp.newFolder());
+    when(fileSystem.sourceCharset()).thenReturn(Charsets.UTF_8);
+    when(fileSystem.sourceDirs()).thenReturn(Arrays.asList(sourceDir));
+    when(fileSystem.testDirs()).thenReturn(Collections.<File>emptyList());
+    when(fileSystem.sourceFiles()).thenReturn(Collections.<File>emptyList());
+    when(fileSystem.testFiles()).thenReturn(Collections.<File>emptyList());
+  }
+
+  @After
+  public void stop() {
+    caches.stop();
+  }
+
+  @Test
+  public void should_index_files_with_many_threads() throws Exception {
+    for (int i = 0; i < 500; i++) {
+      FileUtils.write(new File(sourceDir, "org/foo/Foo" + i + ".java"), "class Foo" + i + " {}", Charsets.UTF_8);
+    }
+    FileUtils.write(new File(sourceDir, "org/foo/README.txt"), "not java", Charsets.UTF_8);
+    FileUtils.write(new File(sourceDir, "org/foo/Excluded.java"), "class Excluded {}", Charsets.UTF_8);
+    cache.put("struts", DefaultInputFile.create(new File(sourceDir, "org/foo/Deleted.java"), "src/org/foo/Deleted.java", Collections.<String, String>emptyMap()));
+
+    newFileIndex(4).index(fileSystem);
+
+    List<InputFile> inputFiles = Lists.newArrayList(cache.byModule("struts"));
+    assertThat(inputFiles).hasSize(500);
+    assertThat(cache.containsFile("struts", "src/org/foo/Foo42.java")).isTrue();
+    assertThat(cache.containsFile("struts", "src/org/foo/README.txt")).isFalse();
+    assertThat(cache.containsFile("struts", "src/org/foo/Excluded.java")).isFalse();
+    assertThat(cache.containsFile("struts", "src/org/foo/Deleted.java")).isFalse();
+    for (InputFile inputFile : inputFiles) {
+      assertThat(inputFile.attribute(InputFile.ATTRIBUTE_LANGUAGE)).isEqualTo("java");
+      assertThat(inputFile.attribute(InputFile.ATTRIBUTE_TYPE)).isEqualTo(InputFile.TYPE_SOURCE);
+      assertThat(inputFile.attribute(InputFile.ATTRIBUTE_STATUS)).isEqualTo(InputFile.STATUS_ADDED);
+      assertThat(inputFile.attribute(InputFile.ATTRIBUTE_HASH)).isNotEmpty();
+    }
+  }
+
+  @Test
+  public void should_compute_same_attributes_with_one_or_many_threads() throws Exception {
+    File file = new File(sourceDir, "org/foo/Bar.java");
+    FileUtils.write(file, "class Bar {}", Charsets.UTF_8);
+
+    newFileIndex(1).index(fileSystem);
+    InputFile serial = cache.byModule("struts").iterator().next();
+    cache.removeModule("struts");
+    newFileIndex(3).index(fileSystem);
+    InputFile parallel = cache.byModule("struts").iterator().next();
+
+    assertThat(parallel.attributes()).isEqualTo(serial.attributes());
+  }
+
+  @Test
+  public void should_store_file_stamps() throws Exception {
+    FileUtils.write(new File(sourceDir, "org/foo/Bar.java"), "class Bar {}", Charsets.UTF_8);
+    settings.setProperty(FileIndex.STAMPS_PROPERTY, true);
+
+    newFileIndex(2).index(fileSystem);
+
+    File stamps = new File(fileSystem.workingDir(), FileStamps.FILENAME);
+    String hash = cache.byModule("struts").iterator().next().attribute(InputFile.ATTRIBUTE_HASH);
+    assertThat(FileUtils.readFileToString(stamps)).contains(hash + "\tsrc/org/foo/Bar.java");
+  }
+
+  private FileIndex newFileIndex(int threads) {
+    LanguageRecognizer languageRecognizer = new LanguageRecognizer(project, new Language[] {new LanguageRecognizerTest.MockLanguage("java", "java")});
+    languageRecognizer.start();
+    InputFileFilter exclusion = new InputFileFilter() {
+      public boolean accept(InputFile inputFile) {
+        return !inputFile.path().endsWith("Excluded.java");
+      }
+    };
+    settings.setProperty(FileIndex.THREADS_PROPERTY, threads);
+    return new FileIndex(Arrays.asList(exclusion), languageRecognizer, cache, new FileHashes(remoteFileHashes), new PathResolver(), project, settings);
+  }
+}
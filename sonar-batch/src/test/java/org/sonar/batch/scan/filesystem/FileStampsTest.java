@@ -0,0 +1,131 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileStampsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File workingDir;
+  File file;
+  FileHashes fileHashes = mock(FileHashes.class);
+
+  @Before
+  public void prepare() throws Exception {
+    workingDir = temp.newFolder();
+    file = temp.newFile();
+    FileUtils.write(file, "foo", Charsets.UTF_8);
+    file.setLastModified(System.currentTimeMillis() - 60000L);
+    when(fileHashes.hash(file, Charsets.UTF_8)).thenReturn("ABCDE");
+  }
+
+  @Test
+  public void should_hash_files_if_no_stamps() throws Exception {
+    FileStamps stamps = FileStamps.load(workingDir);
+
+    assertThat(stamps.hash(file, "src/foo.txt", Charsets.UTF_8, fileHashes)).isEqualTo("ABCDE");
+    verify(fileHashes).hash(file, Charsets.UTF_8);
+  }
+
+  @Test
+  public void should_not_hash_unchanged_files() throws Exception {
+    FileStamps stamps = FileStamps.load(workingDir);
+    stamps.hash(file, "src/foo.txt", Charsets.UTF_8, fileHashes);
+    stamps.save();
+
+    assertThat(FileStamps.load(workingDir).hash(file, "src/foo.txt", Charsets.UTF_8, fileHashes)).isEqualTo("ABCDE");
+    verify(fileHashes, times(1)).hash(file, Charsets.UTF_8);
+  }
+
+  @Test
+  public void should_hash_changed_files() throws Exception {
+    FileStamps stamps = FileStamps.load(workingDir);
+    stamps.hash(file, "src/foo.txt", Charsets.UTF_8, fileHashes);
+    stamps.save();
+
+    // size is different
+    FileUtils.write(file, "foobar", Charsets.UTF_8);
+    file.setLastModified(System.currentTimeMillis() - 60000L);
+    when(fileHashes.hash(file, Charsets.UTF_8)).thenReturn("FGHIJ");
+
+    stamps = FileStamps.load(workingDir);
+    assertThat(stamps.hash(file, "src/foo.txt", Charsets.UTF_8, fileHashes)).isEqualTo("FGHIJ");
+    // charset is different
+    assertThat(stamps.hash(file, "src/foo.txt", Charsets.ISO_8859_1, fileHashes)).isNull();
+    verify(fileHashes).hash(file, Charsets.ISO_8859_1);
+  }
+
+  @Test
+  public void should_hash_files_modified_just_before_saving_stamps() throws Exception {
+    file.setLastModified(System.currentTimeMillis());
+    FileStamps stamps = FileStamps.load(workingDir);
+    stamps.hash(file, "src/foo.txt", Charsets.UTF_8, fileHashes);
+    stamps.save();
+
+    FileStamps.load(workingDir).hash(file, "src/foo.txt", Charsets.UTF_8, fileHashes);
+
+    verify(fileHashes, times(2)).hash(file, Charsets.UTF_8);
+  }
+
+  @Test
+  public void should_ignore_corrupted_stamps() throws Exception {
+    FileUtils.write(new File(workingDir, FileStamps.FILENAME), "v1\t123\nfoo\tbar", Charsets.UTF_8);
+
+    FileStamps.load(workingDir).hash(file, "src/foo.txt", Charsets.UTF_8, fileHashes);
+
+    verify(fileHashes).hash(file, Charsets.UTF_8);
+  }
+
+  @Test
+  public void should_ignore_unknown_format() throws Exception {
+    FileUtils.write(new File(workingDir, FileStamps.FILENAME), "v0\t123\n", Charsets.UTF_8);
+
+    FileStamps.load(workingDir).hash(file, "src/foo.txt", Charsets.UTF_8, fileHashes);
+
+    verify(fileHashes).hash(file, Charsets.UTF_8);
+  }
+
+  @Test
+  public void should_not_fail_if_stamps_can_not_be_saved() throws Exception {
+    FileStamps stamps = FileStamps.load(workingDir);
+    stamps.hash(file, "src/foo.txt", Charsets.UTF_8, fileHashes);
+    FileUtils.deleteDirectory(workingDir);
+
+    stamps.save();
+
+    assertThat(new File(workingDir, FileStamps.FILENAME)).doesNotExist();
+  }
+}
@@ -19,17 +19,23 @@
  */
 package org.sonar.batch.scan.filesystem;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
 import org.sonar.api.scan.filesystem.internal.InputFile;
 import org.sonar.api.scan.filesystem.internal.DefaultInputFile;
 import org.sonar.batch.index.Caches;
 import org.sonar.batch.index.CachesTest;
 
+import java.io.File;
+import java.util.List;
+
 import static org.fest.assertions.Assertions.assertThat;
 
 public class InputFileCacheTest {
@@ -69,4 +75,22 @@ public class InputFileCacheTest {
     assertThat(cache.byModule("struts-core")).hasSize(1);
     assertThat(cache.all()).hasSize(1);
   }
+
+  @Test
+  public void should_store_input_files_on_disk() throws Exception {
+    caches.stop();
+    caches = CachesTest.createCacheOnTemp(temp, new Settings().setProperty(Caches.IN_MEMORY_PROPERTY, false));
+    caches.start();
+    InputFileCache cache = new InputFileCache(caches);
+    File file = temp.newFile();
+    cache.put("struts", DefaultInputFile.create(file, "src/main/java/Foo.java", ImmutableMap.of(InputFile.ATTRIBUTE_LANGUAGE, "java")));
+
+    List<InputFile> inputFiles = Lists.newArrayList(cache.byModule("struts"));
+    assertThat(inputFiles).hasSize(1);
+    InputFile inputFile = inputFiles.get(0);
+    assertThat(inputFile.path()).isEqualTo("src/main/java/Foo.java");
+    assertThat(inputFile.file()).isEqualTo(file.getCanonicalFile());
+    assertThat(inputFile.attributes()).hasSize(1);
+    assertThat(inputFile.attribute(InputFile.ATTRIBUTE_LANGUAGE)).isEqualTo("java");
+  }
 }
@@ -19,16 +19,25 @@
  */
 package org.sonar.core.duplication;
 
+import com.google.common.collect.Lists;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.ServerComponent;
 import org.sonar.core.persistence.MyBatis;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.List;
 
 public class DuplicationDao implements BatchComponent, ServerComponent {
 
+  /**
+   * Maximum number of elements of an IN clause on Oracle
+   */
+  static final int MAX_HASHES_PER_QUERY = 1000;
+
   private final MyBatis mybatis;
 
   public DuplicationDao(MyBatis mybatis) {
@@ -45,6 +54,26 @@ public class DuplicationDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * Streams to the handler the blocks of the last snapshots of the given language that have one of the given hashes,
+   * except the blocks of the given project snapshot. Units are instances of {@link DuplicationUnitDto}.
+   * Hashes are looked up by groups of {@link #MAX_HASHES_PER_QUERY}. They must be distinct, else a block can be
+   * streamed several times.
+   *
+   * @since 4.1.3
+   */
+  public void selectCandidates(@Nullable Integer lastSnapshotId, String language, List<Long> hashes, ResultHandler handler) {
+    SqlSession session = mybatis.openSession();
+    try {
+      DuplicationMapper mapper = session.getMapper(DuplicationMapper.class);
+      for (List<Long> partition : Lists.partition(hashes, MAX_HASHES_PER_QUERY)) {
+        mapper.selectCandidatesOfLanguage(lastSnapshotId, language, partition, handler);
+      }
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   /**
    * Insert rows in the table DUPLICATIONS_INDEX.
    * Note that generated ids are not returned.
@@ -22,6 +22,7 @@ package org.sonar.core.issue.db;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.api.BatchComponent;
@@ -35,6 +36,7 @@ import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.common.collect.Lists.newArrayList;
 
@@ -70,6 +72,22 @@ public class IssueDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * Streams all the issues, including closed ones, of the given root project or of all the projects if null.
+   * @since 4.1.3
+   */
+  public void selectIssuesForIndexing(@Nullable Long rootComponentId, ResultHandler handler) {
+    SqlSession session = mybatis.openSession();
+    try {
+      Map<String, Object> params = Maps.newHashMap();
+      params.put("rootComponentId", rootComponentId);
+      session.select("org.sonar.core.issue.db.IssueMapper.selectIssuesForIndexing", params, handler);
+
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   @VisibleForTesting
   List<IssueDto> selectIssueIds(IssueQuery query, @Nullable Integer userId, Integer maxResult) {
     SqlSession session = mybatis.openSession();
@@ -102,6 +120,43 @@ public class IssueDao implements BatchComponent, ServerComponent {
     return mapper.selectIssueIds(query, query.componentRoots(), userId, query.requiredRole(), maxResults);
   }
 
+  /**
+   * Ids of the issues of the requested page, sorted in database
+   * @since 4.1.3
+   */
+  public List<Long> selectSortedIssueIds(IssueQuery query, @Nullable Integer userId, int offset, int limit, SqlSession session) {
+    IssueMapper mapper = session.getMapper(IssueMapper.class);
+    return mapper.selectSortedIssueIds(query, query.componentRoots(), userId, query.requiredRole(), offset, limit);
+  }
+
+  @VisibleForTesting
+  List<Long> selectSortedIssueIds(IssueQuery query, int offset, int limit) {
+    SqlSession session = mybatis.openSession();
+    try {
+      return selectSortedIssueIds(query, null, offset, limit, session);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  public int countIssues(IssueQuery query, @Nullable Integer userId, SqlSession session) {
+    IssueMapper mapper = session.getMapper(IssueMapper.class);
+    return mapper.countIssues(query, query.componentRoots(), userId, query.requiredRole());
+  }
+
+  @VisibleForTesting
+  int countIssues(IssueQuery query) {
+    SqlSession session = mybatis.openSession();
+    try {
+      return countIssues(query, null, session);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   public List<IssueDto> selectIssues(IssueQuery query) {
     SqlSession session = mybatis.openSession();
     try {
@@ -126,6 +181,26 @@ public class IssueDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * @since 4.1.3
+   */
+  public List<IssueDto> selectByKeys(Collection<String> keys) {
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+    SqlSession session = mybatis.openSession();
+    try {
+      List<IssueDto> dtosList = newArrayList();
+      for (List<String> keysPartition : Lists.partition(newArrayList(keys), 1000)) {
+        List<IssueDto> dtos = session.selectList("org.sonar.core.issue.db.IssueMapper.selectByKeys", newArrayList(keysPartition));
+        dtosList.addAll(dtos);
+      }
+      return dtosList;
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   public List<IssueDto> selectByIds(Collection<Long> ids, SqlSession session) {
     if (ids.isEmpty()) {
       return Collections.emptyList();
@@ -332,6 +332,25 @@ public final class IssueDto implements Serializable {
     return this;
   }
 
+  /**
+   * Rule and component keys are usually loaded by joins on the tables rules and projects
+   */
+  public IssueDto setRuleKey(String repo, String rule) {
+    this.ruleRepo = repo;
+    this.ruleKey = rule;
+    return this;
+  }
+
+  public IssueDto setComponentKey(String componentKey) {
+    this.componentKey = componentKey;
+    return this;
+  }
+
+  public IssueDto setRootComponentKey(String rootComponentKey) {
+    this.rootComponentKey = rootComponentKey;
+    return this;
+  }
+
   /**
    * Only for unit tests
    */
@@ -41,6 +41,23 @@ public interface IssueMapper {
                                 @Nullable @Param("userId") Integer userId, @Nullable @Param("role") String role,
                                 @Param("maxResults") Integer maxResult);
 
+  /**
+   * Return the ids of a page of authorized issues for a user, sorted according to the query.
+   * If the role is null, then the authorisation check is disabled.
+   * @since 4.1.3
+   */
+  List<Long> selectSortedIssueIds(@Param("query") IssueQuery query, @Param("componentRootKeys") Collection<String> componentRootKeys,
+                                  @Nullable @Param("userId") Integer userId, @Nullable @Param("role") String role,
+                                  @Param("offset") int offset, @Param("limit") int limit);
+
+  /**
+   * Return the number of authorized issues for a user.
+   * If the role is null, then the authorisation check is disabled.
+   * @since 4.1.3
+   */
+  int countIssues(@Param("query") IssueQuery query, @Param("componentRootKeys") Collection<String> componentRootKeys,
+                  @Nullable @Param("userId") Integer userId, @Nullable @Param("role") String role);
+
   /**
    * Return a none paginated list of authorized issues for a user.
    * If the role is null, then the authorisation check is disabled.
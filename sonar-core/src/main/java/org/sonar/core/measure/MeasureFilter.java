@@ -27,6 +27,7 @@ import org.apache.commons.lang.builder.ReflectionToStringBuilder;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Qualifiers;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.util.Collections;
@@ -56,6 +57,9 @@ public class MeasureFilter {
   // sort
   private MeasureFilterSort sort = new MeasureFilterSort();
 
+  // maximum number of rows, null if all the rows must be returned
+  private Integer maxResults = null;
+
   public String getBaseResourceKey() {
     return baseResourceKey;
   }
@@ -167,6 +171,22 @@ public class MeasureFilter {
     return this;
   }
 
+  /**
+   * @since 4.1.3
+   */
+  public MeasureFilter setMaxResults(@Nullable Integer i) {
+    this.maxResults = i;
+    return this;
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  @CheckForNull
+  public Integer getMaxResults() {
+    return maxResults;
+  }
+
   public Date getFromDate() {
     return fromDate;
   }
@@ -20,31 +20,68 @@
 package org.sonar.core.measure;
 
 import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableList;
 import org.apache.commons.lang.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.ServerComponent;
+import org.sonar.api.config.Settings;
 import org.sonar.core.profiling.Profiling;
 import org.sonar.core.profiling.Profiling.Level;
 import org.sonar.core.profiling.StopWatch;
+import org.sonar.core.resource.SnapshotDto;
 
 import javax.annotation.Nullable;
 
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 public class MeasureFilterEngine implements ServerComponent {
 
+  /**
+   * Maximum number of filter results kept in memory. Default value is 0, which disables the cache.
+   * @since 4.1.3
+   */
+  public static final String CACHE_SIZE_PROPERTY = "sonar.measureFilter.cacheSize";
+
+  /**
+   * Maximum duration in seconds of filter results in cache. Default value is 300.
+   * @since 4.1.3
+   */
+  public static final String CACHE_TTL_PROPERTY = "sonar.measureFilter.cacheTtlInSeconds";
+  private static final int CACHE_TTL_DEFAULT_VALUE = 300;
+
   private static final Logger LOG = LoggerFactory.getLogger("org.sonar.MEASURE_FILTER");
 
   private final MeasureFilterFactory factory;
   private final MeasureFilterExecutor executor;
   private final Profiling profiling;
 
-  public MeasureFilterEngine(MeasureFilterFactory factory, MeasureFilterExecutor executor, Profiling profiling) {
+  // results by filter and user. Null if cache is disabled.
+  private final Cache<String, CachedRows> cache;
+
+  public MeasureFilterEngine(MeasureFilterFactory factory, MeasureFilterExecutor executor, Profiling profiling, Settings settings) {
     this.executor = executor;
     this.factory = factory;
     this.profiling = profiling;
+    int cacheSize = settings.getInt(CACHE_SIZE_PROPERTY);
+    if (cacheSize > 0) {
+      int ttl = settings.hasKey(CACHE_TTL_PROPERTY) ? settings.getInt(CACHE_TTL_PROPERTY) : CACHE_TTL_DEFAULT_VALUE;
+      this.cache = CacheBuilder.newBuilder().maximumSize(cacheSize).expireAfterWrite(ttl, TimeUnit.SECONDS).build(new CacheLoader<String, CachedRows>() {
+        @Override
+        public CachedRows load(String key) {
+          // results are put in cache by execute()
+          throw new UnsupportedOperationException();
+        }
+      });
+    } else {
+      this.cache = null;
+    }
   }
 
   public MeasureFilterResult execute(Map<String, Object> filterMap, @Nullable Long userId) {
@@ -55,10 +92,21 @@ public class MeasureFilterEngine implements ServerComponent {
     context.setUserId(userId);
     context.setData(String.format("{%s}", Joiner.on('|').withKeyValueSeparator("=").join(filterMap)));
     try {
+      String cacheKey = cacheKey(filterMap, userId);
+      CachedRows cachedRows = cache != null ? cache.asMap().get(cacheKey) : null;
+      if (cachedRows != null) {
+        context.setSql("<cached>");
+        result.setRows(cachedRows.rows);
+        return result;
+      }
       MeasureFilter filter = factory.create(filterMap);
       sqlWatch = profiling.start("sql", Level.FULL);
       List<MeasureFilterRow> rows = executor.execute(filter, context);
       result.setRows(rows);
+      if (cache != null && !filter.isOnFavourites()) {
+        SnapshotDto baseSnapshot = context.getBaseSnapshot();
+        cache.asMap().put(cacheKey, new CachedRows(ImmutableList.copyOf(rows), baseSnapshot != null ? baseSnapshot.getRootProjectId() : null));
+      }
 
     } catch (Exception e) {
       result.setError(MeasureFilterResult.Error.UNKNOWN);
@@ -72,6 +120,38 @@ public class MeasureFilterEngine implements ServerComponent {
     return result;
   }
 
+  /**
+   * Remove the cached results that can be changed by a new analysis of the given project, i.e. all the results
+   * except the ones restricted to other projects. Must be called when the last snapshot of the project changes.
+   *
+   * @since 4.1.3
+   */
+  public void clearCache(long rootProjectId) {
+    if (cache != null) {
+      for (Map.Entry<String, CachedRows> entry : cache.asMap().entrySet()) {
+        Long cachedProjectId = entry.getValue().rootProjectId;
+        if (cachedProjectId == null || cachedProjectId == rootProjectId) {
+          cache.invalidate(entry.getKey());
+        }
+      }
+    }
+  }
+
+  private static String cacheKey(Map<String, Object> filterMap, @Nullable Long userId) {
+    // map is sorted so that the key does not depend on the order of criteria
+    return userId + "|" + Joiner.on('|').withKeyValueSeparator("=").join(new TreeMap<String, Object>(filterMap));
+  }
+
+  private static class CachedRows {
+    private final List<MeasureFilterRow> rows;
+    private final Long rootProjectId;
+
+    CachedRows(List<MeasureFilterRow> rows, @Nullable Long rootProjectId) {
+      this.rows = rows;
+      this.rootProjectId = rootProjectId;
+    }
+  }
+
   private String log(MeasureFilterContext context, MeasureFilterResult result) {
     StringBuilder log = new StringBuilder();
     log.append(SystemUtils.LINE_SEPARATOR);
@@ -70,6 +70,10 @@ public class MeasureFilterFactory implements ServerComponent {
     fillDateConditions(filter, properties);
     fillSorting(filter, properties);
     fillMeasureConditions(properties, filter);
+    String maxResults = (String) properties.get("maxResults");
+    if (StringUtils.isNotBlank(maxResults)) {
+      filter.setMaxResults(Integer.valueOf(maxResults));
+    }
     return filter;
   }
 
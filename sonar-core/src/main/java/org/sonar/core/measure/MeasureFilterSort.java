@@ -88,6 +88,14 @@ class MeasureFilterSort {
     return metric != null && metric.getKey().equals(CoreMetrics.ALERT_STATUS_KEY);
   }
 
+  /**
+   * Numeric and date values are compared the same way by database and by {@link MeasureFilterSql},
+   * so their sorting can be pushed to database.
+   */
+  boolean isSortedByDatabase() {
+    return isOnNumericMeasure() || isOnDate();
+  }
+
   boolean isAsc() {
     return asc;
   }
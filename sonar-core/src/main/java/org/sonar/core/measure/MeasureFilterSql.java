@@ -32,8 +32,10 @@ import org.sonar.core.resource.SnapshotDto;
 import javax.annotation.Nullable;
 
 import java.sql.*;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 class MeasureFilterSql {
 
@@ -57,6 +59,10 @@ class MeasureFilterSql {
       for (int index = 0; index < dateParameters.size(); index++) {
         statement.setDate(index + 1, dateParameters.get(index));
       }
+      if (filter.getMaxResults() != null && filter.sort().isSortedByDatabase()) {
+        // rows are sorted by database, the driver can stop fetching them once the limit is reached
+        statement.setMaxRows(filter.getMaxResults());
+      }
       rs = statement.executeQuery();
       return process(rs);
 
@@ -102,9 +108,22 @@ class MeasureFilterSql {
       condition.appendSqlCondition(sb, index);
     }
 
+    if (filter.sort().isSortedByDatabase()) {
+      appendSortOrder(sb);
+    }
     return sb.toString();
   }
 
+  /**
+   * Null values are last, whatever the direction. Snapshot id is used to get a stable order.
+   */
+  private void appendSortOrder(StringBuilder sb) {
+    String column = filter.sort().column();
+    String direction = filter.sort().isAsc() ? " ASC" : " DESC";
+    sb.append(" ORDER BY CASE WHEN ").append(column).append(" IS NULL THEN 1 ELSE 0 END, ");
+    sb.append(column).append(direction).append(", s.id");
+  }
+
   private void appendResourceConditions(StringBuilder sb) {
     sb.append(" s.status='P' AND s.islast=").append(database.getDialect().getTrueSqlValue());
     if (context.getBaseSnapshot() == null) {
@@ -195,10 +214,20 @@ class MeasureFilterSql {
       rowProcessor = new TextSortRowProcessor();
     }
 
+    Integer maxResults = filter.getMaxResults();
+    if (filter.sort().isSortedByDatabase()) {
+      while (rs.next() && (maxResults == null || rows.size() < maxResults)) {
+        rows.add(rowProcessor.fetch(rs));
+      }
+      return rows;
+    }
+
+    if (maxResults != null) {
+      return rowProcessor.top(rs, filter.sort().isAsc(), maxResults);
+    }
     while (rs.next()) {
       rows.add(rowProcessor.fetch(rs));
     }
-
     return rowProcessor.sort(rows, filter.sort().isAsc());
   }
 
@@ -223,8 +252,37 @@ class MeasureFilterSql {
     abstract MeasureFilterRow fetch(ResultSet rs) throws SQLException;
 
     final List<MeasureFilterRow> sort(List<MeasureFilterRow> rows, boolean ascending) {
-      Ordering<MeasureFilterRow> ordering = sortFieldOrdering(ascending).onResultOf(sortFieldFunction());
-      return ordering.immutableSortedCopy(rows);
+      return rowOrdering(ascending).immutableSortedCopy(rows);
+    }
+
+    /**
+     * The sort field function and ordering of each processor are of the same type
+     */
+    @SuppressWarnings("unchecked")
+    private Ordering<MeasureFilterRow> rowOrdering(boolean ascending) {
+      return sortFieldOrdering(ascending).onResultOf(sortFieldFunction());
+    }
+
+    /**
+     * The first <code>maxResults</code> sorted rows. Only these rows are kept in memory, in a bounded heap
+     * whose head is the greatest row.
+     */
+    final List<MeasureFilterRow> top(ResultSet rs, boolean ascending, int maxResults) throws SQLException {
+      Ordering<MeasureFilterRow> ordering = rowOrdering(ascending);
+      if (maxResults <= 0) {
+        return Collections.emptyList();
+      }
+      PriorityQueue<MeasureFilterRow> heap = new PriorityQueue<MeasureFilterRow>(maxResults, ordering.reverse());
+      while (rs.next()) {
+        MeasureFilterRow row = fetch(rs);
+        if (heap.size() < maxResults) {
+          heap.add(row);
+        } else if (ordering.compare(row, heap.peek()) < 0) {
+          heap.poll();
+          heap.add(row);
+        }
+      }
+      return ordering.immutableSortedCopy(heap);
     }
   }
 
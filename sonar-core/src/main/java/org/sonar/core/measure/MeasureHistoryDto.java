@@ -0,0 +1,63 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.measure;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Value of a measure of a past analysis, as loaded by {@link MeasureHistoryMapper}
+ *
+ * @since 4.1.3
+ */
+public final class MeasureHistoryDto {
+
+  private int resourceId;
+  private int metricId;
+  private Double value;
+
+  public int getResourceId() {
+    return resourceId;
+  }
+
+  public MeasureHistoryDto setResourceId(int resourceId) {
+    this.resourceId = resourceId;
+    return this;
+  }
+
+  public int getMetricId() {
+    return metricId;
+  }
+
+  public MeasureHistoryDto setMetricId(int metricId) {
+    this.metricId = metricId;
+    return this;
+  }
+
+  @CheckForNull
+  public Double getValue() {
+    return value;
+  }
+
+  public MeasureHistoryDto setValue(@Nullable Double value) {
+    this.value = value;
+    return this;
+  }
+}
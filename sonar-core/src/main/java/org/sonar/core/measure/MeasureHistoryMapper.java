@@ -0,0 +1,38 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.measure;
+
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.Date;
+
+/**
+ * @since 4.1.3
+ */
+public interface MeasureHistoryMapper {
+
+  /**
+   * Streams the measures of the processed analyses of a module and of its directories done between the two
+   * dates (inclusive), ordered by date. Measures related to a characteristic, a developer or a rule are excluded.
+   * Results are {@link MeasureHistoryDto}.
+   */
+  void selectModuleHistory(@Param("moduleId") int moduleId, @Param("from") Date from, @Param("to") Date to, ResultHandler handler);
+}
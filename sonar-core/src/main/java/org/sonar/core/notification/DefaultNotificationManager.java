@@ -42,6 +42,8 @@ import java.io.IOException;
 import java.io.InvalidClassException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @since 2.10
@@ -57,6 +59,7 @@ public class DefaultNotificationManager implements NotificationManager {
   private PropertiesDao propertiesDao;
 
   private boolean alreadyLoggedDeserializationIssue = false;
+  private volatile Map<String, List<String>> subscribersCache = null;
 
   /**
    * Default constructor used by Pico
@@ -95,20 +98,46 @@ public class DefaultNotificationManager implements NotificationManager {
    * Give the notification queue so that it can be processed
    */
   public Notification getFromQueue() {
-    int batchSize = 1;
-    List<NotificationQueueDto> notificationDtos = notificationQueueDao.findOldest(batchSize);
+    List<NotificationQueueDto> notificationDtos = notificationQueueDao.findOldest(1);
     if (notificationDtos.isEmpty()) {
       return null;
     }
     notificationQueueDao.delete(notificationDtos);
 
-    return convertToNotification(notificationDtos);
+    return convertToNotification(notificationDtos.get(0));
+  }
+
+  /**
+   * Give at most <code>batchSize</code> notifications to the handler, oldest first, then remove them from the queue.
+   * Notifications are kept in the queue if the handler fails, so that they are not lost when the server is stopped
+   * during their delivery. Notifications that can not be read anymore are removed from the queue without being handled.
+   *
+   * @return the number of notifications removed from the queue, zero if the queue is empty
+   * @since 4.1.3
+   */
+  public int processBatchFromQueue(int batchSize, BatchHandler handler) {
+    List<NotificationQueueDto> notificationDtos = notificationQueueDao.findOldest(batchSize);
+    if (notificationDtos.isEmpty()) {
+      return 0;
+    }
+
+    List<Notification> notifications = Lists.newArrayListWithCapacity(notificationDtos.size());
+    for (NotificationQueueDto notificationDto : notificationDtos) {
+      Notification notification = convertToNotification(notificationDto);
+      if (notification != null) {
+        notifications.add(notification);
+      }
+    }
+    if (!notifications.isEmpty()) {
+      handler.handle(notifications);
+    }
+    notificationQueueDao.delete(notificationDtos);
+    return notificationDtos.size();
   }
 
-  private Notification convertToNotification(List<NotificationQueueDto> notifications) {
+  private Notification convertToNotification(NotificationQueueDto notification) {
     try {
-      // If batchSize is increased then we should return a list instead of a single element
-      return notifications.get(0).toNotification();
+      return notification.toNotification();
     } catch (InvalidClassException e) {
       // SONAR-4739
       if (!alreadyLoggedDeserializationIssue) {
@@ -133,6 +162,23 @@ public class DefaultNotificationManager implements NotificationManager {
     return notificationQueueDao.count();
   }
 
+  /**
+   * Keep the subscribers loaded from database in memory until {@link #stopSubscribersCache()} is called, so that
+   * the dispatch of a batch of notifications does not request the same subscriptions again and again.
+   *
+   * @since 4.1.3
+   */
+  public void startSubscribersCache() {
+    subscribersCache = new ConcurrentHashMap<String, List<String>>();
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  public void stopSubscribersCache() {
+    subscribersCache = null;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -144,11 +190,11 @@ public class DefaultNotificationManager implements NotificationManager {
       String channelKey = channel.getKey();
 
       // Find users subscribed globally to the dispatcher (i.e. not on a specific project)
-      addUsersToRecipientListForChannel(propertiesDao.findUsersForNotification(dispatcherKey, channelKey, null), recipients, channel);
+      addUsersToRecipientListForChannel(findUsersForNotification(dispatcherKey, channelKey, null), recipients, channel);
 
       if (resourceId != null) {
         // Find users subscribed to the dispatcher specifically for the resource
-        addUsersToRecipientListForChannel(propertiesDao.findUsersForNotification(dispatcherKey, channelKey, resourceId.longValue()), recipients, channel);
+        addUsersToRecipientListForChannel(findUsersForNotification(dispatcherKey, channelKey, resourceId.longValue()), recipients, channel);
       }
     }
 
@@ -161,12 +207,38 @@ public class DefaultNotificationManager implements NotificationManager {
 
     SetMultimap<String, NotificationChannel> recipients = HashMultimap.create();
     for (NotificationChannel channel : notificationChannels) {
-      addUsersToRecipientListForChannel(propertiesDao.findNotificationSubscribers(dispatcherKey, channel.getKey(), componentKey), recipients, channel);
+      addUsersToRecipientListForChannel(findNotificationSubscribers(dispatcherKey, channel.getKey(), componentKey), recipients, channel);
     }
 
     return recipients;
   }
 
+  private List<String> findUsersForNotification(String dispatcherKey, String channelKey, @Nullable Long resourceId) {
+    Map<String, List<String>> cache = subscribersCache;
+    String cacheKey = "users|" + dispatcherKey + "|" + channelKey + "|" + resourceId;
+    List<String> users = cache != null ? cache.get(cacheKey) : null;
+    if (users == null) {
+      users = propertiesDao.findUsersForNotification(dispatcherKey, channelKey, resourceId);
+      if (cache != null) {
+        cache.put(cacheKey, users);
+      }
+    }
+    return users;
+  }
+
+  private List<String> findNotificationSubscribers(String dispatcherKey, String channelKey, @Nullable String componentKey) {
+    Map<String, List<String>> cache = subscribersCache;
+    String cacheKey = "subscribers|" + dispatcherKey + "|" + channelKey + "|" + componentKey;
+    List<String> users = cache != null ? cache.get(cacheKey) : null;
+    if (users == null) {
+      users = propertiesDao.findNotificationSubscribers(dispatcherKey, channelKey, componentKey);
+      if (cache != null) {
+        cache.put(cacheKey, users);
+      }
+    }
+    return users;
+  }
+
   @VisibleForTesting
   protected List<NotificationChannel> getChannels() {
     return Arrays.asList(notificationChannels);
@@ -178,4 +250,10 @@ public class DefaultNotificationManager implements NotificationManager {
     }
   }
 
+  /**
+   * @since 4.1.3
+   */
+  public interface BatchHandler {
+    void handle(List<Notification> notifications);
+  }
 }
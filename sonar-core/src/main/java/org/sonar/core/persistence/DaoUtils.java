@@ -36,6 +36,7 @@ import org.sonar.core.resource.ResourceIndexerDao;
 import org.sonar.core.resource.ResourceKeyUpdaterDao;
 import org.sonar.core.rule.RuleDao;
 import org.sonar.core.source.jdbc.SnapshotDataDao;
+import org.sonar.core.source.jdbc.SnapshotSourceDao;
 import org.sonar.core.technicaldebt.db.CharacteristicDao;
 import org.sonar.core.template.LoadedTemplateDao;
 import org.sonar.core.user.*;
@@ -79,6 +80,7 @@ public final class DaoUtils {
       RuleDao.class,
       SemaphoreDao.class,
       SnapshotDataDao.class,
+      SnapshotSourceDao.class,
       UserDao.class
     );
   }
@@ -0,0 +1,164 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.persistence;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.sonar.core.profiling.MetricsRegistry;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds the timer "sql.[id of mapped statement]" of {@link MetricsRegistry}, if available, and the
+ * {@link SqlStatistics}, if enabled. When the result is streamed to a {@link ResultHandler}, the time spent
+ * in the handler is included. In batch sessions, the time of updates does not include the execution of the batch.
+ * <p/>
+ * The SQL of slow requests is recorded with the values of its parameters only if
+ * {@link SqlStatistics#SLOW_QUERIES_PARAMETERS_PROPERTY} is enabled, as they can be confidential.
+ *
+ * @since 4.1.3
+ */
+@Intercepts({
+  @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+  @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class})
+})
+class MetricsInterceptor implements Interceptor {
+
+  static final String TIMER_PREFIX = "sql.";
+
+  private final MetricsRegistry metrics;
+  private final SqlStatistics statistics;
+
+  MetricsInterceptor(@Nullable MetricsRegistry metrics, SqlStatistics statistics) {
+    this.metrics = metrics;
+    this.statistics = statistics;
+  }
+
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    Object[] args = invocation.getArgs();
+    MappedStatement statement = (MappedStatement) args[0];
+    CountingResultHandler countingHandler = null;
+    if (args.length > 3 && args[3] != null) {
+      countingHandler = new CountingResultHandler((ResultHandler) args[3]);
+      args[3] = countingHandler;
+    }
+    long start = System.nanoTime();
+    Object result = null;
+    try {
+      result = invocation.proceed();
+      return result;
+    } finally {
+      long duration = System.nanoTime() - start;
+      if (metrics != null) {
+        metrics.timer(TIMER_PREFIX + statement.getId()).update(duration, TimeUnit.NANOSECONDS);
+      }
+      if (statistics.isEnabled()) {
+        int rows = countingHandler != null ? countingHandler.count : rows(result);
+        statistics.record(statement.getId(), duration, rows);
+        if (statistics.isSlow(duration)) {
+          BoundSql boundSql = statement.getBoundSql(args[1]);
+          List<Object> parameters = statistics.isSlowQueriesParameters() ?
+            parameters(statement.getConfiguration(), boundSql, args[1]) : Collections.emptyList();
+          statistics.recordSlowQuery(statement.getId(), boundSql.getSql(), parameters, duration, rows);
+        }
+      }
+    }
+  }
+
+  private static int rows(@Nullable Object result) {
+    if (result instanceof List) {
+      return ((List) result).size();
+    }
+    if (result instanceof Integer) {
+      return (Integer) result;
+    }
+    return 0;
+  }
+
+  /**
+   * Same resolution of parameter values than {@link org.apache.ibatis.scripting.defaults.DefaultParameterHandler}
+   */
+  private static List<Object> parameters(Configuration configuration, BoundSql boundSql, @Nullable Object parameterObject) {
+    List<Object> values = new ArrayList<Object>();
+    MetaObject metaObject = null;
+    for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+      String property = mapping.getProperty();
+      Object value;
+      if (boundSql.hasAdditionalParameter(property)) {
+        value = boundSql.getAdditionalParameter(property);
+      } else if (parameterObject == null) {
+        value = null;
+      } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+        value = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameterObject);
+        }
+        value = metaObject.getValue(property);
+      }
+      values.add(value);
+    }
+    return values;
+  }
+
+  @Override
+  public Object plugin(Object target) {
+    return Plugin.wrap(target, this);
+  }
+
+  @Override
+  public void setProperties(Properties properties) {
+    // no properties
+  }
+
+  private static class CountingResultHandler implements ResultHandler {
+    private final ResultHandler handler;
+    private int count = 0;
+
+    CountingResultHandler(ResultHandler handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public void handleResult(ResultContext context) {
+      count++;
+      handler.handleResult(context);
+    }
+  }
+}
@@ -47,9 +47,12 @@ import org.sonar.core.graph.jdbc.GraphDtoMapper;
 import org.sonar.core.issue.db.*;
 import org.sonar.core.measure.MeasureFilterDto;
 import org.sonar.core.measure.MeasureFilterMapper;
+import org.sonar.core.measure.MeasureHistoryDto;
+import org.sonar.core.measure.MeasureHistoryMapper;
 import org.sonar.core.notification.db.NotificationQueueDto;
 import org.sonar.core.notification.db.NotificationQueueMapper;
 import org.sonar.core.permission.*;
+import org.sonar.core.profiling.MetricsRegistry;
 import org.sonar.core.profiling.Profiling;
 import org.sonar.core.properties.PropertiesMapper;
 import org.sonar.core.properties.PropertyDto;
@@ -68,6 +71,8 @@ import org.sonar.core.template.LoadedTemplateDto;
 import org.sonar.core.template.LoadedTemplateMapper;
 import org.sonar.core.user.*;
 
+import javax.annotation.Nullable;
+
 import java.io.InputStream;
 
 public class MyBatis implements BatchComponent, ServerComponent {
@@ -75,12 +80,24 @@ public class MyBatis implements BatchComponent, ServerComponent {
   private final Database database;
   private final Settings settings;
   private final Logback logback;
+  private final MetricsRegistry metrics;
+  private final SqlStatistics sqlStatistics;
   private SqlSessionFactory sessionFactory;
 
   public MyBatis(Database database, Settings settings, Logback logback) {
+    this(database, settings, logback, null);
+  }
+
+  /**
+   * Used by server, where SQL timings are aggregated per mapped statement.
+   * @since 4.1.3
+   */
+  public MyBatis(Database database, Settings settings, Logback logback, @Nullable MetricsRegistry metrics) {
     this.database = database;
     this.settings = settings;
     this.logback = logback;
+    this.metrics = metrics;
+    this.sqlStatistics = new SqlStatistics(settings);
   }
 
   public MyBatis start() {
@@ -94,6 +111,9 @@ public class MyBatis implements BatchComponent, ServerComponent {
     conf.setJdbcTypeForNull(JdbcType.NULL);
     conf.getVariables().setProperty("_true", database.getDialect().getTrueSqlValue());
     conf.getVariables().setProperty("_false", database.getDialect().getFalseSqlValue());
+    if (metrics != null || sqlStatistics.isEnabled()) {
+      conf.addInterceptor(new MetricsInterceptor(metrics, sqlStatistics));
+    }
 
     loadAlias(conf, "ActiveDashboard", ActiveDashboardDto.class);
     loadAlias(conf, "Author", AuthorDto.class);
@@ -106,6 +126,7 @@ public class MyBatis implements BatchComponent, ServerComponent {
     loadAlias(conf, "GroupMembership", GroupMembershipDto.class);
     loadAlias(conf, "LoadedTemplate", LoadedTemplateDto.class);
     loadAlias(conf, "MeasureFilter", MeasureFilterDto.class);
+    loadAlias(conf, "MeasureHistory", MeasureHistoryDto.class);
     loadAlias(conf, "NotificationQueue", NotificationQueueDto.class);
     loadAlias(conf, "Property", PropertyDto.class);
     loadAlias(conf, "PurgeableSnapshot", PurgeableSnapshotDto.class);
@@ -149,7 +170,7 @@ public class MyBatis implements BatchComponent, ServerComponent {
       LoadedTemplateMapper.class, MeasureFilterMapper.class, PermissionTemplateMapper.class, PropertiesMapper.class, PurgeMapper.class,
       ResourceKeyUpdaterMapper.class, ResourceIndexerMapper.class, ResourceSnapshotMapper.class, RoleMapper.class, RuleMapper.class,
       SchemaMigrationMapper.class, SemaphoreMapper.class, UserMapper.class, WidgetMapper.class, WidgetPropertyMapper.class,
-      MeasureMapper.class, SnapshotDataMapper.class, SnapshotSourceMapper.class, ActionPlanMapper.class, ActionPlanStatsMapper.class,
+      MeasureMapper.class, MeasureHistoryMapper.class, SnapshotDataMapper.class, SnapshotSourceMapper.class, ActionPlanMapper.class, ActionPlanStatsMapper.class,
       NotificationQueueMapper.class, CharacteristicMapper.class,
       GroupMembershipMapper.class
     };
@@ -160,6 +181,23 @@ public class MyBatis implements BatchComponent, ServerComponent {
     return this;
   }
 
+  /**
+   * Logs the SQL statistics, if enabled
+   * @since 4.1.3
+   */
+  public void stop() {
+    if (sqlStatistics.isEnabled()) {
+      sqlStatistics.dump(LoggerFactory.getLogger(SqlStatistics.class));
+    }
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  public SqlStatistics getSqlStatistics() {
+    return sqlStatistics;
+  }
+
   public SqlSessionFactory getSessionFactory() {
     return sessionFactory;
   }
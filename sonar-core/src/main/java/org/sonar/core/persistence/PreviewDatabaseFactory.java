@@ -20,6 +20,7 @@
 package org.sonar.core.persistence;
 
 import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.commons.io.FileUtils;
 import org.sonar.api.ServerComponent;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.utils.SonarException;
@@ -32,6 +33,7 @@ import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
 
 public class PreviewDatabaseFactory implements ServerComponent {
@@ -52,19 +54,37 @@ public class PreviewDatabaseFactory implements ServerComponent {
   }
 
   public File createNewDatabaseForDryRun(Long projectId, File destFolder, String dbFileName) {
+    return createNewDatabaseForDryRun(projectId, destFolder, dbFileName, null);
+  }
+
+  /**
+   * Creates the preview database of a project from a copy of a database previously created without project. Only
+   * the tables related to the project are then copied from the SonarQube database.
+   *
+   * @param globalDatabase the file of a database created without project, or null to copy all the tables
+   * @since 4.1.3
+   */
+  public File createNewDatabaseForDryRun(@Nullable Long projectId, File destFolder, String dbFileName, @Nullable File globalDatabase) {
     StopWatch watch = profiling.start("previewdb", Level.BASIC);
 
     String h2Name = destFolder.getAbsolutePath() + File.separator + dbFileName;
+    File dbFile = new File(h2Name + H2_FILE_SUFFIX);
 
     try {
       DataSource source = database.getDataSource();
-      BasicDataSource destination = create(DIALECT, DRIVER, USER, PASSWORD, URL + h2Name);
-
-      copy(source, destination, projectId);
+      BasicDataSource destination;
+      if (globalDatabase != null) {
+        FileUtils.copyFile(globalDatabase, dbFile);
+        destination = new DbTemplate(profiling).dataSource(DRIVER, USER, PASSWORD, URL + h2Name);
+      } else {
+        destination = create(DIALECT, DRIVER, USER, PASSWORD, URL + h2Name);
+        copyGlobalTables(source, destination);
+      }
+      if (projectId != null) {
+        copyProjectTables(source, destination, projectId);
+      }
       close(destination);
 
-      File dbFile = new File(h2Name + H2_FILE_SUFFIX);
-
       long size = dbFile.length();
       String message = "";
       if (projectId == null) {
@@ -78,13 +98,14 @@ public class PreviewDatabaseFactory implements ServerComponent {
 
     } catch (SQLException e) {
       throw new SonarException("Unable to create database for DryRun", e);
+    } catch (IOException e) {
+      throw new SonarException("Unable to create database for DryRun", e);
     }
 
   }
 
-  private void copy(DataSource source, DataSource dest, @Nullable Long projectId) {
-    DbTemplate template = new DbTemplate(profiling);
-    template
+  private void copyGlobalTables(DataSource source, DataSource dest) {
+    new DbTemplate(profiling)
       .copyTable(source, dest, "active_rules")
       .copyTable(source, dest, "active_rule_parameters")
       .copyTable(source, dest, "characteristics")
@@ -97,52 +118,54 @@ public class PreviewDatabaseFactory implements ServerComponent {
       .copyTable(source, dest, "rules_profiles")
       .copyTable(source, dest, "alerts")
       .copyTableColumns(source, dest, "users", new String[] {"id", "login", "name", "active"});
-    if (projectId != null) {
-      template.copyTable(source, dest, "projects", projectQuery(projectId, false));
-
-      template.copyTable(source, dest, "events", "SELECT * FROM events WHERE resource_id=" + projectId);
-
-      StringBuilder snapshotQuery = new StringBuilder()
-        // All snapshots of root_project for alerts on differential periods
-        .append("SELECT * FROM snapshots WHERE project_id=")
-        .append(projectId)
-        // Plus all last snapshots of all modules having hash data for partial analysis
-        .append(" UNION SELECT snap.* FROM snapshots snap")
-        .append(" INNER JOIN (")
-        .append(projectQuery(projectId, true))
-        .append(") res")
-        .append(" ON snap.project_id=res.id")
-        .append(" INNER JOIN snapshot_data data")
-        .append(" ON snap.id=data.snapshot_id")
-        .append(" AND data.data_type='").append(SnapshotDataTypes.FILE_HASHES).append("'")
-        .append(" AND snap.islast=").append(database.getDialect().getTrueSqlValue());
-      template.copyTable(source, dest, "snapshots", snapshotQuery.toString());
-
-      StringBuilder snapshotDataQuery = new StringBuilder()
-        .append("SELECT data.* FROM snapshot_data data")
-        .append(" INNER JOIN snapshots s")
-        .append(" ON s.id=data.snapshot_id")
-        .append(" AND s.islast=").append(database.getDialect().getTrueSqlValue())
-        .append(" INNER JOIN (")
-        .append(projectQuery(projectId, true))
-        .append(") res")
-        .append(" ON data.resource_id=res.id")
-        .append(" AND data.data_type='").append(SnapshotDataTypes.FILE_HASHES).append("'");
-      template.copyTable(source, dest, "snapshot_data", snapshotDataQuery.toString());
-
-      // All measures of snapshots of root project for alerts on differential periods
-      template.copyTable(source, dest, "project_measures", "SELECT m.* FROM project_measures m INNER JOIN snapshots s on m.snapshot_id=s.id "
-        + "WHERE s.project_id=" + projectId);
-
-      StringBuilder issueQuery = new StringBuilder()
-        .append("SELECT issues.* FROM issues")
-        .append(" INNER JOIN (")
-        .append(projectQuery(projectId, true))
-        .append(") resources")
-        .append(" ON issues.component_id=resources.id")
-        .append(" AND status <> '").append(Issue.STATUS_CLOSED).append("'");
-      template.copyTable(source, dest, "issues", issueQuery.toString());
-    }
+  }
+
+  private void copyProjectTables(DataSource source, DataSource dest, Long projectId) {
+    DbTemplate template = new DbTemplate(profiling);
+    template.copyTable(source, dest, "projects", projectQuery(projectId, false));
+
+    template.copyTable(source, dest, "events", "SELECT * FROM events WHERE resource_id=" + projectId);
+
+    StringBuilder snapshotQuery = new StringBuilder()
+      // All snapshots of root_project for alerts on differential periods
+      .append("SELECT * FROM snapshots WHERE project_id=")
+      .append(projectId)
+      // Plus all last snapshots of all modules having hash data for partial analysis
+      .append(" UNION SELECT snap.* FROM snapshots snap")
+      .append(" INNER JOIN (")
+      .append(projectQuery(projectId, true))
+      .append(") res")
+      .append(" ON snap.project_id=res.id")
+      .append(" INNER JOIN snapshot_data data")
+      .append(" ON snap.id=data.snapshot_id")
+      .append(" AND data.data_type='").append(SnapshotDataTypes.FILE_HASHES).append("'")
+      .append(" AND snap.islast=").append(database.getDialect().getTrueSqlValue());
+    template.copyTable(source, dest, "snapshots", snapshotQuery.toString());
+
+    StringBuilder snapshotDataQuery = new StringBuilder()
+      .append("SELECT data.* FROM snapshot_data data")
+      .append(" INNER JOIN snapshots s")
+      .append(" ON s.id=data.snapshot_id")
+      .append(" AND s.islast=").append(database.getDialect().getTrueSqlValue())
+      .append(" INNER JOIN (")
+      .append(projectQuery(projectId, true))
+      .append(") res")
+      .append(" ON data.resource_id=res.id")
+      .append(" AND data.data_type='").append(SnapshotDataTypes.FILE_HASHES).append("'");
+    template.copyTable(source, dest, "snapshot_data", snapshotDataQuery.toString());
+
+    // All measures of snapshots of root project for alerts on differential periods
+    template.copyTable(source, dest, "project_measures", "SELECT m.* FROM project_measures m INNER JOIN snapshots s on m.snapshot_id=s.id "
+      + "WHERE s.project_id=" + projectId);
+
+    StringBuilder issueQuery = new StringBuilder()
+      .append("SELECT issues.* FROM issues")
+      .append(" INNER JOIN (")
+      .append(projectQuery(projectId, true))
+      .append(") resources")
+      .append(" ON issues.component_id=resources.id")
+      .append(" AND status <> '").append(Issue.STATUS_CLOSED).append("'");
+    template.copyTable(source, dest, "issues", issueQuery.toString());
   }
 
   private String projectQuery(Long projectId, boolean returnOnlyIds) {
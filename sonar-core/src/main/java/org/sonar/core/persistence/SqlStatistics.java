@@ -0,0 +1,252 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.persistence;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.sonar.api.config.Settings;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Statistics of the SQL requests executed through MyBatis, aggregated per mapped statement. The SQL of requests
+ * slower than {@link #SLOW_THRESHOLD_PROPERTY} is kept in a ring buffer of size {@link #SLOW_QUERIES_PROPERTY}.
+ * Values of bound parameters are kept only if {@link #SLOW_QUERIES_PARAMETERS_PROPERTY} is enabled, as they can be
+ * confidential, for example passwords. Disabled by default.
+ *
+ * @see MyBatis#getSqlStatistics()
+ * @since 4.1.3
+ */
+public class SqlStatistics {
+
+  public static final String ENABLED_PROPERTY = "sonar.sql.statistics";
+
+  public static final String SLOW_THRESHOLD_PROPERTY = "sonar.sql.slowThresholdInMs";
+  public static final int SLOW_THRESHOLD_DEFAULT_VALUE = 1000;
+
+  public static final String SLOW_QUERIES_PROPERTY = "sonar.sql.slowQueries";
+  public static final int SLOW_QUERIES_DEFAULT_VALUE = 100;
+
+  /**
+   * Whether the values of the bound parameters of slow queries are kept, so that queries can be replayed,
+   * for example with EXPLAIN. Default value is false.
+   */
+  public static final String SLOW_QUERIES_PARAMETERS_PROPERTY = "sonar.sql.slowQueries.parameters";
+
+  private final boolean enabled;
+  private final boolean slowQueriesParameters;
+  private final long slowThresholdInNanos;
+  private final ConcurrentMap<String, StatementStatistics> statements = Maps.newConcurrentMap();
+  private final AtomicReferenceArray<SlowQuery> slowQueries;
+  private final AtomicLong slowQueriesCount = new AtomicLong();
+
+  public SqlStatistics(Settings settings) {
+    this.enabled = settings.getBoolean(ENABLED_PROPERTY);
+    this.slowQueriesParameters = settings.getBoolean(SLOW_QUERIES_PARAMETERS_PROPERTY);
+    long threshold = settings.hasKey(SLOW_THRESHOLD_PROPERTY) ? settings.getLong(SLOW_THRESHOLD_PROPERTY) : SLOW_THRESHOLD_DEFAULT_VALUE;
+    this.slowThresholdInNanos = TimeUnit.MILLISECONDS.toNanos(threshold);
+    int size = settings.hasKey(SLOW_QUERIES_PROPERTY) ? settings.getInt(SLOW_QUERIES_PROPERTY) : SLOW_QUERIES_DEFAULT_VALUE;
+    this.slowQueries = new AtomicReferenceArray<SlowQuery>(Math.max(1, size));
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  boolean isSlowQueriesParameters() {
+    return slowQueriesParameters;
+  }
+
+  boolean isSlow(long durationInNanos) {
+    return durationInNanos >= slowThresholdInNanos;
+  }
+
+  void record(String statementId, long durationInNanos, int rows) {
+    StatementStatistics stats = statements.get(statementId);
+    if (stats == null) {
+      StatementStatistics newStats = new StatementStatistics(statementId);
+      stats = statements.putIfAbsent(statementId, newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+    stats.add(durationInNanos, rows);
+  }
+
+  void recordSlowQuery(String statementId, String sql, List<Object> parameters, long durationInNanos, int rows) {
+    SlowQuery query = new SlowQuery(statementId, sql.replaceAll("\\s+", " ").trim(), parameters, TimeUnit.NANOSECONDS.toMillis(durationInNanos), rows);
+    long index = slowQueriesCount.getAndIncrement();
+    slowQueries.set((int) (index % slowQueries.length()), query);
+  }
+
+  /**
+   * Statistics per mapped statement, sorted by descending total time
+   */
+  public List<StatementStatistics> statements() {
+    List<StatementStatistics> result = Lists.newArrayList(statements.values());
+    Collections.sort(result, new Comparator<StatementStatistics>() {
+      @Override
+      public int compare(StatementStatistics s1, StatementStatistics s2) {
+        return Long.valueOf(s2.totalTime()).compareTo(s1.totalTime());
+      }
+    });
+    return result;
+  }
+
+  /**
+   * The most recent slow queries, from the newest to the oldest
+   */
+  public List<SlowQuery> slowQueries() {
+    List<SlowQuery> result = Lists.newArrayList();
+    long count = slowQueriesCount.get();
+    int size = slowQueries.length();
+    for (long i = count - 1; i >= 0 && i >= count - size; i--) {
+      SlowQuery query = slowQueries.get((int) (i % size));
+      if (query != null) {
+        result.add(query);
+      }
+    }
+    return result;
+  }
+
+  public void dump(Logger logger) {
+    logger.info("SQL statistics per statement (count / rows / total time / max time):");
+    for (StatementStatistics stats : statements()) {
+      logger.info(String.format("  %s: %d / %d / %dms / %dms", stats.statementId(), stats.count(), stats.rows(), stats.totalTime(), stats.maxTime()));
+    }
+    List<SlowQuery> queries = slowQueries();
+    if (!queries.isEmpty()) {
+      logger.info("Most recent slow SQL requests:");
+      for (SlowQuery query : queries) {
+        if (query.parameters().isEmpty()) {
+          logger.info(String.format("  %dms %s (%d rows): %s", query.time(), query.statementId(), query.rows(), query.sql()));
+        } else {
+          logger.info(String.format("  %dms %s (%d rows): %s %s", query.time(), query.statementId(), query.rows(), query.sql(), query.parameters()));
+        }
+      }
+    }
+  }
+
+  public static class StatementStatistics {
+    private final String statementId;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong maxTime = new AtomicLong();
+
+    StatementStatistics(String statementId) {
+      this.statementId = statementId;
+    }
+
+    void add(long durationInNanos, int rowCount) {
+      count.incrementAndGet();
+      rows.addAndGet(rowCount);
+      totalTime.addAndGet(durationInNanos);
+      long max = maxTime.get();
+      while (durationInNanos > max && !maxTime.compareAndSet(max, durationInNanos)) {
+        max = maxTime.get();
+      }
+    }
+
+    public String statementId() {
+      return statementId;
+    }
+
+    public long count() {
+      return count.get();
+    }
+
+    /**
+     * Number of selected or updated rows
+     */
+    public long rows() {
+      return rows.get();
+    }
+
+    /**
+     * In milliseconds
+     */
+    public long totalTime() {
+      return TimeUnit.NANOSECONDS.toMillis(totalTime.get());
+    }
+
+    /**
+     * In milliseconds
+     */
+    public long maxTime() {
+      return TimeUnit.NANOSECONDS.toMillis(maxTime.get());
+    }
+  }
+
+  public static class SlowQuery {
+    private final String statementId;
+    private final String sql;
+    private final List<Object> parameters;
+    private final long time;
+    private final int rows;
+    private final Date date = new Date();
+
+    SlowQuery(String statementId, String sql, List<Object> parameters, long time, int rows) {
+      this.statementId = statementId;
+      this.sql = sql;
+      this.parameters = parameters;
+      this.time = time;
+      this.rows = rows;
+    }
+
+    public String statementId() {
+      return statementId;
+    }
+
+    public String sql() {
+      return sql;
+    }
+
+    /**
+     * Values of the bound parameters. Empty if {@link #SLOW_QUERIES_PARAMETERS_PROPERTY} is disabled.
+     */
+    public List<Object> parameters() {
+      return parameters;
+    }
+
+    /**
+     * In milliseconds
+     */
+    public long time() {
+      return time;
+    }
+
+    public int rows() {
+      return rows;
+    }
+
+    public Date date() {
+      return date;
+    }
+  }
+}
@@ -19,11 +19,14 @@
  */
 package org.sonar.core.preview;
 
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.ServerExtension;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.ServerFileSystem;
 import org.sonar.api.utils.SonarException;
 import org.sonar.core.persistence.PreviewDatabaseFactory;
@@ -31,15 +34,23 @@ import org.sonar.core.properties.PropertiesDao;
 import org.sonar.core.properties.PropertyDto;
 import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.resource.ResourceDto;
+import org.sonar.home.cache.FileHashes;
 
 import javax.annotation.Nullable;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * @since 3.7.1
@@ -50,52 +61,143 @@ public class PreviewCache implements ServerExtension {
 
   public static final String SONAR_PREVIEW_CACHE_LAST_UPDATE_KEY = "sonar.dryRun.cache.lastUpdate";
 
+  /**
+   * Whether preview databases are sent gzipped to the clients that accept it. Default value is false,
+   * so that databases are streamed as is from the cache.
+   * @since 4.1.3
+   */
+  public static final String COMPRESS_DATABASE_PROPERTY = "sonar.preview.compressDatabase";
+
+  private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
   private ServerFileSystem serverFileSystem;
   private PropertiesDao propertiesDao;
   private ResourceDao resourceDao;
 
   private Map<Long, ReadWriteLock> lockPerProject = new HashMap<Long, ReadWriteLock>();
-  private Map<Long, Long> lastTimestampPerProject = new HashMap<Long, Long>();
+  private Map<Long, Long> lastTimestampPerProject = new ConcurrentHashMap<Long, Long>();
+  private Map<Long, String> lastDigestPerProject = new ConcurrentHashMap<Long, String>();
 
   private PreviewDatabaseFactory previewDatabaseFactory;
+  private Settings settings;
 
-  public PreviewCache(ServerFileSystem serverFileSystem, PropertiesDao propertiesDao, ResourceDao resourceDao, PreviewDatabaseFactory previewDatabaseFactory) {
+  public PreviewCache(ServerFileSystem serverFileSystem, PropertiesDao propertiesDao, ResourceDao resourceDao, PreviewDatabaseFactory previewDatabaseFactory,
+    Settings settings) {
     this.serverFileSystem = serverFileSystem;
     this.propertiesDao = propertiesDao;
     this.resourceDao = resourceDao;
     this.previewDatabaseFactory = previewDatabaseFactory;
+    this.settings = settings;
   }
 
+  /**
+   * @deprecated since 4.1.3 the whole database is loaded in memory. Use
+   * {@link #writeDatabaseForPreview(Long, java.io.OutputStream, boolean)}.
+   */
+  @Deprecated
   public byte[] getDatabaseForPreview(@Nullable Long projectId) {
-    long notNullProjectId = projectId != null ? projectId.longValue() : 0L;
-    ReadWriteLock rwl = getLock(notNullProjectId);
+    ReadWriteLock rwl = getLock(projectId);
+    rwl.readLock().lock();
+    try {
+      return fileToByte(getValidDatabase(projectId, rwl));
+    } finally {
+      rwl.readLock().unlock();
+    }
+  }
+
+  /**
+   * MD5 digest of the cached database of the project, after having generated it if it's missing or out-of-date.
+   * As a new database is generated on each modification, it can be used as entity tag to answer conditional requests.
+   * @since 4.1.3
+   */
+  public String getDatabaseDigestForPreview(@Nullable Long projectId) {
+    ReadWriteLock rwl = getLock(projectId);
+    rwl.readLock().lock();
+    try {
+      getValidDatabase(projectId, rwl);
+      return lastDigestPerProject.get(notNullProjectId(projectId));
+    } finally {
+      rwl.readLock().unlock();
+    }
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  public boolean isCompressionEnabled() {
+    return settings.getBoolean(COMPRESS_DATABASE_PROPERTY);
+  }
+
+  /**
+   * Copies the cached database of the project to the given stream without loading it in memory, after having generated
+   * it if it's missing or out-of-date. The read lock of the project is held during the whole copy, so that the database
+   * can't be deleted by a concurrent generation. When not compressed, the file channel is transferred directly to the
+   * output. The output stream is not closed.
+   * @since 4.1.3
+   */
+  public void writeDatabaseForPreview(@Nullable Long projectId, OutputStream output, boolean gzip) {
+    ReadWriteLock rwl = getLock(projectId);
+    rwl.readLock().lock();
     try {
-      rwl.readLock().lock();
-      if (!isCacheValid(projectId)) {
-        // upgrade lock manually
-        // must unlock first to obtain writelock
-        rwl.readLock().unlock();
-        rwl.writeLock().lock();
+      writeDatabase(getValidDatabase(projectId, rwl), output, gzip);
+    } finally {
+      rwl.readLock().unlock();
+    }
+  }
+
+  /**
+   * Must be called with the read lock of the project. The lock is still held when returning, so that
+   * the database can't be deleted while it is used.
+   */
+  private File getValidDatabase(@Nullable Long projectId, ReadWriteLock rwl) {
+    if (!isCacheValid(projectId)) {
+      // upgrade lock manually
+      // must unlock first to obtain writelock
+      rwl.readLock().unlock();
+      rwl.writeLock().lock();
+      try {
         // recheck
         if (!isCacheValid(projectId)) {
           generateNewDB(projectId);
         }
+      } finally {
         // downgrade lock
         // reacquire read without giving up write lock
         rwl.readLock().lock();
         // unlock write, still hold read
         rwl.writeLock().unlock();
       }
-      File dbFile = new File(getCacheLocation(projectId), lastTimestampPerProject.get(notNullProjectId) + PreviewDatabaseFactory.H2_FILE_SUFFIX);
-      return fileToByte(dbFile);
+    }
+    return new File(getCacheLocation(projectId), lastTimestampPerProject.get(notNullProjectId(projectId)) + PreviewDatabaseFactory.H2_FILE_SUFFIX);
+  }
+
+  private static void writeDatabase(File dbFile, OutputStream output, boolean gzip) {
+    FileInputStream input = null;
+    try {
+      input = new FileInputStream(dbFile);
+      if (gzip) {
+        GZIPOutputStream gzipOutput = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+        ByteStreams.copy(input, gzipOutput);
+        gzipOutput.finish();
+      } else {
+        FileChannel channel = input.getChannel();
+        WritableByteChannel target = Channels.newChannel(output);
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+          position += channel.transferTo(position, size - position, target);
+        }
+      }
+      output.flush();
+    } catch (IOException e) {
+      throw new SonarException("Unable to send h2 database file " + dbFile, e);
     } finally {
-      rwl.readLock().unlock();
+      IOUtils.closeQuietly(input);
     }
   }
 
   private boolean isCacheValid(@Nullable Long projectId) {
-    long notNullProjectId = projectId != null ? projectId.longValue() : 0L;
-    Long lastTimestampInCache = lastTimestampPerProject.get(notNullProjectId);
+    Long lastTimestampInCache = lastTimestampPerProject.get(notNullProjectId(projectId));
     LOG.debug("Timestamp of last cached DB is {}", lastTimestampInCache);
     if (lastTimestampInCache != null && isValid(projectId, lastTimestampInCache.longValue())) {
       File dbFile = new File(getCacheLocation(projectId), lastTimestampInCache + PreviewDatabaseFactory.H2_FILE_SUFFIX);
@@ -114,13 +216,27 @@ public class PreviewCache implements ServerExtension {
     } else {
       LOG.debug("Generate new preview database for new project");
     }
-    long notNullProjectId = projectId != null ? projectId.longValue() : 0L;
     long newTimestamp = System.currentTimeMillis();
     File cacheLocation = getCacheLocation(projectId);
     FileUtils.deleteQuietly(cacheLocation);
-    File dbFile = previewDatabaseFactory.createNewDatabaseForDryRun(projectId, cacheLocation, String.valueOf(newTimestamp));
+    File dbFile;
+    if (projectId == null) {
+      dbFile = previewDatabaseFactory.createNewDatabaseForDryRun(null, cacheLocation, String.valueOf(newTimestamp));
+    } else {
+      // The database of new projects contains only global data. It is cloned, so that only the project data
+      // have to be copied. It is regenerated only on global modifications (rules, profiles, ...).
+      ReadWriteLock globalLock = getLock(null);
+      globalLock.readLock().lock();
+      try {
+        File globalDatabase = getValidDatabase(null, globalLock);
+        dbFile = previewDatabaseFactory.createNewDatabaseForDryRun(projectId, cacheLocation, String.valueOf(newTimestamp), globalDatabase);
+      } finally {
+        globalLock.readLock().unlock();
+      }
+    }
     LOG.debug("Cached DB at {}", dbFile);
-    lastTimestampPerProject.put(notNullProjectId, newTimestamp);
+    lastDigestPerProject.put(notNullProjectId(projectId), new FileHashes().of(dbFile));
+    lastTimestampPerProject.put(notNullProjectId(projectId), newTimestamp);
   }
 
   private byte[] fileToByte(File dbFile) {
@@ -131,7 +247,12 @@ public class PreviewCache implements ServerExtension {
     }
   }
 
-  private synchronized ReadWriteLock getLock(long notNullProjectId) {
+  private static long notNullProjectId(@Nullable Long projectId) {
+    return projectId != null ? projectId.longValue() : 0L;
+  }
+
+  private synchronized ReadWriteLock getLock(@Nullable Long projectId) {
+    long notNullProjectId = notNullProjectId(projectId);
     if (!lockPerProject.containsKey(notNullProjectId)) {
       lockPerProject.put(notNullProjectId, new ReentrantReadWriteLock(true));
     }
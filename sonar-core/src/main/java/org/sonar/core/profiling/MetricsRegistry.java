@@ -0,0 +1,124 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.profiling;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.ServerComponent;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-process registry of the timers, counters and gauges of the server. Unlike {@link Profiling}, which logs
+ * each operation, values are aggregated so that latencies can be monitored, for example through JMX.
+ * <p/>
+ * Names are dot-separated and prefixed by their domain, for example "sql.org.sonar.core.rule.RuleMapper.selectAll".
+ * Each timer keeps {@link Timer#SAMPLES} durations. Names of the domain {@link #HTTP_DOMAIN} are built from request
+ * URIs, so their number is not bounded by the code: at most {@link #MAX_HTTP_TIMERS} timers are created for this domain,
+ * durations of the other requests are aggregated in the timer "http.other". Names of the other domains, for example
+ * SQL statements or search operations, are defined by the code, so each one keeps its own timer.
+ *
+ * @since 4.1.3
+ */
+public class MetricsRegistry implements ServerComponent {
+
+  public static final String HTTP_DOMAIN = "http";
+  static final int MAX_HTTP_TIMERS = 200;
+  static final String OTHER_TIMER = HTTP_DOMAIN + ".other";
+
+  private final ConcurrentMap<String, Timer> timers = Maps.newConcurrentMap();
+  private int httpTimers = 0;
+  private final ConcurrentMap<String, Counter> counters = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Gauge> gauges = Maps.newConcurrentMap();
+
+  public Timer timer(String name) {
+    Timer timer = timers.get(name);
+    if (timer == null) {
+      timer = newTimer(name);
+    }
+    return timer;
+  }
+
+  private synchronized Timer newTimer(String name) {
+    Timer timer = timers.get(name);
+    if (timer == null) {
+      boolean http = HTTP_DOMAIN.equals(StringUtils.substringBefore(name, "."));
+      if (http && httpTimers >= MAX_HTTP_TIMERS) {
+        timer = timers.get(OTHER_TIMER);
+        if (timer == null) {
+          timer = new Timer();
+          timers.put(OTHER_TIMER, timer);
+        }
+      } else {
+        timer = new Timer();
+        timers.put(name, timer);
+        if (http) {
+          httpTimers++;
+        }
+      }
+    }
+    return timer;
+  }
+
+  public Counter counter(String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      Counter newCounter = new Counter();
+      counter = counters.putIfAbsent(name, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    return counter;
+  }
+
+  public MetricsRegistry register(String name, Gauge gauge) {
+    gauges.put(name, gauge);
+    return this;
+  }
+
+  public MetricsRegistry unregister(String name) {
+    gauges.remove(name);
+    return this;
+  }
+
+  /**
+   * Timers sorted by name
+   */
+  public SortedMap<String, Timer> timers() {
+    return new TreeMap<String, Timer>(timers);
+  }
+
+  /**
+   * Counters sorted by name
+   */
+  public SortedMap<String, Counter> counters() {
+    return new TreeMap<String, Counter>(counters);
+  }
+
+  /**
+   * Gauges sorted by name
+   */
+  public SortedMap<String, Gauge> gauges() {
+    return new TreeMap<String, Gauge>(gauges);
+  }
+}
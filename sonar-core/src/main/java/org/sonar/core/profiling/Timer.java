@@ -0,0 +1,131 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.profiling;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Aggregates the durations of an operation. Percentiles are computed on the {@link #SAMPLES} most recent
+ * durations, other values since the creation of the timer. Durations are returned in milliseconds.
+ *
+ * @since 4.1.3
+ */
+public class Timer {
+
+  static final int SAMPLES = 1024;
+  private static final double NANOS_PER_MILLI = 1000000.0;
+
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalTime = new AtomicLong();
+  private final AtomicLong maxTime = new AtomicLong();
+  private final AtomicLongArray samples = new AtomicLongArray(SAMPLES);
+
+  public void update(long duration, TimeUnit unit) {
+    long nanos = unit.toNanos(duration);
+    long index = count.getAndIncrement();
+    samples.set((int) (index % SAMPLES), nanos);
+    totalTime.addAndGet(nanos);
+    long max = maxTime.get();
+    while (nanos > max && !maxTime.compareAndSet(max, nanos)) {
+      max = maxTime.get();
+    }
+  }
+
+  public long count() {
+    return count.get();
+  }
+
+  public double totalTime() {
+    return totalTime.get() / NANOS_PER_MILLI;
+  }
+
+  public double mean() {
+    long c = count.get();
+    return c == 0 ? 0.0 : (totalTime.get() / NANOS_PER_MILLI / c);
+  }
+
+  public double max() {
+    return maxTime.get() / NANOS_PER_MILLI;
+  }
+
+  /**
+   * @param quantile between 0.0 and 1.0, for example 0.99 for the 99th percentile
+   */
+  public double percentile(double quantile) {
+    return snapshot().percentile(quantile);
+  }
+
+  /**
+   * Copy of the current values, so that several percentiles can be read without sorting the samples again
+   */
+  public Snapshot snapshot() {
+    return new Snapshot(count(), mean(), max(), sortedSamples());
+  }
+
+  private long[] sortedSamples() {
+    int size = (int) Math.min(count.get(), SAMPLES);
+    long[] values = new long[size];
+    for (int i = 0; i < size; i++) {
+      values[i] = samples.get(i);
+    }
+    Arrays.sort(values);
+    return values;
+  }
+
+  public static class Snapshot {
+    private final long count;
+    private final double mean;
+    private final double max;
+    private final long[] sortedSamples;
+
+    private Snapshot(long count, double mean, double max, long[] sortedSamples) {
+      this.count = count;
+      this.mean = mean;
+      this.max = max;
+      this.sortedSamples = sortedSamples;
+    }
+
+    public long count() {
+      return count;
+    }
+
+    public double mean() {
+      return mean;
+    }
+
+    public double max() {
+      return max;
+    }
+
+    /**
+     * @param quantile between 0.0 and 1.0, for example 0.99 for the 99th percentile
+     */
+    public double percentile(double quantile) {
+      if (sortedSamples.length == 0) {
+        return 0.0;
+      }
+      int index = (int) Math.ceil(quantile * sortedSamples.length) - 1;
+      return sortedSamples[Math.min(sortedSamples.length - 1, Math.max(0, index))] / NANOS_PER_MILLI;
+    }
+  }
+}
@@ -23,6 +23,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.apache.ibatis.session.SqlSession;
+import org.sonar.core.purge.PurgeExecutor.TableDeletion;
 
 import java.util.List;
 
@@ -34,11 +35,17 @@ class PurgeCommands {
   private final SqlSession session;
   private final PurgeMapper purgeMapper;
   private final PurgeProfiler profiler;
+  private final PurgeExecutor executor;
 
-  PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler) {
+  PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler, PurgeExecutor executor) {
     this.session = session;
     this.purgeMapper = purgeMapper;
     this.profiler = profiler;
+    this.executor = executor;
+  }
+
+  PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler) {
+    this(session, purgeMapper, profiler, new PurgeExecutor());
   }
 
   @VisibleForTesting
@@ -62,243 +69,252 @@ class PurgeCommands {
 
     // possible missing optimization: filter requests according to resource scope
 
-    profiler.start("deleteResourceLinks (project_links)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceLinks(partResourceIds);
-    }
-    session.commit();
-    profiler.stop();
+    executor.execute(session, profiler, resourceIdsPartition,
+      inOrder(DELETE_RESOURCE_LINKS),
+      inOrder(DELETE_RESOURCE_PROPERTIES),
+      inOrder(DELETE_RESOURCE_INDEX),
+      inOrder(DELETE_RESOURCE_GROUP_ROLES),
+      inOrder(DELETE_RESOURCE_USER_ROLES),
+      inOrder(DELETE_RESOURCE_MANUAL_MEASURES),
+      inOrder(DELETE_RESOURCE_ISSUE_CHANGES, DELETE_RESOURCE_ISSUES, DELETE_RESOURCE_ACTION_PLANS),
+      inOrder(DELETE_RESOURCE_EVENTS),
+      inOrder(DELETE_RESOURCE_GRAPHS));
+
+    executor.execute(session, profiler, resourceIdsPartition, inOrder(DELETE_RESOURCE, DELETE_AUTHORS));
+  }
 
-    profiler.start("deleteResourceProperties (properties)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceProperties(partResourceIds);
-    }
-    session.commit();
-    profiler.stop();
+  void deleteSnapshots(final PurgeSnapshotQuery query) {
+    deleteSnapshots(purgeMapper.selectSnapshotIds(query));
+  }
 
-    profiler.start("deleteResourceIndex (resource_index)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceIndex(partResourceIds);
-    }
-    session.commit();
-    profiler.stop();
+  @VisibleForTesting
+  protected void deleteSnapshots(final List<Long> snapshotIds) {
 
-    profiler.start("deleteResourceGroupRoles (group_roles)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceGroupRoles(partResourceIds);
-    }
-    session.commit();
-    profiler.stop();
+    List<List<Long>> snapshotIdsPartition = Lists.partition(snapshotIds, MAX_SNAPSHOTS_PER_QUERY);
 
-    profiler.start("deleteResourceUserRoles (user_roles)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceUserRoles(partResourceIds);
-    }
-    session.commit();
-    profiler.stop();
+    // tables referencing snapshots are deleted before the snapshots themselves
+    executor.execute(session, profiler, snapshotIdsPartition,
+      inOrder(DELETE_SNAPSHOT_DEPENDENCIES),
+      inOrder(DELETE_SNAPSHOT_DUPLICATIONS),
+      inOrder(DELETE_SNAPSHOT_EVENTS),
+      inOrder(DELETE_SNAPSHOT_MEASURE_DATA, DELETE_SNAPSHOT_MEASURES),
+      inOrder(DELETE_SNAPSHOT_SOURCES),
+      inOrder(DELETE_SNAPSHOT_GRAPHS),
+      inOrder(DELETE_SNAPSHOT_DATA));
+
+    executor.execute(session, profiler, snapshotIdsPartition, inOrder(DELETE_SNAPSHOT));
+  }
 
-    profiler.start("deleteResourceManualMeasures (manual_measures)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceManualMeasures(partResourceIds);
-    }
-    session.commit();
-    profiler.stop();
+  void purgeSnapshots(final PurgeSnapshotQuery query) {
+    purgeSnapshots(purgeMapper.selectSnapshotIds(query));
+  }
 
-    profiler.start("deleteResourceIssueChanges (issue_changes)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceIssueChanges(partResourceIds);
-    }
-    session.commit();
-    profiler.stop();
+  @VisibleForTesting
+  protected void purgeSnapshots(final List<Long> snapshotIds) {
+    // note that events are not deleted
+    List<List<Long>> snapshotIdsPartition = Lists.partition(snapshotIds, MAX_SNAPSHOTS_PER_QUERY);
 
-    profiler.start("deleteResourceIssues (issues)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceIssues(partResourceIds);
-    }
-    session.commit();
-    profiler.stop();
+    final List<Long> metricIdsWithoutHistoricalData = purgeMapper.selectMetricIdsWithoutHistoricalData();
+    final List<Long> characteristicIds = purgeMapper.selectCharacteristicIdsToPurge();
+    TableDeletion deleteWastedMeasures = new TableDeletion("deleteSnapshotWastedMeasures (project_measures)", "project_measures") {
+      @Override
+      void delete(PurgeMapper mapper, List<Long> ids) {
+        if (!metricIdsWithoutHistoricalData.isEmpty()) {
+          mapper.deleteSnapshotWastedMeasures(ids, metricIdsWithoutHistoricalData);
+        }
+      }
+    };
+    TableDeletion deleteMeasuresOnCharacteristics = new TableDeletion("deleteSnapshotMeasuresOnCharacteristics (project_measures)", "project_measures") {
+      @Override
+      void delete(PurgeMapper mapper, List<Long> ids) {
+        // SONAR-3641 We cannot process all characteristics at once
+        for (List<Long> partCharacteristicIds : Iterables.partition(characteristicIds, MAX_CHARACTERISTICS_PER_QUERY)) {
+          mapper.deleteSnapshotMeasuresOnCharacteristics(ids, partCharacteristicIds);
+        }
+      }
+    };
+
+    executor.execute(session, profiler, snapshotIdsPartition,
+      inOrder(DELETE_SNAPSHOT_DEPENDENCIES),
+      inOrder(DELETE_SNAPSHOT_DUPLICATIONS),
+      inOrder(DELETE_SNAPSHOT_SOURCES),
+      inOrder(DELETE_SNAPSHOT_GRAPHS),
+      inOrder(DELETE_SNAPSHOT_DATA),
+      inOrder(deleteWastedMeasures, deleteMeasuresOnCharacteristics));
+
+    // must be executed at the end for reentrance
+    executor.execute(session, profiler, snapshotIdsPartition, inOrder(UPDATE_PURGE_STATUS_TO_ONE));
+  }
 
-    profiler.start("deleteResourceActionPlans (action_plans)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceActionPlans(partResourceIds);
-    }
-    session.commit();
-    profiler.stop();
+  private static TableDeletion[] inOrder(TableDeletion... deletions) {
+    return deletions;
+  }
 
-    profiler.start("deleteResourceEvents (events)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceEvents(partResourceIds);
+  private static final TableDeletion DELETE_RESOURCE_LINKS = new TableDeletion("deleteResourceLinks (project_links)", "project_links") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceLinks(ids);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResourceGraphs (graphs)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResourceGraphs(partResourceIds);
+  private static final TableDeletion DELETE_RESOURCE_PROPERTIES = new TableDeletion("deleteResourceProperties (properties)", "properties") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceProperties(ids);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteResource (projects)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteResource(partResourceIds);
+  private static final TableDeletion DELETE_RESOURCE_INDEX = new TableDeletion("deleteResourceIndex (resource_index)", "resource_index") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceIndex(ids);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteAuthors (authors)");
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      purgeMapper.deleteAuthors(partResourceIds);
+  private static final TableDeletion DELETE_RESOURCE_GROUP_ROLES = new TableDeletion("deleteResourceGroupRoles (group_roles)", "group_roles") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceGroupRoles(ids);
     }
-    session.commit();
-    profiler.stop();
-  }
-
-  void deleteSnapshots(final PurgeSnapshotQuery query) {
-    deleteSnapshots(purgeMapper.selectSnapshotIds(query));
-  }
-
-  @VisibleForTesting
-  protected void deleteSnapshots(final List<Long> snapshotIds) {
-
-    List<List<Long>> snapshotIdsPartition = Lists.partition(snapshotIds, MAX_SNAPSHOTS_PER_QUERY);
-
-    deleteSnapshotDependencies(snapshotIdsPartition);
+  };
 
-    deleteSnapshotDuplications(snapshotIdsPartition);
-
-    profiler.start("deleteSnapshotEvents (events)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotEvents(partSnapshotIds);
+  private static final TableDeletion DELETE_RESOURCE_USER_ROLES = new TableDeletion("deleteResourceUserRoles (user_roles)", "user_roles") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceUserRoles(ids);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteSnapshotMeasureData (measure_data)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotMeasureData(partSnapshotIds);
+  private static final TableDeletion DELETE_RESOURCE_MANUAL_MEASURES = new TableDeletion("deleteResourceManualMeasures (manual_measures)", "manual_measures") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceManualMeasures(ids);
     }
-    session.commit();
-    profiler.stop();
+  };
 
-    profiler.start("deleteSnapshotMeasures (project_measures)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotMeasures(partSnapshotIds);
+  private static final TableDeletion DELETE_RESOURCE_ISSUE_CHANGES = new TableDeletion("deleteResourceIssueChanges (issue_changes)", "issue_changes") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceIssueChanges(ids);
     }
-    session.commit();
-    profiler.stop();
-
-    deleteSnapshotSources(snapshotIdsPartition);
-
-    deleteSnapshotGraphs(snapshotIdsPartition);
+  };
 
-    deleteSnapshotData(snapshotIdsPartition);
-
-    profiler.start("deleteSnapshot (snapshots)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshot(partSnapshotIds);
+  private static final TableDeletion DELETE_RESOURCE_ISSUES = new TableDeletion("deleteResourceIssues (issues)", "issues") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceIssues(ids);
     }
-    session.commit();
-    profiler.stop();
-  }
+  };
 
-  void purgeSnapshots(final PurgeSnapshotQuery query) {
-    purgeSnapshots(purgeMapper.selectSnapshotIds(query));
-  }
+  private static final TableDeletion DELETE_RESOURCE_ACTION_PLANS = new TableDeletion("deleteResourceActionPlans (action_plans)", "action_plans") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceActionPlans(ids);
+    }
+  };
 
-  @VisibleForTesting
-  protected void purgeSnapshots(final List<Long> snapshotIds) {
-    // note that events are not deleted
-    List<List<Long>> snapshotIdsPartition = Lists.partition(snapshotIds, MAX_SNAPSHOTS_PER_QUERY);
+  private static final TableDeletion DELETE_RESOURCE_EVENTS = new TableDeletion("deleteResourceEvents (events)", "events") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceEvents(ids);
+    }
+  };
 
-    deleteSnapshotDependencies(snapshotIdsPartition);
+  private static final TableDeletion DELETE_RESOURCE_GRAPHS = new TableDeletion("deleteResourceGraphs (graphs)", "graphs") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResourceGraphs(ids);
+    }
+  };
 
-    deleteSnapshotDuplications(snapshotIdsPartition);
+  private static final TableDeletion DELETE_RESOURCE = new TableDeletion("deleteResource (projects)", "projects") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteResource(ids);
+    }
+  };
 
-    deleteSnapshotSources(snapshotIdsPartition);
+  private static final TableDeletion DELETE_AUTHORS = new TableDeletion("deleteAuthors (authors)", "authors") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteAuthors(ids);
+    }
+  };
 
-    deleteSnapshotGraphs(snapshotIdsPartition);
+  private static final TableDeletion DELETE_SNAPSHOT_DEPENDENCIES = new TableDeletion("deleteSnapshotDependencies (dependencies)", "dependencies") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      // SONAR-4586
+      // On MsSQL, the maximum number of parameters allowed in a query is 2000, so we have to execute 3 queries instead of one with 3 or inside
+      mapper.deleteSnapshotDependenciesFromSnapshotId(ids);
+      mapper.deleteSnapshotDependenciesToSnapshotId(ids);
+      mapper.deleteSnapshotDependenciesProjectSnapshotId(ids);
+    }
+  };
 
-    deleteSnapshotData(snapshotIdsPartition);
+  private static final TableDeletion DELETE_SNAPSHOT_DUPLICATIONS = new TableDeletion("deleteSnapshotDuplications (duplications_index)", "duplications_index") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteSnapshotDuplications(ids);
+    }
+  };
 
-    profiler.start("deleteSnapshotWastedMeasures (project_measures)");
-    List<Long> metricIdsWithoutHistoricalData = purgeMapper.selectMetricIdsWithoutHistoricalData();
-    if (!metricIdsWithoutHistoricalData.isEmpty()) {
-      for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-        purgeMapper.deleteSnapshotWastedMeasures(partSnapshotIds, metricIdsWithoutHistoricalData);
-      }
-      session.commit();
+  private static final TableDeletion DELETE_SNAPSHOT_EVENTS = new TableDeletion("deleteSnapshotEvents (events)", "events") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteSnapshotEvents(ids);
     }
-    profiler.stop();
+  };
 
-    profiler.start("deleteSnapshotMeasuresOnCharacteristics (project_measures)");
-    List<Long> characteristicIds = purgeMapper.selectCharacteristicIdsToPurge();
-    if (!characteristicIds.isEmpty()) {
-      for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-        // SONAR-3641 We cannot process all characteristics at once
-        for (List<Long> ids : Iterables.partition(characteristicIds, MAX_CHARACTERISTICS_PER_QUERY)) {
-          purgeMapper.deleteSnapshotMeasuresOnCharacteristics(partSnapshotIds, ids);
-        }
-      }
-      session.commit();
+  private static final TableDeletion DELETE_SNAPSHOT_MEASURE_DATA = new TableDeletion("deleteSnapshotMeasureData (measure_data)", "measure_data") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteSnapshotMeasureData(ids);
     }
-    profiler.stop();
+  };
 
-    profiler.start("updatePurgeStatusToOne (snapshots)");
-    for (Long snapshotId : snapshotIds) {
-      purgeMapper.updatePurgeStatusToOne(snapshotId);
+  private static final TableDeletion DELETE_SNAPSHOT_MEASURES = new TableDeletion("deleteSnapshotMeasures (project_measures)", "project_measures") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteSnapshotMeasures(ids);
     }
-    session.commit();
-    profiler.stop();
-  }
+  };
 
-  private void deleteSnapshotData(final List<List<Long>> snapshotIdsPartition) {
-    profiler.start("deleteSnapshotData (snapshot_data)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotData(partSnapshotIds);
+  private static final TableDeletion DELETE_SNAPSHOT_SOURCES = new TableDeletion("deleteSnapshotSource (snapshot_sources)", "snapshot_sources") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteSnapshotSource(ids);
     }
-    session.commit();
-    profiler.stop();
-  }
+  };
 
-  private void deleteSnapshotGraphs(final List<List<Long>> snapshotIdsPartition) {
-    profiler.start("deleteSnapshotGraphs (graphs)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotGraphs(partSnapshotIds);
+  private static final TableDeletion DELETE_SNAPSHOT_GRAPHS = new TableDeletion("deleteSnapshotGraphs (graphs)", "graphs") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteSnapshotGraphs(ids);
     }
-    session.commit();
-    profiler.stop();
-  }
+  };
 
-  private void deleteSnapshotSources(final List<List<Long>> snapshotIdsPartition) {
-    profiler.start("deleteSnapshotSource (snapshot_sources)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotSource(partSnapshotIds);
+  private static final TableDeletion DELETE_SNAPSHOT_DATA = new TableDeletion("deleteSnapshotData (snapshot_data)", "snapshot_data") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteSnapshotData(ids);
     }
-    session.commit();
-    profiler.stop();
-  }
+  };
 
-  private void deleteSnapshotDuplications(final List<List<Long>> snapshotIdsPartition) {
-    profiler.start("deleteSnapshotDuplications (duplications_index)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotDuplications(partSnapshotIds);
+  private static final TableDeletion DELETE_SNAPSHOT = new TableDeletion("deleteSnapshot (snapshots)", "snapshots") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      mapper.deleteSnapshot(ids);
     }
-    session.commit();
-    profiler.stop();
-  }
+  };
 
-  private void deleteSnapshotDependencies(final List<List<Long>> snapshotIdsPartition) {
-    profiler.start("deleteSnapshotDependencies (dependencies)");
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      // SONAR-4586
-      // On MsSQL, the maximum number of parameters allowed in a query is 2000, so we have to execute 3 queries instead of one with 3 or inside
-      purgeMapper.deleteSnapshotDependenciesFromSnapshotId(partSnapshotIds);
-      purgeMapper.deleteSnapshotDependenciesToSnapshotId(partSnapshotIds);
-      purgeMapper.deleteSnapshotDependenciesProjectSnapshotId(partSnapshotIds);
+  private static final TableDeletion UPDATE_PURGE_STATUS_TO_ONE = new TableDeletion("updatePurgeStatusToOne (snapshots)", "snapshots") {
+    @Override
+    void delete(PurgeMapper mapper, List<Long> ids) {
+      for (Long snapshotId : ids) {
+        mapper.updatePurgeStatusToOne(snapshotId);
+      }
     }
-    session.commit();
-    profiler.stop();
-  }
+  };
 
 }
@@ -27,6 +27,7 @@ import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
 import org.sonar.core.persistence.MyBatis;
 import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.resource.ResourceDto;
@@ -35,6 +36,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @since 2.14
@@ -44,17 +46,41 @@ public class PurgeDao {
   private final ResourceDao resourceDao;
   private static final Logger LOG = LoggerFactory.getLogger(PurgeDao.class);
   private PurgeProfiler profiler;
+  private final PurgeExecutor executor;
+  private final List<PurgeListener> listeners = new CopyOnWriteArrayList<PurgeListener>();
 
   public PurgeDao(MyBatis mybatis, ResourceDao resourceDao, PurgeProfiler profiler) {
+    this(mybatis, resourceDao, profiler, new Settings());
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  public PurgeDao(MyBatis mybatis, ResourceDao resourceDao, PurgeProfiler profiler, Settings settings) {
     this.mybatis = mybatis;
     this.resourceDao = resourceDao;
     this.profiler = profiler;
+    this.executor = new PurgeExecutor(mybatis, settings);
+  }
+
+  /**
+   * Listeners are registered by the components that depend on this DAO, because they may live in child containers.
+   *
+   * @since 4.1.3
+   */
+  public PurgeDao addListener(PurgeListener listener) {
+    listeners.add(listener);
+    return this;
+  }
+
+  public void stop() {
+    executor.stop();
   }
 
   public PurgeDao purge(PurgeConfiguration conf) {
     SqlSession session = mybatis.openBatchSession();
     PurgeMapper mapper = session.getMapper(PurgeMapper.class);
-    PurgeCommands commands = new PurgeCommands(session, mapper, profiler);
+    PurgeCommands commands = new PurgeCommands(session, mapper, profiler, executor);
     try {
       List<ResourceDto> projects = getProjects(conf.rootProjectId(), session);
       for (ResourceDto project : projects) {
@@ -70,6 +96,9 @@ public class PurgeDao {
     } finally {
       MyBatis.closeQuietly(session);
     }
+    for (PurgeListener listener : listeners) {
+      listener.onPurge(conf.rootProjectId());
+    }
     return this;
   }
 
@@ -153,11 +182,14 @@ public class PurgeDao {
     final SqlSession session = mybatis.openBatchSession();
     final PurgeMapper mapper = session.getMapper(PurgeMapper.class);
     try {
-      deleteProject(rootProjectId, mapper, new PurgeCommands(session, profiler));
-      return this;
+      deleteProject(rootProjectId, mapper, new PurgeCommands(session, mapper, profiler, executor));
     } finally {
       MyBatis.closeQuietly(session);
     }
+    for (PurgeListener listener : listeners) {
+      listener.onDeletion(rootProjectId);
+    }
+    return this;
   }
 
   private void deleteProject(long rootProjectId, PurgeMapper mapper, PurgeCommands commands) {
@@ -180,7 +212,7 @@ public class PurgeDao {
   public PurgeDao deleteSnapshots(PurgeSnapshotQuery query) {
     final SqlSession session = mybatis.openBatchSession();
     try {
-      new PurgeCommands(session, profiler).deleteSnapshots(query);
+      new PurgeCommands(session, session.getMapper(PurgeMapper.class), profiler, executor).deleteSnapshots(query);
       return this;
 
     } finally {
@@ -0,0 +1,236 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.purge;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.SqlSession;
+import org.sonar.api.config.Settings;
+import org.sonar.core.persistence.MyBatis;
+
+import javax.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes the table deletions of {@link PurgeCommands}. Deletions are grouped into branches : the deletions
+ * of a branch are executed in order, whereas the branches given to a single call of execute() are independent
+ * and can be executed concurrently, each one on its own connection. Each call is a barrier, so successive calls respect the dependencies between tables.
+ * <p/>
+ * The number of deleted rows per second can be limited for each table in order to throttle the purge.
+ *
+ * @since 4.1.3
+ */
+public class PurgeExecutor {
+
+  /**
+   * Number of threads used to delete independent tables. Default value is 1 : the tables are processed
+   * one after the other on the connection of the purge.
+   */
+  public static final String THREADS_PROPERTY = "sonar.dbcleaner.threads";
+
+  /**
+   * Maximum number of rows deleted per second in each table. It can be overridden for a given table with the
+   * property "sonar.dbcleaner.&lt;table&gt;.maxDeletedRowsPerSecond". Zero or negative values disable the throttling, which is the default.
+   */
+  public static final String MAX_DELETED_ROWS_PER_SECOND_PROPERTY = "sonar.dbcleaner.maxDeletedRowsPerSecond";
+
+  private static final String PROPERTY_PREFIX = "sonar.dbcleaner.";
+  private static final String MAX_DELETED_ROWS_PER_SECOND_SUFFIX = ".maxDeletedRowsPerSecond";
+
+  private final MyBatis mybatis;
+  private final Settings settings;
+  private final ThreadPoolExecutor pool;
+
+  PurgeExecutor(@Nullable MyBatis mybatis, Settings settings) {
+    this.mybatis = mybatis;
+    this.settings = settings;
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (mybatis != null && threads > 1) {
+      pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setNameFormat("purge-%d").setDaemon(true).build());
+      pool.allowCoreThreadTimeOut(true);
+    } else {
+      pool = null;
+    }
+  }
+
+  /**
+   * Sequential executor, on the session given to each call.
+   */
+  PurgeExecutor() {
+    this(null, new Settings());
+  }
+
+  boolean isConcurrent() {
+    return pool != null;
+  }
+
+  void stop() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Executes the branches of deletions on the given ids, then returns when all of them are committed.
+   */
+  void execute(SqlSession session, PurgeProfiler profiler, List<List<Long>> idPartitions, TableDeletion[]... branches) {
+    if (pool == null || branches.length < 2 || idPartitions.isEmpty()) {
+      for (TableDeletion[] branch : branches) {
+        executeBranch(session, profiler, idPartitions, branch);
+      }
+      return;
+    }
+
+    // the statements of the current session must not be concurrent with the deletions
+    session.commit();
+    List<Future<Void>> futures = Lists.newArrayList();
+    for (TableDeletion[] branch : branches) {
+      futures.add(pool.submit(new BranchCallable(profiler, idPartitions, branch)));
+    }
+    waitFor(futures);
+  }
+
+  private void waitFor(List<Future<Void>> futures) {
+    Throwable failure = null;
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while purging", e);
+      }
+    }
+    if (failure != null) {
+      throw new IllegalStateException("Fail to purge", failure);
+    }
+  }
+
+  private void executeBranch(SqlSession session, PurgeProfiler profiler, List<List<Long>> idPartitions, TableDeletion[] branch) {
+    PurgeMapper mapper = session.getMapper(PurgeMapper.class);
+    for (TableDeletion deletion : branch) {
+      profiler.start(deletion.label);
+      int maxRowsPerSecond = maxDeletedRowsPerSecond(deletion.table);
+      for (List<Long> ids : idPartitions) {
+        long start = System.currentTimeMillis();
+        deletion.delete(mapper, ids);
+        if (maxRowsPerSecond > 0) {
+          int rows = countUpdatedRows(session.flushStatements(), ids.size());
+          sleep(pause(maxRowsPerSecond, rows, System.currentTimeMillis() - start));
+        }
+      }
+      session.commit();
+      profiler.stop();
+    }
+  }
+
+  @VisibleForTesting
+  int maxDeletedRowsPerSecond(String table) {
+    String tableKey = PROPERTY_PREFIX + table + MAX_DELETED_ROWS_PER_SECOND_SUFFIX;
+    if (settings.hasKey(tableKey)) {
+      return settings.getInt(tableKey);
+    }
+    return settings.getInt(MAX_DELETED_ROWS_PER_SECOND_PROPERTY);
+  }
+
+  /**
+   * Some drivers do not return the number of rows updated by batched statements. In this case
+   * the number of ids is used as an estimation.
+   */
+  @VisibleForTesting
+  static int countUpdatedRows(List<BatchResult> results, int defaultCount) {
+    int count = 0;
+    for (BatchResult result : results) {
+      for (int updateCount : result.getUpdateCounts()) {
+        if (updateCount > 0) {
+          count += updateCount;
+        }
+      }
+    }
+    return count > 0 ? count : defaultCount;
+  }
+
+  @VisibleForTesting
+  static long pause(int maxRowsPerSecond, int rows, long elapsedMs) {
+    long minDurationMs = rows * 1000L / maxRowsPerSecond;
+    return Math.max(0L, minDurationMs - elapsedMs);
+  }
+
+  private static void sleep(long ms) {
+    if (ms > 0L) {
+      try {
+        Thread.sleep(ms);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while purging", e);
+      }
+    }
+  }
+
+  private class BranchCallable implements Callable<Void> {
+    private final PurgeProfiler profiler;
+    private final List<List<Long>> idPartitions;
+    private final TableDeletion[] branch;
+
+    BranchCallable(PurgeProfiler profiler, List<List<Long>> idPartitions, TableDeletion[] branch) {
+      this.profiler = profiler;
+      this.idPartitions = idPartitions;
+      this.branch = branch;
+    }
+
+    public Void call() {
+      SqlSession session = mybatis.openBatchSession();
+      try {
+        executeBranch(session, profiler, idPartitions, branch);
+        return null;
+      } finally {
+        MyBatis.closeQuietly(session);
+      }
+    }
+  }
+
+  /**
+   * Deletion of the rows of a table related to a partition of ids.
+   */
+  abstract static class TableDeletion {
+    private final String label;
+    private final String table;
+
+    TableDeletion(String label, String table) {
+      this.label = label;
+      this.table = table;
+    }
+
+    abstract void delete(PurgeMapper mapper, List<Long> ids);
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.purge;
+
+/**
+ * Notified when data of a project is removed from the database by {@link PurgeDao}, so that copies of this data
+ * kept out of the database, for example in a search index, can be updated.
+ *
+ * @see PurgeDao#addListener(PurgeListener)
+ * @since 4.1.3
+ */
+public interface PurgeListener {
+
+  /**
+   * Old data of the project has been purged, for example closed issues
+   */
+  void onPurge(long rootProjectId);
+
+  /**
+   * The project and all its components have been deleted
+   */
+  void onDeletion(long rootProjectId);
+}
@@ -33,9 +33,10 @@ import java.util.Map.Entry;
 
 public class PurgeProfiler {
 
-  private Map<String, Long> durations = new HashMap<String, Long>();
-  private long startTime;
-  private String currentTable;
+  private final Map<String, Long> durations = new HashMap<String, Long>();
+  // tables can be purged concurrently, see PurgeExecutor
+  private final ThreadLocal<Long> startTime = new ThreadLocal<Long>();
+  private final ThreadLocal<String> currentTable = new ThreadLocal<String>();
   private final Clock clock;
 
   public PurgeProfiler() {
@@ -47,27 +48,34 @@ public class PurgeProfiler {
     this.clock = clock;
   }
 
-  public void reset() {
+  public synchronized void reset() {
     durations.clear();
   }
 
   void start(String table) {
-    this.startTime = clock.now();
-    this.currentTable = table;
+    this.startTime.set(clock.now());
+    this.currentTable.set(table);
   }
 
   void stop() {
-    final Long cumulatedDuration;
-    if (durations.containsKey(currentTable)) {
-      cumulatedDuration = durations.get(currentTable);
-    } else {
-      cumulatedDuration = 0L;
+    String table = currentTable.get();
+    long duration = clock.now() - startTime.get();
+    synchronized (this) {
+      final Long cumulatedDuration;
+      if (durations.containsKey(table)) {
+        cumulatedDuration = durations.get(table);
+      } else {
+        cumulatedDuration = 0L;
+      }
+      durations.put(table, cumulatedDuration + duration);
     }
-    durations.put(currentTable, cumulatedDuration + (clock.now() - startTime));
   }
 
   public void dump(long totalTime, Logger logger) {
-    List<Entry<String, Long>> data = new ArrayList<Map.Entry<String, Long>>(durations.entrySet());
+    List<Entry<String, Long>> data;
+    synchronized (this) {
+      data = new ArrayList<Map.Entry<String, Long>>(new HashMap<String, Long>(durations).entrySet());
+    }
     Collections.sort(data, new Comparator<Entry<String, Long>>() {
       @Override
       public int compare(Entry<String, Long> o1, Entry<String, Long> o2) {
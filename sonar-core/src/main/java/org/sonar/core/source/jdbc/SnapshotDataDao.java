@@ -43,7 +43,11 @@ public class SnapshotDataDao implements BatchComponent, ServerComponent {
     SqlSession session = mybatis.openSession();
     try {
       SnapshotDataMapper mapper = session.getMapper(SnapshotDataMapper.class);
-      return mapper.selectSnapshotData(snapshotId, dataTypes);
+      Collection<SnapshotDataDto> dtos = mapper.selectSnapshotData(snapshotId, dataTypes);
+      for (SnapshotDataDto dto : dtos) {
+        dto.setData(TextCodec.decode(dto.getData()));
+      }
+      return dtos;
 
     } finally {
       MyBatis.closeQuietly(session);
@@ -60,6 +64,9 @@ public class SnapshotDataDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * Data is inserted as is, so it must already be encoded with {@link TextCodec}
+   */
   public void insert(SqlSession session, SnapshotDataDto snapshotData) {
     SnapshotDataMapper mapper = session.getMapper(SnapshotDataMapper.class);
     mapper.insert(snapshotData);
@@ -21,12 +21,16 @@
 package org.sonar.core.source.jdbc;
 
 import org.apache.ibatis.session.SqlSession;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.ServerComponent;
 import org.sonar.core.persistence.MyBatis;
 
+import javax.annotation.CheckForNull;
+
 /**
  * @since 3.6
  */
-public class SnapshotSourceDao {
+public class SnapshotSourceDao implements BatchComponent, ServerComponent {
 
   private final MyBatis mybatis;
 
@@ -34,16 +38,28 @@ public class SnapshotSourceDao {
     this.mybatis = myBatis;
   }
 
+  /**
+   * @return the decoded source, or null if the snapshot has no source
+   */
+  @CheckForNull
   public String selectSnapshotSource(long snapshotId) {
 
     SqlSession session = mybatis.openBatchSession();
 
     try {
       SnapshotSourceMapper mapper = session.getMapper(SnapshotSourceMapper.class);
-      return mapper.selectSnapshotSource(snapshotId);
+      return TextCodec.decode(mapper.selectSnapshotSource(snapshotId));
 
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
+
+  /**
+   * @param data source, as encoded by {@link TextCodec}
+   * @since 4.1.3
+   */
+  public void insert(SqlSession session, long snapshotId, String data) {
+    session.getMapper(SnapshotSourceMapper.class).insert(snapshotId, data);
+  }
 }
@@ -0,0 +1,124 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.source.jdbc;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.codec.binary.Base64;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Storage format of the text columns SNAPSHOT_SOURCES.DATA and SNAPSHOT_DATA.SNAPSHOT_DATA. Texts are stored
+ * either as is, or compressed with the Deflate algorithm. Columns are not binary, so compressed bytes are
+ * encoded in Base64 and prefixed by a marker that can not start a plain text.
+ * <p/>
+ * Decoding is transparent: plain texts that were stored before compression was enabled are returned as is.
+ *
+ * @since 4.1.3
+ */
+public final class TextCodec {
+
+  /**
+   * Whether sources, syntax highlighting and symbols are compressed when saved in database. Default value is false.
+   */
+  public static final String COMPRESSION_PROPERTY = "sonar.database.compressSources";
+
+  private static final String DEFLATE_MARKER = "\u0001D";
+  private static final int MIN_COMPRESSED_LENGTH = 64;
+
+  private TextCodec() {
+    // only static methods
+  }
+
+  /**
+   * @param compress whether the text is compressed. Texts shorter than compressed data are never compressed.
+   */
+  @CheckForNull
+  public static String encode(@Nullable String text, boolean compress) {
+    if (text == null) {
+      return null;
+    }
+    // plain texts that look like compressed data are always compressed, so that they can be decoded
+    boolean ambiguous = text.startsWith(DEFLATE_MARKER);
+    if (ambiguous || (compress && text.length() >= MIN_COMPRESSED_LENGTH)) {
+      String compressed = DEFLATE_MARKER + Base64.encodeBase64String(deflate(text.getBytes(Charsets.UTF_8)));
+      if (ambiguous || compressed.length() < text.length()) {
+        return compressed;
+      }
+    }
+    return text;
+  }
+
+  @CheckForNull
+  public static String decode(@Nullable String data) {
+    if (data == null || !data.startsWith(DEFLATE_MARKER)) {
+      return data;
+    }
+    try {
+      byte[] bytes = inflate(Base64.decodeBase64(data.substring(DEFLATE_MARKER.length())));
+      return new String(bytes, Charsets.UTF_8);
+    } catch (DataFormatException e) {
+      // not produced by this codec
+      return data;
+    }
+  }
+
+  private static byte[] deflate(byte[] input) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(input);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 4 + 16);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        output.write(buffer, 0, count);
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] input) throws DataFormatException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(input);
+      ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 4);
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int count = inflater.inflate(buffer);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new DataFormatException("Truncated data");
+        }
+        output.write(buffer, 0, count);
+      }
+      return output.toByteArray();
+    } finally {
+      inflater.end();
+    }
+  }
+}
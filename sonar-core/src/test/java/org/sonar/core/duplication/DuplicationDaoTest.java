@@ -19,6 +19,9 @@
  */
 package org.sonar.core.duplication;
 
+import com.google.common.collect.Lists;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.persistence.AbstractDaoTestCase;
@@ -47,7 +50,7 @@ public class DuplicationDaoTest extends AbstractDaoTestCase {
 
     DuplicationUnitDto block = blocks.get(0);
     assertThat("block resourceId", block.getResourceKey(), is("bar-last"));
-    assertThat("block hash", block.getHash(), is("aa"));
+    assertThat("block hash", block.getHash(), is(170L));
     assertThat("block index in file", block.getIndexInFile(), is(0));
     assertThat("block start line", block.getStartLine(), is(1));
     assertThat("block end line", block.getEndLine(), is(2));
@@ -57,11 +60,38 @@ public class DuplicationDaoTest extends AbstractDaoTestCase {
     assertThat(blocks.size(), is(2));
   }
 
+  @Test
+  public void should_stream_candidates_of_language() throws Exception {
+    setupData("shouldGetByHash");
+
+    final List<DuplicationUnitDto> blocks = Lists.newArrayList();
+    ResultHandler handler = new ResultHandler() {
+      public void handleResult(ResultContext context) {
+        blocks.add((DuplicationUnitDto) context.getResultObject());
+      }
+    };
+
+    dao.selectCandidates(7, "java", Arrays.asList(170L, 171L), handler);
+    assertThat(blocks.size(), is(1));
+    assertThat(blocks.get(0).getResourceKey(), is("bar-last"));
+    assertThat(blocks.get(0).getHash(), is(170L));
+    assertThat(blocks.get(0).getStartLine(), is(1));
+    assertThat(blocks.get(0).getEndLine(), is(2));
+
+    blocks.clear();
+    dao.selectCandidates(null, "java", Arrays.asList(170L, 171L), handler);
+    assertThat(blocks.size(), is(2));
+
+    blocks.clear();
+    dao.selectCandidates(null, "java", Arrays.asList(171L), handler);
+    assertThat(blocks.size(), is(0));
+  }
+
   @Test
   public void shouldInsert() throws Exception {
     setupData("shouldInsert");
 
-    dao.insert(Arrays.asList(new DuplicationUnitDto(1, 2, "bb", 0, 1, 2)));
+    dao.insert(Arrays.asList(new DuplicationUnitDto(1, 2, 187L, 0, 1, 2)));
 
     checkTables("shouldInsert", "duplications_index");
   }
@@ -30,6 +30,7 @@ import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.DateUtils;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 
+import java.util.Collections;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
@@ -280,6 +281,73 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     assertThat(results).hasSize(2);
   }
 
+  @Test
+  public void should_count_issues() {
+    setupData("shared", "should_select_issues_return_limited_results");
+
+    IssueQuery query = IssueQuery.builder().requiredRole("user").build();
+    assertThat(dao.countIssues(query)).isEqualTo(dao.selectIssueIds(query).size());
+
+    query = IssueQuery.builder().issueKeys(newArrayList("<Unknown>")).requiredRole("user").build();
+    assertThat(dao.countIssues(query)).isZero();
+  }
+
+  @Test
+  public void should_select_sorted_issue_ids_by_assignee() {
+    setupData("shared", "should_select_returned_sorted_result_by_assignee");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_ASSIGNEE).asc(true).requiredRole("user").build();
+    assertThat(dao.selectSortedIssueIds(query, 0, 10)).containsExactly(100L, 102L, 101L);
+
+    query = IssueQuery.builder().sort(IssueQuery.SORT_BY_ASSIGNEE).asc(false).requiredRole("user").build();
+    assertThat(dao.selectSortedIssueIds(query, 0, 10)).containsExactly(101L, 102L, 100L);
+  }
+
+  @Test
+  public void should_select_sorted_issue_ids_by_severity() {
+    setupData("shared", "should_select_returned_sorted_result_by_severity");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_SEVERITY).asc(true).requiredRole("user").build();
+    assertThat(dao.selectSortedIssueIds(query, 0, 10)).containsExactly(100L, 102L, 101L);
+
+    query = IssueQuery.builder().sort(IssueQuery.SORT_BY_SEVERITY).asc(false).requiredRole("user").build();
+    assertThat(dao.selectSortedIssueIds(query, 0, 10)).containsExactly(101L, 102L, 100L);
+  }
+
+  @Test
+  public void should_select_sorted_issue_ids_by_status() {
+    setupData("shared", "should_select_returned_sorted_result_by_status");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_STATUS).asc(true).requiredRole("user").build();
+    assertThat(dao.selectSortedIssueIds(query, 0, 10)).containsExactly(101L, 100L, 102L);
+  }
+
+  @Test
+  public void should_select_sorted_issue_ids_by_dates() {
+    setupData("shared", "should_select_returned_sorted_result_by_creation_date");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_CREATION_DATE).asc(true).requiredRole("user").build();
+    assertThat(dao.selectSortedIssueIds(query, 0, 10)).containsExactly(101L, 100L, 102L);
+
+    query = IssueQuery.builder().sort(IssueQuery.SORT_BY_CREATION_DATE).asc(false).requiredRole("user").build();
+    assertThat(dao.selectSortedIssueIds(query, 0, 10)).containsExactly(102L, 100L, 101L);
+  }
+
+  @Test
+  public void should_select_page_of_sorted_issue_ids() {
+    setupData("shared", "should_select_returned_sorted_result_by_severity");
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_SEVERITY).asc(true).requiredRole("user").build();
+    assertThat(dao.selectSortedIssueIds(query, 0, 2)).containsExactly(100L, 102L);
+    assertThat(dao.selectSortedIssueIds(query, 1, 1)).containsExactly(102L);
+    assertThat(dao.selectSortedIssueIds(query, 2, 5)).containsExactly(101L);
+    assertThat(dao.selectSortedIssueIds(query, 3, 5)).isEmpty();
+
+    // no sort: ordered by id
+    query = IssueQuery.builder().requiredRole("user").build();
+    assertThat(dao.selectSortedIssueIds(query, 1, 5)).containsExactly(101L, 102L);
+  }
+
   @Test
   public void should_select_issues_with_sort_column() {
     setupData("shared", "should_select_issues_with_sort_column");
@@ -329,6 +397,36 @@ public class IssueDaoTest extends AbstractDaoTestCase {
     assertThat(handler.getResultList()).hasSize(1);
   }
 
+  @Test
+  public void should_select_issues_for_indexing() {
+    setupData("shared", "should_select_non_closed_issues_by_module");
+
+    // closed issues are included
+    DefaultResultHandler handler = new DefaultResultHandler();
+    dao.selectIssuesForIndexing(null, handler);
+    assertThat(handler.getResultList()).hasSize(5);
+    IssueDto issue = (IssueDto) handler.getResultList().get(0);
+    assertThat(issue.getComponentKey()).isNotNull();
+    assertThat(issue.getRootComponentKey()).isNotNull();
+
+    handler = new DefaultResultHandler();
+    dao.selectIssuesForIndexing(399L, handler);
+    assertThat(handler.getResultList()).hasSize(5);
+
+    handler = new DefaultResultHandler();
+    dao.selectIssuesForIndexing(999L, handler);
+    assertThat(handler.getResultList()).isEmpty();
+  }
+
+  @Test
+  public void should_select_by_keys() {
+    setupData("shared", "should_select_by_ids");
+
+    List<IssueDto> results = dao.selectByKeys(newArrayList("ABCDE-1", "ABCDE", "UNKNOWN"));
+    assertThat(results).hasSize(2);
+    assertThat(dao.selectByKeys(Collections.<String>emptyList())).isEmpty();
+  }
+
   @Test
   public void should_select_by_ids() {
     setupData("shared", "should_select_by_ids");
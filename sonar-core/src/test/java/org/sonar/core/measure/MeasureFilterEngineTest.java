@@ -20,18 +20,24 @@
 package org.sonar.core.measure;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.config.Settings;
 import org.sonar.core.profiling.Profiling;
+import org.sonar.core.resource.SnapshotDto;
 
 import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.refEq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -45,7 +51,7 @@ public class MeasureFilterEngineTest {
     when(factory.create(filterMap)).thenReturn(filter);
     MeasureFilterExecutor executor = mock(MeasureFilterExecutor.class);
 
-    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, new Profiling(new Settings()));
+    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, new Profiling(new Settings()), new Settings());
 
     final long userId = 50L;
     engine.execute(filterMap, userId);
@@ -67,11 +73,65 @@ public class MeasureFilterEngineTest {
     when(factory.create(filterMap)).thenThrow(new IllegalArgumentException());
     MeasureFilterExecutor executor = mock(MeasureFilterExecutor.class);
 
-    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, new Profiling(new Settings()));
+    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, new Profiling(new Settings()), new Settings());
     MeasureFilterResult result = engine.execute(filterMap, 50L);
 
     assertThat(result.isSuccess()).isFalse();
     assertThat(result.getError()).isEqualTo(MeasureFilterResult.Error.UNKNOWN);
     assertThat(result.getRows()).isNull();
   }
+
+  @Test
+  public void cache_results_until_analysis_of_project() throws Exception {
+    Map<String, Object> filterMap = ImmutableMap.of("qualifiers", (Object) "TRK");
+    Map<String, Object> baseFilterMap = ImmutableMap.of("base", (Object) "struts");
+    MeasureFilterFactory factory = mock(MeasureFilterFactory.class);
+    when(factory.create(filterMap)).thenReturn(new MeasureFilter());
+    when(factory.create(baseFilterMap)).thenReturn(new MeasureFilter());
+    MeasureFilterExecutor executor = mock(MeasureFilterExecutor.class);
+    when(executor.execute(any(MeasureFilter.class), any(MeasureFilterContext.class))).thenAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) {
+        MeasureFilterContext context = (MeasureFilterContext) invocation.getArguments()[1];
+        if (context.getData().contains("base")) {
+          context.setBaseSnapshot(new SnapshotDto().setRootProjectId(10L));
+        }
+        return Lists.newArrayList(new MeasureFilterRow(1L, 2L, 10L));
+      }
+    });
+    Settings settings = new Settings().setProperty(MeasureFilterEngine.CACHE_SIZE_PROPERTY, 10);
+    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, new Profiling(new Settings()), settings);
+
+    assertThat(engine.execute(filterMap, 50L).getRows()).hasSize(1);
+    assertThat(engine.execute(filterMap, 50L).getRows()).hasSize(1);
+    engine.execute(baseFilterMap, 50L);
+    engine.execute(baseFilterMap, 50L);
+    verify(executor, times(2)).execute(any(MeasureFilter.class), any(MeasureFilterContext.class));
+
+    // results of other users are not shared
+    engine.execute(filterMap, 51L);
+    verify(executor, times(3)).execute(any(MeasureFilter.class), any(MeasureFilterContext.class));
+
+    // analysis of another project can change the results of filters that are not restricted to a project
+    engine.clearCache(20L);
+    engine.execute(filterMap, 50L);
+    engine.execute(baseFilterMap, 50L);
+    verify(executor, times(4)).execute(any(MeasureFilter.class), any(MeasureFilterContext.class));
+
+    engine.clearCache(10L);
+    engine.execute(baseFilterMap, 50L);
+    verify(executor, times(5)).execute(any(MeasureFilter.class), any(MeasureFilterContext.class));
+  }
+
+  @Test
+  public void do_not_cache_results_by_default() throws Exception {
+    Map<String, Object> filterMap = ImmutableMap.of("qualifiers", (Object) "TRK");
+    MeasureFilterFactory factory = mock(MeasureFilterFactory.class);
+    when(factory.create(filterMap)).thenReturn(new MeasureFilter());
+    MeasureFilterExecutor executor = mock(MeasureFilterExecutor.class);
+    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, new Profiling(new Settings()), new Settings());
+
+    engine.execute(filterMap, 50L);
+    engine.execute(filterMap, 50L);
+    verify(executor, times(2)).execute(any(MeasureFilter.class), any(MeasureFilterContext.class));
+  }
 }
@@ -282,6 +282,32 @@ public class MeasureFilterExecutorTest {
     verifyPhpProject(rows.get(1));
   }
 
+  @Test
+  public void keep_top_rows_sorted_by_database() throws SQLException {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    MeasureFilter filter = new MeasureFilter().setResourceQualifiers(Arrays.asList("CLA")).setSortOnMetric(METRIC_LINES).setSortAsc(false)
+      .setMaxResults(1);
+    MeasureFilterContext context = new MeasureFilterContext();
+    List<MeasureFilterRow> rows = executor.execute(filter, context);
+
+    assertThat(context.getSql()).contains("ORDER BY");
+    assertThat(rows).hasSize(1);
+    verifyJavaBigFile(rows.get(0));
+  }
+
+  @Test
+  public void keep_top_rows_sorted_programmatically() throws SQLException {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    MeasureFilter filter = new MeasureFilter().setResourceQualifiers(Arrays.asList("CLA")).setSortAsc(false).setMaxResults(1);
+    MeasureFilterContext context = new MeasureFilterContext();
+    List<MeasureFilterRow> rows = executor.execute(filter, context);
+
+    // Tiny -> Big
+    assertThat(context.getSql()).doesNotContain("ORDER BY");
+    assertThat(rows).hasSize(1);
+    verifyJavaTinyFile(rows.get(0));
+  }
+
   @Test
   public void sort_by_missing_numeric_measure() throws SQLException {
     db.prepareDbUnit(getClass(), "shared.xml");
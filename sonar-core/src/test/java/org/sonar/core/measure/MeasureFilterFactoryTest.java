@@ -58,6 +58,13 @@ public class MeasureFilterFactoryTest {
     assertThat(filter.sort().period()).isEqualTo(3);
   }
 
+  @Test
+  public void max_results() {
+    MeasureFilterFactory factory = new MeasureFilterFactory(newMetricFinder());
+    assertThat(factory.create(ImmutableMap.<String, Object> of("maxResults", "100")).getMaxResults()).isEqualTo(100);
+    assertThat(factory.create(ImmutableMap.<String, Object> of("qualifiers", "TRK")).getMaxResults()).isNull();
+  }
+
   @Test
   public void sort_on_name() {
     MeasureFilterFactory factory = new MeasureFilterFactory(newMetricFinder());
@@ -23,6 +23,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -37,17 +38,22 @@ import org.sonar.jpa.test.AbstractDbUnitTestCase;
 import java.io.InvalidClassException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class DefaultNotificationManagerTest extends AbstractDbUnitTestCase {
@@ -109,6 +115,50 @@ public class DefaultNotificationManagerTest extends AbstractDbUnitTestCase {
     inOrder.verify(notificationQueueDao).delete(dtos);
   }
 
+  @Test
+  public void shouldProcessBatchFromQueueThenDelete() throws Exception {
+    List<NotificationQueueDto> dtos = Arrays.asList(
+      NotificationQueueDto.toNotificationQueueDto(new Notification("one")),
+      NotificationQueueDto.toNotificationQueueDto(new Notification("two")));
+    when(notificationQueueDao.findOldest(10)).thenReturn(dtos);
+    DefaultNotificationManager.BatchHandler handler = mock(DefaultNotificationManager.BatchHandler.class);
+
+    assertThat(manager.processBatchFromQueue(10, handler)).isEqualTo(2);
+
+    ArgumentCaptor<List> notifications = ArgumentCaptor.forClass(List.class);
+    InOrder inOrder = inOrder(handler, notificationQueueDao);
+    inOrder.verify(handler).handle(notifications.capture());
+    inOrder.verify(notificationQueueDao).delete(dtos);
+    assertThat(notifications.getValue()).hasSize(2);
+    assertThat(((Notification) notifications.getValue().get(0)).getType()).isEqualTo("one");
+    assertThat(((Notification) notifications.getValue().get(1)).getType()).isEqualTo("two");
+  }
+
+  @Test
+  public void shouldKeepBatchInQueueWhenProcessingFails() throws Exception {
+    List<NotificationQueueDto> dtos = Arrays.asList(NotificationQueueDto.toNotificationQueueDto(new Notification("one")));
+    when(notificationQueueDao.findOldest(10)).thenReturn(dtos);
+    DefaultNotificationManager.BatchHandler handler = mock(DefaultNotificationManager.BatchHandler.class);
+    doThrow(new IllegalStateException("Stopped")).when(handler).handle(any(List.class));
+
+    try {
+      manager.processBatchFromQueue(10, handler);
+      fail();
+    } catch (IllegalStateException e) {
+      verify(notificationQueueDao, never()).delete(any(List.class));
+    }
+  }
+
+  @Test
+  public void shouldProcessEmptyBatchFromEmptyQueue() throws Exception {
+    when(notificationQueueDao.findOldest(10)).thenReturn(Collections.<NotificationQueueDto>emptyList());
+    DefaultNotificationManager.BatchHandler handler = mock(DefaultNotificationManager.BatchHandler.class);
+
+    assertThat(manager.processBatchFromQueue(10, handler)).isEqualTo(0);
+    verifyZeroInteractions(handler);
+    verify(notificationQueueDao, never()).delete(any(List.class));
+  }
+
   // SONAR-4739
   @Test
   public void shouldNotFailWhenUnableToDeserialize() throws Exception {
@@ -178,4 +228,21 @@ public class DefaultNotificationManagerTest extends AbstractDbUnitTestCase {
     assertThat(map.get("user2")).containsOnly(emailChannel, twitterChannel);
     assertThat(map.get("other")).isNull();
   }
+
+  @Test
+  public void shouldCacheSubscribersUntilCacheIsStopped() {
+    when(propertiesDao.findNotificationSubscribers("NewViolations", "Email", "struts")).thenReturn(Lists.newArrayList("user1"));
+
+    manager.startSubscribersCache();
+    manager.findNotificationSubscribers(dispatcher, "struts");
+    manager.findNotificationSubscribers(dispatcher, "struts");
+    manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+    manager.findSubscribedRecipientsForDispatcher(dispatcher, 45);
+    verify(propertiesDao, times(1)).findNotificationSubscribers("NewViolations", "Email", "struts");
+    verify(propertiesDao, times(1)).findUsersForNotification("NewViolations", "Email", 45L);
+
+    manager.stopSubscribersCache();
+    manager.findNotificationSubscribers(dispatcher, "struts");
+    verify(propertiesDao, times(2)).findNotificationSubscribers("NewViolations", "Email", "struts");
+  }
 }
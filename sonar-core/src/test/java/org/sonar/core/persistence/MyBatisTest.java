@@ -28,8 +28,12 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.sonar.api.config.Settings;
 import org.sonar.core.config.Logback;
+import org.sonar.core.profiling.MetricsRegistry;
 import org.sonar.core.rule.RuleMapper;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
@@ -75,6 +79,71 @@ public class MyBatisTest {
     }
   }
 
+  @Test
+  public void aggregate_sql_timings_per_statement() {
+    MetricsRegistry metrics = new MetricsRegistry();
+    MyBatis myBatis = new MyBatis(database, new Settings(), logback, metrics);
+    myBatis.start();
+
+    SqlSession session = myBatis.openSession();
+    try {
+      session.getMapper(RuleMapper.class).selectAll();
+      session.getMapper(RuleMapper.class).selectAll();
+    } finally {
+      session.close();
+    }
+
+    assertThat(metrics.timer("sql.org.sonar.core.rule.RuleMapper.selectAll").count(), Is.is(2L));
+  }
+
+  @Test
+  public void record_sql_statistics_and_slow_queries() {
+    Settings settings = new Settings()
+      .setProperty(SqlStatistics.ENABLED_PROPERTY, true)
+      .setProperty(SqlStatistics.SLOW_THRESHOLD_PROPERTY, 0);
+    MyBatis myBatis = new MyBatis(database, settings, logback);
+    myBatis.start();
+
+    SqlSession session = myBatis.openSession();
+    try {
+      session.getMapper(RuleMapper.class).selectById(42L);
+      session.getMapper(RuleMapper.class).selectAll();
+    } finally {
+      session.close();
+    }
+    myBatis.stop();
+
+    SqlStatistics statistics = myBatis.getSqlStatistics();
+    assertThat(statistics.statements().size(), Is.is(2));
+    SqlStatistics.SlowQuery slowQuery = statistics.slowQueries().get(1);
+    assertThat(slowQuery.statementId(), Is.is("org.sonar.core.rule.RuleMapper.selectById"));
+    assertThat(slowQuery.sql().contains("42"), Is.is(false));
+    assertThat(slowQuery.parameters().isEmpty(), Is.is(true));
+    assertThat(slowQuery.rows(), Is.is(0));
+  }
+
+  @Test
+  public void record_parameters_of_slow_queries_if_enabled() {
+    Settings settings = new Settings()
+      .setProperty(SqlStatistics.ENABLED_PROPERTY, true)
+      .setProperty(SqlStatistics.SLOW_THRESHOLD_PROPERTY, 0)
+      .setProperty(SqlStatistics.SLOW_QUERIES_PARAMETERS_PROPERTY, true);
+    MyBatis myBatis = new MyBatis(database, settings, logback);
+    myBatis.start();
+
+    SqlSession session = myBatis.openSession();
+    try {
+      session.getMapper(RuleMapper.class).selectById(42L);
+    } finally {
+      session.close();
+    }
+    myBatis.stop();
+
+    SqlStatistics.SlowQuery slowQuery = myBatis.getSqlStatistics().slowQueries().get(0);
+    assertThat(slowQuery.statementId(), Is.is("org.sonar.core.rule.RuleMapper.selectById"));
+    assertThat(slowQuery.parameters(), Is.is((List) Arrays.asList(42L)));
+  }
+
   @Test
   public void log_sql_requests_and_responses() {
     Settings settings = new Settings()
@@ -142,6 +142,21 @@ public class PreviewDatabaseFactoryTest extends AbstractDaoTestCase {
     assertThat(rowCount("issues")).isEqualTo(0);
   }
 
+  @Test
+  public void should_create_database_of_project_from_global_database() throws Exception {
+    setupData("multi-modules-with-issues");
+
+    File globalDatabase = localDatabaseFactory.createNewDatabaseForDryRun(null, temporaryFolder.newFolder(), "global");
+    File projectDatabase = localDatabaseFactory.createNewDatabaseForDryRun(300L, temporaryFolder.newFolder(), "foo", globalDatabase);
+    dataSource = createDatabase(FileUtils.readFileToByteArray(projectDatabase));
+
+    assertThat(rowCount("issues")).isEqualTo(1);
+    assertThat(rowCount("projects")).isEqualTo(4);
+    assertThat(rowCount("snapshots")).isEqualTo(4);
+    assertThat(rowCount("project_measures")).isEqualTo(4);
+    assertThat(rowCount("rules")).isEqualTo(2);
+  }
+
   @Test
   public void should_copy_permission_templates_data() throws Exception {
     setupData("should_copy_permission_templates");
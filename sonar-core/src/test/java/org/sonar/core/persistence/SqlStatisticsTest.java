@@ -0,0 +1,90 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.persistence;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.sonar.api.config.Settings;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class SqlStatisticsTest {
+
+  @Test
+  public void should_be_disabled_by_default() {
+    assertThat(new SqlStatistics(new Settings()).isEnabled()).isFalse();
+  }
+
+  @Test
+  public void should_aggregate_per_statement() {
+    SqlStatistics statistics = new SqlStatistics(new Settings());
+    statistics.record("IssueMapper.selectIssues", TimeUnit.MILLISECONDS.toNanos(5), 10);
+    statistics.record("IssueMapper.selectIssues", TimeUnit.MILLISECONDS.toNanos(15), 20);
+    statistics.record("RuleMapper.selectAll", TimeUnit.MILLISECONDS.toNanos(30), 100);
+
+    assertThat(statistics.statements()).hasSize(2);
+    SqlStatistics.StatementStatistics first = statistics.statements().get(0);
+    assertThat(first.statementId()).isEqualTo("RuleMapper.selectAll");
+    SqlStatistics.StatementStatistics second = statistics.statements().get(1);
+    assertThat(second.count()).isEqualTo(2L);
+    assertThat(second.rows()).isEqualTo(30L);
+    assertThat(second.totalTime()).isEqualTo(20L);
+    assertThat(second.maxTime()).isEqualTo(15L);
+  }
+
+  @Test
+  public void should_keep_most_recent_slow_queries() {
+    Settings settings = new Settings()
+      .setProperty(SqlStatistics.SLOW_THRESHOLD_PROPERTY, 100)
+      .setProperty(SqlStatistics.SLOW_QUERIES_PROPERTY, 2);
+    SqlStatistics statistics = new SqlStatistics(settings);
+
+    assertThat(statistics.isSlow(TimeUnit.MILLISECONDS.toNanos(99))).isFalse();
+    assertThat(statistics.isSlow(TimeUnit.MILLISECONDS.toNanos(100))).isTrue();
+
+    statistics.recordSlowQuery("first", "select 1", Collections.emptyList(), TimeUnit.MILLISECONDS.toNanos(100), 1);
+    statistics.recordSlowQuery("second", "select\n   2", Collections.emptyList(), TimeUnit.MILLISECONDS.toNanos(200), 1);
+    statistics.recordSlowQuery("third", "select 3", Collections.emptyList(), TimeUnit.MILLISECONDS.toNanos(300), 1);
+
+    assertThat(statistics.slowQueries()).hasSize(2);
+    assertThat(statistics.slowQueries().get(0).statementId()).isEqualTo("third");
+    assertThat(statistics.slowQueries().get(0).time()).isEqualTo(300L);
+    assertThat(statistics.slowQueries().get(1).sql()).isEqualTo("select 2");
+  }
+
+  @Test
+  public void should_dump() {
+    SqlStatistics statistics = new SqlStatistics(new Settings());
+    statistics.record("RuleMapper.selectAll", 1000, 100);
+    statistics.recordSlowQuery("RuleMapper.selectAll", "select * from rules", Collections.emptyList(), 1000, 100);
+    Logger logger = mock(Logger.class);
+
+    statistics.dump(logger);
+
+    verify(logger, atLeastOnce()).info(anyString());
+  }
+}
@@ -22,21 +22,27 @@ package org.sonar.core.preview;
 import org.sonar.core.preview.PreviewCache;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.ServerFileSystem;
 import org.sonar.core.persistence.PreviewDatabaseFactory;
 import org.sonar.core.properties.PropertiesDao;
 import org.sonar.core.properties.PropertyDto;
 import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.resource.ResourceDto;
+import org.sonar.home.cache.FileHashes;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.zip.GZIPInputStream;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
@@ -63,6 +69,8 @@ public class PreviewCacheTest {
 
   private File dryRunCacheLocation;
 
+  private Settings settings;
+
   @Before
   public void prepare() throws IOException {
     serverFileSystem = mock(ServerFileSystem.class);
@@ -74,7 +82,8 @@ public class PreviewCacheTest {
     when(serverFileSystem.getTempDir()).thenReturn(tempLocation);
     dryRunCacheLocation = new File(tempLocation, "dryRun");
 
-    dryRunCache = new PreviewCache(serverFileSystem, propertiesDao, resourceDao, dryRunDatabaseFactory);
+    settings = new Settings();
+    dryRunCache = new PreviewCache(serverFileSystem, propertiesDao, resourceDao, dryRunDatabaseFactory, settings);
   }
 
   @Test
@@ -98,7 +107,8 @@ public class PreviewCacheTest {
 
   @Test
   public void test_getDatabaseForDryRun_on_existing_project() throws Exception {
-    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(eq(123L), any(File.class), anyString())).thenAnswer(new Answer<File>() {
+    mockGlobalDatabase("global db content");
+    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(eq(123L), any(File.class), anyString(), any(File.class))).thenAnswer(new Answer<File>() {
       public File answer(InvocationOnMock invocation) throws IOException {
         Object[] args = invocation.getArguments();
         File dbFile = new File(new File(dryRunCacheLocation, "123"), (String) args[2] + ".h2.db");
@@ -113,7 +123,8 @@ public class PreviewCacheTest {
     dbContent = dryRunCache.getDatabaseForPreview(123L);
     assertThat(new String(dbContent)).isEqualTo("fake db content");
 
-    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
+    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString());
+    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(eq(123L), any(File.class), anyString(), any(File.class));
   }
 
   @Test
@@ -150,7 +161,8 @@ public class PreviewCacheTest {
 
   @Test
   public void test_getDatabaseForDryRun_project_invalidation() throws Exception {
-    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(eq(123L), any(File.class), anyString()))
+    mockGlobalDatabase("global db content");
+    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(eq(123L), any(File.class), anyString(), any(File.class)))
       .thenAnswer(new Answer<File>() {
         public File answer(InvocationOnMock invocation) throws IOException {
           Object[] args = invocation.getArguments();
@@ -179,7 +191,101 @@ public class PreviewCacheTest {
     dbContent = dryRunCache.getDatabaseForPreview(123L);
     assertThat(new String(dbContent)).isEqualTo("fake db content 2");
 
-    verify(dryRunDatabaseFactory, times(2)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
+    // the global database is not regenerated
+    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString());
+    verify(dryRunDatabaseFactory, times(2)).createNewDatabaseForDryRun(eq(123L), any(File.class), anyString(), any(File.class));
+  }
+
+  @Test
+  public void project_database_is_created_from_global_database() throws Exception {
+    mockGlobalDatabase("global db content");
+    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(eq(123L), any(File.class), anyString(), any(File.class))).thenAnswer(new Answer<File>() {
+      public File answer(InvocationOnMock invocation) throws IOException {
+        Object[] args = invocation.getArguments();
+        File dbFile = new File(new File(dryRunCacheLocation, "123"), (String) args[2] + ".h2.db");
+        FileUtils.write(dbFile, FileUtils.readFileToString((File) args[3]) + " + project content");
+        return dbFile;
+      }
+    });
+    when(resourceDao.getRootProjectByComponentId(123L)).thenReturn(new ResourceDto().setId(123L));
+
+    assertThat(writeDatabase(123L, false)).isEqualTo("global db content + project content");
+
+    // the global database is kept for the next project databases and for new projects
+    assertThat(writeDatabase(null, false)).isEqualTo("global db content");
+    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString());
+  }
+
+  @Test
+  public void global_invalidation_regenerates_global_database_of_projects() throws Exception {
+    mockGlobalDatabase("global db content");
+    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(eq(123L), any(File.class), anyString(), any(File.class))).thenAnswer(new Answer<File>() {
+      public File answer(InvocationOnMock invocation) throws IOException {
+        Object[] args = invocation.getArguments();
+        File dbFile = new File(new File(dryRunCacheLocation, "123"), (String) args[2] + ".h2.db");
+        FileUtils.write(dbFile, "fake db content");
+        return dbFile;
+      }
+    });
+    when(resourceDao.getRootProjectByComponentId(123L)).thenReturn(new ResourceDto().setId(123L));
+    dryRunCache.getDatabaseDigestForPreview(123L);
+
+    // Emulate invalidation of cache
+    Thread.sleep(100);
+    when(propertiesDao.selectGlobalProperty(PreviewCache.SONAR_PREVIEW_CACHE_LAST_UPDATE_KEY)).thenReturn(new PropertyDto().setValue("" + System.currentTimeMillis()));
+    dryRunCache.getDatabaseDigestForPreview(123L);
+
+    verify(dryRunDatabaseFactory, times(2)).createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString());
+    verify(dryRunDatabaseFactory, times(2)).createNewDatabaseForDryRun(eq(123L), any(File.class), anyString(), any(File.class));
+  }
+
+  private void mockGlobalDatabase(final String content) {
+    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString())).thenAnswer(new Answer<File>() {
+      public File answer(InvocationOnMock invocation) throws IOException {
+        Object[] args = invocation.getArguments();
+        File dbFile = new File(new File(dryRunCacheLocation, "default"), (String) args[2] + ".h2.db");
+        FileUtils.write(dbFile, content);
+        return dbFile;
+      }
+    });
+  }
+
+  @Test
+  public void test_getDatabaseDigestForPreview() throws Exception {
+    mockGlobalDatabase("fake db content");
+
+    String digest = dryRunCache.getDatabaseDigestForPreview(null);
+    assertThat(digest).isEqualTo(new FileHashes().of(new ByteArrayInputStream("fake db content".getBytes())));
+
+    // same digest as long as the cache is valid
+    assertThat(dryRunCache.getDatabaseDigestForPreview(null)).isEqualTo(digest);
+    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
+  }
+
+  @Test
+  public void test_writeDatabaseForPreview() throws Exception {
+    mockGlobalDatabase("fake db content");
+
+    assertThat(writeDatabase(null, false)).isEqualTo("fake db content");
+    assertThat(writeDatabase(null, true)).isEqualTo("fake db content");
+    verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
+  }
+
+  private String writeDatabase(Long projectId, boolean gzip) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    dryRunCache.writeDatabaseForPreview(projectId, output, gzip);
+    if (gzip) {
+      return IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())));
+    }
+    return new String(output.toByteArray());
+  }
+
+  @Test
+  public void test_compression_is_disabled_by_default() {
+    assertThat(dryRunCache.isCompressionEnabled()).isFalse();
+
+    settings.setProperty(PreviewCache.COMPRESS_DATABASE_PROPERTY, true);
+    assertThat(dryRunCache.isCompressionEnabled()).isTrue();
   }
 
   @Test
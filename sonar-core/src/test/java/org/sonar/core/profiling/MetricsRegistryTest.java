@@ -0,0 +1,142 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.profiling;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MetricsRegistryTest {
+
+  MetricsRegistry metrics = new MetricsRegistry();
+
+  @Test
+  public void should_aggregate_durations() {
+    Timer timer = metrics.timer("sql.select");
+    for (int i = 1; i <= 100; i++) {
+      timer.update(i, TimeUnit.MILLISECONDS);
+    }
+
+    assertThat(metrics.timer("sql.select")).isSameAs(timer);
+    assertThat(timer.count()).isEqualTo(100L);
+    assertThat(timer.totalTime()).isEqualTo(5050.0);
+    assertThat(timer.mean()).isEqualTo(50.5);
+    assertThat(timer.max()).isEqualTo(100.0);
+    assertThat(timer.percentile(0.5)).isEqualTo(50.0);
+    assertThat(timer.percentile(0.99)).isEqualTo(99.0);
+    assertThat(timer.percentile(1.0)).isEqualTo(100.0);
+
+    Timer.Snapshot snapshot = timer.snapshot();
+    timer.update(1, TimeUnit.SECONDS);
+    assertThat(snapshot.count()).isEqualTo(100L);
+    assertThat(snapshot.max()).isEqualTo(100.0);
+    assertThat(snapshot.percentile(0.5)).isEqualTo(50.0);
+  }
+
+  @Test
+  public void should_compute_percentiles_on_most_recent_durations() {
+    Timer timer = metrics.timer("http");
+    timer.update(10, TimeUnit.SECONDS);
+    for (int i = 0; i < Timer.SAMPLES; i++) {
+      timer.update(2, TimeUnit.MILLISECONDS);
+    }
+
+    assertThat(timer.max()).isEqualTo(10000.0);
+    assertThat(timer.percentile(1.0)).isEqualTo(2.0);
+  }
+
+  @Test
+  public void empty_timer() {
+    Timer timer = metrics.timer("http");
+
+    assertThat(timer.count()).isEqualTo(0L);
+    assertThat(timer.mean()).isEqualTo(0.0);
+    assertThat(timer.percentile(0.99)).isEqualTo(0.0);
+  }
+
+  @Test
+  public void should_aggregate_other_http_timers_when_too_many() {
+    for (int i = 0; i < MetricsRegistry.MAX_HTTP_TIMERS; i++) {
+      metrics.timer("http./controller" + i);
+    }
+    Timer other = metrics.timer("http./unknown");
+
+    assertThat(metrics.timer("http./another")).isSameAs(other);
+    assertThat(metrics.timer("http./controller0")).isNotSameAs(other);
+    assertThat(metrics.timers()).hasSize(MetricsRegistry.MAX_HTTP_TIMERS + 1);
+    assertThat(metrics.timers().get("http.other")).isSameAs(other);
+    // limit is on http domain only
+    assertThat(metrics.timer("sql.select")).isNotSameAs(other);
+  }
+
+  @Test
+  public void should_not_limit_sql_timers() {
+    int statements = MetricsRegistry.MAX_HTTP_TIMERS + 50;
+    for (int i = 0; i < statements; i++) {
+      metrics.timer("sql.org.sonar.core.Mapper.select" + i).update(i, TimeUnit.MILLISECONDS);
+    }
+
+    assertThat(metrics.timers()).hasSize(statements);
+    assertThat(metrics.timers().containsKey("sql.other")).isFalse();
+    for (int i = 0; i < statements; i++) {
+      Timer timer = metrics.timer("sql.org.sonar.core.Mapper.select" + i);
+      assertThat(timer.count()).isEqualTo(1L);
+      assertThat(timer.max()).isEqualTo((double) i);
+    }
+  }
+
+  @Test
+  public void should_count() {
+    metrics.counter("notifications").inc();
+    metrics.counter("notifications").inc(3);
+
+    assertThat(metrics.counter("notifications").count()).isEqualTo(4L);
+  }
+
+  @Test
+  public void should_register_gauges() {
+    Gauge gauge = new Gauge() {
+      @Override
+      public Number value() {
+        return 42;
+      }
+    };
+    metrics.register("queue", gauge);
+    assertThat(metrics.gauges()).hasSize(1);
+    assertThat(metrics.gauges().get("queue").value()).isEqualTo(42);
+
+    metrics.unregister("queue");
+    assertThat(metrics.gauges()).isEmpty();
+  }
+
+  @Test
+  public void should_sort_by_name() {
+    metrics.timer("sql.b");
+    metrics.timer("http.a");
+    metrics.counter("z");
+    metrics.counter("a");
+
+    assertThat(Lists.newArrayList(metrics.timers().keySet())).containsExactly("http.a", "sql.b");
+    assertThat(Lists.newArrayList(metrics.counters().keySet())).containsExactly("a", "z");
+  }
+}
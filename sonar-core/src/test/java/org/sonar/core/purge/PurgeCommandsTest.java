@@ -22,6 +22,7 @@ package org.sonar.core.purge;
 import org.apache.ibatis.session.SqlSession;
 import org.junit.Before;
 import org.junit.Test;
+import org.sonar.api.config.Settings;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 import org.sonar.core.persistence.MyBatis;
 
@@ -56,6 +57,22 @@ public class PurgeCommandsTest extends AbstractDaoTestCase {
         "snapshots", "project_measures", "measure_data", "snapshot_sources", "duplications_index", "events", "dependencies", "snapshot_data");
   }
 
+  @Test
+  public void delete_snapshot_with_concurrent_threads() {
+    setupData("shouldDeleteSnapshot");
+
+    PurgeExecutor executor = new PurgeExecutor(getMyBatis(), new Settings().setProperty(PurgeExecutor.THREADS_PROPERTY, 4));
+    SqlSession session = getMyBatis().openSession();
+    try {
+      new PurgeCommands(session, session.getMapper(PurgeMapper.class), profiler, executor).deleteSnapshots(PurgeSnapshotQuery.create().setId(5L));
+    } finally {
+      MyBatis.closeQuietly(session);
+      executor.stop();
+    }
+    checkTables("shouldDeleteSnapshot",
+        "snapshots", "project_measures", "measure_data", "snapshot_sources", "duplications_index", "events", "dependencies", "snapshot_data");
+  }
+
   /**
    * Test that SQL queries execution do not fail with a huge number of parameter
    */
@@ -32,6 +32,8 @@ import java.util.List;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.internal.matchers.IsCollectionContaining.hasItem;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 public class PurgeDaoTest extends AbstractDaoTestCase {
 
@@ -95,6 +97,19 @@ public class PurgeDaoTest extends AbstractDaoTestCase {
     assertEmptyTables("projects", "snapshots", "action_plans", "issues", "issue_changes");
   }
 
+  @Test
+  public void should_notify_listeners() {
+    setupData("shouldDeleteProject");
+    PurgeListener listener = mock(PurgeListener.class);
+    dao.addListener(listener);
+
+    dao.purge(new PurgeConfiguration(1L, new String[0], 30));
+    verify(listener).onPurge(1L);
+
+    dao.deleteResourceTree(1L);
+    verify(listener).onDeletion(1L);
+  }
+
   @Test
   public void should_delete_old_closed_issues() {
     setupData("should_delete_old_closed_issues");
@@ -0,0 +1,80 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.purge;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PurgeExecutorTest {
+
+  @Test
+  public void sequential_by_default() {
+    assertThat(new PurgeExecutor().isConcurrent()).isFalse();
+    assertThat(new PurgeExecutor(null, new Settings().setProperty(PurgeExecutor.THREADS_PROPERTY, 4)).isConcurrent()).isFalse();
+  }
+
+  @Test
+  public void max_deleted_rows_per_second_by_table() {
+    Settings settings = new Settings()
+      .setProperty(PurgeExecutor.MAX_DELETED_ROWS_PER_SECOND_PROPERTY, 1000)
+      .setProperty("sonar.dbcleaner.project_measures.maxDeletedRowsPerSecond", 200);
+    PurgeExecutor executor = new PurgeExecutor(null, settings);
+
+    assertThat(executor.maxDeletedRowsPerSecond("project_measures")).isEqualTo(200);
+    assertThat(executor.maxDeletedRowsPerSecond("snapshots")).isEqualTo(1000);
+    assertThat(new PurgeExecutor().maxDeletedRowsPerSecond("snapshots")).isEqualTo(0);
+  }
+
+  @Test
+  public void pause_to_respect_max_deleted_rows_per_second() {
+    // 500 rows at 1000 rows/s take at least 500ms
+    assertThat(PurgeExecutor.pause(1000, 500, 100L)).isEqualTo(400L);
+    assertThat(PurgeExecutor.pause(1000, 500, 600L)).isEqualTo(0L);
+    assertThat(PurgeExecutor.pause(1000, 0, 0L)).isEqualTo(0L);
+  }
+
+  @Test
+  public void count_updated_rows() {
+    BatchResult first = mock(BatchResult.class);
+    when(first.getUpdateCounts()).thenReturn(new int[] {3, 4});
+    BatchResult second = mock(BatchResult.class);
+    when(second.getUpdateCounts()).thenReturn(new int[] {5});
+
+    assertThat(PurgeExecutor.countUpdatedRows(Arrays.asList(first, second), 100)).isEqualTo(12);
+  }
+
+  @Test
+  public void estimate_updated_rows_when_driver_does_not_return_counts() {
+    BatchResult result = mock(BatchResult.class);
+    // java.sql.Statement.SUCCESS_NO_INFO
+    when(result.getUpdateCounts()).thenReturn(new int[] {-2, -2});
+
+    assertThat(PurgeExecutor.countUpdatedRows(Arrays.asList(result), 100)).isEqualTo(100);
+    assertThat(PurgeExecutor.countUpdatedRows(Collections.<BatchResult>emptyList(), 100)).isEqualTo(100);
+  }
+}
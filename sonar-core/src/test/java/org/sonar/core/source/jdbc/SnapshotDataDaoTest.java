@@ -69,4 +69,19 @@ public class SnapshotDataDaoTest extends AbstractDaoTestCase {
     assertThat(serializedData).onProperty("dataType").containsOnly(dataType);
     assertThat(serializedData).onProperty("data").containsOnly(data);
   }
+
+  @Test
+  public void should_decode_compressed_snapshot_data() throws Exception {
+    String data = "0,10,k;10,20,cppd;20,30,k;30,40,cppd;40,50,k;50,60,cppd;60,70,k;70,80,cppd;80,90,k;90,100,cppd;";
+
+    SnapshotDataDto dto = new SnapshotDataDto();
+    dto.setResourceId(1L);
+    dto.setSnapshotId(11L);
+    dto.setData(TextCodec.encode(data, true));
+    dto.setDataType("highlight_syntax");
+    dao.insert(dto);
+
+    Collection<SnapshotDataDto> serializedData = dao.selectSnapshotData(11L, Lists.newArrayList("highlight_syntax"));
+    assertThat(serializedData).onProperty("data").containsOnly(data);
+  }
 }
@@ -20,9 +20,11 @@
 
 package org.sonar.core.source.jdbc;
 
+import org.apache.ibatis.session.SqlSession;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.persistence.AbstractDaoTestCase;
+import org.sonar.core.persistence.MyBatis;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -43,4 +45,23 @@ public class SnapshotSourceDaoTest extends AbstractDaoTestCase {
 
     assertThat(snapshotSource).isEqualTo("public class Foo {public Foo(){}}");
   }
+
+  @Test
+  public void should_insert_and_decode_compressed_source() throws Exception {
+    String source = "public class Bar {\n  public void foo() {\n  }\n  public void bar() {\n  }\n}\n";
+    SqlSession session = getMyBatis().openSession();
+    try {
+      dao.insert(session, 11L, TextCodec.encode(source, true));
+      session.commit();
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+
+    assertThat(dao.selectSnapshotSource(11L)).isEqualTo(source);
+  }
+
+  @Test
+  public void should_return_null_if_no_source() throws Exception {
+    assertThat(dao.selectSnapshotSource(999L)).isNull();
+  }
 }
@@ -0,0 +1,72 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.source.jdbc;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TextCodecTest {
+
+  private static final String SOURCE = Strings.repeat("public class Foo {\n  public void bar() {\n  }\n}\n", 10);
+
+  @Test
+  public void should_compress_text() {
+    String data = TextCodec.encode(SOURCE, true);
+
+    assertThat(data.length()).isLessThan(SOURCE.length());
+    assertThat(TextCodec.decode(data)).isEqualTo(SOURCE);
+  }
+
+  @Test
+  public void should_not_compress_if_disabled() {
+    assertThat(TextCodec.encode(SOURCE, false)).isSameAs(SOURCE);
+    assertThat(TextCodec.decode(SOURCE)).isSameAs(SOURCE);
+  }
+
+  @Test
+  public void should_not_compress_short_texts() {
+    assertThat(TextCodec.encode("0,10,k;", true)).isEqualTo("0,10,k;");
+  }
+
+  @Test
+  public void should_support_null_and_non_ascii_texts() {
+    assertThat(TextCodec.encode(null, true)).isNull();
+    assertThat(TextCodec.decode(null)).isNull();
+
+    String text = Strings.repeat("// été 中文\n", 20);
+    assertThat(TextCodec.decode(TextCodec.encode(text, true))).isEqualTo(text);
+  }
+
+  @Test
+  public void should_always_encode_texts_that_look_compressed() {
+    String text = "\u0001Dnot compressed";
+
+    String data = TextCodec.encode(text, false);
+    assertThat(data).isNotEqualTo(text);
+    assertThat(TextCodec.decode(data)).isEqualTo(text);
+  }
+
+  @Test
+  public void should_return_invalid_data_as_is() {
+    assertThat(TextCodec.decode("\u0001Dnot base64")).isEqualTo("\u0001Dnot base64");
+  }
+}
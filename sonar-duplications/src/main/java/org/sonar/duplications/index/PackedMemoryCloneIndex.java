@@ -40,6 +40,10 @@ import java.util.List;
  * <p>
  * Note that this implementation currently does not support deletion, however it's possible to implement.
  * </p>
+ * <p>
+ * This index is not thread-safe. However once it is sorted, which is done by the first query, {@link #getBySequenceHash(ByteArray)}
+ * does not modify it and can be executed concurrently.
+ * </p>
  */
 public class PackedMemoryCloneIndex extends AbstractCloneIndex {
 
@@ -137,30 +141,26 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
   public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
     ensureSorted();
 
-    // prepare hash for binary search
     int[] hash = sequenceHash.toIntArray();
     if (hash.length != hashInts) {
       throw new IllegalArgumentException("Expected " + hashInts + " ints in hash, but got " + hash.length);
     }
-    int offset = size * blockInts;
-    for (int i = 0; i < hashInts; i++) {
-      blockData[offset++] = hash[i];
-    }
 
-    int index = DataUtils.binarySearch(byBlockHash);
+    int index = lowerBoundByHash(hash);
 
     List<Block> result = Lists.newArrayList();
-    while (index < size && !isLessByHash(size, index)) {
+    Block.Builder builder = Block.builder();
+    while (index < size && compareHash(index, hash) == 0) {
       // extract block (note that there is no need to extract hash)
       String resourceId = resourceIds[index];
-      offset = index * blockInts + hashInts;
+      int offset = index * blockInts + hashInts;
       int indexInFile = blockData[offset++];
       int firstLineNumber = blockData[offset++];
       int lastLineNumber = blockData[offset++];
       int startUnit = blockData[offset++];
       int endUnit = blockData[offset];
 
-      Block block = blockBuilder
+      Block block = builder
           .setResourceId(resourceId)
           .setBlockHash(sequenceHash)
           .setIndexInFile(indexInFile)
@@ -173,6 +173,39 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
     return result;
   }
 
+  /**
+   * Unlike {@link DataUtils#binarySearch(DataUtils.Sortable)}, does not copy the searched hash after the last block,
+   * so that concurrent searches do not interfere.
+   *
+   * @return index of the first block, whose hash is not less than the given one
+   */
+  private int lowerBoundByHash(int[] hash) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (compareHash(mid, hash) < 0) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower;
+  }
+
+  private int compareHash(int index, int[] hash) {
+    int offset = index * blockInts;
+    for (int k = 0; k < hashInts; k++, offset++) {
+      if (blockData[offset] < hash[k]) {
+        return -1;
+      }
+      if (blockData[offset] > hash[k]) {
+        return 1;
+      }
+    }
+    return 0;
+  }
+
   /**
    * {@inheritDoc}
    * <p>
@@ -19,12 +19,18 @@
  */
 package org.sonar.duplications.index;
 
+import com.google.common.collect.Lists;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
@@ -77,6 +83,55 @@ public class PackedMemoryCloneIndexTest {
     }
   }
 
+  @Test
+  public void should_find_negative_and_positive_hashes() {
+    index.insert(newBlock("a", -1L));
+    index.insert(newBlock("b", Long.MIN_VALUE));
+    index.insert(newBlock("c", Long.MAX_VALUE));
+    index.insert(newBlock("d", 0L));
+    index.insert(newBlock("e", -1L));
+
+    assertThat(index.getBySequenceHash(new ByteArray(-1L)).size(), is(2));
+    assertThat(index.getBySequenceHash(new ByteArray(Long.MIN_VALUE)).size(), is(1));
+    assertThat(index.getBySequenceHash(new ByteArray(Long.MAX_VALUE)).size(), is(1));
+    assertThat(index.getBySequenceHash(new ByteArray(0L)).size(), is(1));
+    assertThat(index.getBySequenceHash(new ByteArray(1L)).size(), is(0));
+  }
+
+  /**
+   * Given: sorted index.
+   * Expected: concurrent queries by hash return the same results as sequential queries.
+   */
+  @Test
+  public void should_support_concurrent_queries_by_hash() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      index.insert(newBlock("r" + (i % 10), i % 100));
+    }
+    // sorts the index
+    index.getByResourceId("r0");
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> futures = Lists.newArrayList();
+      for (int thread = 0; thread < 4; thread++) {
+        futures.add(executor.submit(new Callable<Integer>() {
+          public Integer call() {
+            int found = 0;
+            for (int i = 0; i < 10000; i++) {
+              found += index.getBySequenceHash(new ByteArray((long) (i % 100))).size();
+            }
+            return found;
+          }
+        }));
+      }
+      for (Future<Integer> future : futures) {
+        assertThat(future.get(), is(100000));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   /**
    * Given: index with initial capacity 1.
    * Expected: size and capacity should be increased after insertion of two blocks.
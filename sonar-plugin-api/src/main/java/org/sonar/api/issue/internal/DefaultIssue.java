@@ -407,6 +407,11 @@ public class DefaultIssue implements Issue {
     return currentChange;
   }
 
+  public DefaultIssue setCurrentChange(@Nullable FieldDiffs change) {
+    this.currentChange = change;
+    return this;
+  }
+
   public DefaultIssue addChange(FieldDiffs change) {
     if (changes == null) {
       changes = newArrayList();
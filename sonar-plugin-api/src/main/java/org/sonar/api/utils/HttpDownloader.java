@@ -232,19 +232,37 @@ public class HttpDownloader extends UriReader.SchemeProcessor implements BatchCo
       return new HttpInputSupplier(uri, userAgent, login, password, TIMEOUT_MILLISECONDS);
     }
 
+    /**
+     * Conditional request: the entity tag is sent in the header If-None-Match. When the resource did not change,
+     * the input supplier fails with a {@link HttpException} of code 304.
+     *
+     * @since 4.1.3
+     */
+    public InputSupplier<InputStream> newInputSupplier(URI uri, @Nullable String login, @Nullable String password, @Nullable Integer readTimeoutMillis,
+      String etag) {
+      int timeout = readTimeoutMillis != null ? readTimeoutMillis : TIMEOUT_MILLISECONDS;
+      return new HttpInputSupplier(uri, userAgent, login, password, timeout, etag);
+    }
+
     private static class HttpInputSupplier implements InputSupplier<InputStream> {
       private final String login;
       private final String password;
       private final URI uri;
       private final String userAgent;
       private final int readTimeoutMillis;
+      private final String etag;
 
       HttpInputSupplier(URI uri, String userAgent, String login, String password, int readTimeoutMillis) {
+        this(uri, userAgent, login, password, readTimeoutMillis, null);
+      }
+
+      HttpInputSupplier(URI uri, String userAgent, String login, String password, int readTimeoutMillis, @Nullable String etag) {
         this.uri = uri;
         this.userAgent = userAgent;
         this.login = login;
         this.password = password;
         this.readTimeoutMillis = readTimeoutMillis;
+        this.etag = etag;
       }
 
       public InputStream getInput() throws IOException {
@@ -264,6 +282,9 @@ public class HttpDownloader extends UriReader.SchemeProcessor implements BatchCo
         connection.setUseCaches(true);
         connection.setInstanceFollowRedirects(true);
         connection.setRequestProperty("User-Agent", userAgent);
+        if (etag != null) {
+          connection.setRequestProperty("If-None-Match", "\"" + etag + "\"");
+        }
 
         // establish connection, get response headers
         connection.connect();
@@ -272,6 +293,9 @@ public class HttpDownloader extends UriReader.SchemeProcessor implements BatchCo
         String encoding = connection.getContentEncoding();
 
         int responseCode = connection.getResponseCode();
+        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+          throw new HttpException(uri, responseCode);
+        }
         if (responseCode >= 400) {
           InputStream errorResponse = null;
           try {
@@ -20,6 +20,7 @@
 package org.sonar.server.db.migrations;
 
 import com.google.common.collect.ImmutableList;
+import org.sonar.server.db.migrations.duplication.DuplicationsHashMigration;
 import org.sonar.server.db.migrations.violation.ViolationMigration;
 
 import java.util.List;
@@ -27,7 +28,8 @@ import java.util.List;
 public interface DatabaseMigrations {
 
   List<Class<? extends DatabaseMigration>> CLASSES = ImmutableList.<Class<? extends DatabaseMigration>>of(
-    ViolationMigration.class
+    ViolationMigration.class,
+    DuplicationsHashMigration.class
   );
 
 }
@@ -0,0 +1,160 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.db.migrations.duplication;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.dbutils.DbUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.utils.MessageException;
+import org.sonar.core.persistence.Database;
+import org.sonar.server.db.migrations.DatabaseMigration;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Used in the Active Record Migration 468. Copies the hexadecimal hashes of the column DUPLICATIONS_INDEX.HASH
+ * to the numeric column DUPLICATIONS_INDEX.HASH_VALUE.
+ * <p/>
+ * Conversion from hexadecimal strings to numbers is not portable in SQL, so rows are read in Java by pages of
+ * {@link #ROWS_PER_BATCH} ids, then updated in a single JDBC batch per page. The whole table is never loaded in
+ * memory, whatever the JDBC driver.
+ *
+ * @since 4.1.3
+ */
+public class DuplicationsHashMigration implements DatabaseMigration {
+
+  static final int ROWS_PER_BATCH = 1000;
+
+  private static final String HEX_DIGITS = "0123456789abcdef";
+  private static final String FAILURE_MESSAGE = "Fail to convert hashes of duplications";
+
+  private Logger logger = LoggerFactory.getLogger(DuplicationsHashMigration.class);
+  private final Database db;
+  private final int rowsPerBatch;
+
+  public DuplicationsHashMigration(Database database) {
+    this(database, ROWS_PER_BATCH);
+  }
+
+  @VisibleForTesting
+  DuplicationsHashMigration(Database database, int rowsPerBatch) {
+    this.db = database;
+    this.rowsPerBatch = rowsPerBatch;
+  }
+
+  @Override
+  public void execute() {
+    Connection connection = null;
+    PreparedStatement select = null;
+    PreparedStatement update = null;
+    try {
+      connection = db.getDataSource().getConnection();
+      connection.setAutoCommit(false);
+      select = connection.prepareStatement("SELECT id, hash FROM duplications_index WHERE id>? AND hash_value IS NULL ORDER BY id");
+      select.setMaxRows(rowsPerBatch);
+      update = connection.prepareStatement("UPDATE duplications_index SET hash_value=? WHERE id=?");
+      Progress progress = new Progress();
+      while (convertBatch(select, update, progress)) {
+        connection.commit();
+      }
+      connection.commit();
+      logger.info("{} hashes of duplications have been converted", progress.converted);
+      if (progress.ignored > 0) {
+        logger.warn("{} hashes of duplications are not 8 bytes long and have been ignored", progress.ignored);
+      }
+    } catch (SQLException e) {
+      logger.error(FAILURE_MESSAGE, e);
+      if (e.getNextException() != null) {
+        logger.error("SQL error: {}. Message: {}", e.getNextException().getSQLState(), e.getNextException().getMessage());
+      }
+      throw MessageException.of(FAILURE_MESSAGE);
+
+    } finally {
+      DbUtils.closeQuietly(select);
+      DbUtils.closeQuietly(update);
+      DbUtils.closeQuietly(connection);
+    }
+  }
+
+  /**
+   * @return false if there are no more rows to convert
+   */
+  private boolean convertBatch(PreparedStatement select, PreparedStatement update, Progress progress) throws SQLException {
+    int rows = 0;
+    int count = 0;
+    ResultSet rs = null;
+    try {
+      select.setLong(1, progress.lastId);
+      rs = select.executeQuery();
+      while (rs.next()) {
+        rows++;
+        progress.lastId = rs.getLong(1);
+        Long value = toLong(rs.getString(2));
+        if (value == null) {
+          progress.ignored++;
+        } else {
+          update.setLong(1, value);
+          update.setLong(2, progress.lastId);
+          update.addBatch();
+          count++;
+        }
+      }
+    } finally {
+      DbUtils.closeQuietly(rs);
+    }
+    if (count > 0) {
+      update.executeBatch();
+      progress.converted += count;
+    }
+    return rows == rowsPerBatch;
+  }
+
+  /**
+   * Hashes of blocks are 8 bytes long, so hexadecimal strings of exactly 16 characters.
+   *
+   * @return null if the hash is not 8 bytes long
+   */
+  @CheckForNull
+  static Long toLong(@Nullable String hexHash) {
+    if (hexHash == null || hexHash.length() != 16) {
+      return null;
+    }
+    for (int i = 0; i < hexHash.length(); i++) {
+      if (HEX_DIGITS.indexOf(Character.toLowerCase(hexHash.charAt(i))) < 0) {
+        return null;
+      }
+    }
+    return new BigInteger(hexHash, 16).longValue();
+  }
+
+  private static class Progress {
+    long lastId = -1L;
+    int converted = 0;
+    int ignored = 0;
+  }
+}
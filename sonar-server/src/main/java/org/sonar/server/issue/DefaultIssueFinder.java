@@ -45,7 +45,10 @@ import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.rule.DefaultRuleFinder;
 import org.sonar.server.user.UserSession;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -66,13 +69,15 @@ public class DefaultIssueFinder implements IssueFinder {
   private final UserFinder userFinder;
   private final ResourceDao resourceDao;
   private final ActionPlanService actionPlanService;
+  private final IssueRegistry issueRegistry;
 
   public DefaultIssueFinder(MyBatis myBatis,
     IssueDao issueDao, IssueChangeDao issueChangeDao,
     DefaultRuleFinder ruleFinder,
     UserFinder userFinder,
     ResourceDao resourceDao,
-    ActionPlanService actionPlanService) {
+    ActionPlanService actionPlanService,
+    IssueRegistry issueRegistry) {
     this.myBatis = myBatis;
     this.issueDao = issueDao;
     this.issueChangeDao = issueChangeDao;
@@ -80,6 +85,7 @@ public class DefaultIssueFinder implements IssueFinder {
     this.userFinder = userFinder;
     this.resourceDao = resourceDao;
     this.actionPlanService = actionPlanService;
+    this.issueRegistry = issueRegistry;
   }
 
   DefaultIssue findByKey(String issueKey, String requiredRole) {
@@ -99,19 +105,31 @@ public class DefaultIssueFinder implements IssueFinder {
     long start = System.currentTimeMillis();
     SqlSession sqlSession = myBatis.openSession();
     try {
-      // 1. Select the authorized ids of all the issues that match the query
-      List<IssueDto> authorizedIssues = issueDao.selectIssueIds(query, UserSession.get().userId(), sqlSession);
-
-      // 2. Sort all authorized issues
-      List<IssueDto> authorizedSortedIssues = sort(authorizedIssues, query, authorizedIssues.size());
-
-      // 3. Apply pagination
-      Paging paging = Paging.create(query.pageSize(), query.pageIndex(), authorizedSortedIssues.size());
-      Set<Long> pagedIssueIds = pagedIssueIds(authorizedSortedIssues, paging);
+      Integer userId = UserSession.get().userId();
+
+      int count;
+      Paging paging;
+      List<Long> pagedIssueIds;
+      if (issueRegistry.accepts(query)) {
+        // 1-2. Count and select the ids of the issues of the requested page with a single request on the search index
+        int offset = (query.pageIndex() - 1) * query.pageSize();
+        int limit = Math.max(0, Math.min(query.pageSize(), query.maxResults() - offset));
+        IssueRegistry.Hits hits = issueRegistry.findIds(query, userId, offset, limit);
+        count = hits.total();
+        paging = Paging.create(query.pageSize(), query.pageIndex(), Math.min(count, query.maxResults()));
+        pagedIssueIds = hits.ids();
+
+      } else {
+        // 1. Count the authorized issues that match the query
+        count = issueDao.countIssues(query, userId, sqlSession);
+        paging = Paging.create(query.pageSize(), query.pageIndex(), Math.min(count, query.maxResults()));
+
+        // 2. Select the ids of the issues of the requested page, sorted and paginated by the database
+        pagedIssueIds = pagedIssueIds(query, userId, paging, sqlSession);
+      }
 
-      // 4. Load issues and their related data (rules, components, projects, comments, action plans, ...) and sort then again
-      List<IssueDto> pagedIssues = issueDao.selectByIds(pagedIssueIds, sqlSession);
-      List<IssueDto> pagedSortedIssues = sort(pagedIssues, query, authorizedIssues.size());
+      // 3. Load issues and their related data (rules, components, projects, comments, action plans, ...)
+      List<IssueDto> pagedSortedIssues = sortByIds(issueDao.selectByIds(pagedIssueIds, sqlSession), pagedIssueIds);
 
       Map<String, DefaultIssue> issuesByKey = newHashMap();
       List<Issue> issues = newArrayList();
@@ -145,7 +163,7 @@ public class DefaultIssueFinder implements IssueFinder {
       }
 
       return new DefaultIssueQueryResult(issues)
-        .setMaxResultsReached(authorizedIssues.size() == query.maxResults())
+        .setMaxResultsReached(count >= query.maxResults())
         .addRules(findRules(ruleIds))
         .addComponents(findComponents(componentIds))
         .addProjects(findComponents(projectIds))
@@ -158,25 +176,27 @@ public class DefaultIssueFinder implements IssueFinder {
     }
   }
 
-  private List<IssueDto> sort(List<IssueDto> issues, IssueQuery query, int allIssuesSize) {
-    if (allIssuesSize < query.maxResults()) {
-      return new IssuesFinderSort(issues, query).sort();
+  private List<Long> pagedIssueIds(IssueQuery query, @Nullable Integer userId, Paging paging, SqlSession sqlSession) {
+    int limit = Math.min(paging.pageSize(), paging.total() - paging.offset());
+    if (limit <= 0) {
+      return Collections.emptyList();
     }
-    return issues;
+    return issueDao.selectSortedIssueIds(query, userId, paging.offset(), limit, sqlSession);
   }
 
-  private Set<Long> pagedIssueIds(Collection<IssueDto> issues, Paging paging) {
-    Set<Long> issueIds = Sets.newLinkedHashSet();
-    int index = 0;
+  private static List<IssueDto> sortByIds(List<IssueDto> issues, List<Long> sortedIds) {
+    Map<Long, IssueDto> issuesById = newHashMap();
     for (IssueDto issue : issues) {
-      if (index >= paging.offset() && issueIds.size() < paging.pageSize()) {
-        issueIds.add(issue.getId());
-      } else if (issueIds.size() >= paging.pageSize()) {
-        break;
+      issuesById.put(issue.getId(), issue);
+    }
+    List<IssueDto> sortedIssues = newArrayList();
+    for (Long id : sortedIds) {
+      IssueDto issue = issuesById.get(id);
+      if (issue != null) {
+        sortedIssues.add(issue);
       }
-      index++;
     }
-    return issueIds;
+    return sortedIssues;
   }
 
   private Collection<Rule> findRules(Set<Integer> ruleIds) {
@@ -0,0 +1,485 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.issue;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.io.BytesStream;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.facet.FacetBuilders;
+import org.elasticsearch.search.facet.terms.TermsFacet;
+import org.elasticsearch.search.facet.terms.TermsFacetBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ServerComponent;
+import org.sonar.api.config.Settings;
+import org.sonar.api.issue.IssueQuery;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.TimeProfiler;
+import org.sonar.core.issue.db.IssueDao;
+import org.sonar.core.issue.db.IssueDto;
+import org.sonar.core.purge.PurgeDao;
+import org.sonar.core.purge.PurgeListener;
+import org.sonar.core.resource.ResourceDao;
+import org.sonar.core.resource.ResourceDto;
+import org.sonar.core.user.AuthorizationDao;
+import org.sonar.server.search.SearchIndex;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the search index of issues in sync with the database and executes issue queries on it.
+ * <p/>
+ * The index is disabled by default, see {@link #ENABLED_PROPERTY}. When disabled, or when a query
+ * can not be answered by the index, callers must fall back to the database.
+ *
+ * @since 4.1.3
+ */
+public class IssueRegistry implements ServerComponent, PurgeListener {
+
+  /**
+   * Whether issues are indexed in the search engine. Default value is false.
+   */
+  public static final String ENABLED_PROPERTY = "sonar.search.indexIssues";
+
+  public static final String FACET_SEVERITY = "severity";
+  public static final String FACET_STATUS = "status";
+  public static final String FACET_RULE = "rule";
+  public static final String FACET_ASSIGNEE = "assignee";
+  public static final String FACET_COMPONENT = "componentKey";
+
+  private static final Logger LOG = LoggerFactory.getLogger(IssueRegistry.class);
+
+  private static final String INDEX_ISSUES = "issues";
+  private static final String TYPE_ISSUE = "issue";
+  private static final int BULK_SIZE = 1000;
+  private static final int MAX_FACET_SIZE = 10000;
+
+  private static final Map<String, String> SORT_FIELDS = ImmutableMap.<String, String>builder()
+    .put(IssueQuery.SORT_BY_SEVERITY, "severityIndex")
+    .put(IssueQuery.SORT_BY_STATUS, "statusSort")
+    .put(IssueQuery.SORT_BY_ASSIGNEE, "assigneeSort")
+    .put(IssueQuery.SORT_BY_CREATION_DATE, "issueCreationDate")
+    .put(IssueQuery.SORT_BY_UPDATE_DATE, "issueUpdateDate")
+    .put(IssueQuery.SORT_BY_CLOSE_DATE, "issueCloseDate")
+    .build();
+
+  private final SearchIndex searchIndex;
+  private final IssueDao issueDao;
+  private final AuthorizationDao authorizationDao;
+  private final ResourceDao resourceDao;
+  private final PurgeDao purgeDao;
+  private final boolean enabled;
+  private volatile boolean ready = false;
+
+  // projects are re-indexed in background, one at a time
+  private final ExecutorService projectIndexer;
+  private final Set<Long> pendingProjectIds = Collections.synchronizedSet(Sets.<Long>newHashSet());
+
+  public IssueRegistry(SearchIndex searchIndex, IssueDao issueDao, AuthorizationDao authorizationDao, ResourceDao resourceDao, PurgeDao purgeDao,
+    Settings settings) {
+    this(searchIndex, issueDao, authorizationDao, resourceDao, purgeDao, settings,
+      Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("issue-indexer-%d").setDaemon(true).build()));
+  }
+
+  @VisibleForTesting
+  IssueRegistry(SearchIndex searchIndex, IssueDao issueDao, AuthorizationDao authorizationDao, ResourceDao resourceDao, PurgeDao purgeDao,
+    Settings settings, ExecutorService projectIndexer) {
+    this.searchIndex = searchIndex;
+    this.issueDao = issueDao;
+    this.authorizationDao = authorizationDao;
+    this.resourceDao = resourceDao;
+    this.purgeDao = purgeDao;
+    this.enabled = settings.getBoolean(ENABLED_PROPERTY);
+    this.projectIndexer = projectIndexer;
+  }
+
+  public void start() {
+    if (enabled) {
+      searchIndex.addMappingFromClasspath(INDEX_ISSUES, TYPE_ISSUE, "/com/sonar/search/issue_mapping.json");
+      purgeDao.addListener(this);
+    }
+  }
+
+  public void stop() {
+    projectIndexer.shutdownNow();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Index all the issues of the database, then remove the documents of the issues that do not exist anymore.
+   */
+  public void bulkRegisterIssues() {
+    if (enabled) {
+      TimeProfiler profiler = new TimeProfiler(LOG).start("Rebuilding issues index");
+      int count = index(null);
+      profiler.stop();
+      LOG.info("{} issues indexed", count);
+      ready = true;
+    }
+  }
+
+  /**
+   * Re-index in background all the issues of the given root project, for example after an analysis. Does nothing
+   * if the project is already waiting to be re-indexed.
+   */
+  public void registerIssuesOfProject(final long rootProjectId) {
+    if (enabled && pendingProjectIds.add(rootProjectId)) {
+      projectIndexer.execute(new Runnable() {
+        public void run() {
+          // issues persisted from now on will be indexed by the next request
+          pendingProjectIds.remove(rootProjectId);
+          try {
+            index(rootProjectId);
+          } catch (RuntimeException e) {
+            LOG.error("Fail to index the issues of project " + rootProjectId, e);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Closed issues may have been deleted, so the project is re-indexed
+   */
+  @Override
+  public void onPurge(long rootProjectId) {
+    registerIssuesOfProject(rootProjectId);
+  }
+
+  /**
+   * Remove the documents of the issues of the deleted project
+   */
+  @Override
+  public void onDeletion(long rootProjectId) {
+    if (enabled) {
+      try {
+        searchIndex.deleteByQuery(INDEX_ISSUES, TYPE_ISSUE,
+          QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), FilterBuilders.termFilter("projectId", rootProjectId)));
+      } catch (RuntimeException e) {
+        LOG.error("Fail to remove the issues of project " + rootProjectId + " from index", e);
+      }
+    }
+  }
+
+  /**
+   * Create or update the documents of the given issues
+   */
+  public void saveOrUpdate(Collection<String> issueKeys) {
+    if (!enabled || issueKeys.isEmpty()) {
+      return;
+    }
+    List<IssueDto> dtos = issueDao.selectByKeys(issueKeys);
+    BulkIndexer indexer = new BulkIndexer(new Date());
+    for (IssueDto dto : dtos) {
+      indexer.add(dto);
+    }
+    indexer.flush();
+  }
+
+  /**
+   * Only the queries whose component roots are root projects can be executed on the index, because
+   * the index does not know about the intermediate levels of the component tree (modules, directories).
+   */
+  public boolean accepts(IssueQuery query) {
+    if (!enabled || !ready) {
+      return false;
+    }
+    for (String componentRoot : query.componentRoots()) {
+      ResourceDto rootProject = resourceDao.getRootProjectByComponentKey(componentRoot);
+      if (rootProject == null || !componentRoot.equals(rootProject.getKey())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Ids of the authorized issues matching the query, sorted like the database would do.
+   */
+  public Hits findIds(IssueQuery query, @Nullable Integer userId, int offset, int limit) {
+    BoolFilterBuilder filter = filter(query, userId);
+    if (filter == null) {
+      return new Hits(0, Lists.<Long>newArrayList());
+    }
+    SearchRequestBuilder builder = searchIndex.prepareSearch(INDEX_ISSUES, TYPE_ISSUE)
+      .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), filter))
+      .addField("id")
+      .setFrom(offset)
+      .setSize(limit);
+    String sortField = SORT_FIELDS.get(query.sort());
+    if (sortField != null && query.asc() != null) {
+      SortOrder order = query.asc() ? SortOrder.ASC : SortOrder.DESC;
+      builder.addSort(SortBuilders.fieldSort(sortField).order(order).missing(query.asc() ? "_last" : "_first"));
+    }
+    builder.addSort(SortBuilders.fieldSort("id").order(SortOrder.ASC));
+
+    SearchResponse response = searchIndex.execute(builder);
+    List<Long> ids = Lists.newArrayList();
+    for (SearchHit hit : response.getHits()) {
+      ids.add(((Number) hit.field("id").getValue()).longValue());
+    }
+    return new Hits((int) response.getHits().getTotalHits(), ids);
+  }
+
+  /**
+   * Number of authorized issues matching the query per value of the given fields. Issues without value
+   * are counted with the <code>null</code> element.
+   *
+   * @param fields see the FACET_* constants
+   */
+  public Map<String, Multiset<String>> facets(IssueQuery query, @Nullable Integer userId, String... fields) {
+    Map<String, Multiset<String>> facets = Maps.newHashMap();
+    for (String field : fields) {
+      facets.put(field, HashMultiset.<String>create());
+    }
+    BoolFilterBuilder filter = filter(query, userId);
+    if (filter == null) {
+      return facets;
+    }
+    SearchRequestBuilder builder = searchIndex.prepareSearch(INDEX_ISSUES, TYPE_ISSUE)
+      .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), filter))
+      .setSize(0);
+    for (String field : fields) {
+      TermsFacetBuilder facet = FacetBuilders.termsFacet(field).field(field).size(MAX_FACET_SIZE);
+      builder.addFacet(facet);
+    }
+    SearchResponse response = searchIndex.execute(builder);
+    for (String field : fields) {
+      TermsFacet termsFacet = response.getFacets().facet(TermsFacet.class, field);
+      Multiset<String> counts = facets.get(field);
+      for (TermsFacet.Entry entry : termsFacet.getEntries()) {
+        counts.add(entry.getTerm().string(), entry.getCount());
+      }
+      if (termsFacet.getMissingCount() > 0) {
+        counts.add(null, (int) termsFacet.getMissingCount());
+      }
+      if (termsFacet.getOtherCount() > 0) {
+        LOG.warn("Facet {} is limited to {} values, {} issues are not counted", new Object[] {field, MAX_FACET_SIZE, termsFacet.getOtherCount()});
+      }
+    }
+    return facets;
+  }
+
+  /**
+   * @return null if the user is not authorized to browse any project
+   */
+  @CheckForNull
+  private BoolFilterBuilder filter(IssueQuery query, @Nullable Integer userId) {
+    BoolFilterBuilder filter = FilterBuilders.boolFilter();
+    filter.must(FilterBuilders.matchAllFilter());
+    Set<String> projectKeys = null;
+    if (query.requiredRole() != null) {
+      projectKeys = Sets.newHashSet(authorizationDao.selectAuthorizedRootProjectsKeys(userId, query.requiredRole()));
+    }
+    if (!query.componentRoots().isEmpty()) {
+      if (projectKeys == null) {
+        projectKeys = Sets.newHashSet(query.componentRoots());
+      } else {
+        projectKeys.retainAll(query.componentRoots());
+      }
+    }
+    if (projectKeys != null) {
+      if (projectKeys.isEmpty()) {
+        return null;
+      }
+      filter.must(FilterBuilders.termsFilter("projectKey", projectKeys));
+    }
+    addTermsFilter(filter, "key", query.issueKeys());
+    addTermsFilter(filter, "severity", query.severities());
+    addTermsFilter(filter, "status", query.statuses());
+    addTermsFilter(filter, "resolution", query.resolutions());
+    addTermsFilter(filter, "componentKey", query.components());
+    addTermsFilter(filter, "actionPlan", query.actionPlans());
+    addTermsFilter(filter, "reporter", query.reporters());
+    addTermsFilter(filter, "assignee", query.assignees());
+    if (!query.rules().isEmpty()) {
+      List<String> rules = Lists.newArrayList();
+      for (RuleKey ruleKey : query.rules()) {
+        rules.add(ruleKey.toString());
+      }
+      filter.must(FilterBuilders.termsFilter("rule", rules));
+    }
+    addExistsFilter(filter, "resolution", query.resolved());
+    addExistsFilter(filter, "assignee", query.assigned());
+    addExistsFilter(filter, "actionPlan", query.planned());
+    if (query.createdAfter() != null) {
+      filter.must(FilterBuilders.rangeFilter("issueCreationDate").gt(query.createdAfter().getTime()));
+    }
+    if (query.createdAt() != null) {
+      filter.must(FilterBuilders.rangeFilter("issueCreationDate").gte(query.createdAt().getTime()).lte(query.createdAt().getTime()));
+    }
+    if (query.createdBefore() != null) {
+      filter.must(FilterBuilders.rangeFilter("issueCreationDate").lt(query.createdBefore().getTime()));
+    }
+    return filter;
+  }
+
+  private static void addTermsFilter(BoolFilterBuilder filter, String field, Collection<String> values) {
+    if (!values.isEmpty()) {
+      filter.must(FilterBuilders.termsFilter(field, values));
+    }
+  }
+
+  private static void addExistsFilter(BoolFilterBuilder filter, String field, @Nullable Boolean exists) {
+    if (exists != null) {
+      filter.must(exists ? FilterBuilders.existsFilter(field) : FilterBuilders.missingFilter(field));
+    }
+  }
+
+  private int index(@Nullable Long rootProjectId) {
+    final Date indexedAt = new Date();
+    final BulkIndexer indexer = new BulkIndexer(indexedAt);
+    issueDao.selectIssuesForIndexing(rootProjectId, new ResultHandler() {
+      @Override
+      public void handleResult(ResultContext context) {
+        indexer.add((IssueDto) context.getResultObject());
+      }
+    });
+    indexer.flush();
+
+    // Documents that have not been refreshed relate to issues that have been deleted
+    BoolFilterBuilder staleFilter = FilterBuilders.boolFilter()
+      .must(FilterBuilders.rangeFilter("indexedAt").lt(indexedAt.getTime()));
+    if (rootProjectId != null) {
+      staleFilter.must(FilterBuilders.termFilter("projectId", rootProjectId));
+    }
+    searchIndex.deleteByQuery(INDEX_ISSUES, TYPE_ISSUE, QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), staleFilter));
+    return indexer.count;
+  }
+
+  @VisibleForTesting
+  static XContentBuilder issueDocument(IssueDto issue, Date indexedAt) throws IOException {
+    return XContentFactory.jsonBuilder()
+      .startObject()
+      .field("id", issue.getId())
+      .field("key", issue.getKee())
+      .field("componentKey", issue.getComponentKey())
+      .field("componentId", issue.getComponentId())
+      .field("projectKey", issue.getRootComponentKey())
+      .field("projectId", issue.getRootComponentId())
+      .field("rule", RuleKey.of(issue.getRuleRepo(), issue.getRule()).toString())
+      .field("severity", issue.getSeverity())
+      .field("severityIndex", Severity.ALL.indexOf(issue.getSeverity()))
+      .field("status", issue.getStatus())
+      .field("statusSort", sortValue(issue.getStatus()))
+      .field("resolution", issue.getResolution())
+      .field("assignee", issue.getAssignee())
+      .field("assigneeSort", sortValue(issue.getAssignee()))
+      .field("reporter", issue.getReporter())
+      .field("actionPlan", issue.getActionPlanKey())
+      .field("issueCreationDate", issue.getIssueCreationDate())
+      .field("issueUpdateDate", issue.getIssueUpdateDate())
+      .field("issueCloseDate", issue.getIssueCloseDate())
+      .field("indexedAt", indexedAt)
+      .endObject();
+  }
+
+  /**
+   * Case-insensitive sort, like upper() in the SQL queries of issues
+   */
+  @CheckForNull
+  private static String sortValue(@Nullable String value) {
+    return value != null ? value.toUpperCase(Locale.ENGLISH) : null;
+  }
+
+  private class BulkIndexer {
+    private final Date indexedAt;
+    private final List<String> ids = Lists.newArrayList();
+    private final List<BytesStream> docs = Lists.newArrayList();
+    private int count = 0;
+
+    BulkIndexer(Date indexedAt) {
+      this.indexedAt = indexedAt;
+    }
+
+    void add(IssueDto issue) {
+      try {
+        ids.add(issue.getKee());
+        docs.add(issueDocument(issue, indexedAt));
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to index issue " + issue.getKee(), e);
+      }
+      count++;
+      if (ids.size() >= BULK_SIZE) {
+        flush();
+      }
+    }
+
+    void flush() {
+      if (!ids.isEmpty()) {
+        searchIndex.bulkIndex(INDEX_ISSUES, TYPE_ISSUE, ids.toArray(new String[ids.size()]), docs.toArray(new BytesStream[docs.size()]));
+        ids.clear();
+        docs.clear();
+      }
+    }
+  }
+
+  public static class Hits {
+    private final int total;
+    private final List<Long> ids;
+
+    Hits(int total, List<Long> ids) {
+      this.total = total;
+      this.ids = ids;
+    }
+
+    public int total() {
+      return total;
+    }
+
+    public List<Long> ids() {
+      return ids;
+    }
+  }
+}
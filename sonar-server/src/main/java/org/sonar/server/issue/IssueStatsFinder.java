@@ -22,6 +22,7 @@ package org.sonar.server.issue;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import org.sonar.api.ServerComponent;
 import org.sonar.api.issue.IssueQuery;
@@ -34,6 +35,7 @@ import org.sonar.server.user.UserSession;
 import javax.annotation.CheckForNull;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,14 +47,21 @@ public class IssueStatsFinder implements ServerComponent {
 
   private final IssueStatsDao issuestatsDao;
   private final UserFinder userFinder;
+  private final IssueRegistry issueRegistry;
 
-  public IssueStatsFinder(IssueStatsDao issuestatsDao, UserFinder userFinder) {
+  public IssueStatsFinder(IssueStatsDao issuestatsDao, UserFinder userFinder, IssueRegistry issueRegistry) {
     this.issuestatsDao = issuestatsDao;
     this.userFinder = userFinder;
+    this.issueRegistry = issueRegistry;
   }
 
   public IssueStatsResult findIssueAssignees(IssueQuery query) {
-    List<Object> results = issuestatsDao.selectIssuesColumn(query, IssueStatsColumn.ASSIGNEE, UserSession.get().userId());
+    List<Object> results;
+    if (issueRegistry.accepts(query)) {
+      results = assigneesFromIndex(query);
+    } else {
+      results = issuestatsDao.selectIssuesColumn(query, IssueStatsColumn.ASSIGNEE, UserSession.get().userId());
+    }
 
     Set<String> users = Sets.newHashSet();
     for (Object result : results) {
@@ -64,6 +73,18 @@ public class IssueStatsFinder implements ServerComponent {
     return new IssueStatsResult(results).addUsers(findUsers(users));
   }
 
+  /**
+   * The assignee of each matching issue, like the column returned by the database
+   */
+  private List<Object> assigneesFromIndex(IssueQuery query) {
+    Multiset<String> assignees = issueRegistry.facets(query, UserSession.get().userId(), IssueRegistry.FACET_ASSIGNEE).get(IssueRegistry.FACET_ASSIGNEE);
+    List<Object> results = Lists.newArrayList();
+    for (Multiset.Entry<String> entry : assignees.entrySet()) {
+      results.addAll(Collections.nCopies(entry.getCount(), entry.getElement()));
+    }
+    return results;
+  }
+
   private Collection<User> findUsers(Set<String> logins) {
     return userFinder.findByLogins(Lists.newArrayList(logins));
   }
@@ -19,6 +19,7 @@
  */
 package org.sonar.server.issue;
 
+import com.google.common.collect.Lists;
 import org.sonar.api.ServerComponent;
 import org.sonar.api.issue.internal.DefaultIssue;
 import org.sonar.api.rules.RuleFinder;
@@ -28,16 +29,30 @@ import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.resource.ResourceDto;
 import org.sonar.core.resource.ResourceQuery;
 
+import java.util.List;
+
 /**
  * @since 3.6
  */
 public class ServerIssueStorage extends IssueStorage implements ServerComponent {
 
   private final ResourceDao resourceDao;
+  private final IssueRegistry issueRegistry;
 
-  public ServerIssueStorage(MyBatis mybatis, RuleFinder ruleFinder, ResourceDao resourceDao) {
+  public ServerIssueStorage(MyBatis mybatis, RuleFinder ruleFinder, ResourceDao resourceDao, IssueRegistry issueRegistry) {
     super(mybatis, ruleFinder);
     this.resourceDao = resourceDao;
+    this.issueRegistry = issueRegistry;
+  }
+
+  @Override
+  public void save(Iterable<DefaultIssue> issues) {
+    super.save(issues);
+    List<String> issueKeys = Lists.newArrayList();
+    for (DefaultIssue issue : issues) {
+      issueKeys.add(issue.key());
+    }
+    issueRegistry.saveOrUpdate(issueKeys);
   }
 
   @Override
@@ -20,8 +20,12 @@
 package org.sonar.server.notifications;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.Properties;
@@ -36,12 +40,18 @@ import org.sonar.core.notification.DefaultNotificationManager;
 import org.sonar.jpa.session.DatabaseSessionFactory;
 
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @since 2.10
@@ -58,6 +68,25 @@ import java.util.concurrent.TimeUnit;
     defaultValue = "600",
     name = "Delay before reporting notification status, in seconds",
     project = false,
+    global = false),
+  @Property(
+    key = NotificationService.PROPERTY_BATCH_SIZE,
+    defaultValue = "" + NotificationService.DEFAULT_BATCH_SIZE,
+    name = "Number of notifications dequeued at once",
+    project = false,
+    global = false),
+  @Property(
+    key = NotificationService.PROPERTY_DELIVERY_THREADS,
+    defaultValue = "" + NotificationService.DEFAULT_DELIVERY_THREADS,
+    name = "Number of threads delivering notifications",
+    project = false,
+    global = false),
+  @Property(
+    key = NotificationService.PROPERTY_MAX_CONCURRENT_DELIVERIES_PER_CHANNEL,
+    defaultValue = "1",
+    name = "Maximum number of notifications delivered concurrently by a channel",
+    description = "Can be overridden for a given channel with the property sonar.notifications.<channel key>.maxConcurrentDeliveries",
+    project = false,
     global = false)
 })
 public class NotificationService implements ServerComponent {
@@ -67,6 +96,24 @@ public class NotificationService implements ServerComponent {
   public static final String PROPERTY_DELAY = "sonar.notifications.delay";
   public static final String PROPERTY_DELAY_BEFORE_REPORTING_STATUS = "sonar.notifications.runningDelayBeforeReportingStatus";
 
+  /**
+   * @since 4.1.3
+   */
+  public static final String PROPERTY_BATCH_SIZE = "sonar.notifications.batchSize";
+  public static final int DEFAULT_BATCH_SIZE = 50;
+
+  /**
+   * @since 4.1.3
+   */
+  public static final String PROPERTY_DELIVERY_THREADS = "sonar.notifications.deliveryThreads";
+  public static final int DEFAULT_DELIVERY_THREADS = 4;
+
+  /**
+   * Channels are not supposed to be thread-safe, so by default a channel delivers a single notification at a time.
+   * @since 4.1.3
+   */
+  public static final String PROPERTY_MAX_CONCURRENT_DELIVERIES_PER_CHANNEL = "sonar.notifications.maxConcurrentDeliveriesPerChannel";
+
   private static final TimeProfiler TIME_PROFILER = new TimeProfiler(LOG).setLevelToDebug();
 
   private final long delayInSeconds;
@@ -74,17 +121,30 @@ public class NotificationService implements ServerComponent {
   private final DefaultNotificationManager manager;
   private final NotificationDispatcher[] dispatchers;
   private final DatabaseSessionFactory databaseSessionFactory;
+  private final Settings settings;
+  private final int batchSize;
+  private final int deliveryThreads;
 
   private ScheduledExecutorService executorService;
-  private boolean stopping = false;
+  private ExecutorService deliveryExecutorService;
+  private volatile boolean stopping = false;
+
+  private final AtomicLong processedNotifications = new AtomicLong();
+  private final AtomicLong deliveredNotifications = new AtomicLong();
+  private final AtomicLong failedDeliveries = new AtomicLong();
+  private final AtomicLong queueSize = new AtomicLong();
+  private volatile double lastThroughput = 0.0;
 
   /**
    * Constructor for {@link NotificationService}
    */
   public NotificationService(Settings settings, DefaultNotificationManager manager, DatabaseSessionFactory databaseSessionFactory, NotificationDispatcher[] dispatchers) {
     this.databaseSessionFactory = databaseSessionFactory;
+    this.settings = settings;
     delayInSeconds = settings.getLong(PROPERTY_DELAY);
     delayBeforeReportingStatusInSeconds = settings.getLong(PROPERTY_DELAY_BEFORE_REPORTING_STATUS);
+    batchSize = Math.max(1, settings.hasKey(PROPERTY_BATCH_SIZE) ? settings.getInt(PROPERTY_BATCH_SIZE) : DEFAULT_BATCH_SIZE);
+    deliveryThreads = Math.max(1, settings.hasKey(PROPERTY_DELIVERY_THREADS) ? settings.getInt(PROPERTY_DELIVERY_THREADS) : DEFAULT_DELIVERY_THREADS);
     this.manager = manager;
     this.dispatchers = dispatchers;
   }
@@ -98,6 +158,8 @@ public class NotificationService implements ServerComponent {
   }
 
   public void start() {
+    deliveryExecutorService = Executors.newFixedThreadPool(deliveryThreads,
+      new ThreadFactoryBuilder().setNameFormat("notification-delivery-%d").setDaemon(true).build());
     executorService = Executors.newSingleThreadScheduledExecutor();
     executorService.scheduleWithFixedDelay(new Runnable() {
       public void run() {
@@ -111,7 +173,7 @@ public class NotificationService implements ServerComponent {
         }
       }
     }, 0, delayInSeconds, TimeUnit.SECONDS);
-    LOG.info("Notification service started (delay {} sec.)", delayInSeconds);
+    LOG.info("Notification service started (delay {} sec., {} delivery threads)", delayInSeconds, deliveryThreads);
   }
 
   public void stop() {
@@ -119,6 +181,8 @@ public class NotificationService implements ServerComponent {
       stopping = true;
       executorService.shutdown();
       executorService.awaitTermination(5, TimeUnit.SECONDS);
+      deliveryExecutorService.shutdown();
+      deliveryExecutorService.awaitTermination(5, TimeUnit.SECONDS);
     } catch (InterruptedException e) {
       LOG.error("Error during stop of notification service", e);
     }
@@ -130,25 +194,37 @@ public class NotificationService implements ServerComponent {
     TIME_PROFILER.start("Processing notifications queue");
     long start = now();
     long lastLog = start;
-    long notifSentCount = 0;
+    final AtomicLong notifSentCount = new AtomicLong();
 
-    Notification notifToSend = manager.getFromQueue();
-    while (notifToSend != null) {
-      deliver(notifToSend);
-      notifSentCount++;
+    DefaultNotificationManager.BatchHandler handler = new DefaultNotificationManager.BatchHandler() {
+      public void handle(List<Notification> notifications) {
+        deliver(notifications);
+        notifSentCount.addAndGet(notifications.size());
+        processedNotifications.addAndGet(notifications.size());
+      }
+    };
+    // notifications of a batch are removed from queue only once they have been delivered
+    while (manager.processBatchFromQueue(batchSize, handler) > 0) {
+      long remainingNotifCount = manager.count();
+      queueSize.set(remainingNotifCount);
       if (stopping) {
         break;
       }
       long now = now();
       if (now - lastLog > delayBeforeReportingStatusInSeconds * 1000) {
-        long remainingNotifCount = manager.count();
         lastLog = now;
         long spentTimeInMinutes = (now - start) / (60 * 1000);
-        log(notifSentCount, remainingNotifCount, spentTimeInMinutes);
+        log(notifSentCount.get(), remainingNotifCount, spentTimeInMinutes);
       }
-      notifToSend = manager.getFromQueue();
+    }
+    if (!stopping) {
+      queueSize.set(0L);
     }
 
+    long spentTime = now() - start;
+    if (notifSentCount.get() > 0 && spentTime > 0) {
+      lastThroughput = notifSentCount.get() * 1000.0 / spentTime;
+    }
     TIME_PROFILER.stop();
   }
 
@@ -162,7 +238,38 @@ public class NotificationService implements ServerComponent {
     return System.currentTimeMillis();
   }
 
-  private void deliver(Notification notification) {
+  /**
+   * Recipients are resolved sequentially, with the subscriptions cached for the whole batch, then
+   * deliveries are executed by the pool of delivery threads, grouped by channel.
+   */
+  private void deliver(List<Notification> notifications) {
+    ListMultimap<NotificationChannel, Delivery> deliveriesByChannel = ArrayListMultimap.create();
+    manager.startSubscribersCache();
+    try {
+      for (Notification notification : notifications) {
+        SetMultimap<String, NotificationChannel> recipients = findRecipients(notification);
+        for (Map.Entry<String, NotificationChannel> recipient : recipients.entries()) {
+          deliveriesByChannel.put(recipient.getValue(), new Delivery(notification, recipient.getKey()));
+        }
+      }
+    } finally {
+      manager.stopSubscribersCache();
+    }
+
+    List<Future<?>> futures = Lists.newArrayList();
+    for (NotificationChannel channel : deliveriesByChannel.keySet()) {
+      Queue<Delivery> deliveries = new ConcurrentLinkedQueue<Delivery>(deliveriesByChannel.get(channel));
+      int workers = Math.min(maxConcurrentDeliveries(channel), deliveries.size());
+      for (int i = 0; i < workers; i++) {
+        futures.add(submit(new ChannelWorker(channel, deliveries)));
+      }
+    }
+    for (Future<?> future : futures) {
+      waitFor(future);
+    }
+  }
+
+  private SetMultimap<String, NotificationChannel> findRecipients(Notification notification) {
     LOG.debug("Delivering notification " + notification);
     final SetMultimap<String, NotificationChannel> recipients = HashMultimap.create();
     for (NotificationDispatcher dispatcher : dispatchers) {
@@ -184,28 +291,121 @@ public class NotificationService implements ServerComponent {
         LOG.warn("Unable to dispatch notification " + notification + " using " + dispatcher, e);
       }
     }
-    dispatch(notification, recipients);
+    return recipients;
   }
 
-  private void dispatch(Notification notification, SetMultimap<String, NotificationChannel> recipients) {
-    for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
-      String username = entry.getKey();
-      Collection<NotificationChannel> userChannels = entry.getValue();
-      LOG.debug("For user {} via {}", username, userChannels);
-      for (NotificationChannel channel : userChannels) {
-        try {
-          channel.deliver(notification, username);
-        } catch (Exception e) {
-          // catch all exceptions in order to deliver via other channels
-          LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
-        }
-      }
+  private int maxConcurrentDeliveries(NotificationChannel channel) {
+    String channelProperty = "sonar.notifications." + channel.getKey() + ".maxConcurrentDeliveries";
+    if (settings.hasKey(channelProperty)) {
+      return Math.max(1, settings.getInt(channelProperty));
+    }
+    if (settings.hasKey(PROPERTY_MAX_CONCURRENT_DELIVERIES_PER_CHANNEL)) {
+      return Math.max(1, settings.getInt(PROPERTY_MAX_CONCURRENT_DELIVERIES_PER_CHANNEL));
+    }
+    return 1;
+  }
+
+  private Future<?> submit(Runnable worker) {
+    ExecutorService executor = deliveryExecutorService;
+    if (executor == null || executor.isShutdown()) {
+      // service is not started or is stopping: deliver in the current thread
+      FutureTask<Object> task = new FutureTask<Object>(worker, null);
+      task.run();
+      return task;
+    }
+    return executor.submit(worker);
+  }
+
+  private static void waitFor(Future<?> future) {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      LOG.error("Error during delivery of notifications", e.getCause());
     }
   }
 
+  private void deliver(Delivery delivery, NotificationChannel channel) {
+    LOG.debug("For user {} via {}", delivery.username, channel);
+    try {
+      channel.deliver(delivery.notification, delivery.username);
+      deliveredNotifications.incrementAndGet();
+    } catch (Exception e) {
+      // catch all exceptions in order to deliver via other channels
+      failedDeliveries.incrementAndGet();
+      LOG.warn("Unable to deliver notification " + delivery.notification + " for user " + delivery.username + " via " + channel, e);
+    }
+  }
+
+  /**
+   * Number of notifications waiting in queue, as known after the last batch of notifications has been processed.
+   * @since 4.1.3
+   */
+  public long getQueueSize() {
+    return queueSize.get();
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  public long getProcessedNotifications() {
+    return processedNotifications.get();
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  public long getDeliveredNotifications() {
+    return deliveredNotifications.get();
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  public long getFailedDeliveries() {
+    return failedDeliveries.get();
+  }
+
+  /**
+   * Number of notifications processed per second during the last processing of the queue
+   * @since 4.1.3
+   */
+  public double getThroughput() {
+    return lastThroughput;
+  }
+
   @VisibleForTesting
   protected List<NotificationDispatcher> getDispatchers() {
     return Arrays.asList(dispatchers);
   }
 
+  private static class Delivery {
+    private final Notification notification;
+    private final String username;
+
+    Delivery(Notification notification, String username) {
+      this.notification = notification;
+      this.username = username;
+    }
+  }
+
+  private class ChannelWorker implements Runnable {
+    private final NotificationChannel channel;
+    private final Queue<Delivery> deliveries;
+
+    ChannelWorker(NotificationChannel channel, Queue<Delivery> deliveries) {
+      this.channel = channel;
+      this.deliveries = deliveries;
+    }
+
+    public void run() {
+      Delivery delivery = deliveries.poll();
+      while (delivery != null) {
+        deliver(delivery, channel);
+        delivery = deliveries.poll();
+      }
+    }
+  }
+
 }
@@ -54,6 +54,7 @@ import org.sonar.core.notification.DefaultNotificationManager;
 import org.sonar.core.permission.PermissionFacade;
 import org.sonar.core.persistence.*;
 import org.sonar.core.preview.PreviewCache;
+import org.sonar.core.profiling.MetricsRegistry;
 import org.sonar.core.profiling.Profiling;
 import org.sonar.core.purge.PurgeProfiler;
 import org.sonar.core.resource.DefaultResourcePermissions;
@@ -174,6 +175,7 @@ public final class Platform {
     rootContainer.addSingleton(ServerImpl.class);
     rootContainer.addSingleton(Logback.class);
     rootContainer.addSingleton(Profiling.class);
+    rootContainer.addSingleton(MetricsRegistry.class);
     rootContainer.addSingleton(JRubyProfiling.class);
     rootContainer.addSingleton(EmbeddedDatabaseFactory.class);
     rootContainer.addSingleton(DefaultDatabase.class);
@@ -319,6 +321,7 @@ public final class Platform {
 
     // rules
     servicesContainer.addSingleton(RuleRegistry.class);
+    servicesContainer.addSingleton(IssueRegistry.class);
     servicesContainer.addSingleton(RubyRuleService.class);
 
     // technical debt
@@ -337,6 +340,7 @@ public final class Platform {
     // Notifications
     servicesContainer.addSingleton(EmailSettings.class);
     servicesContainer.addSingleton(NotificationService.class);
+    servicesContainer.addSingleton(ServerMetrics.class);
     servicesContainer.addSingleton(NotificationCenter.class);
     servicesContainer.addSingleton(DefaultNotificationManager.class);
 
@@ -357,6 +361,7 @@ public final class Platform {
     startupContainer.addSingleton(GwtPublisher.class);
     startupContainer.addSingleton(RegisterMetrics.class);
     startupContainer.addSingleton(RegisterRules.class);
+    startupContainer.addSingleton(IndexIssues.class);
     startupContainer.addSingleton(RegisterNewProfiles.class);
     startupContainer.addSingleton(JdbcDriverDeployer.class);
     startupContainer.addSingleton(RegisterTechnicalDebtModel.class);
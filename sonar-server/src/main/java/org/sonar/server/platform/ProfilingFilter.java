@@ -26,15 +26,18 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.config.Settings;
+import org.sonar.core.profiling.MetricsRegistry;
 import org.sonar.core.profiling.Profiling;
 import org.sonar.core.profiling.Profiling.Level;
 import org.sonar.core.profiling.StopWatch;
 
+import javax.annotation.CheckForNull;
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 
 import java.io.IOException;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>Profile HTTP requests using platform profiling utility.</p>
@@ -42,6 +45,9 @@ import java.util.Set;
  * filter parameter can be set in the servlet context descriptor. This parameter should
  * contain a comma-separated list of paths, starting at the context root;
  * requests on subpaths of these paths will not be profiled.</p>
+ * <p>Durations are also aggregated in the timers "http./controller/action" and "http./api/controller/action"
+ * of {@link MetricsRegistry}. Ids and formats at the end of URLs are ignored. As URLs are given by clients, the number
+ * of these timers is bounded by the registry, which aggregates unexpected routes in the timer "http.other".</p>
  * @since 4.1
  */
 public class ProfilingFilter implements Filter {
@@ -50,6 +56,8 @@ public class ProfilingFilter implements Filter {
 
   private static final String CONFIG_SEPARATOR = ",";
   private static final String URL_SEPARATOR = "/";
+  private static final String API_DIR = "/api";
+  private static final String TIMER_PREFIX = MetricsRegistry.HTTP_DOMAIN + ".";
 
   private static final String MESSAGE_WITH_QUERY = "%s %s?%s";
   private static final String MESSAGE_WITHOUT_QUERY = "%s %s";
@@ -81,9 +89,14 @@ public class ProfilingFilter implements Filter {
         chain.doFilter(request, response);
       } else {
         StopWatch watch = getProfiling().start("http", Level.BASIC);
+        long start = System.nanoTime();
         try {
           chain.doFilter(request, response);
         } finally {
+          MetricsRegistry metrics = getMetrics();
+          if (metrics != null) {
+            metrics.timer(TIMER_PREFIX + getAction(requestUri, rootDir)).update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+          }
           String queryString = httpRequest.getQueryString();
           watch.stop(queryString == null ? MESSAGE_WITHOUT_QUERY : MESSAGE_WITH_QUERY, httpRequest.getMethod(), requestUri, queryString);
         }
@@ -106,6 +119,21 @@ public class ProfilingFilter implements Filter {
     return rootPath;
   }
 
+  /**
+   * Rails routes are /controller/action/id and /api/controller/action/id
+   */
+  @VisibleForTesting
+  String getAction(String requestUri, String rootDir) {
+    String localPath = StringUtils.substringAfter(requestUri, contextRoot);
+    String[] segments = StringUtils.split(localPath, URL_SEPARATOR);
+    int length = Math.min(segments.length, API_DIR.equals(rootDir) ? 3 : 2);
+    StringBuilder action = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      action.append(URL_SEPARATOR).append(StringUtils.substringBefore(segments[i], "."));
+    }
+    return action.length() == 0 ? URL_SEPARATOR : action.toString();
+  }
+
   @Override
   public void destroy() {
     // Nothing
@@ -119,4 +147,10 @@ public class ProfilingFilter implements Filter {
     }
     return new Profiling(new Settings());
   }
+
+  @VisibleForTesting
+  @CheckForNull
+  MetricsRegistry getMetrics() {
+    return Platform.component(MetricsRegistry.class);
+  }
 }
@@ -0,0 +1,207 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ServerComponent;
+import org.sonar.core.profiling.Counter;
+import org.sonar.core.profiling.Gauge;
+import org.sonar.core.profiling.MetricsRegistry;
+import org.sonar.core.profiling.Timer;
+import org.sonar.server.notifications.NotificationService;
+
+import javax.annotation.Nullable;
+import javax.management.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registers the gauges of the notification queue and exposes {@link MetricsRegistry} through JMX, as
+ * attributes of the MBean {@link #OBJECT_NAME}. Each timer provides the attributes "[name].count", "[name].mean",
+ * "[name].max", "[name].p50", "[name].p95" and "[name].p99", in milliseconds.
+ *
+ * @since 4.1.3
+ */
+public class ServerMetrics implements ServerComponent, DynamicMBean {
+
+  public static final String OBJECT_NAME = "org.sonar:type=Metrics";
+
+  private static final String[] TIMER_ATTRIBUTES = {".count", ".mean", ".max", ".p50", ".p95", ".p99"};
+
+  private final MetricsRegistry metrics;
+  private final NotificationService notificationService;
+  private final MBeanServer mbeanServer;
+
+  public ServerMetrics(MetricsRegistry metrics, NotificationService notificationService) {
+    this(metrics, notificationService, ManagementFactory.getPlatformMBeanServer());
+  }
+
+  @VisibleForTesting
+  ServerMetrics(MetricsRegistry metrics, NotificationService notificationService, MBeanServer mbeanServer) {
+    this.metrics = metrics;
+    this.notificationService = notificationService;
+    this.mbeanServer = mbeanServer;
+  }
+
+  public void start() {
+    metrics.register("notifications.queueSize", new Gauge() {
+      public Number value() {
+        return notificationService.getQueueSize();
+      }
+    });
+    metrics.register("notifications.processed", new Gauge() {
+      public Number value() {
+        return notificationService.getProcessedNotifications();
+      }
+    });
+    metrics.register("notifications.delivered", new Gauge() {
+      public Number value() {
+        return notificationService.getDeliveredNotifications();
+      }
+    });
+    metrics.register("notifications.failedDeliveries", new Gauge() {
+      public Number value() {
+        return notificationService.getFailedDeliveries();
+      }
+    });
+    metrics.register("notifications.throughput", new Gauge() {
+      public Number value() {
+        return notificationService.getThroughput();
+      }
+    });
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!mbeanServer.isRegistered(name)) {
+        mbeanServer.registerMBean(this, name);
+      }
+    } catch (JMException e) {
+      // metrics are still available through web service
+      LoggerFactory.getLogger(ServerMetrics.class).warn("Fail to register MBean " + OBJECT_NAME, e);
+    }
+  }
+
+  public void stop() {
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (mbeanServer.isRegistered(name)) {
+        mbeanServer.unregisterMBean(name);
+      }
+    } catch (JMException e) {
+      LoggerFactory.getLogger(ServerMetrics.class).warn("Fail to unregister MBean " + OBJECT_NAME, e);
+    }
+  }
+
+  /**
+   * Current values of all the metrics, sorted by name
+   */
+  public Map<String, Number> values() {
+    return values(null);
+  }
+
+  /**
+   * Values of the requested attributes, or of all the attributes if null. Samples of a timer are sorted
+   * only if one of its attributes is requested, and only once for all its percentiles.
+   */
+  private Map<String, Number> values(@Nullable Set<String> attributes) {
+    Map<String, Number> values = Maps.newTreeMap();
+    for (Map.Entry<String, Timer> entry : metrics.timers().entrySet()) {
+      String name = entry.getKey();
+      if (attributes == null || isTimerRequested(name, attributes)) {
+        Timer.Snapshot snapshot = entry.getValue().snapshot();
+        values.put(name + ".count", snapshot.count());
+        values.put(name + ".mean", snapshot.mean());
+        values.put(name + ".max", snapshot.max());
+        values.put(name + ".p50", snapshot.percentile(0.5));
+        values.put(name + ".p95", snapshot.percentile(0.95));
+        values.put(name + ".p99", snapshot.percentile(0.99));
+      }
+    }
+    for (Map.Entry<String, Counter> entry : metrics.counters().entrySet()) {
+      values.put(entry.getKey(), entry.getValue().count());
+    }
+    for (Map.Entry<String, Gauge> entry : metrics.gauges().entrySet()) {
+      values.put(entry.getKey(), entry.getValue().value());
+    }
+    return values;
+  }
+
+  private static boolean isTimerRequested(String timerName, Set<String> attributes) {
+    for (String suffix : TIMER_ATTRIBUTES) {
+      if (attributes.contains(timerName + suffix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    Number value = values(Collections.singleton(attribute)).get(attribute);
+    if (value == null) {
+      throw new AttributeNotFoundException(attribute);
+    }
+    return value;
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    Map<String, Number> values = values(Sets.newHashSet(attributes));
+    AttributeList list = new AttributeList();
+    for (String attribute : attributes) {
+      if (values.containsKey(attribute)) {
+        list.add(new Attribute(attribute, values.get(attribute)));
+      }
+    }
+    return list;
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    Map<String, Number> values = values();
+    MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+    int index = 0;
+    for (Map.Entry<String, Number> entry : values.entrySet()) {
+      attributes[index] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(), entry.getKey(), true, false, false);
+      index++;
+    }
+    return new MBeanInfo(getClass().getName(), "Metrics of SonarQube server", attributes, null, null, null);
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException("Metrics are read-only");
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+}
@@ -38,17 +38,21 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.SearchHit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.core.profiling.MetricsRegistry;
 import org.sonar.core.profiling.Profiling;
 import org.sonar.core.profiling.Profiling.Level;
 import org.sonar.core.profiling.StopWatch;
+import org.sonar.core.profiling.Timer;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class SearchIndex {
 
@@ -69,10 +73,12 @@ public class SearchIndex {
   private SearchNode searchNode;
   private Client client;
   private Profiling profiling;
+  private MetricsRegistry metrics;
 
-  public SearchIndex(SearchNode searchNode, Profiling profiling) {
+  public SearchIndex(SearchNode searchNode, Profiling profiling, MetricsRegistry metrics) {
     this.searchNode = searchNode;
     this.profiling = profiling;
+    this.metrics = metrics;
   }
 
   public void start() {
@@ -95,7 +101,7 @@ public class SearchIndex {
 
   private void internalPut(String index, String type, String id, BytesStream source, boolean refresh) {
     IndexRequestBuilder builder = client.prepareIndex(index, type, id).setSource(source.bytes()).setRefresh(refresh);
-    StopWatch watch = createWatch();
+    StopWatch watch = createWatch("put");
     builder.execute().actionGet();
     watch.stop("put document with id '%s' with type '%s' into index '%s'", id, type, index);
   }
@@ -105,7 +111,7 @@ public class SearchIndex {
     for (int i=0; i<ids.length; i++) {
       builder.add(client.prepareIndex(index, type, ids[i]).setSource(sources[i].bytes()));
     }
-    StopWatch watch = createWatch();
+    StopWatch watch = createWatch("bulkIndex");
     try {
       BulkResponse bulkResponse = client.bulk(builder.setRefresh(true).request()).get();
       if (bulkResponse.hasFailures()) {
@@ -140,7 +146,7 @@ public class SearchIndex {
 
   private void addMapping(String index, String type, String mapping) {
     IndicesAdminClient indices = client.admin().indices();
-    StopWatch watch = createWatch();
+    StopWatch watch = createWatch("createIndex");
     try {
       if (! indices.exists(indices.prepareExists(index).request()).get().isExists()) {
         indices.prepareCreate(index)
@@ -154,7 +160,7 @@ public class SearchIndex {
       watch.stop("create index '%s'", index);
     }
 
-    watch = createWatch();
+    watch = createWatch("putMapping");
     try {
       indices.putMapping(Requests.putMappingRequest(index).type(type).source(mapping)).actionGet();
     } catch(ElasticSearchParseException parseException) {
@@ -169,7 +175,7 @@ public class SearchIndex {
     final int scrollTime = 100;
 
     SearchRequestBuilder builder = searchQuery.toBuilder(client);
-    StopWatch watch = createWatch();
+    StopWatch watch = createWatch("findDocumentIds");
     SearchResponse scrollResp = builder.addField("_id")
             .setSearchType(SearchType.SCAN)
             .setScroll(new TimeValue(scrollTime))
@@ -200,12 +206,44 @@ public class SearchIndex {
     }
   }
 
+  /**
+   * @since 4.1.3
+   */
+  public SearchRequestBuilder prepareSearch(String index, String type) {
+    return client.prepareSearch(index).setTypes(type);
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  public SearchResponse execute(SearchRequestBuilder builder) {
+    StopWatch watch = createWatch("search");
+    try {
+      return builder.execute().actionGet();
+    } finally {
+      watch.stop("search with request: %s", builderToString(builder));
+    }
+  }
+
+  /**
+   * @since 4.1.3
+   */
+  public void deleteByQuery(String index, String type, QueryBuilder query) {
+    StopWatch watch = createWatch("deleteByQuery");
+    try {
+      client.prepareDeleteByQuery(index).setTypes(type).setQuery(query).execute().actionGet();
+      client.admin().indices().prepareRefresh(index).execute().actionGet();
+    } finally {
+      watch.stop("delete by query of documents with type '%s' from index '%s'", type, index);
+    }
+  }
+
   public void bulkDelete(String index, String type, String[] ids) {
     BulkRequestBuilder builder = new BulkRequestBuilder(client);
     for (int i=0; i<ids.length; i++) {
       builder.add(client.prepareDelete(index, type, ids[i]));
     }
-    StopWatch watch = createWatch();
+    StopWatch watch = createWatch("bulkDelete");
     try {
       BulkResponse bulkResponse = client.bulk(builder.setRefresh(true).request()).get();
       if (bulkResponse.hasFailures()) {
@@ -225,7 +263,27 @@ public class SearchIndex {
     }
   }
 
-  private StopWatch createWatch() {
-    return profiling.start(PROFILE_DOMAIN, Level.FULL);
+  private StopWatch createWatch(String operation) {
+    return new TimedWatch(profiling.start(PROFILE_DOMAIN, Level.FULL), metrics.timer(PROFILE_DOMAIN + "." + operation));
+  }
+
+  /**
+   * Feeds the timer of the operation in addition to the profiling logs
+   */
+  private static class TimedWatch extends StopWatch {
+    private final StopWatch watch;
+    private final Timer timer;
+    private final long start = System.nanoTime();
+
+    TimedWatch(StopWatch watch, Timer timer) {
+      this.watch = watch;
+      this.timer = timer;
+    }
+
+    @Override
+    public void stop(String message, Object... args) {
+      timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      watch.stop(message, args);
+    }
   }
 }
@@ -67,6 +67,7 @@ import org.sonar.updatecenter.common.Version;
 
 import javax.annotation.Nullable;
 
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.sql.Connection;
 import java.util.*;
@@ -467,10 +468,26 @@ public final class JRubyFacade {
     }
   }
 
+  /**
+   * @deprecated since 4.1.3 replaced by {@link #writeDatabaseForPreview(Long, java.io.OutputStream, boolean)}
+   */
+  @Deprecated
   public byte[] createDatabaseForPreview(@Nullable Long projectId) {
     return get(PreviewCache.class).getDatabaseForPreview(projectId);
   }
 
+  public String getDatabaseDigestForPreview(@Nullable Long projectId) {
+    return get(PreviewCache.class).getDatabaseDigestForPreview(projectId);
+  }
+
+  public boolean isDatabaseCompressionForPreviewEnabled() {
+    return get(PreviewCache.class).isCompressionEnabled();
+  }
+
+  public void writeDatabaseForPreview(@Nullable Long projectId, OutputStream output, boolean gzip) {
+    get(PreviewCache.class).writeDatabaseForPreview(projectId, output, gzip);
+  }
+
   public String getPeriodLabel(int periodIndex) {
     return get(Periods.class).label(periodIndex);
   }
@@ -19,7 +19,7 @@
 #
 class Api::ServerController < Api::ApiController
 
-  skip_before_filter :check_authentication, :except => 'system'
+  skip_before_filter :check_authentication, :except => ['system', 'metrics', 'sql_statistics']
 
   # prevent HTTP proxies from caching server status
   before_filter :set_cache_buster, :only => 'index'
@@ -63,6 +63,53 @@ class Api::ServerController < Api::ApiController
     end
   end
 
+  #
+  # GET /api/server/metrics
+  # Timers (count, mean, max and percentiles in milliseconds), counters and gauges of the server, for example
+  # "http./api/issues/search.p99" or "sql.org.sonar.core.issue.db.IssueMapper.selectIssues.mean".
+  # Also available through JMX, see MBean org.sonar:type=Metrics.
+  #
+  # @since 4.1.3
+  def metrics
+    access_denied unless has_role?(:admin)
+    json={}
+    java_facade.getCoreComponentByClassname('org.sonar.server.platform.ServerMetrics').values.each do |name, value|
+      json[name]=value
+    end
+
+    respond_to do |format|
+      format.json{ render :json => jsonp(json) }
+      format.xml { render :xml => xml_not_supported }
+      format.text { render :text => text_not_supported}
+    end
+  end
+
+  #
+  # GET /api/server/sql_statistics
+  # Statistics per MyBatis statement and most recent slow SQL requests, when enabled by the property sonar.sql.statistics
+  #
+  # @since 4.1.3
+  def sql_statistics
+    access_denied unless has_role?(:admin)
+    statistics=java_facade.getCoreComponentByClassname('org.sonar.core.persistence.MyBatis').getSqlStatistics()
+    json={
+      :enabled => statistics.isEnabled(),
+      :statements => statistics.statements().map { |s| {:id => s.statementId(), :count => s.count(), :rows => s.rows(), :totalTime => s.totalTime(), :maxTime => s.maxTime()} },
+      :slowQueries => statistics.slowQueries().map { |q|
+        hash={:id => q.statementId(), :sql => q.sql(), :time => q.time(), :rows => q.rows(), :date => Api::Utils.format_datetime(q.date())}
+        # parameters are recorded only if sonar.sql.slowQueries.parameters is enabled
+        hash[:parameters]=q.parameters().map { |p| p.nil? ? nil : p.to_s } unless q.parameters().isEmpty()
+        hash
+      }
+    }
+
+    respond_to do |format|
+      format.json{ render :json => jsonp(json) }
+      format.xml { render :xml => xml_not_supported }
+      format.text { render :text => text_not_supported}
+    end
+  end
+
   def setup
     verify_post_request
     manager=DatabaseMigrationManager.instance
@@ -25,14 +25,28 @@ class BatchBootstrapController < Api::ApiController
   skip_before_filter :check_authentication, :only => 'index'
 
   # GET /batch_bootstrap/db?project=<key or id>
+  #
+  # Since 4.1.3 the cached database is streamed from disk. Its ETag is the MD5 digest of its content, so requests
+  # with a matching If-None-Match header are answered by 304 as long as the database has not been regenerated.
   def db
     has_dryrun_role = has_role?('dryRunScan')
     return render_unauthorized("You're not authorized to execute a dry run analysis. Please contact your SonarQube administrator.") if !has_dryrun_role
     project = load_project()
     return render_unauthorized("You're not authorized to access to project '" + project.name + "', please contact your SonarQube administrator") if project && !has_role?(:user, project)
-    db_content = java_facade.createDatabaseForPreview(project && project.id)
-
-    send_data String.from_java_bytes(db_content)
+    project_id = project && project.id
+
+    # not computed by Rails, which would hash the given value again
+    etag = '"' + java_facade.getDatabaseDigestForPreview(project_id) + '"'
+    response.headers['ETag'] = etag
+    return head(:not_modified) if request.env['HTTP_IF_NONE_MATCH'] == etag
+
+    gzip = java_facade.isDatabaseCompressionForPreviewEnabled() && request.env['HTTP_ACCEPT_ENCODING'].to_s.include?('gzip')
+    response.headers['Content-Type'] = 'application/octet-stream'
+    response.headers['Content-Encoding'] = 'gzip' if gzip
+    servlet_response = request.env['java.servlet_response']
+    # The database is copied directly to the servlet output stream while its lock is held, so that it can't be
+    # regenerated meanwhile. It may have been regenerated since the ETag was computed, so the length is unknown.
+    render :text => Proc.new { |resp, output| java_facade.writeDatabaseForPreview(project_id, servlet_response.getOutputStream(), gzip) }
   end
 
   # PUT /batch_bootstrap/evict?project=<key or id>
@@ -45,6 +59,9 @@ class BatchBootstrapController < Api::ApiController
 
     if project
       Property.set(Java::OrgSonarCorePreview::PreviewCache::SONAR_PREVIEW_CACHE_LAST_UPDATE_KEY, java.lang.System.currentTimeMillis, project.root_project.id)
+      # evict is called by the batch at the end of each analysis : the issues of the project have just been persisted and purged
+      java_facade.getCoreComponentByClassname('org.sonar.server.issue.IssueRegistry').registerIssuesOfProject(project.root_project.id)
+      java_facade.getCoreComponentByClassname('org.sonar.core.measure.MeasureFilterEngine').clearCache(project.root_project.id)
       render_success('dryRun DB evicted')
     else
       render_bad_request('missing projectId')
@@ -201,12 +201,19 @@ class MeasureFilter < ActiveRecord::Base
     init_results
     init_display(options)
     user = options[:user]
-    result = Api::Utils.java_facade.executeMeasureFilter(criteria, (user && user.id))
+    max_results = (@display && @display.max_results)
+    java_criteria = (max_results ? criteria.merge('maxResults' => max_results.to_s) : criteria)
+    result = Api::Utils.java_facade.executeMeasureFilter(java_criteria, (user && user.id))
     if result.error
       errors.add_to_base(Api::Utils.message("measure_filter.error.#{result.error}"))
     else
       rows = result.getRows()
       snapshot_ids = filter_authorized_snapshot_ids(rows, controller)
+      if max_results && @security_exclusions && rows.size>=max_results
+        # top rows are selected before checking permissions, so some authorized rows may be missing
+        result = Api::Utils.java_facade.executeMeasureFilter(criteria, (user && user.id))
+        snapshot_ids = (result.error ? [] : filter_authorized_snapshot_ids(result.getRows(), controller))
+      end
       load_results(snapshot_ids)
     end
     self
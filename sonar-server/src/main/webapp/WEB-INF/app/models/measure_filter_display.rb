@@ -47,6 +47,11 @@ class MeasureFilterDisplay
     end
   end
 
+  # maximum number of rows to be loaded, nil if all rows are required
+  def max_results
+    nil
+  end
+
   # sorted array of parameters :
   # [[key1,value1], [key2,value2]]
   def url_params
@@ -41,6 +41,11 @@ class MeasureFilterDisplayTreemap < MeasureFilterDisplay
     filter.set_criteria_value(:page, 1)
   end
 
+  # only the top results are displayed, there's no pagination
+  def max_results
+    MAX_RESULTS
+  end
+
   def html
     # SONAR-3524
     # If filter is empty, we return a empty result in order to be treated more easily
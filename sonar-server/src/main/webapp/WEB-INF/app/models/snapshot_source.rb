@@ -22,6 +22,11 @@ include ActionView::Helpers::JavaScriptHelper
 class SnapshotSource < ActiveRecord::Base
   belongs_to :snapshot
 
+  # Sources can be stored compressed. See org.sonar.core.source.jdbc.TextCodec
+  def data
+    Java::OrgSonarCoreSourceJdbc::TextCodec.decode(read_attribute(:data))
+  end
+
   def to_hash_json(options={})
     from = (options[:from] ? options[:from].to_i - 1 : 0)
     to = (options[:to] ? options[:to].to_i - 2 : -1)
@@ -0,0 +1,49 @@
+#
+# SonarQube, open source software quality management tool.
+# Copyright (C) 2008-2013 SonarSource
+# mailto:contact AT sonarsource DOT com
+#
+# SonarQube is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3 of the License, or (at your option) any later version.
+#
+# SonarQube is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+#
+# You should have received a copy of the GNU Lesser General Public License
+# along with this program; if not, write to the Free Software Foundation,
+# Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+#
+
+#
+# SonarQube 4.1.3
+# Hashes of duplications are stored as numbers
+#
+class ConvertDuplicationsIndexHashes < ActiveRecord::Migration
+
+  def self.up
+    add_column 'duplications_index', 'hash_value', :big_integer, :null => true
+
+    # Required for MSSQL to unlock the table DUPLICATIONS_INDEX
+    ActiveRecord::Base.connection.commit_db_transaction
+
+    Java::OrgSonarServerUi::JRubyFacade.getInstance().databaseMigrator().executeMigration('org.sonar.server.db.migrations.duplication.DuplicationsHashMigration')
+
+    remove_index_quietly('duplications_index_hash')
+    remove_column 'duplications_index', 'hash'
+
+    # Blocks are looked up by hash then filtered on snapshot. This index does not cover the other selected columns.
+    add_index 'duplications_index', ['hash_value', 'snapshot_id'], :name => 'duplications_index_hsid'
+  end
+
+  def self.remove_index_quietly(name)
+    begin
+      remove_index('duplications_index', :name => name)
+    rescue
+      # probably already removed
+    end
+  end
+end
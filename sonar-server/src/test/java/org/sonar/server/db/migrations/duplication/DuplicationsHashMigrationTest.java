@@ -0,0 +1,72 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.db.migrations.duplication;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.core.persistence.TestDatabase;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DuplicationsHashMigrationTest {
+
+  @Rule
+  public TestDatabase db = new TestDatabase().schema(getClass(), "schema.sql");
+
+  @Test
+  public void convert_hashes() throws Exception {
+    db.prepareDbUnit(getClass(), "convert_hashes.xml");
+
+    new DuplicationsHashMigration(db.database()).execute();
+
+    db.assertDbUnit(getClass(), "convert_hashes_result.xml", "duplications_index");
+  }
+
+  @Test
+  public void convert_hashes_by_batches() throws Exception {
+    db.prepareDbUnit(getClass(), "convert_hashes.xml");
+
+    new DuplicationsHashMigration(db.database(), 2).execute();
+
+    db.assertDbUnit(getClass(), "convert_hashes_result.xml", "duplications_index");
+  }
+
+  @Test
+  public void nothing_to_convert() throws Exception {
+    db.prepareDbUnit(getClass(), "empty.xml");
+
+    new DuplicationsHashMigration(db.database()).execute();
+
+    assertThat(db.count("select count(id) from duplications_index")).isEqualTo(0);
+  }
+
+  @Test
+  public void convert_hexadecimal_hashes_to_long() {
+    assertThat(DuplicationsHashMigration.toLong("0000000000000001")).isEqualTo(1L);
+    assertThat(DuplicationsHashMigration.toLong("ffffffffffffffff")).isEqualTo(-1L);
+    assertThat(DuplicationsHashMigration.toLong("7fffffffffffffff")).isEqualTo(Long.MAX_VALUE);
+    assertThat(DuplicationsHashMigration.toLong("aa")).isNull();
+    assertThat(DuplicationsHashMigration.toLong("zzzzzzzzzzzzzzzz")).isNull();
+    assertThat(DuplicationsHashMigration.toLong("-000000000000001")).isNull();
+    assertThat(DuplicationsHashMigration.toLong("")).isNull();
+    assertThat(DuplicationsHashMigration.toLong(null)).isNull();
+    assertThat(DuplicationsHashMigration.toLong("00000000000000000001")).isNull();
+  }
+}
@@ -46,7 +46,6 @@ import java.util.Collections;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
-import static com.google.common.collect.Sets.newHashSet;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyCollection;
@@ -54,6 +53,7 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -66,7 +66,8 @@ public class DefaultIssueFinderTest {
   ResourceDao resourceDao = mock(ResourceDao.class);
   ActionPlanService actionPlanService = mock(ActionPlanService.class);
   UserFinder userFinder = mock(UserFinder.class);
-  DefaultIssueFinder finder = new DefaultIssueFinder(mybatis, issueDao, issueChangeDao, ruleFinder, userFinder, resourceDao, actionPlanService);
+  IssueRegistry issueRegistry = mock(IssueRegistry.class);
+  DefaultIssueFinder finder = new DefaultIssueFinder(mybatis, issueDao, issueChangeDao, ruleFinder, userFinder, resourceDao, actionPlanService, issueRegistry);
 
   @Test
   public void should_find_issues() {
@@ -83,10 +84,10 @@ public class DefaultIssueFinderTest {
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    mockIssues(dtoList);
 
     IssueQueryResult results = finder.find(query);
-    verify(issueDao).selectIssueIds(eq(query), anyInt(), any(SqlSession.class));
+    verify(issueDao).countIssues(eq(query), anyInt(), any(SqlSession.class));
 
     assertThat(results.issues()).hasSize(2);
     DefaultIssue issue = (DefaultIssue) results.issues().iterator().next();
@@ -109,17 +110,72 @@ public class DefaultIssueFinderTest {
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
-    List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectIssueIds(eq(query), anyInt(), any(SqlSession.class))).thenReturn(dtoList);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueDao.countIssues(eq(query), anyInt(), any(SqlSession.class))).thenReturn(2);
+    when(issueDao.selectSortedIssueIds(eq(query), anyInt(), eq(0), eq(1), any(SqlSession.class))).thenReturn(newArrayList(1L));
+    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(newArrayList(issue1));
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.paging().offset()).isEqualTo(0);
     assertThat(results.paging().total()).isEqualTo(2);
     assertThat(results.paging().pages()).isEqualTo(2);
+    assertThat(results.issues()).hasSize(1);
 
     // Only one result is expected because the limit is 1
-    verify(issueDao).selectByIds(eq(newHashSet(1L)), any(SqlSession.class));
+    verify(issueDao).selectByIds(eq(newArrayList(1L)), any(SqlSession.class));
+  }
+
+  @Test
+  public void should_find_issue_ids_in_search_index() {
+    IssueQuery query = IssueQuery.builder().pageSize(1).pageIndex(2).build();
+
+    IssueDto issue2 = new IssueDto().setKee("ISSUE-2").setId(2L).setRuleId(50).setComponentId(135l).setRootComponentId(100l)
+      .setComponentKey_unit_test_only("Phases.java")
+      .setRootComponentKey_unit_test_only("struts")
+      .setRuleKey_unit_test_only("squid", "AvoidCycle")
+      .setStatus("OPEN").setResolution("OPEN");
+    when(issueRegistry.accepts(query)).thenReturn(true);
+    when(issueRegistry.findIds(eq(query), anyInt(), eq(1), eq(1))).thenReturn(new IssueRegistry.Hits(2, newArrayList(2L)));
+    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(newArrayList(issue2));
+
+    IssueQueryResult results = finder.find(query);
+    assertThat(results.paging().offset()).isEqualTo(1);
+    assertThat(results.paging().total()).isEqualTo(2);
+    assertThat(results.issues()).hasSize(1);
+    assertThat(results.issues().iterator().next().key()).isEqualTo("ISSUE-2");
+    verify(issueDao, never()).countIssues(any(IssueQuery.class), anyInt(), any(SqlSession.class));
+  }
+
+  @Test
+  public void should_keep_order_of_sorted_ids() {
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_SEVERITY).asc(true).build();
+
+    IssueDto issue1 = new IssueDto().setId(1L).setRuleId(50).setComponentId(123l).setRootComponentId(100l).setKee("ABC")
+      .setRuleKey_unit_test_only("squid", "AvoidCycle")
+      .setStatus("OPEN").setResolution("OPEN");
+    IssueDto issue2 = new IssueDto().setId(2L).setRuleId(50).setComponentId(123l).setRootComponentId(100l).setKee("DEF")
+      .setRuleKey_unit_test_only("squid", "AvoidCycle")
+      .setStatus("OPEN").setResolution("OPEN");
+    when(issueDao.countIssues(eq(query), anyInt(), any(SqlSession.class))).thenReturn(2);
+    when(issueDao.selectSortedIssueIds(eq(query), anyInt(), eq(0), eq(2), any(SqlSession.class))).thenReturn(newArrayList(2L, 1L));
+    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(newArrayList(issue1, issue2));
+
+    IssueQueryResult results = finder.find(query);
+    assertThat(results.issues()).hasSize(2);
+    assertThat(results.issues().get(0).key()).isEqualTo("DEF");
+    assertThat(results.issues().get(1).key()).isEqualTo("ABC");
+    assertThat(results.maxResultsReached()).isFalse();
+  }
+
+  @Test
+  public void should_not_load_pages_after_max_results() {
+    IssueQuery query = IssueQuery.builder().pageSize(100).pageIndex(101).build();
+    when(issueDao.countIssues(eq(query), anyInt(), any(SqlSession.class))).thenReturn(query.maxResults() + 1);
+
+    IssueQueryResult results = finder.find(query);
+    assertThat(results.issues()).isEmpty();
+    assertThat(results.maxResultsReached()).isTrue();
+    assertThat(results.paging().total()).isEqualTo(query.maxResults());
+    verify(issueDao, never()).selectSortedIssueIds(any(IssueQuery.class), anyInt(), anyInt(), anyInt(), any(SqlSession.class));
   }
 
   @Test
@@ -155,7 +211,7 @@ public class DefaultIssueFinderTest {
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    mockIssues(dtoList);
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.issues()).hasSize(2);
@@ -183,7 +239,7 @@ public class DefaultIssueFinderTest {
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    mockIssues(dtoList);
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.issues()).hasSize(2);
@@ -210,7 +266,7 @@ public class DefaultIssueFinderTest {
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    mockIssues(dtoList);
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.issues()).hasSize(2);
@@ -237,7 +293,7 @@ public class DefaultIssueFinderTest {
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    mockIssues(dtoList);
     when(actionPlanService.findByKeys(anyCollection())).thenReturn(newArrayList(actionPlan1, actionPlan2));
 
     IssueQueryResult results = finder.find(query);
@@ -263,7 +319,7 @@ public class DefaultIssueFinderTest {
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    mockIssues(dtoList);
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.issues()).hasSize(2);
@@ -276,8 +332,7 @@ public class DefaultIssueFinderTest {
   @Test
   public void should_get_empty_result_when_no_issue() {
     IssueQuery query = IssueQuery.builder().build();
-    when(issueDao.selectIssueIds(eq(query), anyInt(), any(SqlSession.class))).thenReturn(Collections.<IssueDto>emptyList());
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(Collections.<IssueDto>emptyList());
+    mockIssues(Collections.<IssueDto>emptyList());
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.issues()).isEmpty();
@@ -297,14 +352,23 @@ public class DefaultIssueFinderTest {
       .setStatus("OPEN").setResolution("OPEN")
       .setTechnicalDebt(10L);
     List<IssueDto> dtoList = newArrayList(issue);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    mockIssues(dtoList);
 
     IssueQueryResult results = finder.find(query);
-    verify(issueDao).selectIssueIds(eq(query), anyInt(), any(SqlSession.class));
+    verify(issueDao).countIssues(eq(query), anyInt(), any(SqlSession.class));
 
     assertThat(results.issues()).hasSize(1);
     DefaultIssue result = (DefaultIssue) results.issues().iterator().next();
     assertThat(result.technicalDebt()).isEqualTo(WorkDayDuration.of(10, 0, 0));
   }
 
+  private void mockIssues(List<IssueDto> dtos) {
+    List<Long> ids = newArrayList();
+    for (IssueDto dto : dtos) {
+      ids.add(dto.getId());
+    }
+    when(issueDao.countIssues(any(IssueQuery.class), anyInt(), any(SqlSession.class))).thenReturn(dtos.size());
+    when(issueDao.selectSortedIssueIds(any(IssueQuery.class), anyInt(), anyInt(), anyInt(), any(SqlSession.class))).thenReturn(ids);
+    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtos);
+  }
 }
@@ -0,0 +1,301 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.issue;
+
+import com.github.tlrx.elasticsearch.test.EsSetup;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.Settings;
+import org.sonar.api.issue.IssueQuery;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.core.issue.db.IssueDao;
+import org.sonar.core.issue.db.IssueDto;
+import org.sonar.core.profiling.MetricsRegistry;
+import org.sonar.core.profiling.Profiling;
+import org.sonar.core.purge.PurgeDao;
+import org.sonar.core.resource.ResourceDao;
+import org.sonar.core.resource.ResourceDto;
+import org.sonar.core.user.AuthorizationDao;
+import org.sonar.server.search.SearchIndex;
+import org.sonar.server.search.SearchNode;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class IssueRegistryTest {
+
+  private EsSetup esSetup;
+  private SearchIndex searchIndex;
+  private IssueDao issueDao = mock(IssueDao.class);
+  private AuthorizationDao authorizationDao = mock(AuthorizationDao.class);
+  private ResourceDao resourceDao = mock(ResourceDao.class);
+  private PurgeDao purgeDao = mock(PurgeDao.class);
+  private Settings settings;
+  private IssueRegistry registry;
+
+  @Before
+  public void setUp() throws Exception {
+    esSetup = new EsSetup();
+    esSetup.execute(EsSetup.deleteAll());
+
+    SearchNode node = mock(SearchNode.class);
+    when(node.client()).thenReturn(esSetup.client());
+    settings = new Settings();
+    settings.setProperty("sonar.log.profilingLevel", "FULL");
+    settings.setProperty(IssueRegistry.ENABLED_PROPERTY, true);
+    searchIndex = new SearchIndex(node, new Profiling(settings), new MetricsRegistry());
+    searchIndex.start();
+
+    when(authorizationDao.selectAuthorizedRootProjectsKeys(any(Integer.class), anyString())).thenReturn(Lists.newArrayList("struts"));
+
+    registry = new IssueRegistry(searchIndex, issueDao, authorizationDao, resourceDao, purgeDao, settings, MoreExecutors.sameThreadExecutor());
+    registry.start();
+  }
+
+  @After
+  public void tearDown() {
+    searchIndex.stop();
+    esSetup.terminate();
+  }
+
+  @Test
+  public void should_be_disabled_by_default() {
+    IssueRegistry disabledRegistry = new IssueRegistry(searchIndex, issueDao, authorizationDao, resourceDao, purgeDao, new Settings());
+    disabledRegistry.bulkRegisterIssues();
+
+    assertThat(disabledRegistry.isEnabled()).isFalse();
+    assertThat(disabledRegistry.accepts(IssueQuery.builder().build())).isFalse();
+  }
+
+  @Test
+  public void should_accept_queries_once_issues_are_indexed() {
+    IssueQuery query = IssueQuery.builder().build();
+    assertThat(registry.accepts(query)).isFalse();
+
+    mockIssuesForIndexing(null);
+    registry.bulkRegisterIssues();
+
+    assertThat(registry.accepts(query)).isTrue();
+  }
+
+  @Test
+  public void should_not_accept_component_roots_that_are_not_projects() {
+    mockIssuesForIndexing(null);
+    registry.bulkRegisterIssues();
+    when(resourceDao.getRootProjectByComponentKey("struts")).thenReturn(new ResourceDto().setKey("struts"));
+    when(resourceDao.getRootProjectByComponentKey("struts:core")).thenReturn(new ResourceDto().setKey("struts"));
+
+    assertThat(registry.accepts(IssueQuery.builder().componentRoots(Arrays.asList("struts")).build())).isTrue();
+    assertThat(registry.accepts(IssueQuery.builder().componentRoots(Arrays.asList("struts:core")).build())).isFalse();
+  }
+
+  @Test
+  public void should_find_authorized_issues() {
+    mockIssuesForIndexing(null,
+      issue(1L, "ABCD", "struts", Severity.MAJOR, "OPEN", "arthur"),
+      issue(2L, "BCDE", "struts", Severity.BLOCKER, "CLOSED", null),
+      issue(3L, "CDEF", "other", Severity.MINOR, "OPEN", "arthur"));
+    registry.bulkRegisterIssues();
+
+    IssueRegistry.Hits hits = registry.findIds(IssueQuery.builder().build(), 10, 0, 10);
+    assertThat(hits.total()).isEqualTo(2);
+    assertThat(hits.ids()).containsExactly(1L, 2L);
+
+    hits = registry.findIds(IssueQuery.builder().statuses(Arrays.asList("OPEN")).build(), 10, 0, 10);
+    assertThat(hits.ids()).containsExactly(1L);
+
+    hits = registry.findIds(IssueQuery.builder().assigned(false).build(), 10, 0, 10);
+    assertThat(hits.ids()).containsExactly(2L);
+
+    hits = registry.findIds(IssueQuery.builder().rules(Arrays.asList(RuleKey.of("squid", "AvoidCycle"))).build(), 10, 0, 10);
+    assertThat(hits.ids()).containsExactly(1L, 2L);
+  }
+
+  @Test
+  public void should_not_find_issues_when_no_authorized_projects() {
+    mockIssuesForIndexing(null, issue(1L, "ABCD", "struts", Severity.MAJOR, "OPEN", "arthur"));
+    registry.bulkRegisterIssues();
+    when(authorizationDao.selectAuthorizedRootProjectsKeys(any(Integer.class), anyString())).thenReturn(Lists.<String>newArrayList());
+
+    IssueRegistry.Hits hits = registry.findIds(IssueQuery.builder().build(), 10, 0, 10);
+    assertThat(hits.total()).isEqualTo(0);
+    assertThat(hits.ids()).isEmpty();
+  }
+
+  @Test
+  public void should_sort_and_paginate_issues() {
+    mockIssuesForIndexing(null,
+      issue(1L, "ABCD", "struts", Severity.MAJOR, "OPEN", "Perceval"),
+      issue(2L, "BCDE", "struts", Severity.BLOCKER, "OPEN", null),
+      issue(3L, "CDEF", "struts", Severity.MINOR, "OPEN", "arthur"));
+    registry.bulkRegisterIssues();
+
+    IssueQuery query = IssueQuery.builder().sort(IssueQuery.SORT_BY_SEVERITY).asc(false).build();
+    assertThat(registry.findIds(query, 10, 0, 10).ids()).containsExactly(2L, 1L, 3L);
+
+    // case-insensitive, like the database
+    query = IssueQuery.builder().sort(IssueQuery.SORT_BY_ASSIGNEE).asc(true).build();
+    assertThat(registry.findIds(query, 10, 0, 10).ids()).containsExactly(3L, 1L, 2L);
+
+    IssueRegistry.Hits hits = registry.findIds(query, 10, 1, 1);
+    assertThat(hits.total()).isEqualTo(3);
+    assertThat(hits.ids()).containsExactly(1L);
+  }
+
+  @Test
+  public void should_compute_facets() {
+    mockIssuesForIndexing(null,
+      issue(1L, "ABCD", "struts", Severity.MAJOR, "OPEN", "arthur"),
+      issue(2L, "BCDE", "struts", Severity.MAJOR, "OPEN", null),
+      issue(3L, "CDEF", "struts", Severity.MINOR, "CLOSED", "arthur"));
+    registry.bulkRegisterIssues();
+
+    Map<String, Multiset<String>> facets = registry.facets(IssueQuery.builder().build(), 10,
+      IssueRegistry.FACET_SEVERITY, IssueRegistry.FACET_ASSIGNEE);
+    assertThat(facets.get(IssueRegistry.FACET_SEVERITY).count(Severity.MAJOR)).isEqualTo(2);
+    assertThat(facets.get(IssueRegistry.FACET_SEVERITY).count(Severity.MINOR)).isEqualTo(1);
+    assertThat(facets.get(IssueRegistry.FACET_ASSIGNEE).count("arthur")).isEqualTo(2);
+    assertThat(facets.get(IssueRegistry.FACET_ASSIGNEE).count(null)).isEqualTo(1);
+  }
+
+  @Test
+  public void should_remove_deleted_issues_when_reindexing_project() throws Exception {
+    mockIssuesForIndexing(null,
+      issue(1L, "ABCD", "struts", Severity.MAJOR, "OPEN", "arthur"),
+      issue(2L, "BCDE", "struts", Severity.MAJOR, "OPEN", null));
+    registry.bulkRegisterIssues();
+
+    // make sure that the new documents are not indexed in the same millisecond
+    Thread.sleep(10L);
+    mockIssuesForIndexing(100L, issue(2L, "BCDE", "struts", Severity.MAJOR, "RESOLVED", null));
+    registry.registerIssuesOfProject(100L);
+    assertThat(registry.findIds(IssueQuery.builder().build(), 10, 0, 10).ids()).containsExactly(2L);
+    assertThat(registry.findIds(IssueQuery.builder().statuses(Arrays.asList("RESOLVED")).build(), 10, 0, 10).ids()).containsExactly(2L);
+  }
+
+  @Test
+  public void should_listen_to_purges() {
+    verify(purgeDao).addListener(registry);
+  }
+
+  @Test
+  public void should_reindex_purged_project() throws Exception {
+    mockIssuesForIndexing(null,
+      issue(1L, "ABCD", "struts", Severity.MAJOR, "CLOSED", "arthur"),
+      issue(2L, "BCDE", "struts", Severity.MAJOR, "OPEN", null));
+    registry.bulkRegisterIssues();
+
+    // make sure that the new documents are not indexed in the same millisecond
+    Thread.sleep(10L);
+    mockIssuesForIndexing(100L, issue(2L, "BCDE", "struts", Severity.MAJOR, "OPEN", null));
+    registry.onPurge(100L);
+
+    assertThat(registry.findIds(IssueQuery.builder().build(), 10, 0, 10).ids()).containsExactly(2L);
+  }
+
+  @Test
+  public void should_remove_issues_of_deleted_project() {
+    mockIssuesForIndexing(null,
+      issue(1L, "ABCD", "struts", Severity.MAJOR, "OPEN", "arthur"),
+      issue(2L, "BCDE", "struts", Severity.MAJOR, "OPEN", null));
+    registry.bulkRegisterIssues();
+
+    registry.onDeletion(100L);
+
+    assertThat(registry.findIds(IssueQuery.builder().build(), 10, 0, 10).total()).isEqualTo(0);
+  }
+
+  @Test
+  public void should_update_issues() {
+    mockIssuesForIndexing(null, issue(1L, "ABCD", "struts", Severity.MAJOR, "OPEN", "arthur"));
+    registry.bulkRegisterIssues();
+
+    when(issueDao.selectByKeys(Arrays.asList("ABCD"))).thenReturn(Arrays.asList(issue(1L, "ABCD", "struts", Severity.MAJOR, "OPEN", "perceval")));
+    registry.saveOrUpdate(Arrays.asList("ABCD"));
+
+    assertThat(registry.findIds(IssueQuery.builder().assignees(Arrays.asList("perceval")).build(), 10, 0, 10).ids()).containsExactly(1L);
+  }
+
+  @Test
+  public void should_index_projects_in_background() {
+    ExecutorService executor = mock(ExecutorService.class);
+    IssueRegistry asyncRegistry = new IssueRegistry(searchIndex, issueDao, authorizationDao, resourceDao, purgeDao, settings, executor);
+
+    asyncRegistry.registerIssuesOfProject(100L);
+    // already waiting
+    asyncRegistry.registerIssuesOfProject(100L);
+    asyncRegistry.registerIssuesOfProject(200L);
+
+    verify(executor, times(2)).execute(any(Runnable.class));
+    verifyZeroInteractions(issueDao);
+
+    asyncRegistry.stop();
+    verify(executor).shutdownNow();
+  }
+
+  private IssueDto issue(Long id, String key, String projectKey, String severity, String status, String assignee) {
+    return new IssueDto().setId(id).setKee(key).setComponentId(123L).setRootComponentId(100L)
+      .setComponentKey_unit_test_only(projectKey + ":Action.java")
+      .setRootComponentKey_unit_test_only(projectKey)
+      .setRuleKey_unit_test_only("squid", "AvoidCycle")
+      .setSeverity(severity)
+      .setStatus(status)
+      .setAssignee(assignee)
+      .setIssueCreationDate(new Date());
+  }
+
+  private void mockIssuesForIndexing(Long rootProjectId, IssueDto... issues) {
+    final List<IssueDto> dtos = Arrays.asList(issues);
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        ResultHandler handler = (ResultHandler) invocation.getArguments()[1];
+        for (IssueDto dto : dtos) {
+          ResultContext context = mock(ResultContext.class);
+          when(context.getResultObject()).thenReturn(dto);
+          handler.handleResult(context);
+        }
+        return null;
+      }
+    }).when(issueDao).selectIssuesForIndexing(eq(rootProjectId), any(ResultHandler.class));
+  }
+}
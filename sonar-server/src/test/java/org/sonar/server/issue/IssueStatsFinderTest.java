@@ -20,7 +20,10 @@
 
 package org.sonar.server.issue;
 
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
 import org.junit.Test;
 import org.sonar.api.issue.IssueQuery;
 import org.sonar.api.user.User;
@@ -31,12 +34,14 @@ import org.sonar.core.user.DefaultUser;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class IssueStatsFinderTest {
 
   private IssueStatsDao issuestatsDao = mock(IssueStatsDao.class);
   private UserFinder userFinder = mock(UserFinder.class);
+  private IssueRegistry issueRegistry = mock(IssueRegistry.class);
 
   @Test
   public void should_find_assignees(){
@@ -46,9 +51,23 @@ public class IssueStatsFinderTest {
       new DefaultUser().setLogin("arthur").setName("Roi Arthur")
     ));
 
-    IssueStatsFinder issueStatsFinder = new IssueStatsFinder(issuestatsDao, userFinder);
+    IssueStatsFinder issueStatsFinder = new IssueStatsFinder(issuestatsDao, userFinder, issueRegistry);
     IssueStatsFinder.IssueStatsResult issueStatsResult = issueStatsFinder.findIssueAssignees(IssueQuery.builder().build());
     assertThat(issueStatsResult.results()).hasSize(4);
     assertThat(issueStatsResult.user("arthur").name()).isEqualTo("Roi Arthur");
   }
+
+  @Test
+  public void should_find_assignees_in_search_index() {
+    IssueQuery query = IssueQuery.builder().build();
+    Multiset<String> assignees = HashMultiset.create(Lists.newArrayList("perceval", "perceval", "arthur", null));
+    when(issueRegistry.accepts(query)).thenReturn(true);
+    when(issueRegistry.facets(eq(query), anyInt(), eq(IssueRegistry.FACET_ASSIGNEE))).thenReturn(ImmutableMap.of(IssueRegistry.FACET_ASSIGNEE, assignees));
+
+    IssueStatsFinder issueStatsFinder = new IssueStatsFinder(issuestatsDao, userFinder, issueRegistry);
+    IssueStatsFinder.IssueStatsResult issueStatsResult = issueStatsFinder.findIssueAssignees(query);
+    assertThat(issueStatsResult.results()).hasSize(4);
+    assertThat(issueStatsResult.results()).containsOnly("perceval", "arthur", null);
+    verifyZeroInteractions(issuestatsDao);
+  }
 }
@@ -33,6 +33,7 @@ import java.util.Collection;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.fest.assertions.Fail.fail;
+import static org.mockito.Mockito.mock;
 
 public class ServerIssueStorageTest extends AbstractDaoTestCase {
 
@@ -40,7 +41,7 @@ public class ServerIssueStorageTest extends AbstractDaoTestCase {
   public void should_load_component_id_from_db() throws Exception {
     setupData("should_load_component_id_from_db");
 
-    ServerIssueStorage storage = new ServerIssueStorage(getMyBatis(), new FakeRuleFinder(), new ResourceDao(getMyBatis()));
+    ServerIssueStorage storage = new ServerIssueStorage(getMyBatis(), new FakeRuleFinder(), new ResourceDao(getMyBatis()), mock(IssueRegistry.class));
     long componentId = storage.componentId(new DefaultIssue().setComponentKey("struts:Action.java"));
 
     assertThat(componentId).isEqualTo(123);
@@ -50,7 +51,7 @@ public class ServerIssueStorageTest extends AbstractDaoTestCase {
   public void should_fail_to_load_component_id_if_unknown_component() throws Exception {
     setupData("should_fail_to_load_component_id_if_unknown_component");
 
-    ServerIssueStorage storage = new ServerIssueStorage(getMyBatis(), new FakeRuleFinder(), new ResourceDao(getMyBatis()));
+    ServerIssueStorage storage = new ServerIssueStorage(getMyBatis(), new FakeRuleFinder(), new ResourceDao(getMyBatis()), mock(IssueRegistry.class));
     try {
       storage.componentId(new DefaultIssue().setComponentKey("struts:Action.java"));
       fail();
@@ -63,7 +64,7 @@ public class ServerIssueStorageTest extends AbstractDaoTestCase {
   public void should_load_project_id_from_db() throws Exception {
     setupData("should_load_project_id_from_db");
 
-    ServerIssueStorage storage = new ServerIssueStorage(getMyBatis(), new FakeRuleFinder(), new ResourceDao(getMyBatis()));
+    ServerIssueStorage storage = new ServerIssueStorage(getMyBatis(), new FakeRuleFinder(), new ResourceDao(getMyBatis()), mock(IssueRegistry.class));
     long projectId = storage.projectId(new DefaultIssue().setComponentKey("struts:Action.java"));
 
     assertThat(projectId).isEqualTo(1);
@@ -73,7 +74,7 @@ public class ServerIssueStorageTest extends AbstractDaoTestCase {
   public void should_fail_to_load_project_id_if_unknown_component() throws Exception {
     setupData("should_fail_to_load_project_id_if_unknown_component");
 
-    ServerIssueStorage storage = new ServerIssueStorage(getMyBatis(), new FakeRuleFinder(), new ResourceDao(getMyBatis()));
+    ServerIssueStorage storage = new ServerIssueStorage(getMyBatis(), new FakeRuleFinder(), new ResourceDao(getMyBatis()), mock(IssueRegistry.class));
     try {
       storage.projectId(new DefaultIssue().setComponentKey("struts:Action.java"));
       fail();
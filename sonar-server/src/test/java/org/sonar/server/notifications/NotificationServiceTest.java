@@ -27,17 +27,30 @@ import org.sonar.api.notifications.Notification;
 import org.sonar.api.notifications.NotificationChannel;
 import org.sonar.api.notifications.NotificationDispatcher;
 import org.sonar.core.notification.DefaultNotificationManager;
+import org.sonar.core.notification.DefaultNotificationManager.BatchHandler;
 import org.sonar.jpa.session.DatabaseSessionFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -60,7 +73,7 @@ public class NotificationServiceTest {
     when(gtalkChannel.getKey()).thenReturn("gtalk");
     when(commentOnReviewAssignedToMe.getKey()).thenReturn("comment on review assigned to me");
     when(commentOnReviewCreatedByMe.getKey()).thenReturn("comment on review created by me");
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(null);
+    doAnswer(queue(Arrays.asList(notification))).when(manager).processBatchFromQueue(anyInt(), any(BatchHandler.class));
 
     Settings settings = new Settings().setProperty("sonar.notifications.delay", 1L);
 
@@ -167,7 +180,8 @@ public class NotificationServiceTest {
   @Test
   public void shouldNotStopWhenException() {
     setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
-    when(manager.getFromQueue()).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(notification).thenReturn(null);
+    doThrow(new RuntimeException("Unexpected exception")).doAnswer(queue(Arrays.asList(notification)))
+      .when(manager).processBatchFromQueue(anyInt(), any(BatchHandler.class));
     doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
     doAnswer(addUser(CREATOR_SIMON, emailChannel)).when(commentOnReviewCreatedByMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
 
@@ -209,7 +223,7 @@ public class NotificationServiceTest {
   public void shouldLogEvery10Minutes() throws InterruptedException {
     setUpMocks(CREATOR_EVGENY, ASSIGNEE_SIMON);
     // Emulate 2 notifications in DB
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(notification).thenReturn(null);
+    doAnswer(queue(Arrays.asList(notification), Arrays.asList(notification))).when(manager).processBatchFromQueue(anyInt(), any(BatchHandler.class));
     when(manager.count()).thenReturn(1L).thenReturn(0L);
     service = spy(service);
     // Emulate processing of each notification take 10 min to have a log each time
@@ -220,6 +234,108 @@ public class NotificationServiceTest {
     service.stop();
   }
 
+  @Test
+  public void shouldDequeueNotificationsByBatch() {
+    setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
+    Notification notification2 = mock(Notification.class);
+    doAnswer(queue(Arrays.asList(notification, notification2))).when(manager).processBatchFromQueue(anyInt(), any(BatchHandler.class));
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+    Settings settings = new Settings().setProperty("sonar.notifications.delay", 1L).setProperty(NotificationService.PROPERTY_BATCH_SIZE, 10);
+    service = new NotificationService(settings, manager, mock(DatabaseSessionFactory.class),
+      new NotificationDispatcher[] {commentOnReviewAssignedToMe, commentOnReviewCreatedByMe});
+
+    service.processQueue();
+
+    verify(manager, times(2)).processBatchFromQueue(eq(10), any(BatchHandler.class));
+    verify(manager).startSubscribersCache();
+    verify(manager).stopSubscribersCache();
+    verify(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+    verify(emailChannel).deliver(notification2, ASSIGNEE_SIMON);
+    assertThat(service.getProcessedNotifications()).isEqualTo(2);
+    assertThat(service.getDeliveredNotifications()).isEqualTo(2);
+    assertThat(service.getFailedDeliveries()).isEqualTo(0);
+    assertThat(service.getQueueSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldRefreshQueueSizeAfterEachBatch() {
+    setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
+    doAnswer(queue(Arrays.asList(notification), Arrays.asList(notification))).when(manager).processBatchFromQueue(anyInt(), any(BatchHandler.class));
+    when(manager.count()).thenReturn(1L).thenReturn(0L);
+    final List<Long> queueSizes = new ArrayList<Long>();
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) {
+        queueSizes.add(service.getQueueSize());
+        return null;
+      }
+    }).when(commentOnReviewAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
+
+    service.processQueue();
+
+    assertThat(queueSizes).isEqualTo(Arrays.asList(0L, 1L));
+    assertThat(service.getQueueSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldDeliverConcurrentlyWhenAllowedByChannel() throws Exception {
+    setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
+    Notification notification2 = mock(Notification.class);
+    doAnswer(queue(Arrays.asList(notification, notification2))).when(manager).processBatchFromQueue(anyInt(), any(BatchHandler.class));
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+    Settings settings = new Settings().setProperty("sonar.notifications.delay", 1000L)
+      .setProperty("sonar.notifications.email.maxConcurrentDeliveries", 2);
+    service = new NotificationService(settings, manager, mock(DatabaseSessionFactory.class),
+      new NotificationDispatcher[] {commentOnReviewAssignedToMe, commentOnReviewCreatedByMe});
+
+    // each delivery waits for the other one: it completes only if both are executed at the same time
+    final CountDownLatch latch = new CountDownLatch(2);
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        latch.countDown();
+        if (!latch.await(2, TimeUnit.SECONDS)) {
+          throw new IllegalStateException("Deliveries are not concurrent");
+        }
+        return null;
+      }
+    }).when(emailChannel).deliver(any(Notification.class), anyString());
+
+    service.start();
+    verify(emailChannel, timeout(2000).times(2)).deliver(any(Notification.class), anyString());
+    service.stop();
+
+    assertThat(service.getFailedDeliveries()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldCountFailedDeliveries() {
+    setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
+    doThrow(new IllegalStateException("Fail")).when(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+
+    service.processQueue();
+
+    assertThat(service.getProcessedNotifications()).isEqualTo(1);
+    assertThat(service.getDeliveredNotifications()).isEqualTo(0);
+    assertThat(service.getFailedDeliveries()).isEqualTo(1);
+  }
+
+  /**
+   * Emulate a queue containing the given batches of notifications
+   */
+  private static Answer<Integer> queue(final List<Notification>... batches) {
+    final Queue<List<Notification>> queue = new LinkedList<List<Notification>>(Arrays.asList(batches));
+    return new Answer<Integer>() {
+      public Integer answer(InvocationOnMock invocation) {
+        List<Notification> batch = queue.poll();
+        if (batch == null) {
+          return 0;
+        }
+        ((BatchHandler) invocation.getArguments()[1]).handle(batch);
+        return batch.size();
+      }
+    };
+  }
+
   private static Answer<Object> addUser(final String user, final NotificationChannel channel) {
     return addUser(user, new NotificationChannel[] {channel});
   }
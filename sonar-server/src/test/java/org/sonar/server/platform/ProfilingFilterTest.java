@@ -24,11 +24,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.sonar.api.config.Settings;
+import org.sonar.core.profiling.MetricsRegistry;
 import org.sonar.core.profiling.Profiling;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 
+import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
@@ -39,6 +41,7 @@ public class ProfilingFilterTest {
 
   private ProfilingFilter filter;
   private FilterChain chain;
+  private MetricsRegistry metrics = new MetricsRegistry();
 
   @Before
   public void initialize() throws Exception {
@@ -56,6 +59,7 @@ public class ProfilingFilterTest {
 
     filter = spy(new ProfilingFilter());
     when(filter.getProfiling()).thenReturn(profiling);
+    when(filter.getMetrics()).thenReturn(metrics);
     filter.init(filterConfig);
   }
 
@@ -64,6 +68,25 @@ public class ProfilingFilterTest {
     filter.doFilter(request("POST", "/context/service/call", "param=value"), null, chain);
   }
 
+  @Test
+  public void should_aggregate_timings_per_action() throws Exception {
+    filter.doFilter(request("GET", "/context/dashboard/index/12", null), null, chain);
+    filter.doFilter(request("GET", "/context/dashboard/index/13", null), null, chain);
+    filter.doFilter(request("GET", "/context/api/issues/search.json", "componentRoots=foo"), null, chain);
+    filter.doFilter(request("GET", "/context", null), null, chain);
+
+    assertThat(metrics.timer("http./dashboard/index").count()).isEqualTo(2L);
+    assertThat(metrics.timer("http./api/issues/search").count()).isEqualTo(1L);
+    assertThat(metrics.timer("http./").count()).isEqualTo(1L);
+  }
+
+  @Test
+  public void should_not_time_static_resources() throws Exception {
+    filter.doFilter(request("GET", "/context/static/image.png", null), null, chain);
+
+    assertThat(metrics.timers()).isEmpty();
+  }
+
   @Test
   public void should_profile_service() throws Exception {
     filter.doFilter(request("POST", "/context/service", null), null, chain);
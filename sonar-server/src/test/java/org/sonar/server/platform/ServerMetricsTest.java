@@ -0,0 +1,105 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2013 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.core.profiling.MetricsRegistry;
+import org.sonar.server.notifications.NotificationService;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ServerMetricsTest {
+
+  MetricsRegistry metrics = new MetricsRegistry();
+  NotificationService notificationService = mock(NotificationService.class);
+  MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+  ServerMetrics serverMetrics;
+
+  @Before
+  public void setUp() {
+    serverMetrics = new ServerMetrics(metrics, notificationService, mbeanServer);
+  }
+
+  @Test
+  public void should_register_notification_gauges() {
+    when(notificationService.getQueueSize()).thenReturn(12L);
+    serverMetrics.start();
+
+    assertThat(metrics.gauges()).hasSize(5);
+    assertThat(serverMetrics.values().get("notifications.queueSize")).isEqualTo(12L);
+  }
+
+  @Test
+  public void should_expose_timers() {
+    metrics.timer("sql.select").update(4, TimeUnit.MILLISECONDS);
+    metrics.timer("sql.select").update(2, TimeUnit.MILLISECONDS);
+    metrics.counter("issues").inc();
+
+    assertThat(serverMetrics.values().get("sql.select.count")).isEqualTo(2L);
+    assertThat(serverMetrics.values().get("sql.select.mean")).isEqualTo(3.0);
+    assertThat(serverMetrics.values().get("sql.select.max")).isEqualTo(4.0);
+    assertThat(serverMetrics.values().get("sql.select.p99")).isEqualTo(4.0);
+    assertThat(serverMetrics.values().get("issues")).isEqualTo(1L);
+  }
+
+  @Test
+  public void should_register_mbean() throws Exception {
+    metrics.timer("http./api/issues/search").update(5, TimeUnit.MILLISECONDS);
+    serverMetrics.start();
+
+    ObjectName name = new ObjectName(ServerMetrics.OBJECT_NAME);
+    assertThat(mbeanServer.isRegistered(name)).isTrue();
+    assertThat(mbeanServer.getAttribute(name, "http./api/issues/search.count")).isEqualTo(1L);
+    assertThat(mbeanServer.getMBeanInfo(name).getAttributes().length).isEqualTo(11);
+
+    serverMetrics.stop();
+    assertThat(mbeanServer.isRegistered(name)).isFalse();
+  }
+
+  @Test
+  public void should_read_requested_attributes() throws Exception {
+    metrics.timer("sql.select").update(4, TimeUnit.MILLISECONDS);
+    metrics.timer("sql.update").update(2, TimeUnit.MILLISECONDS);
+    serverMetrics.start();
+
+    ObjectName name = new ObjectName(ServerMetrics.OBJECT_NAME);
+    AttributeList attributes = mbeanServer.getAttributes(name, new String[] {"sql.select.count", "sql.select.p95", "unknown"});
+    assertThat(attributes).hasSize(2);
+    assertThat(((Attribute) attributes.get(0)).getValue()).isEqualTo(1L);
+    assertThat(((Attribute) attributes.get(1)).getValue()).isEqualTo(4.0);
+  }
+
+  @Test(expected = AttributeNotFoundException.class)
+  public void should_fail_to_read_unknown_attribute() throws Exception {
+    serverMetrics.getAttribute("sql.unknown.count");
+  }
+}
@@ -29,6 +29,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.config.Settings;
+import org.sonar.core.profiling.MetricsRegistry;
 import org.sonar.core.profiling.Profiling;
 import org.sonar.core.rule.RuleDao;
 import org.sonar.core.rule.RuleDto;
@@ -63,7 +64,7 @@ public class RuleRegistryTest {
     Settings settings = new Settings();
     settings.setProperty("sonar.log.profilingLevel", "FULL");
     Profiling profiling = new Profiling(settings);
-    searchIndex = new SearchIndex(node, profiling);
+    searchIndex = new SearchIndex(node, profiling, new MetricsRegistry());
     searchIndex.start();
 
     registry = new RuleRegistry(searchIndex, ruleDao);
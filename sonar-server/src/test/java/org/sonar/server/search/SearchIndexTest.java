@@ -22,6 +22,7 @@ package org.sonar.server.search;
 
 import org.sonar.api.config.Settings;
 
+import org.sonar.core.profiling.MetricsRegistry;
 import org.sonar.core.profiling.Profiling;
 import com.github.tlrx.elasticsearch.test.EsSetup;
 import org.elasticsearch.common.io.BytesStream;
@@ -44,6 +45,7 @@ public class SearchIndexTest {
   private SearchNode searchNode;
 
   private SearchIndex searchIndex;
+  private MetricsRegistry metrics;
 
   @Before
   public void setUp() {
@@ -55,7 +57,8 @@ public class SearchIndexTest {
 
     Settings settings = new Settings();
     settings.setProperty("sonar.log.profilingLevel", "BASIC");
-    searchIndex = new SearchIndex(searchNode, new Profiling(settings));
+    metrics = new MetricsRegistry();
+    searchIndex = new SearchIndex(searchNode, new Profiling(settings), metrics);
     searchIndex.start();
   }
 
@@ -129,6 +132,8 @@ public class SearchIndexTest {
 
     List<String> docIds = searchIndex.findDocumentIds(SearchQuery.create());
     assertThat(docIds).hasSize(numberOfDocuments);
+    assertThat(metrics.timer("es.bulkIndex").count()).isEqualTo(1L);
+    assertThat(metrics.timer("es.findDocumentIds").count()).isEqualTo(1L);
   }
 
   @Test(expected = StrictDynamicMappingException.class)